@@ -19,6 +19,8 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vcs.impl.CancellableRunnable;
 import com.intellij.util.ThrowableConsumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
@@ -27,9 +29,11 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
 
 public final class StreamGobbler implements CancellableRunnable {
   private static final Logger LOG = Logger.getInstance(StreamGobbler.class);
@@ -42,9 +46,19 @@ public final class StreamGobbler implements CancellableRunnable {
   private int myOutputLength = 0;
   private boolean myResultUsedOnce;
   private volatile boolean myMasterExited;
+  private final @Nullable ThrowableConsumer<InputStream, IOException> myStreamConsumer;
+  private volatile Throwable myStreamConsumerError;
 
   public StreamGobbler(final InputStream is) {
+    this(is, null);
+  }
+
+  /**
+   * @param streamConsumer if not null, reads the stream while the process is running, nothing is buffered then
+   */
+  public StreamGobbler(final InputStream is, @Nullable ThrowableConsumer<InputStream, IOException> streamConsumer) {
     this.is = is;
+    myStreamConsumer = streamConsumer;
     myInMemoryContents = new ByteArrayOutputStream();
     myByteContents = myInMemoryContents;
     myResultUsedOnce = true;
@@ -52,6 +66,10 @@ public final class StreamGobbler implements CancellableRunnable {
 
   @Override
   public void run() {
+    if (myStreamConsumer != null) {
+      consumeStream(myStreamConsumer);
+      return;
+    }
     byte[] buffer = new byte[8 * 1024];
     try {
       int read;
@@ -80,6 +98,53 @@ public final class StreamGobbler implements CancellableRunnable {
     }
   }
 
+  private void consumeStream(@NotNull ThrowableConsumer<InputStream, IOException> consumer) {
+    InputStream countingStream = new FilterInputStream(is) {
+      @Override
+      public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) myOutputLength++;
+        return b;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if (read > 0) myOutputLength += read;
+        return read;
+      }
+    };
+    try {
+      consumer.consume(countingStream);
+    }
+    catch (IOException | RuntimeException e) {
+      if (!myMasterExited) {
+        myStreamConsumerError = e;
+      }
+    }
+    finally {
+      // the process would block on a full pipe if the consumer stopped reading early
+      drain(countingStream);
+    }
+  }
+
+  private void drain(InputStream stream) {
+    byte[] buffer = new byte[8 * 1024];
+    try {
+      //noinspection StatementWithEmptyBody
+      while (stream.read(buffer, 0, buffer.length) != -1) ;
+    }
+    catch (IOException ignored) {
+    }
+  }
+
+  /**
+   * @return the exception thrown by the stream consumer passed to the constructor
+   */
+  public @Nullable Throwable getStreamConsumerError() {
+    return myStreamConsumerError;
+  }
+
   private boolean switchToTemporaryFileContent() {
     try {
       myTempFile = FileUtil.createTempFile("idea_p4", "command.output", true);
@@ -152,6 +217,18 @@ public final class StreamGobbler implements CancellableRunnable {
     }
   }
 
+  /**
+   * Copies the result to {@code out}, unlike {@link #allowSafeStreamUsage} it can be used before it and doesn't delete the temp file
+   */
+  public void copyResult(final OutputStream out) throws IOException {
+    if (myTempFile != null) {
+      Files.copy(myTempFile.toPath(), out);
+    }
+    else {
+      myInMemoryContents.writeTo(out);
+    }
+  }
+
   public void deleteTempFile() {
     if (myTempFile != null) {
       FileUtil.delete(myTempFile);
@@ -19,6 +19,7 @@ package org.jetbrains.idea.perforce.perforce;
 import com.intellij.openapi.util.NlsSafe;
 import com.intellij.util.ThrowableConsumer;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.idea.perforce.StreamGobbler;
 
 import java.io.BufferedReader;
@@ -26,6 +27,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
@@ -38,6 +40,18 @@ public final class ExecResult {
   private Throwable myException = null;
   private String myErrorString;
   private Charset myCharset = StandardCharsets.UTF_8;
+  private @Nullable OutputConsumer myOutputConsumer;
+  private final StringBuffer myStreamedStderr = new StringBuffer();
+
+  /**
+   * Reads the standard output while the command is running.
+   */
+  public interface OutputConsumer {
+    /**
+     * @param result the result of the running command, e.g. to {@link #appendStreamedStderr report errors} found in the output
+     */
+    void consume(@NotNull InputStream stdout, @NotNull ExecResult result) throws IOException;
+  }
 
   @Override
   @SuppressWarnings({"HardCodedStringLiteral"})
@@ -91,6 +105,18 @@ public final class ExecResult {
     }
   }
 
+  /**
+   * Copies the buffered standard output to {@code out} without using it up, so it's still available to {@link #getStdout()}
+   * and {@link #allowSafeStdoutUsage}.
+   */
+  public void copyStdout(@NotNull OutputStream out) throws IOException {
+    if (myOutputGobbler != null) {
+      myOutputGobbler.copyResult(out);
+    } else {
+      out.write(myStdout.getBytes(myCharset));
+    }
+  }
+
   public @NotNull @NlsSafe String getStdout() {
     if (myOutputGobbler != null) {
       return readStreamConvertingLineSeparators(myOutputGobbler, myCharset);
@@ -98,6 +124,26 @@ public final class ExecResult {
     return myStdout;
   }
 
+  /**
+   * The output will be passed to {@code consumer} while the command is running instead of being buffered,
+   * so {@link #getStdout()} is empty then.
+   */
+  public void setOutputConsumer(@Nullable OutputConsumer consumer) {
+    myOutputConsumer = consumer;
+  }
+
+  public @Nullable OutputConsumer getOutputConsumer() {
+    return myOutputConsumer;
+  }
+
+  /**
+   * Adds an error message found by the {@link #setOutputConsumer output consumer}, e.g. in tagged output where errors are written to stdout.
+   * The message is included in {@link #getStderr()}, so the usual error checks apply to it.
+   */
+  public void appendStreamedStderr(@NotNull String message) {
+    myStreamedStderr.append(message).append('\n');
+  }
+
   public void setOutputGobbler(final StreamGobbler outputGobbler) {
     myOutputGobbler = outputGobbler;
   }
@@ -107,14 +153,15 @@ public final class ExecResult {
   }
 
   public @NotNull @NlsSafe String getStderr() {
+    String stderr = myStderr;
     if (myErrorGobbler != null) {
       if (myErrorString == null) {
         // when temp file is used, we can NOT read stream several times (it is destroyed after first read)
         myErrorString = readStreamConvertingLineSeparators(myErrorGobbler, myCharset);
       }
-      return myErrorString;
+      stderr = myErrorString;
     }
-    return myStderr;
+    return myStreamedStderr.isEmpty() ? stderr : stderr + myStreamedStderr;
   }
 
   public Throwable getException() {
@@ -37,6 +37,13 @@ public final class View {
   private final Mapping myLocalToDepotMapping;
 
   public static @Nullable View create(String viewString) {
+    return create(viewString, false);
+  }
+
+  /**
+   * @param caseSensitive whether paths are matched case-sensitively, as on a server with case-sensitive case handling
+   */
+  public static @Nullable View create(String viewString, boolean caseSensitive) {
 
     final String[] params = ParametersList.parse(viewString);
 
@@ -45,17 +52,17 @@ public final class View {
     String depot = strings.get(0).trim();
     String client = strings.get(1).trim();
 
-    return new View(depot, client, viewString);
+    return new View(depot, client, viewString, caseSensitive);
   }
 
-  private View(final String depotPath, final String localPath, final String viewString) {
+  private View(final String depotPath, final String localPath, final String viewString, boolean caseSensitive) {
     myDepotPath = depotPath;
     myLocalPath = localPath;
     myStringRepresentation = viewString;
 
     String rawDepot = depotPath.startsWith("-") || depotPath.startsWith("+") ? depotPath.substring(1) : depotPath;
-    myDepotToLocalMapping = new Mapping(rawDepot, localPath);
-    myLocalToDepotMapping = new Mapping(localPath, rawDepot);
+    myDepotToLocalMapping = new Mapping(rawDepot, localPath, caseSensitive);
+    myLocalToDepotMapping = new Mapping(localPath, rawDepot, caseSensitive);
   }
 
   public String getDepotPath() {
@@ -79,6 +86,20 @@ public final class View {
     return StringUtil.startsWithIgnoreCase(result, clientPrefix) ? result.substring(clientPrefix.length()) : result;
   }
 
+  /**
+   * @return the client path this line maps {@code depotPath} to, or null if the line doesn't match it
+   */
+  public @Nullable String mapDepotPath(@NotNull String depotPath) {
+    return myDepotToLocalMapping.replaceSrcPathWithDest(depotPath);
+  }
+
+  /**
+   * @return the depot path this line maps {@code clientPath} to, or null if the line doesn't match it
+   */
+  public @Nullable String mapClientPath(@NotNull String clientPath) {
+    return myLocalToDepotMapping.replaceSrcPathWithDest(clientPath);
+  }
+
   public boolean removeMatched() {
     return getDepotPath().startsWith("-");
   }
@@ -190,6 +211,7 @@ public final class View {
   private static class Mapping {
     final String mySrcMask;
     final String myDestMask;
+    private final boolean myCaseSensitive;
     private Matcher mySrcMatcher;
     private Map<Integer, Integer> mySrcPatternBackReferences;
     private List<Integer> myWildcardGroupNumbers;
@@ -197,9 +219,10 @@ public final class View {
     private int mySrcPatternGroupCount;
     private String myDestPattern;
 
-    Mapping(String srcMask, String destMask) {
+    Mapping(String srcMask, String destMask, boolean caseSensitive) {
       mySrcMask = srcMask;
       myDestMask = destMask;
+      myCaseSensitive = caseSensitive;
     }
 
     private synchronized @Nullable String replaceSrcPathWithDest(String filePath) {
@@ -251,7 +274,7 @@ public final class View {
           }
         });
         srcPattern = patternWithReferences.toString();
-        Pattern pattern = Pattern.compile(srcPattern, Pattern.CASE_INSENSITIVE);
+        Pattern pattern = Pattern.compile(srcPattern, myCaseSensitive ? 0 : Pattern.CASE_INSENSITIVE);
         mySrcMatcher = pattern.matcher(filePath);
         return mySrcMatcher;
       }
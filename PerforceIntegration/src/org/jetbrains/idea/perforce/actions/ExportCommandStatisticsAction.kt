@@ -0,0 +1,37 @@
+package org.jetbrains.idea.perforce.actions
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread
+import com.intellij.openapi.actionSystem.AnActionEvent
+import com.intellij.openapi.fileChooser.FileChooserFactory
+import com.intellij.openapi.fileChooser.FileSaverDescriptor
+import com.intellij.openapi.project.DumbAwareAction
+import com.intellij.openapi.ui.Messages
+import com.intellij.openapi.vcs.ProjectLevelVcsManager
+import org.jetbrains.idea.perforce.PerforceBundle
+import org.jetbrains.idea.perforce.application.PerforceVcs
+import org.jetbrains.idea.perforce.perforce.connections.P4CommandStatistics
+import java.io.IOException
+import java.nio.file.Files
+
+class ExportCommandStatisticsAction : DumbAwareAction() {
+  override fun update(e: AnActionEvent) {
+    val project = e.project
+    e.presentation.isVisible = project != null && ProjectLevelVcsManager.getInstance(project).checkVcsIsActive(PerforceVcs.NAME)
+  }
+
+  override fun actionPerformed(e: AnActionEvent) {
+    val project = e.project ?: return
+    val descriptor = FileSaverDescriptor(PerforceBundle.message("command.statistics.export.title"),
+                                         PerforceBundle.message("command.statistics.export.description"), "json")
+    val target = FileChooserFactory.getInstance().createSaveFileDialog(descriptor, project)
+                   .save("p4-command-statistics.json")?.file?.toPath() ?: return
+    try {
+      Files.writeString(target, P4CommandStatistics.getInstance().toJson())
+    }
+    catch (ex: IOException) {
+      Messages.showErrorDialog(project, ex.message, PerforceBundle.message("command.statistics.export.title"))
+    }
+  }
+
+  override fun getActionUpdateThread(): ActionUpdateThread = ActionUpdateThread.BGT
+}
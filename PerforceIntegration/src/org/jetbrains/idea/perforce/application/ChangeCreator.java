@@ -19,19 +19,27 @@ import org.jetbrains.idea.perforce.perforce.ResolvedFile;
 import org.jetbrains.idea.perforce.perforce.connections.P4Connection;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 public class ChangeCreator {
   private final Project myProject;
   final Set<VirtualFile> reportedChanges = new HashSet<>();
+  private final List<ContentRevision> myBaseRevisions = new ArrayList<>();
 
   public ChangeCreator(final Project project) {
     myProject = project;
   }
 
   public Change createEditedFileChange(final FilePath path, final long haveRevision, boolean isResolvedWithConflict) {
-    return createChange(PerforceCachingContentRevision.create(myProject, path, haveRevision),
+    return createEditedFileChange(null, null, path, haveRevision, isResolvedWithConflict);
+  }
+
+  public Change createEditedFileChange(final @Nullable P4Connection connection, final @Nullable String depotPath, final FilePath path,
+                                       final long haveRevision, boolean isResolvedWithConflict) {
+    return createChange(PerforceCachingContentRevision.create(myProject, connection, depotPath, path, haveRevision),
                       CurrentContentRevision.create(path),
                       isResolvedWithConflict ? FileStatus.MERGED_WITH_CONFLICTS : FileStatus.MODIFIED);
   }
@@ -41,8 +49,9 @@ public class ChangeCreator {
                       isResolvedWithConflict ? FileStatus.MERGED_WITH_CONFLICTS : FileStatus.ADDED);
   }
 
-  public Change createDeletedFileChange(final @NotNull File file, final long haveRevision, boolean isResolvedWithConflict) {
-    return createChange(PerforceCachingContentRevision.create(myProject, VcsUtil.getFilePath(file, false), haveRevision), null,
+  public Change createDeletedFileChange(final @Nullable P4Connection connection, final @Nullable String depotPath, final @NotNull File file,
+                                        final long haveRevision, boolean isResolvedWithConflict) {
+    return createChange(PerforceCachingContentRevision.create(myProject, connection, depotPath, VcsUtil.getFilePath(file, false), haveRevision), null,
                       isResolvedWithConflict ? FileStatus.MERGED_WITH_CONFLICTS : FileStatus.DELETED);
   }
 
@@ -57,6 +66,13 @@ public class ChangeCreator {
     return createChange(beforeRevision, afterRevision, FileStatus.MODIFIED);
   }
 
+  /**
+   * @return the before revisions of all created changes
+   */
+  public @NotNull List<ContentRevision> getBaseRevisions() {
+    return myBaseRevisions;
+  }
+
   private Change createChange(final @Nullable ContentRevision before, final @Nullable ContentRevision after, final FileStatus fileStatus) {
     final Change change = new Change(before, after, fileStatus);
     if (after != null) {
@@ -64,6 +80,7 @@ public class ChangeCreator {
     }
     if (before != null) {
       ContainerUtil.addIfNotNull(reportedChanges, before.getFile().getVirtualFile());
+      myBaseRevisions.add(before);
     }
     return change;
   }
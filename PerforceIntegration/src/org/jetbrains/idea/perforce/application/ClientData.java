@@ -3,7 +3,9 @@ package org.jetbrains.idea.perforce.application;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.containers.ContainerUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.Unmodifiable;
+import org.jetbrains.idea.perforce.perforce.ClientViewMapping;
 import org.jetbrains.idea.perforce.perforce.PerforceRunner;
 import org.jetbrains.idea.perforce.perforce.View;
 
@@ -13,11 +15,25 @@ import java.util.Map;
 
 class ClientData {
   private final Map<String, List<String>> myData;
+  private final @Nullable String myServer;
+  private final boolean myCaseSensitive;
   private volatile List<View> myViews;
   private volatile List<String> myOptions;
+  private volatile boolean myViewMappingComputed;
+  private volatile ClientViewMapping myViewMapping;
 
   ClientData(Map<String, List<String>> data) {
+    this(data, null, false);
+  }
+
+  /**
+   * @param server        the server the spec was loaded from, null if its view shouldn't be compiled
+   * @param caseSensitive whether the server handles paths case-sensitively
+   */
+  ClientData(Map<String, List<String>> data, @Nullable String server, boolean caseSensitive) {
     myData = Collections.unmodifiableMap(data);
+    myServer = server;
+    myCaseSensitive = caseSensitive;
   }
 
   @Unmodifiable
@@ -47,4 +63,13 @@ class ClientData {
     }
     return myViews;
   }
+
+  @Nullable
+  ClientViewMapping getViewMapping() {
+    if (!myViewMappingComputed) {
+      myViewMapping = myServer == null ? null : PerforceClientSpecCache.getInstance().getViewMapping(myServer, myData, myCaseSensitive);
+      myViewMappingComputed = true;
+    }
+    return myViewMapping;
+  }
 }
@@ -15,6 +15,7 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
 * to fix a case when user sets "c:\depot" in his client specification instead of "C:\depot" and
@@ -23,6 +24,8 @@ import java.util.Map;
 @Service(Service.Level.PROJECT)
 public final class ClientRootsCache {
   private static final Logger LOG = Logger.getInstance(ClientRootsCache.class);
+  // the projects opened from the same workspace resolve the same roots, so canonical paths are shared by all of them
+  private static final Map<String, String> ourCanonicalPaths = new ConcurrentHashMap<>();
   private final Map<String, String> myRawToCanonical = new HashMap<>();
   private final Map<String, String> myCanonicalToRaw = new HashMap<>();
 
@@ -67,9 +70,8 @@ public final class ClientRootsCache {
     if (SystemInfo.isWindows && // assume the path has already correct case on other systems
         !"null".equals(rawClientRoot) &&
         !isUnixPath(rawClientRoot)) {
-      final File root = new File(rawClientRoot);
       try {
-        converted = root.getCanonicalPath();
+        converted = getCanonicalPath(rawClientRoot);
       }
       catch (IOException ignore) {
       }
@@ -131,7 +133,7 @@ public final class ClientRootsCache {
       myCanonicalToRaw.clear();
       for (String vcsRootPath : vcsRootPaths) {
         try {
-          String canonical = new File(vcsRootPath).getCanonicalPath();
+          String canonical = getCanonicalPath(vcsRootPath);
           if (LOG.isDebugEnabled()) {
             LOG.debug("VCS root: " + vcsRootPath + " -> canonical: " + canonical);
           }
@@ -144,6 +146,22 @@ public final class ClientRootsCache {
     }
   }
 
+  private static String getCanonicalPath(String path) throws IOException {
+    String canonical = ourCanonicalPaths.get(path);
+    if (canonical == null) {
+      canonical = new File(path).getCanonicalPath();
+      ourCanonicalPaths.put(path, canonical);
+    }
+    return canonical;
+  }
+
+  /**
+   * Forgets the canonical paths shared by the projects, e.g. when the connections are reconfigured and links might point elsewhere.
+   */
+  public static void clearCanonicalPaths() {
+    ourCanonicalPaths.clear();
+  }
+
   private static String glueRelativePath(final String absPath, final String relativePath) {
     if (absPath.endsWith("\\") || absPath.endsWith("/") || relativePath.startsWith("\\") || relativePath.startsWith("/")) {
       return absPath + relativePath;
@@ -0,0 +1,169 @@
+// Copyright 2000-2026 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package org.jetbrains.idea.perforce.application;
+
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Immutable copy of the have-list of a connection under some roots: local path to have revision, as reported by {@code p4 have}.
+ * <p>
+ * Paths are kept in sorted arrays, so that a subtree is a contiguous range found by binary search.
+ */
+final class HaveListSnapshot {
+  private final String[] myRoots;
+  // normalized (system-independent, lower case on case-insensitive file systems) paths, sorted
+  private final String[] myKeys;
+  // paths as reported by p4, the same instances as myKeys on case-sensitive file systems
+  private final String[] myPaths;
+  private final long[] myRevisions;
+  private final String myStamp;
+
+  private HaveListSnapshot(String[] roots, String[] keys, String[] paths, long[] revisions, String stamp) {
+    myRoots = roots;
+    myKeys = keys;
+    myPaths = paths;
+    myRevisions = revisions;
+    myStamp = stamp;
+  }
+
+  /**
+   * @param roots     local roots the have-list was requested for
+   * @param revisions local paths to have revisions
+   * @param stamp     the stamp of the have-list of the client taken before the have-list was requested
+   */
+  static @NotNull HaveListSnapshot create(@NotNull Collection<String> roots, @NotNull Map<String, Long> revisions, @NotNull String stamp) {
+    String[] paths = revisions.keySet().toArray(String[]::new);
+    String[] keys = new String[paths.length];
+    for (int i = 0; i < paths.length; i++) {
+      keys[i] = normalize(paths[i]);
+    }
+    Integer[] order = new Integer[paths.length];
+    for (int i = 0; i < order.length; i++) order[i] = i;
+    Arrays.sort(order, (a, b) -> keys[a].compareTo(keys[b]));
+
+    String[] sortedKeys = new String[paths.length];
+    String[] sortedPaths = new String[paths.length];
+    long[] sortedRevisions = new long[paths.length];
+    for (int i = 0; i < order.length; i++) {
+      sortedKeys[i] = keys[order[i]];
+      sortedPaths[i] = paths[order[i]];
+      sortedRevisions[i] = revisions.get(paths[order[i]]);
+    }
+    return new HaveListSnapshot(roots.stream().map(HaveListSnapshot::normalize).sorted().toArray(String[]::new),
+                                sortedKeys, sortedPaths, sortedRevisions, stamp);
+  }
+
+  /**
+   * @param revisions new have revisions of local paths, paths outside the roots are skipped
+   * @param removed   local paths removed from the have-list
+   * @param stamp     the stamp of the have-list once the changes are applied
+   * @return a copy of this snapshot with the changes applied
+   */
+  @NotNull HaveListSnapshot withRevisions(@NotNull Map<String, Long> revisions, @NotNull Collection<String> removed, @NotNull String stamp) {
+    Map<String, String> pathsByKey = new HashMap<>();
+    Map<String, Long> updated = new HashMap<>();
+    for (int i = 0; i < myKeys.length; i++) {
+      pathsByKey.put(myKeys[i], myPaths[i]);
+      updated.put(myPaths[i], myRevisions[i]);
+    }
+    for (String path : removed) {
+      String previous = pathsByKey.remove(normalize(path));
+      if (previous != null) updated.remove(previous);
+    }
+    for (Map.Entry<String, Long> entry : revisions.entrySet()) {
+      if (!covers(entry.getKey())) continue;
+      String previous = pathsByKey.put(normalize(entry.getKey()), entry.getKey());
+      if (previous != null) updated.remove(previous);
+      updated.put(entry.getKey(), entry.getValue());
+    }
+    return create(Arrays.asList(myRoots), updated, stamp);
+  }
+
+  @NotNull String getStamp() {
+    return myStamp;
+  }
+
+  int size() {
+    return myKeys.length;
+  }
+
+  /**
+   * @return whether the have-list of {@code path} is known, i.e. it is under one of the roots
+   */
+  boolean covers(@NotNull String path) {
+    String key = normalize(path);
+    for (String root : myRoots) {
+      if (FileUtil.startsWith(key, root, true)) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Passes the have revisions of {@code path}, and of the files under it if {@code recursive}, to {@code consumer}.
+   */
+  void forEach(@NotNull String path, boolean recursive, @NotNull ObjLongConsumer<String> consumer) {
+    String key = normalize(path);
+    int exact = Arrays.binarySearch(myKeys, key);
+    if (exact >= 0) {
+      consumer.accept(myPaths[exact], myRevisions[exact]);
+    }
+    if (!recursive) return;
+
+    String prefix = key.endsWith("/") ? key : key + "/";
+    int from = insertionPoint(Arrays.binarySearch(myKeys, prefix));
+    for (int i = from; i < myKeys.length && myKeys[i].startsWith(prefix); i++) {
+      consumer.accept(myPaths[i], myRevisions[i]);
+    }
+  }
+
+  void write(@NotNull DataOutput out) throws IOException {
+    out.writeUTF(myStamp);
+    out.writeInt(myRoots.length);
+    for (String root : myRoots) {
+      out.writeUTF(root);
+    }
+    out.writeInt(myKeys.length);
+    for (int i = 0; i < myKeys.length; i++) {
+      out.writeUTF(myPaths[i]);
+      out.writeLong(myRevisions[i]);
+    }
+  }
+
+  static @NotNull HaveListSnapshot read(@NotNull DataInput in) throws IOException {
+    String stamp = in.readUTF();
+    String[] roots = new String[in.readInt()];
+    for (int i = 0; i < roots.length; i++) {
+      roots[i] = in.readUTF();
+    }
+    int size = in.readInt();
+    String[] keys = new String[size];
+    String[] paths = new String[size];
+    long[] revisions = new long[size];
+    for (int i = 0; i < size; i++) {
+      paths[i] = in.readUTF();
+      keys[i] = normalize(paths[i]);
+      revisions[i] = in.readLong();
+    }
+    return new HaveListSnapshot(roots, keys, paths, revisions, stamp);
+  }
+
+  private static int insertionPoint(int searchResult) {
+    return searchResult >= 0 ? searchResult : -searchResult - 1;
+  }
+
+  private static String normalize(String path) {
+    String key = StringUtil.trimEnd(FileUtil.toSystemIndependentName(path), "/");
+    return SystemInfo.isFileSystemCaseSensitive ? key : StringUtil.toLowerCase(key);
+  }
+}
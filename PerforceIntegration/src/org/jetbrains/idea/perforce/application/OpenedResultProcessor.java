@@ -105,7 +105,8 @@ public class OpenedResultProcessor {
       }
       File file = perforceChange.getFile();
       if (file == null) return;
-      myBuilder.processChangeInList(myChangeCreator.createDeletedFileChange(file, perforceChange.getRevision(), false),
+      myBuilder.processChangeInList(myChangeCreator.createDeletedFileChange(myConnection, perforceChange.getDepotPath(), file,
+                                                                             perforceChange.getRevision(), false),
                                     changeList, PerforceVcs.getKey());
     }
 
@@ -114,7 +115,8 @@ public class OpenedResultProcessor {
         final ChangeList changeList = myChangelistCalculator.convert(perforceChange);
         File file = perforceChange.getFile();
         if (file == null) return;
-        myBuilder.processChangeInList(myChangeCreator.createDeletedFileChange(file, perforceChange.getRevision(), false),
+        myBuilder.processChangeInList(myChangeCreator.createDeletedFileChange(myConnection, perforceChange.getDepotPath(), file,
+                                                                               perforceChange.getRevision(), false),
                                       changeList, PerforceVcs.getKey());
       }
     }
@@ -208,7 +210,8 @@ public class OpenedResultProcessor {
     protected void process(PerforceChange perforceChange, ChangeList changeList) {
       final File file = perforceChange.getFile();
       if (file == null) return;
-      myBuilder.processChangeInList(myChangeCreator.createEditedFileChange(toCanonicalFilePath(file), perforceChange.getRevision(),
+      myBuilder.processChangeInList(myChangeCreator.createEditedFileChange(myConnection, perforceChange.getDepotPath(),
+                                                                           toCanonicalFilePath(file), perforceChange.getRevision(),
                                                                            myResolvedWithConflicts.contains(file)), changeList, PerforceVcs.getKey());
     }
   }
@@ -1,16 +1,42 @@
 package org.jetbrains.idea.perforce.application
 
 import com.intellij.openapi.application.ApplicationActivationListener
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.Key
+import com.intellij.openapi.util.UserDataHolderEx
 import com.intellij.openapi.util.registry.Registry
 import com.intellij.openapi.vcs.changes.VcsDirtyScopeManager
 import com.intellij.openapi.wm.IdeFrame
+import com.intellij.util.concurrency.AppExecutorUtil
+import org.jetbrains.annotations.ApiStatus
 import org.jetbrains.idea.perforce.perforce.connections.PerforceConnectionManager
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+
+private val ACTIVATION_REFRESH_THROTTLE = Key.create<ActivationRefreshThrottle>("P4_ACTIVATION_REFRESH_THROTTLE")
 
 internal class P4LocalChangesRefresher : ApplicationActivationListener {
   override fun applicationActivated(ideFrame: IdeFrame) {
     if (!Registry.`is`("p4.refresh.local.changes.on.frame.activation")) return
     val project = ideFrame.project ?: return
 
+    val throttle = project.getUserData(ACTIVATION_REFRESH_THROTTLE)
+                   ?: (project as UserDataHolderEx).putUserDataIfAbsent(ACTIVATION_REFRESH_THROTTLE, createThrottle(project))
+    throttle.activated(Registry.intValue("p4.refresh.local.changes.on.frame.activation.interval.sec") * 1000L)
+  }
+
+  private fun createThrottle(project: Project): ActivationRefreshThrottle =
+    ActivationRefreshThrottle(
+      lastFullRefresh = { PerforceVcs.getInstance(project).onlineChangeProvider.lastFullRefreshTime },
+      refresh = { markRootsDirty(project) },
+      schedule = { delayMs, action ->
+        AppExecutorUtil.getAppScheduledExecutorService().schedule({
+          if (!project.isDisposed) action()
+        }, delayMs, TimeUnit.MILLISECONDS)
+      })
+
+  private fun markRootsDirty(project: Project) {
     val connectionManager = PerforceConnectionManager.getInstance(project)
     val dirtyScopeManager = VcsDirtyScopeManager.getInstance(project)
     connectionManager.allConnections.forEach { (root, _) ->
@@ -18,3 +44,48 @@ internal class P4LocalChangesRefresher : ApplicationActivationListener {
     }
   }
 }
+
+/**
+ * Decides when a frame activation refreshes local changes of a project.
+ *
+ * Switching back and forth between windows shouldn't refresh every time, the project was refreshed recently anyway:
+ * an activation within the interval since the last activation refresh or full refresh schedules a single refresh
+ * once the interval has passed, so that changes made outside meanwhile are still picked up.
+ */
+@ApiStatus.Internal
+class ActivationRefreshThrottle(
+  private val lastFullRefresh: () -> Long,
+  private val refresh: () -> Unit,
+  private val schedule: (delayMs: Long, action: () -> Unit) -> Unit,
+  private val clock: () -> Long = System::currentTimeMillis,
+) {
+  private val lastRefresh = AtomicLong()
+  private val deferred = AtomicBoolean()
+
+  fun activated(minIntervalMs: Long) {
+    val now = clock()
+    val previous = lastRefresh.get()
+    val elapsed = now - maxOf(previous, lastFullRefresh())
+    if (elapsed < minIntervalMs) {
+      scheduleDeferredRefresh(now, minIntervalMs - elapsed)
+      return
+    }
+    if (lastRefresh.compareAndSet(previous, now)) {
+      refresh()
+    }
+  }
+
+  private fun scheduleDeferredRefresh(activatedAt: Long, delayMs: Long) {
+    if (!deferred.compareAndSet(false, true)) return
+
+    schedule(delayMs) {
+      deferred.set(false)
+      // a full refresh or another activation after this one has already picked up the changes
+      val previous = lastRefresh.get()
+      if (maxOf(previous, lastFullRefresh()) >= activatedAt) return@schedule
+      if (lastRefresh.compareAndSet(previous, clock())) {
+        refresh()
+      }
+    }
+  }
+}
@@ -31,6 +31,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.idea.perforce.PerforceBundle;
 import org.jetbrains.idea.perforce.application.annotation.AnnotationInfo;
+import org.jetbrains.idea.perforce.application.annotation.PerforceAnnotationCache;
 import org.jetbrains.idea.perforce.application.annotation.PerforceFileAnnotation;
 import org.jetbrains.idea.perforce.perforce.P4File;
 import org.jetbrains.idea.perforce.perforce.P4Revision;
@@ -69,7 +70,12 @@ public class PerforceAnnotationProvider implements AnnotationProviderEx {
     String pathAtRevision = p4Revision == null ? path : p4Revision.getDepotPath();
     long revision = p4Revision == null ? -1 : p4Revision.getRevisionNumber();
 
-    final AnnotationInfo annotationInfo = myRunner.annotate(connection, pathAtRevision, revision);
+    // the head revision of the file itself comes first in its log, annotating it explicitly makes the result cacheable
+    P4Revision annotated = p4Revision == null && fileLog.length > 0 ? fileLog[0] : p4Revision;
+    final AnnotationInfo annotationInfo = annotated == null
+                                          ? myRunner.annotate(connection, pathAtRevision, revision)
+                                          : PerforceAnnotationCache.getInstance(myProject)
+                                            .annotate(connection, annotated.getDepotPath(), annotated.getRevisionNumber());
     return new AnnotationPrecursor(annotationInfo, fileLog, revision, p4Revision, connection);
   }
 
@@ -16,9 +16,13 @@ import org.jetbrains.idea.perforce.perforce.connections.PerforceConnectionManage
 import org.jetbrains.idea.perforce.perforce.connections.PerforceConnectionProblemsNotifier;
 import org.jetbrains.idea.perforce.perforce.login.PerforceLoginManager;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.WeakHashMap;
 
 /**
@@ -43,6 +47,8 @@ public final class PerforceBaseInfoWorker {
   private final Object myInfoLock = new Object();
   private final Object myRefreshLock = new Object();
   private boolean myIsDirty;
+  // the connections to recalculate on the next refresh, null if all of them
+  private @Nullable Set<P4Connection> myDirtyConnections;
   private boolean myStop;
   private final PerforceConnectionProblemsNotifier myNotifier;
   private final PerforceLoginManager myLoginManager;
@@ -67,16 +73,18 @@ public final class PerforceBaseInfoWorker {
     if (! mySettings.ENABLED) return Collections.emptyMap();
 
     final Map<P4Connection, ConnectionInfo> old;
+    final Set<P4Connection> dirtyConnections;
     synchronized (myInfoLock) {
       old = myInfos;
       if (!myIsDirty) return old;
+      dirtyConnections = myDirtyConnections == null ? null : new HashSet<>(myDirtyConnections);
     }
 
     PerforceInfoAndClient.RefreshInfo refreshInfo;
     synchronized (myRefreshLock) {
       myInsideRefresh = true;
       try {
-        refreshInfo = doRefreshInfo(old);
+        refreshInfo = doRefreshInfo(old, dirtyConnections);
       } finally {
         myInsideRefresh = false;
       }
@@ -85,13 +93,17 @@ public final class PerforceBaseInfoWorker {
     return refreshInfo.newInfo;
   }
 
-  private PerforceInfoAndClient.RefreshInfo doRefreshInfo(Map<P4Connection, ConnectionInfo> old) {
+  private PerforceInfoAndClient.RefreshInfo doRefreshInfo(Map<P4Connection, ConnectionInfo> old,
+                                                          @Nullable Set<P4Connection> dirtyConnections) {
     final Map<VirtualFile, P4Connection> allConnections = myConnectionManager.getAllConnections();
-    PerforceInfoAndClient.RefreshInfo refreshInfo = recalculateInfo(allConnections, old);
+    PerforceInfoAndClient.RefreshInfo refreshInfo = dirtyConnections == null
+                                                    ? recalculateInfo(allConnections, old)
+                                                    : recalculateInfo(allConnections, old, dirtyConnections);
     PerforceClientRootsChecker checker = new PerforceClientRootsChecker(refreshInfo.newInfo, allConnections);
 
     synchronized (myInfoLock) {
       myIsDirty = false;
+      myDirtyConnections = null;
       myInfos = new WeakHashMap<>();
       myInfos.putAll(refreshInfo.newInfo);
       myChecker = checker;
@@ -113,6 +125,30 @@ public final class PerforceBaseInfoWorker {
     return PerforceInfoAndClient.recalculateInfos(old, allConnections.values(), runner, cache);
   }
 
+  /**
+   * Recalculates the info of the dirty connections and of the ones without info, the info of others is kept.
+   * The roots are the same as on the previous refresh, so the client roots cache is kept too.
+   */
+  private PerforceInfoAndClient.RefreshInfo recalculateInfo(Map<VirtualFile, P4Connection> allConnections,
+                                                            Map<P4Connection, ConnectionInfo> old,
+                                                            Set<P4Connection> dirtyConnections) {
+    Project project = mySettings.getProject();
+    List<P4Connection> toRecalculate = ContainerUtil.filter(allConnections.values(),
+                                                            c -> dirtyConnections.contains(c) || !old.containsKey(c));
+    PerforceInfoAndClient.RefreshInfo recalculated = PerforceInfoAndClient.recalculateInfos(
+      old, toRecalculate, PerforceRunner.getInstance(project), ClientRootsCache.getClientRootsCache(project));
+
+    Map<P4Connection, ConnectionInfo> info = new HashMap<>();
+    for (P4Connection connection : allConnections.values()) {
+      ConnectionInfo kept = old.get(connection);
+      if (kept != null) {
+        info.put(connection, kept);
+      }
+    }
+    info.putAll(recalculated.newInfo);
+    return new PerforceInfoAndClient.RefreshInfo(Collections.unmodifiableMap(info), recalculated.hasAnyErrorsBesidesAuthentication);
+  }
+
   private void notifyAboutErrors(PerforceClientRootsChecker checker, final PerforceInfoAndClient.RefreshInfo refreshInfo) {
     if (checker.isServerUnavailable()) {
       myNotifier.setProblems(true, true);
@@ -132,6 +168,25 @@ public final class PerforceBaseInfoWorker {
     synchronized (myInfoLock) {
       myLastValidTime = -1;
       myIsDirty = true;
+      myDirtyConnections = null;
+    }
+  }
+
+  /**
+   * Schedules a refresh of the info of the given connections only, unless a refresh of all of them is already pending.
+   */
+  public void scheduleRefresh(@NotNull Collection<? extends P4Connection> connections) {
+    if (myInsideRefresh) return;
+    LOG.debug("Schedule refresh of " + connections);
+    synchronized (myInfoLock) {
+      myLastValidTime = -1;
+      if (!myIsDirty) {
+        myIsDirty = true;
+        myDirtyConnections = new HashSet<>();
+      }
+      if (myDirtyConnections != null) {
+        myDirtyConnections.addAll(connections);
+      }
     }
   }
 
@@ -7,6 +7,7 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.ThrowableComputable;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.FilePath;
@@ -29,12 +30,17 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.TestOnly;
 import org.jetbrains.idea.perforce.perforce.P4Command;
 import org.jetbrains.idea.perforce.perforce.P4File;
+import org.jetbrains.idea.perforce.perforce.P4ParallelExecutor;
+import org.jetbrains.idea.perforce.perforce.PerforceCachingContentRevision;
 import org.jetbrains.idea.perforce.perforce.PerforceChange;
 import org.jetbrains.idea.perforce.perforce.PerforceChangeCache;
 import org.jetbrains.idea.perforce.perforce.PerforceChangeList;
 import org.jetbrains.idea.perforce.perforce.PerforceChangeListHelper;
 import org.jetbrains.idea.perforce.perforce.PerforceRunner;
 import org.jetbrains.idea.perforce.perforce.PerforceSettings;
+import org.jetbrains.idea.perforce.perforce.ResolvedFile;
+import org.jetbrains.idea.perforce.perforce.connections.P4CommandStatistics;
+import org.jetbrains.idea.perforce.perforce.connections.P4CommandStatistics.CommandCounter;
 import org.jetbrains.idea.perforce.perforce.connections.P4Connection;
 import org.jetbrains.idea.perforce.perforce.connections.PerforceConnectionManager;
 import org.jetbrains.idea.perforce.perforce.connections.PerforceConnectionManagerI;
@@ -44,10 +50,12 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class PerforceChangeProvider implements ChangeProvider {
@@ -70,6 +78,7 @@ public class PerforceChangeProvider implements ChangeProvider {
   private final PerforceDirtyFilesHandler myDirtyFilesHandler;
   private final PerforceUnversionedTracker myUnversionedTracker;
   private final Map<VirtualFile, Boolean> myAlwaysWritable = new ConcurrentHashMap<>();
+  private volatile long myLastFullRefresh;
   private final PerforceShelf myShelf;
   private final PerforceVcs myVcs;
 
@@ -95,11 +104,24 @@ public class PerforceChangeProvider implements ChangeProvider {
   public void getChanges(final @NotNull VcsDirtyScope dirtyScope, final @NotNull ChangelistBuilder builder, final @NotNull ProgressIndicator progress,
                          final @NotNull ChangeListManagerGate addGate) throws VcsException {
     Stopwatch sw = Stopwatch.createStarted();
-    try (AccessToken ignored = myVcs.readLockP4()) {
+    long commands;
+    try (CommandCounter counter = CommandCounter.start(); AccessToken ignored = myVcs.readLockP4()) {
       doGetChanges(dirtyScope, builder, progress, addGate);
+      commands = counter.getCount();
     }
     sw.stop();
-    REFRESH_LOG.info("getChanges took %d s".formatted(sw.elapsed().toSeconds()));
+    if (dirtyScope.wasEveryThingDirty()) {
+      myLastFullRefresh = System.currentTimeMillis();
+    }
+    P4CommandStatistics.getInstance().recordRefresh(sw.elapsed(TimeUnit.NANOSECONDS), commands);
+    REFRESH_LOG.info("getChanges took %d ms, %d p4 commands".formatted(sw.elapsed(TimeUnit.MILLISECONDS), commands));
+  }
+
+  /**
+   * @return the time of the last completed refresh of the whole project, 0 if there was none
+   */
+  public long getLastFullRefreshTime() {
+    return myLastFullRefresh;
   }
 
   private void doGetChanges(@NotNull VcsDirtyScope dirtyScope,
@@ -113,8 +135,18 @@ public class PerforceChangeProvider implements ChangeProvider {
     PerforceManager.getInstance(myProject).clearInfoClientCache();
 
     PerforceChangeCache changeCache = new PerforceChangeCache(myProject);
-    MultiMap<ConnectionKey, PerforceChangeList> allLists = calcChangeListMap(changeCache);
     PerforceSettings settings = PerforceSettings.getSettings(myProject);
+    final Map<ConnectionKey, P4Connection> key2connection = settings.getConnectionsByKeys();
+    MultiMap<ConnectionKey, VirtualFile> roots = getAffectedRoots(dirtyScope);
+    Map<ConnectionKey, ResolveState> resolveStates = new LinkedHashMap<>();
+    for (ConnectionKey key : roots.keySet()) {
+      P4Connection connection = key2connection.get(key);
+      if (connection != null) {
+        resolveStates.put(key, new ResolveState(connection, roots.get(key)));
+      }
+    }
+    MultiMap<ConnectionKey, PerforceChangeList> allLists = calcChangeListMap(changeCache, resolveStates.values());
+
     HashSet<String> ideaLists = new HashSet<>();
     refreshSynchronizer(settings, addGate, allLists, ideaLists);
     if (settings.FORCE_SYNC_CHANGELISTS) {
@@ -122,14 +154,8 @@ public class PerforceChangeProvider implements ChangeProvider {
     }
 
     ChangeCreator creator = new ChangeCreator(myProject);
-
-    final Map<ConnectionKey, P4Connection> key2connection = settings.getConnectionsByKeys();
-    MultiMap<ConnectionKey, VirtualFile> roots = getAffectedRoots(dirtyScope);
-    for (ConnectionKey key : roots.keySet()) {
-      P4Connection connection = key2connection.get(key);
-      if (connection != null) {
-        processConnection(connection, builder, roots.get(key), progress, addGate, allLists.get(key), dirtyScope, changeCache, creator);
-      }
+    for (Map.Entry<ConnectionKey, ResolveState> entry : resolveStates.entrySet()) {
+      processConnection(entry.getValue(), builder, progress, addGate, allLists.get(entry.getKey()), dirtyScope, changeCache, creator);
     }
 
     Stopwatch sw = Stopwatch.createStarted();
@@ -146,6 +172,7 @@ public class PerforceChangeProvider implements ChangeProvider {
     }
     reportModifiedWithoutCheckout(builder, creator, writableFiles);
     myLastSuccessfulUpdateTracker.updateSuccessful();
+    PerforceCachingContentRevision.prefetch(myProject, creator.getBaseRevisions());
   }
 
   private static void removeUnsyncedIdeaChangelists(@NotNull ChangeListManagerGate addGate, HashSet<String> ideaLists) {
@@ -258,21 +285,47 @@ public class PerforceChangeProvider implements ChangeProvider {
     return ContainerUtil.or(allRoots, root -> !pcl.getChangesUnder(root).isEmpty());
   }
 
-  private MultiMap<ConnectionKey, PerforceChangeList> calcChangeListMap(PerforceChangeCache changeCache) throws VcsException {
+  /**
+   * Runs the p4 commands of all connections at once: pending changelists with their files for every connection,
+   * and the resolve state of the connections affected by the dirty scope. These commands don't depend on each other,
+   * the results are processed afterwards on the calling thread.
+   */
+  private MultiMap<ConnectionKey, PerforceChangeList> calcChangeListMap(PerforceChangeCache changeCache,
+                                                                        Collection<ResolveState> resolveStates) throws VcsException {
+    List<Pair<P4Connection, Collection<VirtualFile>>> rootsByConnections = PerforceVcs.getInstance(myProject).getRootsByConnections();
+    List<ThrowableComputable<List<PerforceChangeList>, VcsException>> commands = new ArrayList<>();
+    for (Pair<P4Connection, Collection<VirtualFile>> pair : rootsByConnections) {
+      PerforceManager.ensureValidClient(myProject, pair.first);
+      commands.add(() -> getPendingChangeLists(changeCache, pair.first));
+    }
+    for (ResolveState state : resolveStates) {
+      commands.add(() -> {
+        state.fetch(myRunner);
+        return null;
+      });
+    }
+    List<List<PerforceChangeList>> results = P4ParallelExecutor.map(commands, ThrowableComputable::compute);
+
     final MultiMap<ConnectionKey, PerforceChangeList> allLists = MultiMap.create();
-    for (Pair<P4Connection, Collection<VirtualFile>> pair : PerforceVcs.getInstance(myProject).getRootsByConnections()) {
-      final P4Connection connection = pair.first;
-      PerforceManager.ensureValidClient(myProject, connection);
-      allLists.putValues(connection.getConnectionKey(), getPendingChangeListsUnderRoots(changeCache, connection, pair.second));
+    for (int i = 0; i < rootsByConnections.size(); i++) {
+      P4Connection connection = rootsByConnections.get(i).first;
+      allLists.putValues(connection.getConnectionKey(),
+                         filterChangeListsUnderRoots(results.get(i), connection, rootsByConnections.get(i).second));
     }
     return allLists;
   }
 
-  private List<PerforceChangeList> getPendingChangeListsUnderRoots(PerforceChangeCache changeCache, P4Connection connection, Collection<VirtualFile> allRoots) throws VcsException {
+  private List<PerforceChangeList> getPendingChangeLists(PerforceChangeCache changeCache, P4Connection connection) throws VcsException {
     List<PerforceChangeList> perforceLists = myRunner.getPendingChangeLists(connection, changeCache);
-    if (perforceLists.isEmpty()) return perforceLists;
+    if (!perforceLists.isEmpty()) {
+      myRunner.fillChangeCache(connection, changeCache, myShelf, perforceLists);
+    }
+    return perforceLists;
+  }
 
-    myRunner.fillChangeCache(connection, changeCache, myShelf, perforceLists);
+  private List<PerforceChangeList> filterChangeListsUnderRoots(List<PerforceChangeList> perforceLists, P4Connection connection,
+                                                               Collection<VirtualFile> allRoots) {
+    if (perforceLists.isEmpty()) return perforceLists;
 
     List<PerforceChangeList> filtered = new ArrayList<>();
     for (final PerforceChangeList pcl : perforceLists) {
@@ -364,9 +417,8 @@ public class PerforceChangeProvider implements ChangeProvider {
     }
   }
 
-  private void processConnection(final @NotNull P4Connection connection,
+  private void processConnection(final @NotNull ResolveState resolveState,
                                  final ChangelistBuilder builder,
-                                 final Collection<VirtualFile> roots,
                                  final ProgressIndicator progress,
                                  final ChangeListManagerGate addGate,
                                  final Collection<PerforceChangeList> allLists,
@@ -375,11 +427,12 @@ public class PerforceChangeProvider implements ChangeProvider {
     progress.checkCanceled();
     Stopwatch sw = Stopwatch.createStarted();
 
-    final LocalPathsSet resolvedWithConflictsMap = myRunner.getResolvedWithConflictsMap(connection, roots);
-    final ResolvedFilesWrapper resolvedFilesWrapper = new ResolvedFilesWrapper(myRunner.getResolvedFiles(connection, roots));
+    final P4Connection connection = resolveState.myConnection;
+    final LocalPathsSet resolvedWithConflictsMap = resolveState.myResolvedWithConflicts;
+    final ResolvedFilesWrapper resolvedFilesWrapper = new ResolvedFilesWrapper(resolveState.myResolvedFiles);
 
     final List<PerforceChange> changes = new ArrayList<>();
-    for (VirtualFile root : roots) {
+    for (VirtualFile root : resolveState.myRoots) {
       changes.addAll(getChangesUnder(connection, root, dirtyScope, allLists, changeCache));
     }
 
@@ -394,6 +447,23 @@ public class PerforceChangeProvider implements ChangeProvider {
     logRefreshDebug("processConnection %s took %d s".formatted(connection.getConnectionKey(), sw.elapsed().toSeconds()));
   }
 
+  private static final class ResolveState {
+    private final P4Connection myConnection;
+    private final Collection<VirtualFile> myRoots;
+    private LocalPathsSet myResolvedWithConflicts;
+    private List<ResolvedFile> myResolvedFiles;
+
+    private ResolveState(P4Connection connection, Collection<VirtualFile> roots) {
+      myConnection = connection;
+      myRoots = roots;
+    }
+
+    private void fetch(PerforceRunner runner) throws VcsException {
+      myResolvedWithConflicts = runner.getResolvedWithConflictsMap(myConnection, myRoots);
+      myResolvedFiles = runner.getResolvedFiles(myConnection, myRoots);
+    }
+  }
+
   @Override
   public boolean isModifiedDocumentTrackingRequired() {
     return false;
@@ -0,0 +1,63 @@
+// Copyright 2000-2026 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package org.jetbrains.idea.perforce.application;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.idea.perforce.perforce.ClientViewMapping;
+import org.jetbrains.idea.perforce.perforce.PerforceRunner;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled client views shared by all projects, keyed by server and client.
+ * <p>
+ * A compiled view is reused as long as the {@code Update:} time of the client spec stays the same, so projects and refreshes
+ * working with the same client don't compile its view again.
+ */
+@Service(Service.Level.APP)
+final class PerforceClientSpecCache {
+  private final Map<String, Entry> myEntries = new ConcurrentHashMap<>();
+
+  static PerforceClientSpecCache getInstance() {
+    return ApplicationManager.getApplication().getService(PerforceClientSpecCache.class);
+  }
+
+  /**
+   * @param server        the server the client spec was loaded from
+   * @param clientSpec    parsed {@code p4 client -o} output
+   * @param caseSensitive whether the server handles paths case-sensitively
+   * @return null if the view can't be compiled
+   */
+  @Nullable ClientViewMapping getViewMapping(@NotNull String server, @NotNull Map<String, List<String>> clientSpec, boolean caseSensitive) {
+    String client = getFirstValue(clientSpec, PerforceRunner.CLIENTSPEC_NAME);
+    if (client == null) return null;
+
+    List<String> view = clientSpec.getOrDefault(PerforceRunner.VIEW, Collections.emptyList());
+    String update = getFirstValue(clientSpec, PerforceRunner.CLIENTSPEC_UPDATE);
+    if (update == null) {
+      // a new client which isn't saved on the server yet
+      return ClientViewMapping.create(client, view, caseSensitive);
+    }
+
+    String key = server + "\n" + client;
+    Entry entry = myEntries.get(key);
+    if (entry == null || !entry.update.equals(update) || !entry.view.equals(view) || entry.caseSensitive != caseSensitive) {
+      entry = new Entry(update, List.copyOf(view), caseSensitive, ClientViewMapping.create(client, view, caseSensitive));
+      myEntries.put(key, entry);
+    }
+    return entry.mapping;
+  }
+
+  private static @Nullable String getFirstValue(@NotNull Map<String, List<String>> clientSpec, @NotNull String field) {
+    List<String> values = clientSpec.get(field);
+    return values == null || values.isEmpty() ? null : values.get(0).trim();
+  }
+
+  private record Entry(@NotNull String update, @NotNull List<String> view, boolean caseSensitive, @Nullable ClientViewMapping mapping) {
+  }
+}
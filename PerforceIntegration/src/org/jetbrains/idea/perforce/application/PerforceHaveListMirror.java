@@ -0,0 +1,369 @@
+// Copyright 2000-2026 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package org.jetbrains.idea.perforce.application;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vcs.FilePath;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+import org.jetbrains.idea.perforce.perforce.ConnectionId;
+import org.jetbrains.idea.perforce.perforce.ExecResult;
+import org.jetbrains.idea.perforce.perforce.PerforceChange;
+import org.jetbrains.idea.perforce.perforce.PerforceRunner;
+import org.jetbrains.idea.perforce.perforce.connections.P4Connection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local mirror of the have-list of each connection, so that unversioned and locally missing files of a dirty scope
+ * can be found without {@code p4 have}.
+ * <p>
+ * A mirror is seeded by a full rescan of the connection roots and persisted in the system directory, so it survives restarts.
+ * Before it's used, the {@link PerforceRunner#getHaveListStamp latest submitted changelist} is compared with the one taken
+ * when the mirror was seeded, at most every {@value #VALIDATION_INTERVAL_MS} ms. It is a cheap high-water check, which catches
+ * submits done outside the IDE, but not syncs: those are only seen on the next full rescan.
+ * The output of {@code sync} and {@code submit} run by the IDE is applied to the mirror, output which can't be applied,
+ * like a file synced while opened, drops the mirror of the connection, and so does {@code flush}.
+ * The next scan seeds a dropped mirror again from the roots it covered.
+ * <p>
+ * Can be disabled with the {@code p4.have.list.mirror} registry key.
+ */
+@Service(Service.Level.PROJECT)
+public final class PerforceHaveListMirror {
+  private static final Logger LOG = Logger.getInstance(PerforceHaveListMirror.class);
+  private static final int FORMAT_VERSION = 2;
+  private static final long VALIDATION_INTERVAL_MS = 5_000;
+  private static final Pattern SYNCED_FILE = Pattern.compile("//.+#(\\d+|none) - (updating|added as|refreshing|replacing|deleted as) (.+)");
+  private static final Pattern SUBMITTED_FILE = Pattern.compile("([a-z/]+) (//.+)#(\\d+)");
+  private static final String UP_TO_DATE = "up-to-date.";
+
+  private final Project myProject;
+  private final Map<ConnectionId, Entry> myEntries = new ConcurrentHashMap<>();
+  private final Set<ConnectionId> myLoadAttempted = ConcurrentHashMap.newKeySet();
+  // roots of the mirrors seeded in this session, kept when the mirrors are dropped
+  private final Map<ConnectionId, List<FilePath>> mySeededRoots = new ConcurrentHashMap<>();
+
+  public PerforceHaveListMirror(Project project) {
+    myProject = project;
+  }
+
+  public static PerforceHaveListMirror getInstance(Project project) {
+    return project.getService(PerforceHaveListMirror.class);
+  }
+
+  public static boolean isEnabled() {
+    return Registry.is("p4.have.list.mirror");
+  }
+
+  /**
+   * Answers the have-list of {@code scope} from the mirror, directories are queried recursively.
+   *
+   * @return false if the mirror of the connection is missing, outdated or doesn't cover the scope, nothing is passed to {@code consumer} then
+   */
+  public boolean forEachHaveRevision(@NotNull P4Connection connection,
+                                     @NotNull Collection<FilePath> scope,
+                                     @NotNull ObjLongConsumer<String> consumer) throws VcsException {
+    if (!isEnabled()) return false;
+    Entry entry = getEntry(connection);
+    if (entry == null) return false;
+    for (FilePath path : scope) {
+      if (!entry.snapshot.covers(path.getPath())) return false;
+    }
+    if (!validate(connection, entry)) return false;
+
+    for (FilePath path : scope) {
+      entry.snapshot.forEach(path.getPath(), path.isDirectory(), consumer);
+    }
+    return true;
+  }
+
+  /**
+   * @return the stamp to pass to {@link #seed} for a have-list requested after this call
+   */
+  public @NotNull String queryStamp(@NotNull P4Connection connection) throws VcsException {
+    return PerforceRunner.getInstance(myProject).getHaveListStamp(connection);
+  }
+
+  /**
+   * Replaces the mirror of the connection with the have-list of {@code roots}.
+   */
+  public void seed(@NotNull P4Connection connection,
+                   @NotNull Collection<FilePath> roots,
+                   @NotNull Map<String, Long> revisions,
+                   @NotNull String stamp) {
+    HaveListSnapshot snapshot = HaveListSnapshot.create(roots.stream().map(FilePath::getPath).toList(), revisions, stamp);
+    myEntries.put(connection.getId(), new Entry(snapshot, System.currentTimeMillis()));
+    myLoadAttempted.add(connection.getId());
+    mySeededRoots.put(connection.getId(), List.copyOf(roots));
+    save(connection.getId(), snapshot);
+    LOG.debug("Have-list mirror of " + connection.getId() + " seeded with " + snapshot.size() + " files at " + stamp);
+  }
+
+  /**
+   * @return the roots to seed the mirror of the connection with, when it was dropped or found outdated and covered {@code scope},
+   * null if the mirror is up-to-date or wasn't seeded in this session
+   */
+  public @Nullable Collection<FilePath> getRootsToReseed(@NotNull P4Connection connection, @NotNull Collection<FilePath> scope) {
+    if (!isEnabled() || myEntries.containsKey(connection.getId())) return null;
+    List<FilePath> roots = mySeededRoots.get(connection.getId());
+    if (roots == null) return null;
+    for (FilePath path : scope) {
+      if (!ContainerUtil.exists(roots, root -> path.isUnder(root, false))) return null;
+    }
+    return roots;
+  }
+
+  /**
+   * Applies the output of {@code p4 sync} run by the IDE to the mirror of the connection.
+   */
+  public void syncPerformed(@NotNull P4Connection connection, @NotNull ExecResult result) {
+    if (!isEnabled()) {
+      invalidateAll();
+      return;
+    }
+    if (result.getException() != null || result.getExitCode() != 0 || !isUpToDateMessage(result.getStderr())) {
+      drop(connection.getId());
+      return;
+    }
+
+    Map<String, Long> revisions = new HashMap<>();
+    List<String> removed = new ArrayList<>();
+    for (String line : StringUtil.splitByLines(result.getStdout())) {
+      Matcher matcher = SYNCED_FILE.matcher(line);
+      if (!matcher.matches()) {
+        LOG.debug("Have-list mirror of " + connection.getId() + " dropped by sync output: " + line);
+        drop(connection.getId());
+        return;
+      }
+      String path = matcher.group(3);
+      if (matcher.group(2).equals("deleted as") || matcher.group(1).equals("none")) {
+        removed.add(path);
+      }
+      else {
+        revisions.put(path, Long.parseLong(matcher.group(1)));
+      }
+    }
+    apply(connection, revisions, removed, Function.identity());
+  }
+
+  /**
+   * Applies the output of {@code p4 submit} run by the IDE to the mirror of the connection.
+   *
+   * @param changes         the changes passed to the submit, their depot paths are mapped to the local files of the have-list
+   * @param submittedChange the number of the submitted changelist, -1 if unknown
+   */
+  public void submitPerformed(@NotNull P4Connection connection,
+                              @NotNull ExecResult result,
+                              @NotNull Collection<PerforceChange> changes,
+                              long submittedChange) {
+    if (!isEnabled()) {
+      invalidateAll();
+      return;
+    }
+
+    Map<String, String> localPaths = new HashMap<>();
+    for (PerforceChange change : changes) {
+      if (change.getFile() != null) {
+        localPaths.put(change.getDepotPath(), change.getFile().getPath());
+      }
+    }
+    Map<String, Long> revisions = new HashMap<>();
+    List<String> removed = new ArrayList<>();
+    for (String line : StringUtil.splitByLines(result.getStdout())) {
+      Matcher matcher = SUBMITTED_FILE.matcher(line);
+      if (!matcher.matches()) continue;
+      String path = localPaths.get(matcher.group(2));
+      if (path == null) {
+        LOG.debug("Have-list mirror of " + connection.getId() + " dropped by submit output: " + line);
+        drop(connection.getId());
+        return;
+      }
+      if (matcher.group(1).endsWith("delete")) {
+        removed.add(path);
+      }
+      else {
+        revisions.put(path, Long.parseLong(matcher.group(3)));
+      }
+    }
+    // the mirror stays valid if no other changelist was submitted since it was stamped
+    List<Long> latest;
+    try {
+      latest = PerforceRunner.getInstance(myProject).getLatestSubmittedChanges(connection, 2);
+    }
+    catch (VcsException e) {
+      LOG.info("Have-list mirror of " + connection.getId() + " dropped after submit", e);
+      drop(connection.getId());
+      return;
+    }
+    boolean onlySubmit = submittedChange > 0 && !latest.isEmpty() && latest.get(0) == submittedChange;
+    String previous = latest.size() < 2 ? "0" : String.valueOf(latest.get(1));
+    apply(connection, revisions, removed, stamp -> onlySubmit && stamp.equals(previous) ? String.valueOf(submittedChange) : stamp);
+  }
+
+  /**
+   * Drops all mirrors, called when the IDE runs a command which changes the have-list in a way the mirror can't follow.
+   */
+  public void invalidateAll() {
+    myEntries.clear();
+    Path dir = getStorageDir();
+    if (!Files.isDirectory(dir)) return;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, myProject.getLocationHash() + "-*.bin")) {
+      for (Path file : files) {
+        Files.deleteIfExists(file);
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Failed to delete have-list mirrors", e);
+    }
+  }
+
+  private void apply(P4Connection connection,
+                     Map<String, Long> revisions,
+                     Collection<String> removed,
+                     Function<String, String> restamp) {
+    ConnectionId id = connection.getId();
+    Entry entry = getEntry(connection);
+    if (entry == null) return;
+    HaveListSnapshot snapshot = entry.snapshot.withRevisions(revisions, removed, restamp.apply(entry.snapshot.getStamp()));
+    if (!myEntries.replace(id, entry, new Entry(snapshot, entry.validatedAt))) {
+      // seeded or dropped meanwhile, so the changes might be missing from the new mirror
+      drop(id);
+      return;
+    }
+    save(id, snapshot);
+  }
+
+  private void drop(ConnectionId id) {
+    myEntries.remove(id);
+    try {
+      Files.deleteIfExists(getStorageFile(id));
+    }
+    catch (IOException e) {
+      LOG.info("Failed to delete have-list mirror of " + id, e);
+    }
+  }
+
+  private static boolean isUpToDateMessage(String stderr) {
+    for (String line : StringUtil.splitByLines(stderr)) {
+      if (!line.endsWith(UP_TO_DATE)) return false;
+    }
+    return true;
+  }
+
+  @TestOnly
+  void expireValidation() {
+    for (Entry entry : myEntries.values()) {
+      entry.validatedAt = 0;
+    }
+  }
+
+  private @Nullable Entry getEntry(P4Connection connection) {
+    ConnectionId id = connection.getId();
+    Entry entry = myEntries.get(id);
+    if (entry == null && myLoadAttempted.add(id)) {
+      HaveListSnapshot snapshot = load(id);
+      if (snapshot != null) {
+        // loaded from disk, must be validated before use
+        entry = new Entry(snapshot, 0);
+        myEntries.putIfAbsent(id, entry);
+      }
+    }
+    return entry;
+  }
+
+  private boolean validate(P4Connection connection, Entry entry) throws VcsException {
+    long now = System.currentTimeMillis();
+    if (now - entry.validatedAt < VALIDATION_INTERVAL_MS) return true;
+
+    String stamp = queryStamp(connection);
+    if (!stamp.equals(entry.snapshot.getStamp())) {
+      LOG.debug("Have-list mirror of " + connection.getId() + " is outdated: have-list at " + stamp +
+                ", mirror seeded at " + entry.snapshot.getStamp());
+      myEntries.remove(connection.getId(), entry);
+      return false;
+    }
+    entry.validatedAt = now;
+    return true;
+  }
+
+  private Path getStorageFile(ConnectionId id) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    id.writeToStream(new DataOutputStream(bytes));
+    String name = myProject.getLocationHash() + "-" + Integer.toHexString(Arrays.hashCode(bytes.toByteArray())) + ".bin";
+    return getStorageDir().resolve(name);
+  }
+
+  private static Path getStorageDir() {
+    return PathManager.getSystemDir().resolve("perforce").resolve("have-list");
+  }
+
+  private void save(ConnectionId id, HaveListSnapshot snapshot) {
+    try {
+      Path file = getStorageFile(id);
+      Files.createDirectories(file.getParent());
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+        out.writeInt(FORMAT_VERSION);
+        id.writeToStream(out);
+        snapshot.write(out);
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Failed to save have-list mirror of " + id, e);
+    }
+  }
+
+  private @Nullable HaveListSnapshot load(ConnectionId id) {
+    try {
+      Path file = getStorageFile(id);
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+        if (in.readInt() != FORMAT_VERSION || !id.equals(ConnectionId.readFromStream(in))) return null;
+        return HaveListSnapshot.read(in);
+      }
+    }
+    catch (NoSuchFileException e) {
+      return null;
+    }
+    catch (IOException e) {
+      LOG.info("Failed to load have-list mirror of " + id, e);
+      return null;
+    }
+  }
+
+  private static final class Entry {
+    final HaveListSnapshot snapshot;
+    volatile long validatedAt;
+
+    Entry(HaveListSnapshot snapshot, long validatedAt) {
+      this.snapshot = snapshot;
+      this.validatedAt = validatedAt;
+    }
+  }
+}
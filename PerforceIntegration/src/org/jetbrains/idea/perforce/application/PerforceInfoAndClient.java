@@ -4,6 +4,7 @@ import com.google.common.base.MoreObjects;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.vcs.VcsException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.idea.perforce.PerforceBundle;
 import org.jetbrains.idea.perforce.perforce.PerforceAuthenticationException;
 import org.jetbrains.idea.perforce.perforce.PerforceRunner;
@@ -24,8 +25,11 @@ public final class PerforceInfoAndClient {
                                           @NotNull ClientRootsCache clientRootsCache) {
     try {
       final Map<String, List<String>> infoMap = calcInfoMap(connection, runner);
+      Boolean caseSensitive = extractCaseSensitivity(infoMap);
       return new ConnectionInfo(infoMap,
-                                new ClientData(calcClientMap(connection, runner, extractClient(infoMap), clientRootsCache)));
+                                new ClientData(calcClientMap(connection, runner, extractClient(infoMap), clientRootsCache),
+                                               caseSensitive == null ? null : connection.getConnectionKey().getServer(),
+                                               Boolean.TRUE.equals(caseSensitive)));
     }
     catch (PerforceAuthenticationException e) {
       return new ConnectionInfo(e);
@@ -45,6 +49,18 @@ public final class PerforceInfoAndClient {
     return clientValue.get(0);
   }
 
+  /**
+   * @return null if the server doesn't report its case handling
+   */
+  private static @Nullable Boolean extractCaseSensitivity(Map<String, List<String>> infoMap) {
+    List<String> value = infoMap.get(PerforceRunner.CASE_HANDLING);
+    if (value == null || value.isEmpty()) return null;
+    String caseHandling = value.get(0).trim();
+    if ("sensitive".equals(caseHandling)) return true;
+    if ("insensitive".equals(caseHandling)) return false;
+    return null;
+  }
+
   private static @NotNull Map<String, List<String>> calcClientMap(@NotNull P4Connection connection,
                                                                   @NotNull PerforceRunner runner,
                                                                   @NotNull String client,
@@ -28,6 +28,7 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.idea.perforce.ClientVersion;
 import org.jetbrains.idea.perforce.PerforceBundle;
 import org.jetbrains.idea.perforce.ServerVersion;
+import org.jetbrains.idea.perforce.perforce.ClientViewMapping;
 import org.jetbrains.idea.perforce.perforce.OutputMessageParser;
 import org.jetbrains.idea.perforce.perforce.P4Command;
 import org.jetbrains.idea.perforce.perforce.P4File;
@@ -208,6 +209,15 @@ public final class PerforceManager  {
     return myPerforceBaseInfoWorker.getCachedClient(connection);
   }
 
+  /**
+   * @return the compiled view of the connection's client, or null if it isn't known or can't be compiled.
+   * A pending refresh of the connection reloads the client spec first, so an edited view is compiled again.
+   */
+  public @Nullable ClientViewMapping getViewMapping(@Nullable P4Connection connection) throws VcsException {
+    ClientData client = myPerforceBaseInfoWorker.getClient(connection);
+    return client == null ? null : client.getViewMapping();
+  }
+
   // todo: wrong. we should take all roots, since we can belong to any
   public @Nullable String getClientRoot(final @Nullable P4Connection connection) throws VcsException {
     return ContainerUtil.getFirstItem(getClientRoots(connection));
@@ -336,6 +346,35 @@ public final class PerforceManager  {
     }, myProject.getDisposed());
   }
 
+  /**
+   * Like {@link #configurationChanged()}, but resets only the state of the given connections, keyed by their roots;
+   * the info, clients and local changes of other connections are kept.
+   */
+  public void connectionsChanged(@NotNull Map<VirtualFile, P4Connection> connections) {
+    //noinspection SynchronizeOnThis
+    synchronized (this) {
+      myClientMap.keySet().removeAll(connections.values());
+    }
+
+    if (! myActive) return;
+    myLoginManager.clear(connections.values());
+    myPerforceBaseInfoWorker.scheduleRefresh(connections.values());
+    ApplicationManager.getApplication().invokeLater(() -> {
+      VcsDirtyScopeManager dirtyScopeManager = VcsDirtyScopeManager.getInstance(myProject);
+      for (VirtualFile root : connections.keySet()) {
+        P4File.invalidateFstat(root);
+        dirtyScopeManager.dirDirtyRecursively(root);
+      }
+    }, myProject.getDisposed());
+  }
+
+  /**
+   * Reloads the client spec of the connection on its next use, called when the IDE edits it.
+   */
+  public void clientSpecChanged(@NotNull P4Connection connection) {
+    myPerforceBaseInfoWorker.scheduleRefresh(List.of(connection));
+  }
+
   public void clearInfoClientCache() {
     myPerforceBaseInfoWorker.scheduleRefresh();
   }
@@ -67,6 +67,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.idea.perforce.PerforceBundle;
 import org.jetbrains.idea.perforce.actions.ShelfUtils;
+import org.jetbrains.idea.perforce.application.annotation.PerforceAnnotationCache;
 import org.jetbrains.idea.perforce.merge.PerforceMergeProvider;
 import org.jetbrains.idea.perforce.operations.P4EditOperation;
 import org.jetbrains.idea.perforce.operations.VcsOperation;
@@ -395,6 +396,7 @@ public final class PerforceVcs extends AbstractVcs {
     PerforceManager.getInstance(myProject).startListening(disposable);
     ((PerforceConnectionManager)PerforceConnectionManager.getInstance(myProject)).startListening(disposable);
     PerforceNumberNameSynchronizer.getInstance(myProject).startListening(disposable);
+    PerforceAnnotationCache.getInstance(myProject).startListening(disposable);
     PerforceSettings.getSettings(myProject).ensureOfflineNotify();
 
     ReadonlyStatusIsVisibleActivationCheck.check(myProject, NAME);
@@ -16,7 +16,9 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.containers.MultiMap;
 import com.intellij.vcsUtil.VcsUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.idea.perforce.perforce.P4HaveParser;
+import org.jetbrains.idea.perforce.perforce.P4ParallelExecutor;
 import org.jetbrains.idea.perforce.perforce.PathsHelper;
 import org.jetbrains.idea.perforce.perforce.PerforceRunner;
 import org.jetbrains.idea.perforce.perforce.connections.P4Connection;
@@ -24,9 +26,12 @@ import org.jetbrains.idea.perforce.perforce.connections.P4Connection;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.ObjLongConsumer;
 
 public abstract class UnversionedScopeScanner {
   private static final Logger LOG = Logger.getInstance(UnversionedScopeScanner.class);
@@ -49,64 +54,119 @@ public abstract class UnversionedScopeScanner {
       LOG.debug("scope=" + dirtyFiles);
     }
     MultiMap<P4Connection, FilePath> map = FileGrouper.distributePathsByConnection(dirtyFiles, myProject);
-    for (P4Connection connection : map.keySet()) {
-      Collection<FilePath> files = map.get(connection);
+    // connections are scanned concurrently, the results are merged in the order of the connections
+    List<P4Connection> connections = new ArrayList<>(map.keySet());
+    P4ParallelExecutor.forEachOrdered(connections, connection -> scanConnection(connection, map.get(connection), force), scanned -> {
+      result.missingFiles.addAll(scanned.missingFiles);
+      result.localOnly.addAll(scanned.localOnly);
+      result.allLocalFiles.addAll(scanned.allLocalFiles);
+    });
+    return result;
+  }
+
+  private ScanResult scanConnection(P4Connection connection, Collection<FilePath> files, boolean force) throws VcsException {
+    final ScanResult result = new ScanResult();
+    final Set<VirtualFile> localFiles = enumerateLocalFiles(files);
+    result.allLocalFiles.addAll(localFiles);
+    checkCanceled();
 
-      final Set<VirtualFile> localFiles = enumerateLocalFiles(files);
-      result.allLocalFiles.addAll(localFiles);
+    final LocalFileSystem fs = LocalFileSystem.getInstance();
+    final ObjLongConsumer<String> haveConsumer = (path, revision) -> {
       checkCanceled();
 
-      final LocalFileSystem fs = LocalFileSystem.getInstance();
-      myRunner.executeMultiple(collectPaths(files), connection, new P4HaveParser(PerforceManager.getInstance(myProject)) {
-        @Override
-        protected void consumeRevision(@NotNull String path, long revision) {
+      VirtualFile vFile = findVirtualFile(fs, path);
+      if (vFile != null) {
+        localFiles.remove(vFile);
+      }
+      else {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("locally missing file reported: " + path);
+        }
+        result.missingFiles.add(path);
+      }
+    };
+
+    PerforceHaveListMirror mirror = PerforceHaveListMirror.getInstance(myProject);
+    if (force || !mirror.forEachHaveRevision(connection, files, haveConsumer)) {
+      // a full rescan asks for the have-list of all roots of the connection anyway, so it seeds the mirror,
+      // a mirror dropped or found outdated is seeded again from the roots it covered
+      final Collection<FilePath> seedRoots = force ? files : mirror.getRootsToReseed(connection, files);
+      final String stamp = seedRoots != null ? queryStamp(mirror, connection) : null;
+      if (stamp == null) {
+        requestHaveList(connection, files, haveConsumer);
+      }
+      else if (force) {
+        final Map<String, Long> seed = new HashMap<>();
+        requestHaveList(connection, files, (path, revision) -> {
+          seed.put(path, revision);
+          haveConsumer.accept(path, revision);
+        });
+        mirror.seed(connection, files, seed, stamp);
+      }
+      else {
+        final Map<String, Long> seed = new HashMap<>();
+        requestHaveList(connection, seedRoots, (path, revision) -> {
           checkCanceled();
-
-          VirtualFile vFile = findVirtualFile(path);
-          if (vFile != null) {
-            localFiles.remove(vFile);
-          }
-          else {
-            if (LOG.isDebugEnabled()) {
-              LOG.debug("locally missing file reported: " + path);
-            }
-            result.missingFiles.add(path);
-          }
+          seed.put(path, revision);
+        });
+        mirror.seed(connection, seedRoots, seed, stamp);
+        if (!mirror.forEachHaveRevision(connection, files, haveConsumer)) {
+          requestHaveList(connection, files, haveConsumer);
         }
+      }
+    }
+    checkCanceled();
 
-        private VirtualFile findVirtualFile(String path) {
-          VirtualFile vFile = fs.findFileByPathIfCached(FileUtil.toSystemIndependentName(path));
-          if (vFile != null) {
-            return vFile;
-          }
-
-          // see https://youtrack.jetbrains.com/issue/IDEA-39796
-          File ioFile = new File(path);
-          String appleForkPath = FileUtil.toSystemIndependentName(ioFile.getParent()) + "/%" + ioFile.getName();
-          return fs.findFileByPathIfCached(FileUtil.toSystemIndependentName(appleForkPath));
+    if (force) {
+      result.localOnly.addAll(localFiles);
+    }
+    else {
+      ChangeListManager clm = ChangeListManager.getInstance(myProject);
+      for (VirtualFile file : localFiles) {
+        boolean ignored = clm.isIgnoredFile(file);
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("localOnly reported: " + file + (ignored ? ", ignored" : ""));
         }
-      });
-      checkCanceled();
-
-      if (force) {
-        result.localOnly.addAll(localFiles);
-      }
-      else {
-        ChangeListManager clm = ChangeListManager.getInstance(myProject);
-        for (VirtualFile file : localFiles) {
-          boolean ignored = clm.isIgnoredFile(file);
-          if (LOG.isDebugEnabled()) {
-            LOG.debug("localOnly reported: " + file + (ignored ? ", ignored" : ""));
-          }
-          if (!ignored) {
-            result.localOnly.add(file);
-          }
+        if (!ignored) {
+          result.localOnly.add(file);
         }
       }
     }
     return result;
   }
 
+  private void requestHaveList(P4Connection connection, Collection<FilePath> paths, ObjLongConsumer<String> consumer) throws VcsException {
+    myRunner.executeMultiple(collectPaths(paths), connection, new P4HaveParser(PerforceManager.getInstance(myProject)) {
+      @Override
+      protected void consumeRevision(@NotNull String path, long revision) {
+        consumer.accept(path, revision);
+      }
+    });
+  }
+
+  private static @Nullable String queryStamp(PerforceHaveListMirror mirror, P4Connection connection) {
+    if (!PerforceHaveListMirror.isEnabled()) return null;
+    try {
+      return mirror.queryStamp(connection);
+    }
+    catch (VcsException e) {
+      LOG.info("Have-list mirror won't be seeded", e);
+      return null;
+    }
+  }
+
+  private static VirtualFile findVirtualFile(LocalFileSystem fs, String path) {
+    VirtualFile vFile = fs.findFileByPathIfCached(FileUtil.toSystemIndependentName(path));
+    if (vFile != null) {
+      return vFile;
+    }
+
+    // see https://youtrack.jetbrains.com/issue/IDEA-39796
+    File ioFile = new File(path);
+    String appleForkPath = FileUtil.toSystemIndependentName(ioFile.getParent()) + "/%" + ioFile.getName();
+    return fs.findFileByPathIfCached(FileUtil.toSystemIndependentName(appleForkPath));
+  }
+
   private PathsHelper collectPaths(Collection<FilePath> value) {
     final PathsHelper helper = new PathsHelper(PerforceManager.getInstance(myProject));
     for (final FilePath dir : value) {
@@ -20,9 +20,14 @@ import com.intellij.openapi.vcs.VcsException;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import org.jetbrains.idea.perforce.PerforceBundle;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.LineNumberReader;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 
 public final class AnnotationInfo {
   private final String myContent;
@@ -57,6 +62,12 @@ public final class AnnotationInfo {
     myRevisions = revisions.toLongArray();
   }
 
+  public AnnotationInfo(String content, long[] revisions, boolean useChangelistNumbers) {
+    myContent = content;
+    myRevisions = revisions;
+    myUseChangelistNumbers = useChangelistNumbers;
+  }
+
   public String getContent() {
     return myContent;
   }
@@ -73,4 +84,32 @@ public final class AnnotationInfo {
   public int getLineCount() {
     return myRevisions.length;
   }
+
+  public byte[] toBytes() {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(myContent.length() + myRevisions.length * Long.BYTES + 16);
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeBoolean(myUseChangelistNumbers);
+      out.writeInt(myRevisions.length);
+      for (long revision : myRevisions) {
+        out.writeLong(revision);
+      }
+      out.write(myContent.getBytes(StandardCharsets.UTF_8));
+      return bytes.toByteArray();
+    }
+    catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public static AnnotationInfo fromBytes(byte[] data) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+    boolean useChangelistNumbers = in.readBoolean();
+    long[] revisions = new long[in.readInt()];
+    for (int i = 0; i < revisions.length; i++) {
+      revisions[i] = in.readLong();
+    }
+    String content = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    return new AnnotationInfo(content, revisions, useChangelistNumbers);
+  }
 }
@@ -0,0 +1,237 @@
+// Copyright 2000-2026 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package org.jetbrains.idea.perforce.application.annotation;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.FileEditorManagerListener;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.ui.update.MergingUpdateQueue;
+import com.intellij.util.ui.update.Update;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.VisibleForTesting;
+import org.jetbrains.idea.perforce.perforce.FStat;
+import org.jetbrains.idea.perforce.perforce.P4File;
+import org.jetbrains.idea.perforce.perforce.P4ParallelExecutor;
+import org.jetbrains.idea.perforce.perforce.PerforceBaseRevisionStore;
+import org.jetbrains.idea.perforce.perforce.PerforceRunner;
+import org.jetbrains.idea.perforce.perforce.PerforceSettings;
+import org.jetbrains.idea.perforce.perforce.connections.P4Connection;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent cache of {@code p4 annotate} results, keyed by depot path#rev.
+ * <p>
+ * Annotations are stored in {@link PerforceBaseRevisionStore} and share its size budget. Besides the exact revision, the latest
+ * annotated revision of each depot path is remembered: when a newer revision is requested, only the revisions in between are
+ * annotated on the server ({@code p4 annotate file#old,#new}), and the lines unchanged since the old revision take their
+ * revisions from the cached annotation. This isn't possible when annotations follow integrations, their numbers are changelists.
+ * <p>
+ * With the {@code p4.annotation.prefetch} registry key, files opened in editors are annotated in background batches.
+ */
+@Service(Service.Level.PROJECT)
+public final class PerforceAnnotationCache {
+  private static final Logger LOG = Logger.getInstance(PerforceAnnotationCache.class);
+  private static final int PREFETCH_DELAY_MS = 1000;
+  private static final int MAX_PREFETCHED_FILES = 20;
+  private static final long AMBIGUOUS_REVISION = -1;
+
+  private final Project myProject;
+  private final Set<VirtualFile> myPendingPrefetch = new LinkedHashSet<>();
+  private volatile MergingUpdateQueue myPrefetchQueue;
+
+  public PerforceAnnotationCache(Project project) {
+    myProject = project;
+  }
+
+  public static PerforceAnnotationCache getInstance(Project project) {
+    return project.getService(PerforceAnnotationCache.class);
+  }
+
+  /**
+   * @param depotPath depot path without a revision
+   * @param revision  a concrete revision of {@code depotPath}
+   */
+  public @NotNull AnnotationInfo annotate(@NotNull P4Connection connection, @NotNull String depotPath, long revision) throws VcsException {
+    long start = System.nanoTime();
+    PerforceRunner runner = PerforceRunner.getInstance(myProject);
+    PerforceBaseRevisionStore store = PerforceBaseRevisionStore.getInstance();
+    boolean useChangelistNumbers = runner.isAnnotateUsingChangelistNumbers(connection);
+    String key = getKey(connection, depotPath, useChangelistNumbers) + "#" + revision;
+    String latestKey = getKey(connection, depotPath, useChangelistNumbers);
+
+    AnnotationInfo cached = load(store, key, revision);
+    if (cached != null) {
+      LOG.debug("Annotation cache hit for " + depotPath + "#" + revision + " in " + elapsedMs(start) + " ms");
+      return cached;
+    }
+
+    AnnotationInfo info = null;
+    long latestRevision = store.getStoredRevision(latestKey);
+    if (!useChangelistNumbers && latestRevision > 0 && latestRevision < revision) {
+      AnnotationInfo older = load(store, latestKey, latestRevision);
+      if (older != null) {
+        info = merge(older, latestRevision, runner.annotate(connection, depotPath, latestRevision, revision));
+      }
+    }
+    boolean incremental = info != null;
+    if (info == null) {
+      info = runner.annotate(connection, depotPath, revision);
+    }
+
+    store.put(revision > latestRevision ? List.of(key, latestKey) : List.of(key), revision, info.toBytes());
+    LOG.debug("Annotation cache miss for " + depotPath + "#" + revision + ", " +
+              (incremental ? "annotated since #" + latestRevision : "annotated") + " in " + elapsedMs(start) + " ms");
+    return info;
+  }
+
+  public void startListening(@NotNull Disposable parentDisposable) {
+    myPrefetchQueue = new MergingUpdateQueue("Perforce annotation prefetch", PREFETCH_DELAY_MS, true, null, parentDisposable, null, false);
+    myProject.getMessageBus().connect(parentDisposable).subscribe(FileEditorManagerListener.FILE_EDITOR_MANAGER, new FileEditorManagerListener() {
+      @Override
+      public void fileOpened(@NotNull FileEditorManager source, @NotNull VirtualFile file) {
+        schedulePrefetch(file);
+      }
+    });
+  }
+
+  private void schedulePrefetch(@NotNull VirtualFile file) {
+    MergingUpdateQueue queue = myPrefetchQueue;
+    if (queue == null || !file.isInLocalFileSystem() || !Registry.is("p4.annotation.prefetch")) return;
+    synchronized (myPendingPrefetch) {
+      myPendingPrefetch.add(file);
+    }
+    queue.queue(Update.create("prefetch", this::prefetchPending));
+  }
+
+  private void prefetchPending() {
+    List<VirtualFile> files;
+    synchronized (myPendingPrefetch) {
+      files = new ArrayList<>(myPendingPrefetch);
+      myPendingPrefetch.clear();
+    }
+    if (files.size() > MAX_PREFETCHED_FILES) {
+      files = files.subList(files.size() - MAX_PREFETCHED_FILES, files.size());
+    }
+    if (myProject.isDisposed() || !PerforceSettings.getSettings(myProject).ENABLED) return;
+
+    PerforceSettings settings = PerforceSettings.getSettings(myProject);
+    Map<P4Connection, List<P4File>> byConnection = new LinkedHashMap<>();
+    for (VirtualFile file : files) {
+      if (!file.isValid()) continue;
+      P4File p4File = P4File.create(file);
+      P4Connection connection = settings.getConnectionForFile(p4File);
+      if (connection != null) {
+        byConnection.computeIfAbsent(connection, key -> new ArrayList<>()).add(p4File);
+      }
+    }
+
+    long start = System.nanoTime();
+    int count = 0;
+    for (Map.Entry<P4Connection, List<P4File>> entry : byConnection.entrySet()) {
+      P4Connection connection = entry.getKey();
+      try {
+        // one fstat per connection tells the depot paths and head revisions of the whole batch
+        List<FStat> stats = new ArrayList<>();
+        for (FStat stat : PerforceRunner.getInstance(myProject).fstatBulk(entry.getValue()).values()) {
+          if (!stat.depotFile.isEmpty() && !stat.headRev.isEmpty() && !stat.headAction.endsWith("delete")) {
+            stats.add(stat);
+          }
+        }
+        P4ParallelExecutor.forEachOrdered(stats, stat -> {
+          try {
+            annotate(connection, stat.depotFile, Long.parseLong(stat.headRev));
+          }
+          catch (VcsException | NumberFormatException e) {
+            LOG.debug("Failed to prefetch annotation of " + stat.depotFile, e);
+          }
+          return null;
+        }, ignored -> {});
+        count += stats.size();
+      }
+      catch (VcsException e) {
+        LOG.debug("Failed to prefetch annotations", e);
+      }
+    }
+    PerforceBaseRevisionStore.getInstance().flush();
+    LOG.debug("Prefetched annotations of " + count + " files in " + elapsedMs(start) + " ms");
+  }
+
+  /**
+   * Combines the annotation of {@code olderRevision} with the annotation of the revision range starting with it.
+   * <p>
+   * A line attributed to {@code olderRevision} in {@code range} is unchanged since then, so it takes the revision of an equal line of
+   * {@code older}. Which one p4 matched it with isn't known, and a diff of ours may align repeated lines (blank lines, braces)
+   * differently, so the merge is only done when all equal lines of {@code older} have the same revision.
+   *
+   * @return null if some line attributed to {@code olderRevision} in {@code range} can't be found in {@code older},
+   * or is found several times with different revisions
+   */
+  @VisibleForTesting
+  static @Nullable AnnotationInfo merge(@NotNull AnnotationInfo older, long olderRevision, @NotNull AnnotationInfo range) {
+    String[] olderLines = splitLines(older);
+    String[] newLines = splitLines(range);
+    if (olderLines == null || newLines == null) return null;
+
+    Map<String, Long> olderRevisions = new HashMap<>();
+    for (int i = 0; i < olderLines.length; i++) {
+      long revision = older.getRevision(i);
+      olderRevisions.merge(olderLines[i], revision, (a, b) -> a.longValue() == b.longValue() ? a : AMBIGUOUS_REVISION);
+    }
+
+    long[] revisions = new long[newLines.length];
+    for (int i = 0; i < newLines.length; i++) {
+      long revision = range.getRevision(i);
+      if (revision == olderRevision) {
+        Long olderRevisionOfLine = olderRevisions.get(newLines[i]);
+        if (olderRevisionOfLine == null || olderRevisionOfLine == AMBIGUOUS_REVISION) return null;
+        revision = olderRevisionOfLine;
+      }
+      revisions[i] = revision;
+    }
+    return new AnnotationInfo(range.getContent(), revisions, range.isUseChangelistNumbers());
+  }
+
+  private static String @Nullable [] splitLines(AnnotationInfo info) {
+    String content = info.getContent();
+    if (content.isEmpty()) return info.getLineCount() == 0 ? new String[0] : null;
+    // every line is terminated with \n
+    String[] lines = content.substring(0, content.length() - 1).split("\n", -1);
+    return lines.length == info.getLineCount() ? lines : null;
+  }
+
+  private static @Nullable AnnotationInfo load(PerforceBaseRevisionStore store, String key, long revision) {
+    byte[] data = store.get(key, revision);
+    if (data == null) return null;
+    try {
+      return AnnotationInfo.fromBytes(data);
+    }
+    catch (IOException e) {
+      LOG.info("Corrupted cached annotation " + key, e);
+      store.remove(key);
+      return null;
+    }
+  }
+
+  private static String getKey(P4Connection connection, String depotPath, boolean useChangelistNumbers) {
+    return "annotate" + (useChangelistNumbers ? "-i:" : ":") + connection.getConnectionKey().getServer() + ":" + depotPath;
+  }
+
+  private static long elapsedMs(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+}
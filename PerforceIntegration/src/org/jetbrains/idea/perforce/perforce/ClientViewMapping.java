@@ -0,0 +1,129 @@
+// Copyright 2000-2026 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package org.jetbrains.idea.perforce.perforce;
+
+import com.intellij.openapi.util.text.StringUtil;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * The View of a client spec compiled for mapping paths between the depot and the client without {@code p4 where}.
+ * <p>
+ * Each mapping line is put into a trie by the literal directories its side starts with, so that only the lines whose prefix
+ * matches a path are tried. As on the server, the last matching line wins, and a path is unmapped if it's an exclusion ({@code -}).
+ * Paths are matched with the case handling of the server.
+ */
+public final class ClientViewMapping {
+  private final String myClientPrefix;
+  private final List<View> myViews;
+  private final boolean myCaseSensitive;
+  private final Node myDepotTrie;
+  private final Node myClientTrie;
+
+  private ClientViewMapping(@NotNull String clientName, @NotNull List<View> views, boolean caseSensitive) {
+    myClientPrefix = "//" + clientName + "/";
+    myViews = views;
+    myCaseSensitive = caseSensitive;
+    myDepotTrie = new Node(caseSensitive);
+    myClientTrie = new Node(caseSensitive);
+    for (int i = 0; i < views.size(); i++) {
+      View view = views.get(i);
+      myDepotTrie.add(StringUtil.trimStart(StringUtil.trimStart(view.getDepotPath(), "-"), "+"), i);
+      myClientTrie.add(view.getLocalPath(), i);
+    }
+  }
+
+  /**
+   * @param caseSensitive whether the server handles paths case-sensitively
+   * @return null if some of the lines can't be parsed, so the mapping can't be trusted
+   */
+  public static @Nullable ClientViewMapping create(@NotNull String clientName, @NotNull List<String> viewLines, boolean caseSensitive) {
+    List<View> views = new ArrayList<>(viewLines.size());
+    for (String line : viewLines) {
+      View view = View.create(line, caseSensitive);
+      if (view == null) return null;
+      views.add(view);
+    }
+    return new ClientViewMapping(clientName, views, caseSensitive);
+  }
+
+  /**
+   * @param depotPath an escaped depot path without wildcards
+   * @return the escaped client path, like {@code //client/dir/file}, or null if the path isn't mapped
+   */
+  public @Nullable String depotToClient(@NotNull String depotPath) {
+    String clientPath = map(myDepotTrie, depotPath, View::mapDepotPath);
+    return clientPath != null && clientPath.regionMatches(!myCaseSensitive, 0, myClientPrefix, 0, myClientPrefix.length()) ? clientPath : null;
+  }
+
+  /**
+   * @param clientPath an escaped client path without wildcards, like {@code //client/dir/file}
+   * @return the escaped depot path, or null if the path isn't mapped
+   */
+  public @Nullable String clientToDepot(@NotNull String clientPath) {
+    return map(myClientTrie, clientPath, View::mapClientPath);
+  }
+
+  public @NotNull String getClientPrefix() {
+    return myClientPrefix;
+  }
+
+  private @Nullable String map(@NotNull Node trie, @NotNull String path, @NotNull BiFunction<View, String, String> mapper) {
+    IntArrayList candidates = trie.collect(path);
+    candidates.sort(null);
+    for (int i = candidates.size() - 1; i >= 0; i--) {
+      View view = myViews.get(candidates.getInt(i));
+      String result = mapper.apply(view, path);
+      if (result != null) {
+        return view.removeMatched() ? null : result;
+      }
+    }
+    return null;
+  }
+
+  private static final class Node {
+    private final boolean myCaseSensitive;
+    private final Map<String, Node> myChildren = new HashMap<>();
+    private final IntArrayList myLines = new IntArrayList();
+
+    private Node(boolean caseSensitive) {
+      myCaseSensitive = caseSensitive;
+    }
+
+    void add(@NotNull String mask, int line) {
+      Node node = this;
+      for (String segment : getSegments(mask)) {
+        if (isWildcard(segment)) break;
+        node = node.myChildren.computeIfAbsent(segment, __ -> new Node(myCaseSensitive));
+      }
+      node.myLines.add(line);
+    }
+
+    @NotNull IntArrayList collect(@NotNull String path) {
+      IntArrayList result = new IntArrayList(myLines);
+      Node node = this;
+      for (String segment : getSegments(path)) {
+        node = node.myChildren.get(segment);
+        if (node == null) break;
+        result.addAll(node.myLines);
+      }
+      return result;
+    }
+
+    private static boolean isWildcard(@NotNull String segment) {
+      return segment.contains("...") || segment.contains("*") || segment.contains("%%");
+    }
+
+    private @NotNull List<String> getSegments(@NotNull String path) {
+      String trimmed = StringUtil.trimStart(path, "//");
+      return StringUtil.split(myCaseSensitive ? trimmed : trimmed.toLowerCase(Locale.ROOT), "/");
+    }
+  }
+}
@@ -0,0 +1,203 @@
+// Copyright 2000-2026 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package org.jetbrains.idea.perforce.perforce;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.LongPredicate;
+
+/**
+ * Append-only file of records identified by a number (a changelist), each record is {@code number, length, payload}.
+ * <p>
+ * Only the numbers and offsets are kept in memory, as sorted arrays. Records are never rewritten in place: a number which is already
+ * present is skipped on {@link #append}, while {@link #replace} appends a newer record for it, the latest record of a number wins.
+ * A record truncated by a crash is cut off when the file is opened.
+ */
+final class NumberedRecordLog implements Closeable {
+  private static final int MAGIC = 0x50344e52;
+  private static final int HEADER_SIZE = Integer.BYTES;
+  private static final int RECORD_HEADER_SIZE = Long.BYTES + Integer.BYTES;
+
+  private final FileChannel myChannel;
+  // ascending
+  private long[] myNumbers;
+  private long[] myOffsets;
+  private long mySize;
+
+  private NumberedRecordLog(FileChannel channel, long[] numbers, long[] offsets, long size) {
+    myChannel = channel;
+    myNumbers = numbers;
+    myOffsets = offsets;
+    mySize = size;
+  }
+
+  static @NotNull NumberedRecordLog open(@NotNull Path file) throws IOException {
+    Files.createDirectories(file.getParent());
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      if (channel.size() < HEADER_SIZE || readHeader(channel) != MAGIC) {
+        channel.truncate(0);
+        channel.write(ByteBuffer.allocate(HEADER_SIZE).putInt(0, MAGIC), 0);
+        return new NumberedRecordLog(channel, new long[0], new long[0], HEADER_SIZE);
+      }
+
+      long[] numbers = new long[1024];
+      long[] offsets = new long[1024];
+      int count = 0;
+      long offset = HEADER_SIZE;
+      long fileSize = channel.size();
+      ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+      while (offset + RECORD_HEADER_SIZE <= fileSize) {
+        header.clear();
+        readFully(channel, header, offset);
+        long number = header.getLong(0);
+        int length = header.getInt(Long.BYTES);
+        if (length < 0 || offset + RECORD_HEADER_SIZE + length > fileSize) break;
+        if (count == numbers.length) {
+          numbers = Arrays.copyOf(numbers, count * 2);
+          offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        numbers[count] = number;
+        offsets[count] = offset;
+        count++;
+        offset += RECORD_HEADER_SIZE + length;
+      }
+      if (offset < fileSize) {
+        channel.truncate(offset);
+      }
+      NumberedRecordLog log = new NumberedRecordLog(channel, new long[0], new long[0], offset);
+      log.index(Arrays.copyOf(numbers, count), Arrays.copyOf(offsets, count), true);
+      return log;
+    }
+    catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  synchronized int size() {
+    return myNumbers.length;
+  }
+
+  synchronized boolean contains(long number) {
+    return Arrays.binarySearch(myNumbers, number) >= 0;
+  }
+
+  synchronized byte @Nullable [] read(long number) throws IOException {
+    int index = Arrays.binarySearch(myNumbers, number);
+    if (index < 0) return null;
+    long offset = myOffsets[index];
+    ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+    readFully(myChannel, header, offset);
+    ByteBuffer payload = ByteBuffer.allocate(header.getInt(Long.BYTES));
+    readFully(myChannel, payload, offset + RECORD_HEADER_SIZE);
+    return payload.array();
+  }
+
+  /**
+   * Passes the numbers in {@code [from, to]} to {@code consumer} in descending order, until it returns false.
+   */
+  void forEachDescending(long from, long to, @NotNull LongPredicate consumer) {
+    long[] numbers;
+    synchronized (this) {
+      numbers = myNumbers;
+    }
+    int index = Arrays.binarySearch(numbers, to);
+    int start = index >= 0 ? index : -index - 2;
+    for (int i = start; i >= 0 && numbers[i] >= from; i--) {
+      if (!consumer.test(numbers[i])) return;
+    }
+  }
+
+  /**
+   * Appends the records whose numbers aren't present yet.
+   */
+  synchronized void append(@NotNull Map<Long, byte[]> records) throws IOException {
+    write(records, false);
+  }
+
+  /**
+   * Appends the records, those whose numbers are present replace the previous records.
+   */
+  synchronized void replace(@NotNull Map<Long, byte[]> records) throws IOException {
+    write(records, true);
+  }
+
+  private void write(Map<Long, byte[]> records, boolean replace) throws IOException {
+    long[] numbers = new long[records.size()];
+    long[] offsets = new long[records.size()];
+    int count = 0;
+    long offset = mySize;
+    for (Map.Entry<Long, byte[]> entry : records.entrySet()) {
+      long number = entry.getKey();
+      if (!replace && contains(number)) continue;
+      byte[] payload = entry.getValue();
+      ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+      buffer.putLong(number).putInt(payload.length).put(payload).flip();
+      while (buffer.hasRemaining()) {
+        offset += myChannel.write(buffer, offset);
+      }
+      numbers[count] = number;
+      offsets[count] = offset - RECORD_HEADER_SIZE - payload.length;
+      count++;
+    }
+    mySize = offset;
+    if (count > 0) {
+      index(Arrays.copyOf(numbers, count), Arrays.copyOf(offsets, count), replace);
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    myChannel.close();
+  }
+
+  // merges the new records into the sorted index, keeping the first or the last occurrence of a number
+  private void index(long[] numbers, long[] offsets, boolean keepLast) {
+    int[] order = new int[numbers.length];
+    for (int i = 0; i < order.length; i++) order[i] = i;
+    IntArrays.stableSort(order, (a, b) -> Long.compare(numbers[a], numbers[b]));
+
+    long[] mergedNumbers = new long[myNumbers.length + numbers.length];
+    long[] mergedOffsets = new long[mergedNumbers.length];
+    int i = 0, j = 0, k = 0;
+    while (i < myNumbers.length || j < order.length) {
+      boolean takeOld = j == order.length || i < myNumbers.length && myNumbers[i] <= numbers[order[j]];
+      long number = takeOld ? myNumbers[i] : numbers[order[j]];
+      long offset = takeOld ? myOffsets[i++] : offsets[order[j++]];
+      if (k > 0 && mergedNumbers[k - 1] == number) {
+        if (keepLast) mergedOffsets[k - 1] = offset;
+        continue;
+      }
+      mergedNumbers[k] = number;
+      mergedOffsets[k] = offset;
+      k++;
+    }
+    myNumbers = Arrays.copyOf(mergedNumbers, k);
+    myOffsets = Arrays.copyOf(mergedOffsets, k);
+  }
+
+  private static int readHeader(FileChannel channel) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+    readFully(channel, buffer, 0);
+    return buffer.getInt(0);
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position + buffer.position());
+      if (read < 0) throw new EOFException();
+    }
+  }
+}
@@ -7,13 +7,19 @@ import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap
 import org.jetbrains.idea.perforce.PerforceBundle
 import org.jetbrains.idea.perforce.application.PerforceManager
 
-open class P4HaveParser(private val perforceManager: PerforceManager, revisions: Object2LongMap<String>) :
-  P4Parser(P4Command.have, revisions) {
+/**
+ * @param pathConverter converts the local paths reported by p4 to the IDE form, see [PerforceManager.convertP4ParsedPath]
+ */
+open class P4HaveParser(private val pathConverter: (String) -> String, revisions: Object2LongMap<String>) :
+  P4TaggedParser(P4Command.have, revisions) {
 
   companion object {
     private const val HAVE_DELIMITER = " - ";
   }
 
+  constructor(perforceManager: PerforceManager, revisions: Object2LongMap<String>) :
+    this({ path -> perforceManager.convertP4ParsedPath(null, path) }, revisions)
+
   constructor(perforceManager: PerforceManager) : this(perforceManager, Object2LongOpenHashMap<String>())
 
   @Throws(VcsException::class)
@@ -27,9 +33,19 @@ open class P4HaveParser(private val perforceManager: PerforceManager, revisions:
       throw VcsException(PerforceBundle.message("error.unexpected.p4.have.output.format", outputLine))
     }
     var localPath = outputLine.substring(idx + HAVE_DELIMITER.length)
-    localPath = perforceManager.convertP4ParsedPath(null, localPath)
+    localPath = pathConverter(localPath)
     val revision = outputLine.substring(hashIndex + 1, idx).toLong()
 
     return ParsedLine(FileUtil.toSystemDependentName(localPath), revision)
   }
+
+  @Throws(VcsException::class)
+  override fun consumeRecord(record: P4Record): ParsedLine {
+    val localPath = record["path"]
+    val revision = record["haveRev"]?.toLongOrNull()
+    if (localPath == null || revision == null) {
+      throw VcsException(PerforceBundle.message("error.unexpected.p4.have.output.format", record.toString()))
+    }
+    return ParsedLine(FileUtil.toSystemDependentName(pathConverter(localPath)), revision)
+  }
 }
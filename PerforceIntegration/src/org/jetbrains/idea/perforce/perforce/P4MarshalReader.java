@@ -0,0 +1,97 @@
+// Copyright 2000-2026 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package org.jetbrains.idea.perforce.perforce;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads the output of {@code p4 -G} record by record: a sequence of Python marshal dictionaries with string keys and string or int values.
+ * <p>
+ * Only one record is kept in memory at a time, so the output can be parsed while the command is still running.
+ */
+public final class P4MarshalReader {
+  private static final int TYPE_NULL = '0';
+  private static final int TYPE_NONE = 'N';
+  private static final int TYPE_DICT = '{';
+  private static final int TYPE_INT = 'i';
+  private static final int TYPE_STRING = 's';
+  private static final int TYPE_INTERNED = 't';
+  private static final int TYPE_UNICODE = 'u';
+
+  // a corrupted length shouldn't make us allocate gigabytes
+  private static final int MAX_STRING_LENGTH = 64 * 1024 * 1024;
+
+  private final InputStream myStream;
+  private final Charset myCharset;
+
+  public P4MarshalReader(@NotNull InputStream stream, @NotNull Charset charset) {
+    myStream = stream instanceof BufferedInputStream ? stream : new BufferedInputStream(stream);
+    myCharset = charset;
+  }
+
+  /**
+   * @return the next record, or null at the end of the output
+   */
+  public @Nullable P4Record next() throws IOException {
+    int type = myStream.read();
+    if (type == -1) return null;
+    if (type != TYPE_DICT) {
+      throw new IOException("Unexpected p4 -G output: record type '" + (char)type + "'");
+    }
+
+    Map<String, String> fields = new LinkedHashMap<>();
+    while (true) {
+      int keyType = readByte();
+      if (keyType == TYPE_NULL) break;
+      String key = readValue(keyType);
+      String value = readValue(readByte());
+      if (key != null && value != null) {
+        fields.put(key, value);
+      }
+    }
+    return new P4Record(fields);
+  }
+
+  private @Nullable String readValue(int type) throws IOException {
+    return switch (type) {
+      case TYPE_STRING, TYPE_INTERNED -> readString(myCharset);
+      case TYPE_UNICODE -> readString(StandardCharsets.UTF_8);
+      case TYPE_INT -> String.valueOf(readInt());
+      case TYPE_NONE -> null;
+      default -> throw new IOException("Unexpected p4 -G output: value type '" + (char)type + "'");
+    };
+  }
+
+  private String readString(Charset charset) throws IOException {
+    int length = readInt();
+    if (length < 0 || length > MAX_STRING_LENGTH) {
+      throw new IOException("Unexpected p4 -G output: string length " + length);
+    }
+    byte[] bytes = myStream.readNBytes(length);
+    if (bytes.length < length) throw new EOFException("Unexpected end of p4 -G output");
+    return new String(bytes, charset);
+  }
+
+  private int readInt() throws IOException {
+    int b0 = readByte();
+    int b1 = readByte();
+    int b2 = readByte();
+    int b3 = readByte();
+    return b0 | (b1 << 8) | (b2 << 16) | (b3 << 24);
+  }
+
+  private int readByte() throws IOException {
+    int b = myStream.read();
+    if (b == -1) throw new EOFException("Unexpected end of p4 -G output");
+    return b;
+  }
+}
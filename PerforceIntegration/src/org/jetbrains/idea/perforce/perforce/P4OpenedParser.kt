@@ -4,7 +4,7 @@ import com.intellij.openapi.vcs.VcsException
 import it.unimi.dsi.fastutil.objects.Object2LongMap
 import org.jetbrains.idea.perforce.PerforceBundle
 
-internal class P4OpenedParser(revisions: Object2LongMap<String>) : P4Parser(P4Command.opened, revisions) {
+internal class P4OpenedParser(revisions: Object2LongMap<String>) : P4TaggedParser(P4Command.opened, revisions) {
 
   companion object {
     private const val OPENED_DELIMITER = " - ";
@@ -24,4 +24,13 @@ internal class P4OpenedParser(revisions: Object2LongMap<String>) : P4Parser(P4Co
 
     return ParsedLine(depotPath, revision)
   }
+
+  override fun consumeRecord(record: P4Record): ParsedLine {
+    val depotPath = record["depotFile"]
+    val revision = record["rev"]?.toLongOrNull()
+    if (depotPath == null || revision == null) {
+      throw VcsException(PerforceBundle.message("error.unexpected.p4.opened.output.format", record.toString()))
+    }
+    return ParsedLine(depotPath, revision)
+  }
 }
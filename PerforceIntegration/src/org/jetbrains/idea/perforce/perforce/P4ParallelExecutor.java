@@ -0,0 +1,133 @@
+// Copyright 2000-2026 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package org.jetbrains.idea.perforce.perforce;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.util.ThrowableComputable;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.util.SystemProperties;
+import com.intellij.util.ThrowableConsumer;
+import com.intellij.util.ThrowableConvertor;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.idea.perforce.perforce.connections.P4CommandStatistics.CommandCounter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs independent p4 commands (chunks of a long file list, commands for different connections) on a bounded pool.
+ * <p>
+ * Results are consumed on the calling thread in the order of the input, so parsers don't need to be thread-safe
+ * and the output doesn't depend on the scheduling. The progress indicator and the {@link CommandCounter command counter}
+ * of the caller are propagated to the workers.
+ * The number of p4 processes per connection and per server is additionally bounded in
+ * {@link org.jetbrains.idea.perforce.perforce.connections.AbstractP4Connection}.
+ * <p>
+ * The parallelism is set with {@code -Dp4.max.parallel.commands}, 1 runs everything sequentially on the calling thread.
+ */
+public final class P4ParallelExecutor {
+  private static final int MAX_PARALLEL_COMMANDS = SystemProperties.getIntProperty("p4.max.parallel.commands", 4);
+  private static final ExecutorService ourExecutor =
+    AppExecutorUtil.createBoundedApplicationPoolExecutor("Perforce Parallel Commands", Math.max(MAX_PARALLEL_COMMANDS, 1));
+  // tasks submitted from a worker would wait for the workers they occupy
+  private static final ThreadLocal<Boolean> ourInsideWorker = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+  private P4ParallelExecutor() {
+  }
+
+  /**
+   * Computes {@code task} for every item, possibly in parallel, and passes the results to {@code consumer} in the order of {@code items}.
+   * The first failure is rethrown and the tasks not started yet are cancelled.
+   */
+  public static <T, R> void forEachOrdered(@NotNull List<? extends T> items,
+                                           @NotNull ThrowableConvertor<? super T, ? extends R, VcsException> task,
+                                           @NotNull ThrowableConsumer<? super R, VcsException> consumer) throws VcsException {
+    if (items.size() <= 1 || MAX_PARALLEL_COMMANDS <= 1 || ourInsideWorker.get()) {
+      for (T item : items) {
+        consumer.consume(task.convert(item));
+      }
+      return;
+    }
+
+    ProgressIndicator indicator = ProgressManager.getGlobalProgressIndicator();
+    CommandCounter counter = CommandCounter.current();
+    List<Future<R>> futures = new ArrayList<>(items.size());
+    for (T item : items) {
+      futures.add(ourExecutor.submit(() -> CommandCounter.runWith(counter, () -> computeInWorker(indicator, () -> task.convert(item)))));
+    }
+    try {
+      for (Future<R> future : futures) {
+        consumer.consume(await(future));
+      }
+    }
+    finally {
+      for (Future<R> future : futures) {
+        future.cancel(false);
+      }
+    }
+  }
+
+  public static <T, R> @NotNull List<R> map(@NotNull List<? extends T> items,
+                                            @NotNull ThrowableConvertor<? super T, ? extends R, VcsException> task) throws VcsException {
+    List<R> result = new ArrayList<>(items.size());
+    forEachOrdered(items, task, result::add);
+    return result;
+  }
+
+  private static <R> R computeInWorker(@Nullable ProgressIndicator indicator,
+                                       @NotNull ThrowableComputable<R, VcsException> computable) throws VcsException {
+    ourInsideWorker.set(Boolean.TRUE);
+    try {
+      if (indicator == null) {
+        return computable.compute();
+      }
+      Ref<R> result = new Ref<>();
+      Ref<VcsException> exception = new Ref<>();
+      ProgressManager.getInstance().executeProcessUnderProgress(() -> {
+        try {
+          result.set(computable.compute());
+        }
+        catch (VcsException e) {
+          exception.set(e);
+        }
+      }, indicator);
+      if (!exception.isNull()) {
+        throw exception.get();
+      }
+      return result.get();
+    }
+    finally {
+      ourInsideWorker.set(Boolean.FALSE);
+    }
+  }
+
+  private static <R> R await(@NotNull Future<R> future) throws VcsException {
+    while (true) {
+      ProgressManager.checkCanceled();
+      try {
+        return future.get(50, TimeUnit.MILLISECONDS);
+      }
+      catch (TimeoutException ignored) {
+      }
+      catch (InterruptedException e) {
+        throw new ProcessCanceledException(e);
+      }
+      catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof VcsException vcsException) throw vcsException;
+        if (cause instanceof RuntimeException runtimeException) throw runtimeException;
+        if (cause instanceof Error error) throw error;
+        throw new VcsException(cause);
+      }
+    }
+  }
+}
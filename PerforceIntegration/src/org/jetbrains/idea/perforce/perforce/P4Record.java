@@ -0,0 +1,79 @@
+// Copyright 2000-2026 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package org.jetbrains.idea.perforce.perforce;
+
+import com.intellij.openapi.util.NlsSafe;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A record of tagged p4 output ({@code p4 -G}), e.g. one file of {@code p4 have} or an error.
+ * <p>
+ * Errors are reported as records with {@code code=error}, their severity and generic code tell them apart without matching messages.
+ */
+public final class P4Record {
+  public static final int SEVERITY_INFO = 1;
+  public static final int SEVERITY_WARN = 2;
+  public static final int SEVERITY_FAILED = 3;
+  public static final int SEVERITY_FATAL = 4;
+
+  /** "no such file(s)", "file(s) not on client", "file(s) not opened on this client" and the like */
+  public static final int GENERIC_EMPTY = 0x11;
+
+  private final Map<String, String> myFields;
+
+  public P4Record(@NotNull Map<String, String> fields) {
+    myFields = fields;
+  }
+
+  public @Nullable @NlsSafe String get(@NonNls @NotNull String key) {
+    return myFields.get(key);
+  }
+
+  public @NotNull Map<String, String> getFields() {
+    return Collections.unmodifiableMap(myFields);
+  }
+
+  public @Nullable String getCode() {
+    return myFields.get("code");
+  }
+
+  public boolean isError() {
+    return "error".equals(getCode());
+  }
+
+  public int getSeverity() {
+    return getInt("severity");
+  }
+
+  public int getGeneric() {
+    return getInt("generic");
+  }
+
+  /**
+   * @return the message of an error or info record
+   */
+  public @NotNull @NlsSafe String getMessage() {
+    String data = myFields.get("data");
+    return data == null ? "" : data.trim();
+  }
+
+  private int getInt(String key) {
+    String value = myFields.get(key);
+    if (value == null) return 0;
+    try {
+      return Integer.parseInt(value);
+    }
+    catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return myFields.toString();
+  }
+}
@@ -0,0 +1,57 @@
+// Copyright 2000-2026 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package org.jetbrains.idea.perforce.perforce;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.vcs.VcsException;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A parser supporting tagged output: it gets {@link #consumeRecord records} of {@code p4 -G} while the command is running
+ * instead of {@link #consumeLine lines} of the buffered text output.
+ */
+public abstract class P4TaggedParser extends P4Parser {
+  private static final Logger LOG = Logger.getInstance(P4TaggedParser.class);
+
+  public P4TaggedParser(@NotNull P4Command command, @NotNull Object2LongMap<String> revisions) {
+    super(command, revisions);
+  }
+
+  protected abstract @Nullable ParsedLine consumeRecord(@NotNull P4Record record) throws VcsException;
+
+  /**
+   * Reads {@code p4 -G} output. Errors of the "no such files" kind are skipped, others are reported to stderr of {@code result},
+   * where the usual error checks find them.
+   * Chunks of a command may be executed in parallel, so the records are consumed under the parser's lock.
+   */
+  void readRecords(@NotNull InputStream inputStream, @NotNull ExecResult result) throws IOException {
+    P4MarshalReader reader = new P4MarshalReader(inputStream, result.getCharset());
+    P4Record record;
+    while ((record = reader.next()) != null) {
+      if (record.isError()) {
+        if (record.getGeneric() == P4Record.GENERIC_EMPTY) {
+          LOG.debug("Problem while doing '" + getCommand().getName() + "': " + record.getMessage());
+        }
+        else {
+          result.appendStreamedStderr(record.getMessage());
+        }
+        continue;
+      }
+      synchronized (this) {
+        try {
+          ParsedLine parsedLine = consumeRecord(record);
+          if (parsedLine != null) {
+            consumeRevision(parsedLine.path(), parsedLine.revision());
+          }
+        }
+        catch (VcsException e) {
+          throw new IOException(e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,389 @@
+// Copyright 2000-2026 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package org.jetbrains.idea.perforce.perforce;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.util.io.DigestUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+import org.jetbrains.idea.perforce.perforce.connections.P4Connection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Disk-backed store of base revision contents, shared by all projects.
+ * <p>
+ * Contents are stored once per distinct content (by SHA-256) as deflate-compressed blob files, which are memory-mapped for reading.
+ * Keys are either a depot path with a revision on a server ({@link #depotKey}), or a local path ({@link #localKey}) which remembers
+ * the revision it was stored for, so that the have revision of a file can be found without asking the server for its depot path.
+ * Cached annotations are kept here too, under their own keys.
+ * <p>
+ * The total size of the blobs is bounded by the {@code p4.base.revision.store.size.mb} registry key, least recently used keys are
+ * evicted first, 0 disables the store. The index is persisted in the system directory on {@link #flush}, at most a minute after
+ * it changed, and on exit.
+ */
+@Service(Service.Level.APP)
+public final class PerforceBaseRevisionStore implements Disposable {
+  private static final Logger LOG = Logger.getInstance(PerforceBaseRevisionStore.class);
+  private static final int FORMAT_VERSION = 1;
+  private static final String INDEX_FILE = "index.bin";
+  private static final String BLOB_EXTENSION = ".z";
+  private static final long FLUSH_INTERVAL_MS = 60_000;
+
+  private final Path myDir;
+  private final LongSupplier myBudget;
+
+  // access-ordered, the eldest entry is the least recently used one
+  private final LinkedHashMap<String, Entry> myEntries = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<String, Blob> myBlobs = new HashMap<>();
+  private long myTotalSize;
+  private boolean myLoaded;
+  private boolean myDirty;
+  private long myLastFlush;
+
+  public PerforceBaseRevisionStore() {
+    this(PathManager.getSystemDir().resolve("perforce").resolve("base-revisions"),
+         () -> Registry.intValue("p4.base.revision.store.size.mb") * 1024L * 1024L);
+  }
+
+  @TestOnly
+  PerforceBaseRevisionStore(@NotNull Path dir, @NotNull LongSupplier budget) {
+    myDir = dir;
+    myBudget = budget;
+  }
+
+  public static PerforceBaseRevisionStore getInstance() {
+    return ApplicationManager.getApplication().getService(PerforceBaseRevisionStore.class);
+  }
+
+  public static @NotNull String depotKey(@NotNull P4Connection connection, @NotNull String depotPath, long revision) {
+    return "depot:" + connection.getConnectionKey().getServer() + ":" + depotPath + "#" + revision;
+  }
+
+  public static @NotNull String localKey(@NotNull String localPath) {
+    return "local:" + FileUtil.toSystemIndependentName(localPath);
+  }
+
+  public boolean isEnabled() {
+    return myBudget.getAsLong() > 0;
+  }
+
+  public synchronized boolean contains(@NotNull String key, long revision) {
+    ensureLoaded();
+    Entry entry = myEntries.get(key);
+    return entry != null && entry.revision == revision;
+  }
+
+  /**
+   * @return the revision {@code key} was stored for, or -1
+   */
+  public synchronized long getStoredRevision(@NotNull String key) {
+    ensureLoaded();
+    Entry entry = myEntries.get(key);
+    return entry == null ? -1 : entry.revision;
+  }
+
+  /**
+   * @return the content stored for {@code key} and {@code revision}, or null if it's missing or was stored for another revision
+   */
+  public byte @Nullable [] get(@NotNull String key, long revision) {
+    if (!isEnabled()) return null;
+    String hash;
+    synchronized (this) {
+      ensureLoaded();
+      Entry entry = myEntries.get(key);
+      if (entry == null || entry.revision != revision) return null;
+      hash = entry.hash;
+    }
+
+    try {
+      return readBlob(getBlobFile(hash));
+    }
+    catch (NoSuchFileException e) {
+      removeBlob(hash);
+      return null;
+    }
+    catch (IOException e) {
+      LOG.info("Failed to read base revision " + key + "#" + revision, e);
+      removeBlob(hash);
+      return null;
+    }
+  }
+
+  /**
+   * Stores {@code content} under all {@code keys}, replacing what they were mapped to before.
+   */
+  public void put(@NotNull Collection<String> keys, long revision, byte @NotNull [] content) {
+    if (keys.isEmpty() || !isEnabled()) return;
+    String hash = DigestUtil.sha256Hex(content);
+    Path file = getBlobFile(hash);
+    long size;
+    try {
+      size = Files.exists(file) ? Files.size(file) : writeBlob(file, content);
+    }
+    catch (IOException e) {
+      LOG.info("Failed to store base revision " + keys, e);
+      return;
+    }
+
+    synchronized (this) {
+      ensureLoaded();
+      Blob blob = myBlobs.get(hash);
+      if (blob == null) {
+        blob = new Blob(size);
+        myBlobs.put(hash, blob);
+        myTotalSize += size;
+      }
+      for (String key : keys) {
+        Entry old = myEntries.put(key, new Entry(hash, revision));
+        blob.refs++;
+        if (old != null) release(old.hash);
+      }
+      myDirty = true;
+      evict();
+      flushIfNeeded();
+    }
+  }
+
+  public synchronized void remove(@NotNull String key) {
+    ensureLoaded();
+    Entry entry = myEntries.remove(key);
+    if (entry != null) {
+      release(entry.hash);
+      myDirty = true;
+      flushIfNeeded();
+    }
+  }
+
+  public synchronized long getTotalSize() {
+    ensureLoaded();
+    return myTotalSize;
+  }
+
+  /**
+   * Persists the index, so that the stored contents survive a crash.
+   */
+  public synchronized void flush() {
+    if (!myLoaded || !myDirty) return;
+    try {
+      Files.createDirectories(myDir);
+      Path temp = myDir.resolve(INDEX_FILE + ".tmp");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(myEntries.size());
+        // least recently used first, the access order is restored on reading
+        for (Map.Entry<String, Entry> entry : myEntries.entrySet()) {
+          out.writeUTF(entry.getKey());
+          out.writeLong(entry.getValue().revision);
+          out.writeUTF(entry.getValue().hash);
+        }
+      }
+      Files.move(temp, myDir.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      myDirty = false;
+    }
+    catch (IOException e) {
+      LOG.info("Failed to save base revision index", e);
+    }
+    myLastFlush = System.currentTimeMillis();
+  }
+
+  // a long session keeps adding contents, they shouldn't be lost on a crash
+  private synchronized void flushIfNeeded() {
+    if (System.currentTimeMillis() - myLastFlush >= FLUSH_INTERVAL_MS) {
+      flush();
+    }
+  }
+
+  @Override
+  public void dispose() {
+    flush();
+  }
+
+  private void ensureLoaded() {
+    if (myLoaded) return;
+    myLoaded = true;
+    myLastFlush = System.currentTimeMillis();
+    Path index = myDir.resolve(INDEX_FILE);
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index)))) {
+      if (in.readInt() == FORMAT_VERSION) {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+          String key = in.readUTF();
+          long revision = in.readLong();
+          String hash = in.readUTF();
+          Blob blob = myBlobs.get(hash);
+          if (blob == null) {
+            Path file = getBlobFile(hash);
+            if (!Files.exists(file)) continue;
+            blob = new Blob(Files.size(file));
+            myBlobs.put(hash, blob);
+            myTotalSize += blob.size;
+          }
+          blob.refs++;
+          myEntries.put(key, new Entry(hash, revision));
+        }
+      }
+    }
+    catch (NoSuchFileException ignored) {
+    }
+    catch (IOException e) {
+      LOG.info("Failed to load base revision index", e);
+    }
+    deleteUnreferencedBlobs();
+    evict();
+  }
+
+  // blobs written before a crash, or not deleted because they were still mapped
+  private void deleteUnreferencedBlobs() {
+    if (!Files.isDirectory(myDir)) return;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(myDir, "*" + BLOB_EXTENSION)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        if (!myBlobs.containsKey(name.substring(0, name.length() - BLOB_EXTENSION.length()))) {
+          deleteQuietly(file);
+        }
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Failed to clean up base revisions", e);
+    }
+  }
+
+  private void evict() {
+    long budget = myBudget.getAsLong();
+    Iterator<Map.Entry<String, Entry>> iterator = myEntries.entrySet().iterator();
+    while (myTotalSize > budget && iterator.hasNext()) {
+      Entry entry = iterator.next().getValue();
+      iterator.remove();
+      release(entry.hash);
+      myDirty = true;
+      flushIfNeeded();
+    }
+  }
+
+  private void release(String hash) {
+    Blob blob = myBlobs.get(hash);
+    if (blob == null || --blob.refs > 0) return;
+    myBlobs.remove(hash);
+    myTotalSize -= blob.size;
+    deleteQuietly(getBlobFile(hash));
+  }
+
+  private synchronized void removeBlob(String hash) {
+    myEntries.values().removeIf(entry -> entry.hash.equals(hash));
+    Blob blob = myBlobs.remove(hash);
+    if (blob != null) {
+      myTotalSize -= blob.size;
+      myDirty = true;
+    }
+    deleteQuietly(getBlobFile(hash));
+  }
+
+  private Path getBlobFile(String hash) {
+    return myDir.resolve(hash + BLOB_EXTENSION);
+  }
+
+  private static long writeBlob(Path file, byte[] content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Path temp = Files.createTempFile(file.getParent(), "blob", ".tmp");
+    try {
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+        new DataOutputStream(out).writeInt(content.length);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater)) {
+          deflated.write(content);
+        }
+        finally {
+          deflater.end();
+        }
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      return Files.size(file);
+    }
+    finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static byte[] readBlob(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return inflate(buffer);
+    }
+  }
+
+  private static byte[] inflate(ByteBuffer buffer) throws IOException {
+    byte[] result = new byte[buffer.getInt()];
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(buffer);
+      int offset = 0;
+      while (offset < result.length) {
+        int read = inflater.inflate(result, offset, result.length - offset);
+        if (read == 0 && (inflater.finished() || inflater.needsInput())) {
+          throw new IOException("Truncated base revision blob");
+        }
+        offset += read;
+      }
+      return result;
+    }
+    catch (DataFormatException e) {
+      throw new IOException(e);
+    }
+    finally {
+      inflater.end();
+    }
+  }
+
+  private static void deleteQuietly(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    }
+    catch (IOException e) {
+      // still mapped on Windows, deleted with the other unreferenced blobs on the next start
+      LOG.debug("Failed to delete " + file, e);
+    }
+  }
+
+  private record Entry(@NotNull String hash, long revision) {
+  }
+
+  private static final class Blob {
+    final long size;
+    int refs;
+
+    Blob(long size) {
+      this.size = size;
+    }
+  }
+}
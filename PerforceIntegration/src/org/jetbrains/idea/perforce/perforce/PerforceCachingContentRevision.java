@@ -1,36 +1,50 @@
 package org.jetbrains.idea.perforce.perforce;
 
+import com.google.common.collect.Lists;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.util.BackgroundTaskUtil;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vcs.changes.ContentRevision;
 import com.intellij.openapi.vcs.changes.LastUnchangedContentTracker;
-import com.intellij.openapi.vfs.InvalidVirtualFileAccessException;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.openapi.vfs.newvfs.FileAttribute;
-import com.intellij.openapi.vfs.newvfs.persistent.VFSAttributesStorage;
-import com.intellij.util.ArrayUtilRt;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.containers.MultiMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.idea.perforce.PerforceBundle;
 import org.jetbrains.idea.perforce.application.PerforceBinaryContentRevision;
+import org.jetbrains.idea.perforce.application.PerforceDisposable;
+import org.jetbrains.idea.perforce.perforce.connections.P4Connection;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 public final class PerforceCachingContentRevision extends PerforceContentRevision {
+  private static final int MAX_PREFETCHED_FILES = 1000;
+  private static final int PRINT_BATCH_SIZE = 50;
+  // revisions being prefetched, so that a refresh doesn't load them again while an earlier prefetch is running
+  private static final Set<String> ourPrefetching = ConcurrentHashMap.newKeySet();
+
   private final FilePath myCurrentPath;   // for renames - path after rename
   private final boolean myOffline;
   private static final Logger LOG = Logger.getInstance(PerforceCachingContentRevision.class);
 
-  private static final FileAttribute PERFORCE_CONTENT_ATTRIBUTE = new FileAttribute("p4.content", 3, false);
-
-  private PerforceCachingContentRevision(final Project project, final FilePath path, final FilePath currentPath, final long revision, boolean offline) {
-    super(project, path, revision);
+  private PerforceCachingContentRevision(final Project project,
+                                         final @Nullable P4Connection connection,
+                                         final @Nullable String depotPath,
+                                         final FilePath path,
+                                         final FilePath currentPath,
+                                         final long revision,
+                                         boolean offline) {
+    super(project, connection, depotPath, path, revision, "#" + revision);
     myCurrentPath = currentPath;
     myOffline = offline;
   }
@@ -41,86 +55,140 @@ public final class PerforceCachingContentRevision extends PerforceContentRevisio
     if (LOG.isDebugEnabled()) {
       LOG.debug("loadContent: " + myCurrentPath);
     }
-    VirtualFile vFile = myCurrentPath.getVirtualFile();
-    if (vFile == null) return super.loadContent();
-    byte[] content = null;
-    try {
-      content = loadCachedContent(vFile);
-    }
-    catch (InvalidVirtualFileAccessException e) {
-      throw new VcsException(PerforceBundle.message("error.file.has.been.deleted", vFile.getPath()));
-    }
-    catch (IOException ignore) {
-    }
+    byte[] content = loadCachedContent();
     if (content == null) {
       if (!PerforceSettings.getSettings(myProject).ENABLED) throw new VcsException(
         PerforceBundle.message("error.can.t.load.content.perforce.is.offline"));
 
       content = super.loadContent();
-      try {
-        saveCachedContent(vFile, myRevision, content);
-      }
-      catch (InvalidVirtualFileAccessException e) {
-        throw new VcsException(PerforceBundle.message("error.file.has.been.deleted", vFile.getPath()));
-      }
-      catch (IOException e) {
-        LOG.error(e);
-      }
+      saveCachedContent(content);
     }
     return content;
   }
 
-  private byte @Nullable [] loadCachedContent(final VirtualFile vFile) throws IOException {
+  private byte @Nullable [] loadCachedContent() {
     if (LOG.isDebugEnabled()) {
-      LOG.debug("loadCachedContent: " + vFile + ", offline=" + myOffline);
+      LOG.debug("loadCachedContent: " + myCurrentPath + ", offline=" + myOffline);
     }
     if (myOffline) {
-      final byte[] content = LastUnchangedContentTracker.getLastUnchangedContent(vFile);
+      VirtualFile vFile = myCurrentPath.getVirtualFile();
+      final byte[] content = vFile == null ? null : LastUnchangedContentTracker.getLastUnchangedContent(vFile);
       if (content != null) {
         return content;
       }
     }
 
-    try (DataInputStream stream = PERFORCE_CONTENT_ATTRIBUTE.readFileAttribute(vFile)) {
-      if (stream == null) return null;
-
-      long cachedRevision = stream.readLong();
-      if (cachedRevision != myRevision) return null;
+    PerforceBaseRevisionStore store = PerforceBaseRevisionStore.getInstance();
+    if (myConnection != null && myDepotPath != null) {
+      byte[] content = store.get(PerforceBaseRevisionStore.depotKey(myConnection, myDepotPath, myRevision), myRevision);
+      if (content != null) return content;
+    }
+    return store.get(PerforceBaseRevisionStore.localKey(myCurrentPath.getPath()), myRevision);
+  }
 
-      return FileUtil.loadBytes(stream, stream.readInt());
+  private void saveCachedContent(byte @NotNull [] content) {
+    if (myRevision <= 0) return;
+    List<String> keys = new ArrayList<>(2);
+    keys.add(PerforceBaseRevisionStore.localKey(myCurrentPath.getPath()));
+    if (myConnection != null && myDepotPath != null) {
+      keys.add(PerforceBaseRevisionStore.depotKey(myConnection, myDepotPath, myRevision));
     }
+    PerforceBaseRevisionStore.getInstance().put(keys, myRevision, content);
   }
 
-  private static void saveCachedContent(VirtualFile vFile, long revision, byte @NotNull [] content) throws IOException {
-    int allSizeToStore =
-      content.length + Long.BYTES + Integer.BYTES; //content.length + revision bytes + content.length bytes
+  private boolean isCached() {
+    return PerforceBaseRevisionStore.getInstance().contains(PerforceBaseRevisionStore.localKey(myCurrentPath.getPath()), myRevision);
+  }
 
-    if (allSizeToStore >= VFSAttributesStorage.MAX_ATTRIBUTE_VALUE_SIZE) {
-      LOG.warn(String.format("Trying to cache file %s with %s size but max %s allowed. Skip caching.",
-                             vFile.getPath(), allSizeToStore, VFSAttributesStorage.MAX_ATTRIBUTE_VALUE_SIZE));
-      return;
+  public static void removeCachedContent(@NotNull VirtualFile vFile) {
+    PerforceBaseRevisionStore.getInstance().remove(PerforceBaseRevisionStore.localKey(vFile.getPath()));
+  }
+
+  /**
+   * Loads the base revisions of the changes into {@link PerforceBaseRevisionStore} in background,
+   * so that showing their diffs later doesn't need the server.
+   * Revisions already stored or being loaded are skipped, the others are printed in batches of {@value #PRINT_BATCH_SIZE} files.
+   */
+  public static void prefetch(@NotNull Project project, @NotNull Collection<? extends ContentRevision> revisions) {
+    PerforceBaseRevisionStore store = PerforceBaseRevisionStore.getInstance();
+    if (!store.isEnabled() || !PerforceSettings.getSettings(project).ENABLED) return;
+
+    MultiMap<P4Connection, PerforceCachingContentRevision> toLoad = new MultiMap<>();
+    int count = 0;
+    for (ContentRevision revision : revisions) {
+      if (revision instanceof PerforceCachingContentRevision caching &&
+          !caching.myOffline && caching.myRevision > 0 && caching.myConnection != null && caching.myDepotPath != null &&
+          !caching.isCached() && ourPrefetching.add(caching.getPrefetchKey())) {
+        toLoad.putValue(caching.myConnection, caching);
+        if (++count >= MAX_PREFETCHED_FILES) break;
+      }
     }
-    try (DataOutputStream stream = PERFORCE_CONTENT_ATTRIBUTE.writeFileAttribute(vFile)) {
-      stream.writeLong(revision);
-      stream.writeInt(content.length);
-      stream.write(content);
+    if (toLoad.isEmpty()) return;
+
+    List<List<PerforceCachingContentRevision>> batches = new ArrayList<>();
+    for (Map.Entry<P4Connection, Collection<PerforceCachingContentRevision>> entry : toLoad.entrySet()) {
+      batches.addAll(Lists.partition(new ArrayList<>(entry.getValue()), PRINT_BATCH_SIZE));
     }
+    int prefetched = count;
+    BackgroundTaskUtil.executeOnPooledThread(PerforceDisposable.getInstance(project), () -> {
+      try {
+        P4ParallelExecutor.forEachOrdered(batches, batch -> {
+          printBatch(project, batch);
+          return null;
+        }, ignored -> {});
+      }
+      catch (VcsException e) {
+        LOG.debug(e);
+      }
+      finally {
+        for (PerforceCachingContentRevision revision : toLoad.values()) {
+          ourPrefetching.remove(revision.getPrefetchKey());
+        }
+      }
+      store.flush();
+      LOG.debug("Prefetched " + prefetched + " base revisions in " + batches.size() + " batches");
+    });
   }
 
-  public static void removeCachedContent(@NotNull VirtualFile vFile) {
+  private static void printBatch(@NotNull Project project, @NotNull List<PerforceCachingContentRevision> batch) {
+    P4Connection connection = Objects.requireNonNull(batch.get(0).myConnection);
+    List<String> fileSpecs = ContainerUtil.map(batch, revision -> revision.myDepotPath + revision.myStringRevision);
+    Map<String, byte[]> contents;
     try {
-      saveCachedContent(vFile, -1, ArrayUtilRt.EMPTY_BYTE_ARRAY);
+      contents = PerforceRunner.getInstance(project).getByteContents(fileSpecs, connection);
     }
-    catch (IOException e) {
-      LOG.info(e);
+    catch (VcsException e) {
+      LOG.debug("Failed to prefetch " + fileSpecs, e);
+      return;
+    }
+    for (PerforceCachingContentRevision revision : batch) {
+      byte[] content = contents.get(revision.myDepotPath + revision.myStringRevision);
+      if (content != null) {
+        revision.saveCachedContent(content);
+      }
     }
   }
 
+  private @NotNull String getPrefetchKey() {
+    return PerforceBaseRevisionStore.localKey(myCurrentPath.getPath()) + "#" + myRevision;
+  }
+
   public static ContentRevision create(final Project project, final FilePath path, final long haveRevision) {
+    return create(project, null, null, path, haveRevision);
+  }
+
+  /**
+   * @param depotPath the depot path of {@code path}, if known, saves an fstat when the content is loaded from the server
+   */
+  public static ContentRevision create(final Project project,
+                                       final @Nullable P4Connection connection,
+                                       final @Nullable String depotPath,
+                                       final FilePath path,
+                                       final long haveRevision) {
     if (path.getFileType().isBinary()) {
       return new PerforceBinaryContentRevision(project, path, haveRevision);
     }
-    return new PerforceCachingContentRevision(project, path, path, haveRevision, false);
+    return new PerforceCachingContentRevision(project, connection, depotPath, path, path, haveRevision, false);
   }
 
   public static ContentRevision createOffline(final Project project,
@@ -129,6 +197,6 @@ public final class PerforceCachingContentRevision extends PerforceContentRevisio
     if (path.getFileType().isBinary()) {
       return new PerforceBinaryContentRevision(project, path, -1);
     }
-    return new PerforceCachingContentRevision(project, path, currentPath, -1, true);
+    return new PerforceCachingContentRevision(project, null, null, path, currentPath, -1, true);
   }
 }
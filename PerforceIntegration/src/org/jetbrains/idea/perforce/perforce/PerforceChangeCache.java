@@ -6,6 +6,8 @@ import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.containers.ContainerUtil;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.Unmodifiable;
@@ -15,22 +17,41 @@ import org.jetbrains.idea.perforce.perforce.connections.P4Connection;
 
 import java.io.File;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class PerforceChangeCache {
+  private static final int MAX_DESCRIBED_CHANGES = 50;
+
   private final PerforceRunner myRunner;
   private final PerforceManager myPerforceManager;
   private final Map<Pair<Long, ConnectionKey>, List<PerforceChange>> myCache = new ConcurrentHashMap<>();
+  // submitted changelists likely to be asked for next, their files are fetched together
+  private final List<Long> mySubmittedNumbers;
+  private final Long2IntMap mySubmittedIndices = new Long2IntOpenHashMap();
 
   public PerforceChangeCache(Project project) {
+    this(project, Collections.emptyList());
+  }
+
+  public PerforceChangeCache(Project project, @NotNull List<Long> submittedNumbers) {
     myRunner = PerforceRunner.getInstance(project);
     myPerforceManager = PerforceManager.getInstance(project);
+    mySubmittedNumbers = submittedNumbers;
+    mySubmittedIndices.defaultReturnValue(-1);
+    for (int i = 0; i < submittedNumbers.size(); i++) {
+      mySubmittedIndices.putIfAbsent(submittedNumbers.get(i).longValue(), i);
+    }
   }
 
   public @Unmodifiable List<PerforceChange> getChanges(P4Connection connection, final long changeListNumber, final @Nullable VirtualFile vcsRoot) {
     List<PerforceChange> all = myCache.get(createKey(connection, changeListNumber));
+    if (all == null && mySubmittedIndices.containsKey(changeListNumber)) {
+      all = getSubmittedChanges(connection, changeListNumber);
+    }
     if (all == null) {
       try {
         all = myRunner.getChanges(connection, changeListNumber);
@@ -55,6 +76,27 @@ public class PerforceChangeCache {
     myCache.put(createKey(connection, changeListNumber), changes);
   }
 
+  private @Nullable List<PerforceChange> getSubmittedChanges(P4Connection connection, long changeListNumber) {
+    Set<Long> numbers = new LinkedHashSet<>();
+    numbers.add(changeListNumber);
+    // the changelists are listed newest first and are usually browsed in that order
+    for (int i = mySubmittedIndices.get(changeListNumber) + 1; i < mySubmittedNumbers.size() && numbers.size() < MAX_DESCRIBED_CHANGES; i++) {
+      Long number = mySubmittedNumbers.get(i);
+      if (!myCache.containsKey(createKey(connection, number))) {
+        numbers.add(number);
+      }
+    }
+    try {
+      Map<Long, List<PerforceChange>> changes = myRunner.getSubmittedChanges(connection, numbers);
+      changes.forEach((number, list) -> setChanges(connection, number, list));
+      return changes.get(changeListNumber);
+    }
+    catch (VcsException e) {
+      // one of the batch may be inaccessible, describe the requested changelist alone
+      return null;
+    }
+  }
+
   private static Pair<Long, ConnectionKey> createKey(P4Connection connection, long changeListNumber) {
     return new Pair<>(changeListNumber, connection.getConnectionKey());
   }
@@ -40,8 +40,8 @@ import java.io.IOException;
 
 public class PerforceContentRevision implements ByteBackedContentRevision {
   protected final Project myProject;
-  private final @Nullable P4Connection myConnection;
-  private final @Nullable String myDepotPath;
+  protected final @Nullable P4Connection myConnection;
+  protected final @Nullable String myDepotPath;
   protected final long myRevision;
   protected final String myStringRevision;
   protected FilePath myFilePath;
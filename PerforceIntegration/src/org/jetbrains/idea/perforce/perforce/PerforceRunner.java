@@ -5,6 +5,7 @@ import com.google.common.collect.Lists;
 import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.components.Service;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
@@ -13,6 +14,7 @@ import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.util.SystemInfoRt;
 import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.util.text.LineTokenizer;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.FilePath;
@@ -33,6 +35,7 @@ import com.intellij.util.ArrayUtil;
 import com.intellij.util.ArrayUtilRt;
 import com.intellij.util.SystemProperties;
 import com.intellij.util.containers.CollectionFactory;
+import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.FastUtilHashingStrategies;
 import com.intellij.util.containers.JBIterable;
 import com.intellij.util.containers.MultiMap;
@@ -53,6 +56,7 @@ import org.jetbrains.idea.perforce.application.ConnectionKey;
 import org.jetbrains.idea.perforce.application.FileGrouper;
 import org.jetbrains.idea.perforce.application.LocalPathsSet;
 import org.jetbrains.idea.perforce.application.PerforceClient;
+import org.jetbrains.idea.perforce.application.PerforceHaveListMirror;
 import org.jetbrains.idea.perforce.application.PerforceManager;
 import org.jetbrains.idea.perforce.application.PerforceNumberNameSynchronizer;
 import org.jetbrains.idea.perforce.application.PerforceShelf;
@@ -72,9 +76,11 @@ import org.jetbrains.idea.perforce.perforce.login.LoginSupport;
 import org.jetbrains.idea.perforce.perforce.login.PerforceLoginManager;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.sql.Time;
 import java.time.Instant;
@@ -141,6 +147,8 @@ public final class PerforceRunner implements PerforceRunnerI {
   public static final @NonNls String VIEW = "View:";
   public static final @NonNls String TYPE = "Type:";
 
+  public static final @NonNls String CLIENTSPEC_NAME = "Client:";
+  public static final @NonNls String CLIENTSPEC_UPDATE = "Update:";
   public static final @NonNls String CLIENTSPEC_ROOT = "Root:";
   public static final @NonNls String CLIENTSPEC_ALTROOTS = "AltRoots:";
 
@@ -158,6 +166,7 @@ public final class PerforceRunner implements PerforceRunnerI {
   public static final @NonNls String SERVER_DATE = "Server date:";
   public static final @NonNls String SERVER_LICENSE = "Server license:";
   public static final @NonNls String SERVER_VERSION = "Server version:";
+  public static final @NonNls String CASE_HANDLING = "Case Handling:";
 
   private static final @NonNls DateTimeFormatter DATE_SPEC_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd:HH:mm:ss", Locale.US).withZone(ZoneId.systemDefault());
   private static final @NonNls String NOW = "now";
@@ -166,6 +175,10 @@ public final class PerforceRunner implements PerforceRunnerI {
   public static final @NonNls String CLIENT_FILE_PREFIX = "... clientFile ";
 
   private static final int CHUNK_SIZE = SystemProperties.getIntProperty("p4.chunk.size", 2000);
+  // commands changing the have-list of the client, whose output isn't applied to the have-list mirror
+  private static final Set<String> HAVE_LIST_COMMANDS = Set.of("flush");
+  // commands editing the client spec unless they only print it
+  private static final Set<String> CLIENT_SPEC_COMMANDS = Set.of("client", "workspace");
 
   public static final String[] CHANGE_FORM_FIELDS = new String[]{CHANGE,
     DATE,
@@ -189,7 +202,8 @@ public final class PerforceRunner implements PerforceRunnerI {
     SERVER_ROOT,
     SERVER_DATE,
     SERVER_LICENSE,
-    SERVER_VERSION};
+    SERVER_VERSION,
+    CASE_HANDLING};
 
   private static final Logger LOG = Logger.getInstance(PerforceRunner.class);
   private static final Logger SPECIFICATION_LOG = Logger.getInstance("#PerforceJobSpecificationLogging");
@@ -293,16 +307,23 @@ public final class PerforceRunner implements PerforceRunnerI {
     for (P4File file : files) {
       p4Args.add(file.getEscapedPath());
     }
-    ExecResult execResult = executeP4Command(new String[]{"fstat"}, p4Args, null, new PerforceContext(connection));
+    PerforceContext context = new PerforceContext(connection);
 
     final Map<P4File, FStat> result = new LinkedHashMap<>();
-    String stderr = execResult.getStderr();
-
     final Map<String, P4File> path2File = CollectionFactory.createFilePathMap();
     for (P4File file : files) {
       path2File.put(FileUtil.toSystemIndependentName(file.getLocalPath()), file);
     }
 
+    P4ParallelExecutor.forEachOrdered(Lists.partition(new ArrayList<>(p4Args), CHUNK_SIZE),
+                                      chunk -> executeP4Command(new String[]{"fstat"}, chunk, null, context),
+                                      execResult -> parseFStatOutput(execResult, connection, path2File, result));
+    return result;
+  }
+
+  private void parseFStatOutput(ExecResult execResult, P4Connection connection, Map<String, P4File> path2File, Map<P4File, FStat> result)
+    throws VcsException {
+    String stderr = execResult.getStderr();
     for (String line : StringUtil.splitByLines(stderr)) {
       int index = line.indexOf(NO_SUCH_FILE_MESSAGE);
       if (index < 0) index = line.indexOf(NOT_IN_CLIENT_VIEW_MESSAGE);
@@ -339,7 +360,6 @@ public final class PerforceRunner implements PerforceRunnerI {
       }
       throw new VcsException(e);
     }
-    return result;
   }
 
   private static P4File getP4FileByPath(String path, Map<String, P4File> path2File) throws VcsException {
@@ -469,14 +489,20 @@ public final class PerforceRunner implements PerforceRunnerI {
     }
     arguments.append(p4File.getRecursivePath());
 
-    return executeP4Command(arguments.getArguments(), Collections.emptyList(), null, new PerforceContext(connection, true, false));
+    ExecResult result = executeP4Command(arguments.getArguments(), Collections.emptyList(), null, new PerforceContext(connection, true, false));
+    if (!"-n".equals(arg)) {
+      PerforceHaveListMirror.getInstance(myProject).syncPerformed(connection, result);
+    }
+    return result;
   }
 
   public ExecResult sync(P4File p4File, String revision) throws VcsException {
     p4File.invalidateFstat();
     P4Connection connection = getNotNullConnection(p4File);
     CommandArguments arguments = CommandArguments.createOn(P4Command.sync).append(p4File.getRecursivePath() + "@" + revision);
-    return executeP4Command(arguments.getArguments(), Collections.emptyList(), null, new PerforceContext(connection, true, false));
+    ExecResult result = executeP4Command(arguments.getArguments(), Collections.emptyList(), null, new PerforceContext(connection, true, false));
+    PerforceHaveListMirror.getInstance(myProject).syncPerformed(connection, result);
+    return result;
   }
 
   // todo ? not sure for move+add/delete cases
@@ -652,6 +678,47 @@ public final class PerforceRunner implements PerforceRunnerI {
     return result;
   }
 
+  /**
+   * Files of submitted changelists. Those known to {@link PerforceSubmittedChangesStore} are taken from it, the rest are described
+   * in one command and stored.
+   */
+  public Map<Long, List<PerforceChange>> getSubmittedChanges(@NotNull P4Connection connection, @NotNull Collection<Long> numbers)
+    throws VcsException {
+    final PerforceClient client = myPerforceManager.getClient(connection);
+    PerforceSubmittedChangesStore store = PerforceSubmittedChangesStore.isEnabled() ? PerforceSubmittedChangesStore.getInstance() : null;
+
+    Map<Long, List<PerforceChange>> result = new HashMap<>();
+    List<Long> toDescribe = new ArrayList<>();
+    for (Long number : numbers) {
+      List<PerforceSubmittedChangesStore.FileAction> actions = store == null ? null : store.getFileActions(connection, number);
+      if (actions == null) {
+        toDescribe.add(number);
+        continue;
+      }
+      List<PerforceChange> changes = new ArrayList<>(actions.size());
+      for (PerforceSubmittedChangesStore.FileAction action : actions) {
+        changes.add(new PerforceChange(action.type(), PerforceManager.getFileByDepotName(action.depotPath(), client),
+                                       action.depotPath(), action.revision(), number, null));
+      }
+      result.put(number, changes);
+    }
+    if (toDescribe.isEmpty()) {
+      return result;
+    }
+
+    Map<Long, List<PerforceSubmittedChangesStore.FileAction>> described = new HashMap<>();
+    for (Map.Entry<Long, Pair<ChangeListData, List<FileChange>>> entry : describeAll(connection, toDescribe, false).entrySet()) {
+      List<FileChange> fileChanges = entry.getValue().second;
+      result.put(entry.getKey(), createPerforceChanges(client, entry.getValue().first, fileChanges));
+      described.put(entry.getKey(), ContainerUtil.map(fileChanges, change -> new PerforceSubmittedChangesStore.FileAction(
+        change.getType(), change.getDepotPath(), change.getRevisionAfter())));
+    }
+    if (store != null) {
+      store.putFileActions(connection, described);
+    }
+    return result;
+  }
+
   private Map<Long, Pair<ChangeListData, List<FileChange>>> describeAll(P4Connection connection, List<Long> lists, boolean shelved) throws VcsException {
     CommandArguments args = CommandArguments.createOn(P4Command.describe);
     args.append("-s");
@@ -901,6 +968,7 @@ public final class PerforceRunner implements PerforceRunnerI {
       final ExecResult execResult = executeP4Command(arguments.getArguments(), changeData, connection);
       checkError(execResult, connection);
       submittedRevision = getSubmittedRevisionNumber(execResult, "Change (\\d+) created with ", 1);
+      PerforceHaveListMirror.getInstance(myProject).submitPerformed(connection, execResult, changesForConnection, submittedRevision);
     }
     else {
       CommandArguments arguments = CommandArguments.createOn(P4Command.change);
@@ -911,6 +979,7 @@ public final class PerforceRunner implements PerforceRunnerI {
       ExecResult execResult = executeP4Command(arguments.getArguments(), connection);
       checkError(execResult, connection);
       submittedRevision = getSubmittedRevisionNumber(execResult, "Change (\\d+) renamed change (\\d+) and ", 2);
+      PerforceHaveListMirror.getInstance(myProject).submitPerformed(connection, execResult, changesForConnection, submittedRevision);
 
       if (!excludedChanges.isEmpty()) {
         LOG.debug("Reopening excluded changes in new changelist");
@@ -1014,7 +1083,16 @@ public final class PerforceRunner implements PerforceRunnerI {
     String interval = dateSpec(settings.getDateAfterFilter(), settings.getDateBeforeFilter(), settings.getChangeAfterFilter(),
                         settings.getChangeBeforeFilter(), settings.STRICTLY_AFTER);
     final List<String> fileSpecs = List.of(rootP4File.getRecursivePath() + interval);
-    return getSubmittedChangeLists(getNotNullConnection(rootP4File), client, user, maxCount, showIntegrated, fileSpecs);
+    P4Connection connection = getNotNullConnection(rootP4File);
+    if (PerforceSubmittedChangesStore.isEnabled()) {
+      List<ChangeListData> stored = PerforceSubmittedChangesStore.getInstance().query(
+        connection, rootP4File.getRecursivePath(), showIntegrated, client, user, settings, maxCount,
+        (spec, limit) -> querySubmittedChanges(connection, null, null, limit, showIntegrated, List.of(spec)));
+      if (stored != null) {
+        return createSubmittedChangeLists(connection, stored);
+      }
+    }
+    return getSubmittedChangeLists(connection, client, user, maxCount, showIntegrated, fileSpecs);
   }
 
   public List<PerforceChangeList> getSubmittedChangeLists(@NotNull P4Connection connection,
@@ -1022,6 +1100,19 @@ public final class PerforceRunner implements PerforceRunnerI {
                                                            @Nullable String user,
                                                            int maxCount, boolean showIntegrated, List<String> fileSpecs)
     throws VcsException {
+    return createSubmittedChangeLists(connection, querySubmittedChanges(connection, client, user, maxCount, showIntegrated, fileSpecs));
+  }
+
+  private List<PerforceChangeList> createSubmittedChangeLists(@NotNull P4Connection connection, @NotNull List<ChangeListData> changes) {
+    PerforceChangeCache changeCache = new PerforceChangeCache(myProject, ContainerUtil.map(changes, data -> data.NUMBER));
+    return ContainerUtil.map(changes, data -> new PerforceChangeList(data, myProject, connection, changeCache));
+  }
+
+  private List<ChangeListData> querySubmittedChanges(@NotNull P4Connection connection,
+                                                     @Nullable String client,
+                                                     @Nullable String user,
+                                                     int maxCount, boolean showIntegrated, List<String> fileSpecs)
+    throws VcsException {
     final CommandArguments arguments = CommandArguments.createOn(P4Command.changes);
     arguments.append("-s").append("submitted");
     if (showIntegrated) {
@@ -1046,7 +1137,23 @@ public final class PerforceRunner implements PerforceRunnerI {
 
     final ExecResult execResult = executeP4Command(arguments.getArguments(), connection);
     checkError(execResult, connection);
-    return parsePerforceChangeLists(execResult.getStdout(), connection, new PerforceChangeCache(myProject));
+    return OutputMessageParser.processChangesOutput(execResult.getStdout());
+  }
+
+  /**
+   * @return a cheap high-water mark of the have-list of the client: the latest changelist submitted to the server.
+   * It moves on submits, done in the IDE or not, but not on syncs.
+   */
+  public @NotNull String getHaveListStamp(@NotNull P4Connection connection) throws VcsException {
+    List<Long> changes = getLatestSubmittedChanges(connection, 1);
+    return String.valueOf(changes.isEmpty() ? 0 : changes.get(0));
+  }
+
+  /**
+   * @return numbers of the latest changelists submitted to the server, newest first
+   */
+  public @NotNull List<Long> getLatestSubmittedChanges(@NotNull P4Connection connection, int maxCount) throws VcsException {
+    return ContainerUtil.map(querySubmittedChanges(connection, null, null, maxCount, false, Collections.emptyList()), data -> data.NUMBER);
   }
 
   private static String dateSpec(final Date after, final Date before, final Long afterChange, final Long beforeChange, boolean strictlyAfter) {
@@ -1230,9 +1337,9 @@ public final class PerforceRunner implements PerforceRunnerI {
     final ExecResult execResult = executeP4Command(p4args, connection);
     checkError(execResult, connection);
 
-    return FormParser.execute(execResult.getStdout(), new String[]{"Client:",
+    return FormParser.execute(execResult.getStdout(), new String[]{CLIENTSPEC_NAME,
       "Owner:",
-      "Update:",
+      CLIENTSPEC_UPDATE,
       "Access:",
       "Host:",
       "Description:",
@@ -1270,6 +1377,59 @@ public final class PerforceRunner implements PerforceRunnerI {
     }
   }
 
+  /**
+   * Prints several file revisions with one {@code p4 -G print}. The output is read as ISO-8859-1, which maps each byte to a char,
+   * so that the contents keep their bytes. Missing revisions and files exceeding the content size limit are left out of the result.
+   *
+   * @param fileSpecs depot paths with revisions, e.g. {@code //depot/a.txt#3}
+   * @return the contents by {@code depotPath#revision}
+   */
+  public @NotNull Map<String, byte[]> getByteContents(@NotNull List<String> fileSpecs, @NotNull P4Connection connection) throws VcsException {
+    Map<String, byte[]> contents = new HashMap<>();
+    ExecResult execResult = executeP4Command(new String[]{"-G", "print"}, fileSpecs, null, new PerforceContext(connection), (stdout, result) -> {
+      P4MarshalReader reader = new P4MarshalReader(stdout, StandardCharsets.ISO_8859_1);
+      String fileSpec = null;
+      ByteArrayOutputStream content = null;
+      P4Record record;
+      while ((record = reader.next()) != null) {
+        String code = record.getCode();
+        if ("stat".equals(code)) {
+          if (content != null) contents.put(fileSpec, content.toByteArray());
+          fileSpec = toCharset(record.get("depotFile"), result.getCharset()) + "#" + record.get("rev");
+          content = isWithinContentSizeLimit(fileSpec, record.get("fileSize")) ? new ByteArrayOutputStream() : null;
+        }
+        else if ("text".equals(code) || "binary".equals(code)) {
+          String data = record.get("data");
+          if (content != null && data != null) content.writeBytes(data.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        else if (record.isError() && record.getGeneric() != P4Record.GENERIC_EMPTY) {
+          result.appendStreamedStderr(toCharset(record.getMessage(), result.getCharset()));
+        }
+      }
+      if (content != null) contents.put(fileSpec, content.toByteArray());
+    });
+    if (execResult.getException() instanceof ProcessCanceledException pce) {
+      throw pce;
+    }
+    checkError(execResult, connection);
+    return contents;
+  }
+
+  private static String toCharset(@Nullable String latin1, @NotNull Charset charset) {
+    return latin1 == null ? "" : new String(latin1.getBytes(StandardCharsets.ISO_8859_1), charset);
+  }
+
+  private static boolean isWithinContentSizeLimit(@NotNull String fileSpec, @Nullable String fileSize) {
+    if (fileSize == null) return true;
+    try {
+      ContentRevisionCache.checkContentsSize(fileSpec, Long.parseLong(fileSize));
+      return true;
+    }
+    catch (VcsException | NumberFormatException e) {
+      return false;
+    }
+  }
+
   public byte @NotNull [] getContent(final FilePath file, final String revisionNumber) throws VcsException {
     P4File p4File = P4File.create(file);
     return getByteContent(getDepotPath(p4File), revisionNumber, getNotNullConnection(p4File));
@@ -1493,21 +1653,14 @@ public final class PerforceRunner implements PerforceRunnerI {
 
     PerforceContext context = new PerforceContext(connection, longTimeout, false);
 
-    for (List<String> chunk : Lists.partition(new ArrayList<>(new LinkedHashSet<>(filesSpec)), CHUNK_SIZE)) {
-      final ExecResult execResult = executeP4Command(new String[]{consumer.getCommand().getName()}, chunk, null, context);
-      final String stderr = execResult.getStderr();
-      final boolean notUnderRoot =
-        stderr.contains(NOT_OPENED_ON_CLIENT_MESSAGE) || stderr.contains(NOT_ON_CLIENT_MESSAGE) || stderr.contains(NOT_UNDER_CLIENT_ROOT_MESSAGE);
-      if (! notUnderRoot) {
-        // Perforce bug: if ask "p4 have <local path>/*" or "p4 opened <local path>/*" and in <local path> directory it would be unversioned file with symbols
-        // that should be escaped, Perforce reports "Invalid revision number" somewhy
-        // since we do NOT pass revision number in have string, we can filter out this message and use other strings of output
-        if (! stderr.contains(INVALID_REVISION_NUMBER)) {
-          checkError(execResult, connection);
-        }
-      } else {
-        LOG.debug("Problem while doing '" + consumer.getCommand().getName() + "': " + stderr);
-      }
+    List<List<String>> chunks = Lists.partition(new ArrayList<>(new LinkedHashSet<>(filesSpec)), CHUNK_SIZE);
+    if (consumer instanceof P4TaggedParser taggedParser && Registry.is("p4.use.tagged.output")) {
+      // records are pushed to the parser while the chunks are running
+      P4ParallelExecutor.forEachOrdered(chunks, chunk -> executeTaggedChunk(chunk, connection, taggedParser, context), execResult -> {});
+      return;
+    }
+    // chunks are executed in parallel, but parsed one by one in their order, as parsers aren't thread-safe
+    P4ParallelExecutor.forEachOrdered(chunks, chunk -> executeChunk(chunk, connection, consumer, context), execResult -> {
       final Ref<VcsException> vcsExceptionRef = new Ref<>();
       try {
         execResult.allowSafeStdoutUsage(inputStream -> {
@@ -1525,7 +1678,48 @@ public final class PerforceRunner implements PerforceRunnerI {
       if (! vcsExceptionRef.isNull()) {
         throw vcsExceptionRef.get();
       }
+    });
+  }
+
+  private ExecResult executeTaggedChunk(@NotNull List<String> chunk,
+                                        @NotNull P4Connection connection,
+                                        @NotNull P4TaggedParser consumer,
+                                        @NotNull PerforceContext context) throws VcsException {
+    String[] command = {"-G", consumer.getCommand().getName()};
+    ExecResult execResult = executeP4Command(command, chunk, null, context, consumer::readRecords);
+    Throwable exception = execResult.getException();
+    if (exception instanceof ProcessCanceledException pce) {
+      throw pce;
+    }
+    if (exception instanceof IOException && exception.getCause() instanceof VcsException vcsException) {
+      throw vcsException;
+    }
+    return checkChunkErrors(execResult, connection, consumer);
+  }
+
+  private ExecResult executeChunk(@NotNull List<String> chunk,
+                                  @NotNull P4Connection connection,
+                                  @NotNull P4Parser consumer,
+                                  @NotNull PerforceContext context) throws VcsException {
+    return checkChunkErrors(executeP4Command(new String[]{consumer.getCommand().getName()}, chunk, null, context), connection, consumer);
+  }
+
+  private ExecResult checkChunkErrors(@NotNull ExecResult execResult, @NotNull P4Connection connection, @NotNull P4Parser consumer)
+    throws VcsException {
+    final String stderr = execResult.getStderr();
+    final boolean notUnderRoot =
+      stderr.contains(NOT_OPENED_ON_CLIENT_MESSAGE) || stderr.contains(NOT_ON_CLIENT_MESSAGE) || stderr.contains(NOT_UNDER_CLIENT_ROOT_MESSAGE);
+    if (! notUnderRoot) {
+      // Perforce bug: if ask "p4 have <local path>/*" or "p4 opened <local path>/*" and in <local path> directory it would be unversioned file with symbols
+      // that should be escaped, Perforce reports "Invalid revision number" somewhy
+      // since we do NOT pass revision number in have string, we can filter out this message and use other strings of output
+      if (! stderr.contains(INVALID_REVISION_NUMBER)) {
+        checkError(execResult, connection);
+      }
+    } else {
+      LOG.debug("Problem while doing '" + consumer.getCommand().getName() + "': " + stderr);
     }
+    return execResult;
   }
 
   public P4Revision[] filelog(final P4File file, boolean showBranches) throws VcsException {
@@ -1584,16 +1778,23 @@ public final class PerforceRunner implements PerforceRunnerI {
   }
 
   public AnnotationInfo annotate(P4Connection connection, String filePath, long revision) throws VcsException {
+    return annotate(connection, filePath, -1, revision);
+  }
+
+  /**
+   * @param fromRevision if positive, only revisions starting with it are considered,
+   *                     lines last changed before it are reported as changed in {@code fromRevision}
+   */
+  public AnnotationInfo annotate(P4Connection connection, String filePath, long fromRevision, long revision) throws VcsException {
     if (revision != -1) {
-      filePath += "#" + revision;
+      filePath += fromRevision > 0 ? "#" + fromRevision + ",#" + revision : "#" + revision;
     }
     List<String> commands = new ArrayList<>();
     commands.add("annotate");
     commands.add("-q");
-    boolean useChangelistNumbers = false;
-    if (mySettings.SHOW_BRANCHES_HISTORY && isAnnotateBranchSupported(connection)) {
+    boolean useChangelistNumbers = isAnnotateUsingChangelistNumbers(connection);
+    if (useChangelistNumbers) {
       commands.add("-i");
-      useChangelistNumbers = true;
     }
     if (isAnnotateIgnoringWhitespaceSupported(connection)) {
       commands.add("-dw");
@@ -1611,6 +1812,13 @@ public final class PerforceRunner implements PerforceRunnerI {
     }
   }
 
+  /**
+   * @return whether annotations follow integrations and report changelist numbers instead of revisions of the file
+   */
+  public boolean isAnnotateUsingChangelistNumbers(final @Nullable P4Connection connection) throws VcsException {
+    return mySettings.SHOW_BRANCHES_HISTORY && isAnnotateBranchSupported(connection);
+  }
+
   private boolean isAnnotateBranchSupported(final @Nullable P4Connection connection) throws VcsException {
     ServerVersion version = myPerforceManager.getServerVersion(connection);
     if (version == null) return false;
@@ -1687,8 +1895,20 @@ public final class PerforceRunner implements PerforceRunnerI {
   }
 
   private ExecResult executeP4Command(@NonNls String[] p4cmd, Collection<String> args, final @Nullable StringBuffer inputStream, @NotNull PerforceContext ctx) {
+    return executeP4Command(p4cmd, args, inputStream, ctx, null);
+  }
+
+  /**
+   * @param outputConsumer reads stdout while the command is running, see {@link ExecResult#setOutputConsumer}
+   */
+  private ExecResult executeP4Command(@NonNls String[] p4cmd,
+                                      Collection<String> args,
+                                      final @Nullable StringBuffer inputStream,
+                                      @NotNull PerforceContext ctx,
+                                      @Nullable ExecResult.OutputConsumer outputConsumer) {
     // construct the command-line
     final ExecResult retVal = new ExecResult();
+    retVal.setOutputConsumer(outputConsumer);
     if (!mySettings.ENABLED) {
       retVal.setException(new VcsException(PerforceBundle.message("exception.text.perforce.integration.is.disabled")));
       retVal.setStderr(PerforceBundle.message("exception.text.perforce.integration.is.disabled"));
@@ -1733,12 +1953,19 @@ public final class PerforceRunner implements PerforceRunnerI {
       logMessage("\n" + retVal);
     }
 
+    if (HAVE_LIST_COMMANDS.contains(getCommandName(p4cmd))) {
+      PerforceHaveListMirror.getInstance(myProject).invalidateAll();
+    }
+    if (CLIENT_SPEC_COMMANDS.contains(getCommandName(p4cmd)) && !ArrayUtil.contains("-o", p4cmd) && !args.contains("-o")) {
+      myPerforceManager.clientSpecChanged(ctx.connection);
+    }
+
     if (mySettings.USE_LOGIN && (retVal.getStderr().contains(SESSION_EXPIRED_MESSAGE) || retVal.getStderr().contains(PASSWORD_INVALID_MESSAGE))) {
       myLoginManager.notLogged(ctx.connection);
       try {
         if (!ctx.justLogged && myLoginManager.silentLogin(ctx.connection)) {
           retVal.cleanup();
-          return executeP4Command(p4cmd, args, inputStream, new PerforceContext(ctx.connection, ctx.longTimeout, true));
+          return executeP4Command(p4cmd, args, inputStream, new PerforceContext(ctx.connection, ctx.longTimeout, true), outputConsumer);
         }
       }
       catch (VcsException e) {
@@ -1756,6 +1983,13 @@ public final class PerforceRunner implements PerforceRunnerI {
     return retVal;
   }
 
+  private static @NotNull String getCommandName(String[] p4cmd) {
+    for (String arg : p4cmd) {
+      if (!arg.startsWith("-")) return arg;
+    }
+    return "";
+  }
+
   private static File createArgumentFile(Collection<String> args) throws VcsException {
     try {
       File tempFile = FileUtil.createTempFile("p4batch", ".txt");
@@ -1899,6 +2133,11 @@ public final class PerforceRunner implements PerforceRunnerI {
   }
 
   public @NotNull P4WhereResult where(final String escapedPath, final P4Connection connection) throws VcsException {
+    P4WhereResult mapped = whereByClientView(escapedPath, connection);
+    if (mapped != null) {
+      return mapped;
+    }
+
     final ExecResult execResult = executeP4Command(new String[]{"where", escapedPath}, connection);
     checkError(execResult, connection);
 
@@ -1925,6 +2164,39 @@ public final class PerforceRunner implements PerforceRunnerI {
                              parser.getDepot());
   }
 
+  /**
+   * Answers {@code p4 where} for a plain local or depot path from the cached client view, without asking the server.
+   * Returns null if the answer isn't certain: for paths with wildcards, unmapped paths, or depot paths of a client with AltRoots.
+   */
+  private @Nullable P4WhereResult whereByClientView(String escapedPath, P4Connection connection) throws VcsException {
+    if (!Registry.is("p4.where.client.view.mapping") || escapedPath.contains("...") || escapedPath.contains("*")) {
+      return null;
+    }
+    ClientViewMapping mapping = myPerforceManager.getViewMapping(connection);
+    if (mapping == null) return null;
+
+    List<String> roots = ContainerUtil.map(myPerforceManager.getClient(connection).getRoots(),
+                                           root -> StringUtil.trimEnd(FileUtil.toSystemIndependentName(root), "/"));
+    if (escapedPath.startsWith("//")) {
+      String clientPath = mapping.depotToClient(escapedPath);
+      if (clientPath == null || roots.size() != 1) return null;
+      String local = roots.get(0) + "/" + P4File.unescapeWildcards(clientPath.substring(mapping.getClientPrefix().length()));
+      return new P4WhereResult(myPerforceManager.convertP4ParsedPath(null, local), clientPath, escapedPath);
+    }
+
+    String path = FileUtil.toSystemIndependentName(escapedPath);
+    for (String root : roots) {
+      String escapedRoot = P4File.escapeWildcards(root);
+      if (path.length() > escapedRoot.length() && FileUtil.startsWith(path, escapedRoot, SystemInfoRt.isFileSystemCaseSensitive)) {
+        String clientPath = mapping.getClientPrefix() + StringUtil.trimStart(path.substring(escapedRoot.length()), "/");
+        String depotPath = mapping.clientToDepot(clientPath);
+        if (depotPath == null) return null;
+        return new P4WhereResult(myPerforceManager.convertP4ParsedPath(null, P4File.unescapeWildcards(path)), clientPath, depotPath);
+      }
+    }
+    return null;
+  }
+
   private static String getLastLine(ExecResult execResult) throws VcsException {
     final String result = execResult.getStdout();
     final String[] lines = result.trim().split("\n");
@@ -0,0 +1,471 @@
+// Copyright 2000-2026 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package org.jetbrains.idea.perforce.perforce;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vcs.versionBrowser.ChangeBrowserSettings;
+import com.intellij.util.io.DigestUtil;
+import com.intellij.util.io.IOUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+import org.jetbrains.annotations.VisibleForTesting;
+import org.jetbrains.idea.perforce.ChangeListData;
+import org.jetbrains.idea.perforce.perforce.connections.P4Connection;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local copy of the submitted changelists of a depot path, so that the repository view and the history of a root
+ * don't list them from the server every time.
+ * <p>
+ * For every server, client, root and {@code -i} flag the store keeps an append-only log of the changelists and the range of
+ * changelist numbers it covers without gaps. Queries first fetch the changelists above the covered range, then are answered
+ * from the log; older changelists are fetched page by page only when the requested window reaches below the covered range.
+ * Windows entirely below the covered range, or needing too many pages, are left to the server ({@link #query} returns null).
+ * <p>
+ * Descriptions may be edited after submit: at most every {@value #REVALIDATION_INTERVAL_MS} ms the newest
+ * {@value #REVALIDATED_CHANGES} changelists are fetched again, and those which differ replace the stored ones.
+ * <p>
+ * The files of submitted changelists never change, so their actions are kept in a separate log per server.
+ * <p>
+ * Disabled with the {@code p4.submitted.changes.store} registry key.
+ */
+@Service(Service.Level.APP)
+public final class PerforceSubmittedChangesStore implements Disposable {
+  private static final Logger LOG = Logger.getInstance(PerforceSubmittedChangesStore.class);
+  private static final int PAGE_SIZE = 1000;
+  private static final int MAX_PAGES_PER_QUERY = 10;
+  // after a longer absence the changes in between aren't fetched, the covered range starts anew
+  private static final int MAX_REFRESHED_CHANGES = 10_000;
+  private static final int REVALIDATED_CHANGES = 100;
+  private static final long REVALIDATION_INTERVAL_MS = 10 * 60 * 1000;
+
+  private final Path myDir;
+  private final long myRevalidationIntervalMs;
+  private final Map<String, ChangesLog> myChangeLogs = new HashMap<>();
+  private final Map<String, NumberedRecordLog> myFileLogs = new HashMap<>();
+
+  public PerforceSubmittedChangesStore() {
+    this(PathManager.getSystemDir().resolve("perforce").resolve("submitted-changes"), REVALIDATION_INTERVAL_MS);
+  }
+
+  @TestOnly
+  PerforceSubmittedChangesStore(@NotNull Path dir, long revalidationIntervalMs) {
+    myDir = dir;
+    myRevalidationIntervalMs = revalidationIntervalMs;
+  }
+
+  public static PerforceSubmittedChangesStore getInstance() {
+    return ApplicationManager.getApplication().getService(PerforceSubmittedChangesStore.class);
+  }
+
+  public static boolean isEnabled() {
+    return Registry.is("p4.submitted.changes.store");
+  }
+
+  /**
+   * Source of changelists, {@code p4 changes -s submitted -l [-i] [-m maxCount] fileSpec}, without client and user filters.
+   */
+  interface Fetcher {
+    @NotNull List<ChangeListData> fetch(@NotNull String fileSpec, int maxCount) throws VcsException;
+  }
+
+  /**
+   * @param rootSpec recursive spec of the root, without a revision
+   * @return the changelists of the window, newest first, or null if the window should be queried on the server
+   */
+  @Nullable List<ChangeListData> query(@NotNull P4Connection connection,
+                                       @NotNull String rootSpec,
+                                       boolean showIntegrated,
+                                       @Nullable String client,
+                                       @Nullable String user,
+                                       @NotNull ChangeBrowserSettings settings,
+                                       int maxCount,
+                                       @NotNull Fetcher fetcher) throws VcsException {
+    String logKey = connection.getConnectionKey().getServer() + "\n" + connection.getConnectionKey().getClient() + "\n" +
+                    rootSpec + "\n" + showIntegrated;
+    return query(logKey, rootSpec, client, user, settings, maxCount, fetcher);
+  }
+
+  @VisibleForTesting
+  @Nullable List<ChangeListData> query(@NotNull String logKey,
+                                       @NotNull String rootSpec,
+                                       @Nullable String client,
+                                       @Nullable String user,
+                                       @NotNull ChangeBrowserSettings settings,
+                                       int maxCount,
+                                       @NotNull Fetcher fetcher) throws VcsException {
+    ChangesLog log = getChangesLog(logKey);
+    if (log == null) return null;
+
+    Window window = new Window(settings, client, user);
+    synchronized (log) {
+      try {
+        refreshTop(log, rootSpec, fetcher);
+        for (int page = 0; ; page++) {
+          List<ChangeListData> result = collect(log, window, maxCount);
+          if (maxCount > 0 && result.size() >= maxCount || log.complete || log.high == 0) return result;
+
+          ChangeListData oldest = readChange(log, log.low);
+          if (oldest == null) return null;
+          if (window.changeAfter != null && window.changeAfter >= log.low) return result;
+          if (window.dateAfter != null && !parseDate(oldest).after(window.dateAfter)) return result;
+          // the window is entirely older than the covered range
+          if (window.changeBefore != null && window.changeBefore < log.low) return null;
+          if (window.dateBefore != null && parseDate(oldest).after(window.dateBefore)) return null;
+          if (page == MAX_PAGES_PER_QUERY) return null;
+
+          fetchOlder(log, rootSpec, fetcher);
+        }
+      }
+      catch (IOException e) {
+        LOG.info("Failed to use submitted changes of " + rootSpec, e);
+        return null;
+      }
+    }
+  }
+
+  public @Nullable List<FileAction> getFileActions(@NotNull P4Connection connection, long number) {
+    NumberedRecordLog log = getFileLog(connection);
+    if (log == null) return null;
+    try {
+      byte[] data = log.read(number);
+      return data == null ? null : readFileActions(data);
+    }
+    catch (IOException e) {
+      LOG.info("Failed to read files of change " + number, e);
+      return null;
+    }
+  }
+
+  public void putFileActions(@NotNull P4Connection connection, @NotNull Map<Long, List<FileAction>> actions) {
+    NumberedRecordLog log = getFileLog(connection);
+    if (log == null || actions.isEmpty()) return;
+    Map<Long, byte[]> records = new LinkedHashMap<>();
+    for (Map.Entry<Long, List<FileAction>> entry : actions.entrySet()) {
+      records.put(entry.getKey(), writeFileActions(entry.getValue()));
+    }
+    try {
+      log.append(records);
+    }
+    catch (IOException e) {
+      LOG.info("Failed to store files of changes " + actions.keySet(), e);
+    }
+  }
+
+  @Override
+  public synchronized void dispose() {
+    for (ChangesLog log : myChangeLogs.values()) {
+      closeQuietly(log.records);
+    }
+    for (NumberedRecordLog log : myFileLogs.values()) {
+      closeQuietly(log);
+    }
+    myChangeLogs.clear();
+    myFileLogs.clear();
+  }
+
+  private void refreshTop(ChangesLog log, String rootSpec, Fetcher fetcher) throws VcsException, IOException {
+    if (log.high == 0) {
+      List<ChangeListData> changes = fetcher.fetch(rootSpec, PAGE_SIZE);
+      log.revalidatedAt = System.currentTimeMillis();
+      if (changes.isEmpty()) return;
+      append(log, changes);
+      log.setRange(minNumber(changes), maxNumber(changes), changes.size() < PAGE_SIZE);
+      return;
+    }
+
+    if (System.currentTimeMillis() - log.revalidatedAt >= myRevalidationIntervalMs) {
+      List<ChangeListData> changes = fetcher.fetch(rootSpec, REVALIDATED_CHANGES);
+      log.revalidatedAt = System.currentTimeMillis();
+      // otherwise there are more new changes than fetched, they are fetched below
+      if (!changes.isEmpty() && minNumber(changes) <= log.high) {
+        update(log, changes);
+        boolean all = changes.size() < REVALIDATED_CHANGES;
+        log.setRange(all ? minNumber(changes) : Math.min(log.low, minNumber(changes)), Math.max(log.high, maxNumber(changes)),
+                     all || log.complete);
+        return;
+      }
+    }
+
+    List<ChangeListData> changes = fetcher.fetch(rootSpec + "@" + (log.high + 1) + ",@now", MAX_REFRESHED_CHANGES);
+    if (changes.isEmpty()) return;
+    append(log, changes);
+    if (changes.size() >= MAX_REFRESHED_CHANGES) {
+      log.setRange(minNumber(changes), maxNumber(changes), false);
+    }
+    else {
+      log.setRange(log.low, maxNumber(changes), log.complete);
+    }
+  }
+
+  private static void fetchOlder(ChangesLog log, String rootSpec, Fetcher fetcher) throws VcsException, IOException {
+    List<ChangeListData> changes = log.low <= 1 ? List.of() : fetcher.fetch(rootSpec + "@1,@" + (log.low - 1), PAGE_SIZE);
+    append(log, changes);
+    log.setRange(changes.isEmpty() ? log.low : minNumber(changes), log.high, changes.size() < PAGE_SIZE);
+  }
+
+  private static List<ChangeListData> collect(ChangesLog log, Window window, int maxCount) throws IOException {
+    List<ChangeListData> result = new ArrayList<>();
+    if (log.high == 0) return result;
+    long from = window.changeAfter == null ? log.low : Math.max(log.low, window.changeAfter);
+    long to = window.changeBefore == null ? log.high : Math.min(log.high, window.changeBefore);
+    IOException[] error = new IOException[1];
+    log.records.forEachDescending(from, to, number -> {
+      try {
+        ChangeListData data = readChange(log, number);
+        if (data != null && window.accepts(data)) {
+          result.add(data);
+        }
+        return maxCount <= 0 || result.size() < maxCount;
+      }
+      catch (IOException e) {
+        error[0] = e;
+        return false;
+      }
+    });
+    if (error[0] != null) throw error[0];
+    return result;
+  }
+
+  private static void append(ChangesLog log, List<ChangeListData> changes) throws IOException {
+    Map<Long, byte[]> records = new LinkedHashMap<>();
+    for (ChangeListData data : changes) {
+      records.put(data.NUMBER, writeChange(data));
+    }
+    log.records.append(records);
+  }
+
+  // appends new changes and replaces those edited since they were stored
+  private static void update(ChangesLog log, List<ChangeListData> changes) throws IOException {
+    Map<Long, byte[]> records = new LinkedHashMap<>();
+    for (ChangeListData data : changes) {
+      byte[] record = writeChange(data);
+      if (!Arrays.equals(record, log.records.read(data.NUMBER))) {
+        records.put(data.NUMBER, record);
+      }
+    }
+    if (!records.isEmpty()) {
+      log.records.replace(records);
+    }
+  }
+
+  private static @Nullable ChangeListData readChange(ChangesLog log, long number) throws IOException {
+    byte[] bytes = log.records.read(number);
+    if (bytes == null) return null;
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+    ChangeListData data = new ChangeListData();
+    data.NUMBER = number;
+    data.DATE = in.readUTF();
+    data.USER = in.readUTF();
+    data.CLIENT = in.readUTF();
+    data.DESCRIPTION = IOUtil.readUTF(in);
+    return data;
+  }
+
+  private static byte[] writeChange(ChangeListData data) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeUTF(data.DATE);
+    out.writeUTF(data.USER);
+    out.writeUTF(data.CLIENT);
+    IOUtil.writeUTF(out, data.DESCRIPTION);
+    return bytes.toByteArray();
+  }
+
+  private static List<FileAction> readFileActions(byte[] bytes) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+    int count = in.readInt();
+    List<FileAction> actions = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      actions.add(new FileAction(in.readByte(), IOUtil.readUTF(in), in.readLong()));
+    }
+    return actions;
+  }
+
+  private static byte[] writeFileActions(List<FileAction> actions) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(actions.size());
+      for (FileAction action : actions) {
+        out.writeByte(action.type());
+        IOUtil.writeUTF(out, action.depotPath());
+        out.writeLong(action.revision());
+      }
+      return bytes.toByteArray();
+    }
+    catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private synchronized @Nullable ChangesLog getChangesLog(String key) {
+    ChangesLog log = myChangeLogs.get(key);
+    if (log == null) {
+      String name = DigestUtil.sha256Hex(key.getBytes(StandardCharsets.UTF_8)).substring(0, 32);
+      try {
+        log = new ChangesLog(NumberedRecordLog.open(myDir.resolve(name + ".changes")), myDir.resolve(name + ".range"));
+        myChangeLogs.put(key, log);
+      }
+      catch (IOException e) {
+        LOG.info("Failed to open submitted changes of " + key, e);
+        return null;
+      }
+    }
+    return log;
+  }
+
+  private synchronized @Nullable NumberedRecordLog getFileLog(P4Connection connection) {
+    String server = connection.getConnectionKey().getServer();
+    NumberedRecordLog log = myFileLogs.get(server);
+    if (log == null) {
+      String name = DigestUtil.sha256Hex(server.getBytes(StandardCharsets.UTF_8)).substring(0, 32);
+      try {
+        log = NumberedRecordLog.open(myDir.resolve(name + ".files"));
+        myFileLogs.put(server, log);
+      }
+      catch (IOException e) {
+        LOG.info("Failed to open changed files of " + server, e);
+        return null;
+      }
+    }
+    return log;
+  }
+
+  private static long minNumber(List<ChangeListData> changes) {
+    return changes.stream().mapToLong(data -> data.NUMBER).min().orElse(0);
+  }
+
+  private static long maxNumber(List<ChangeListData> changes) {
+    return changes.stream().mapToLong(data -> data.NUMBER).max().orElse(0);
+  }
+
+  private static Date parseDate(ChangeListData data) {
+    try {
+      return Date.from(Instant.from(data.DATE.indexOf(':') >= 0 ? ChangeListData.DATE_FORMAT.parse(data.DATE)
+                                                                 : ChangeListData.DATE_ONLY_FORMAT.parse(data.DATE)));
+    }
+    catch (DateTimeParseException e) {
+      return new Date(0);
+    }
+  }
+
+  private static void closeQuietly(NumberedRecordLog log) {
+    try {
+      log.close();
+    }
+    catch (IOException e) {
+      LOG.debug(e);
+    }
+  }
+
+  /**
+   * A file changed by a submitted changelist.
+   *
+   * @param type one of the {@link PerforceAbstractChange} constants
+   */
+  public record FileAction(int type, @NotNull String depotPath, long revision) {
+  }
+
+  private static final class Window {
+    final @Nullable Long changeAfter;
+    final @Nullable Long changeBefore;
+    final @Nullable Date dateAfter;
+    final @Nullable Date dateBefore;
+    final @Nullable String client;
+    final @Nullable String user;
+
+    Window(ChangeBrowserSettings settings, @Nullable String client, @Nullable String user) {
+      // like the revision range of 'p4 changes', a date bound takes precedence over a changelist bound
+      dateAfter = settings.getDateAfterFilter();
+      dateBefore = settings.getDateBeforeFilter();
+      Long changeAfter = dateAfter == null ? settings.getChangeAfterFilter() : null;
+      this.changeAfter = changeAfter != null && settings.STRICTLY_AFTER ? Long.valueOf(changeAfter + 1) : changeAfter;
+      changeBefore = dateBefore == null ? settings.getChangeBeforeFilter() : null;
+      this.client = client == null || client.isEmpty() ? null : client;
+      this.user = user == null || user.isEmpty() ? null : user;
+    }
+
+    boolean accepts(ChangeListData data) {
+      if (client != null && !client.equals(data.CLIENT)) return false;
+      if (user != null && !user.equals(data.USER)) return false;
+      if (dateAfter != null || dateBefore != null) {
+        Date date = parseDate(data);
+        if (dateAfter != null && date.before(dateAfter)) return false;
+        if (dateBefore != null && date.after(dateBefore)) return false;
+      }
+      return true;
+    }
+  }
+
+  private static final class ChangesLog {
+    final NumberedRecordLog records;
+    final Path rangeFile;
+    // the log has every changelist in [low, high], complete if there are none below low
+    long low;
+    long high;
+    boolean complete;
+    // in memory only, the first query of a session revalidates the newest changes
+    long revalidatedAt;
+
+    ChangesLog(NumberedRecordLog records, Path rangeFile) {
+      this.records = records;
+      this.rangeFile = rangeFile;
+      try (DataInputStream in = new DataInputStream(Files.newInputStream(rangeFile))) {
+        low = in.readLong();
+        high = in.readLong();
+        complete = in.readBoolean();
+      }
+      catch (NoSuchFileException ignored) {
+      }
+      catch (IOException e) {
+        LOG.info("Failed to read " + rangeFile, e);
+        low = high = 0;
+        complete = false;
+      }
+      // the range is written after the records, but the records may have been cut off after a crash
+      if (high != 0 && (!records.contains(low) || !records.contains(high))) {
+        low = high = 0;
+        complete = false;
+      }
+    }
+
+    void setRange(long low, long high, boolean complete) throws IOException {
+      this.low = low;
+      this.high = high;
+      this.complete = complete;
+      Path temp = rangeFile.resolveSibling(rangeFile.getFileName() + ".tmp");
+      try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+        out.writeLong(low);
+        out.writeLong(high);
+        out.writeBoolean(complete);
+      }
+      Files.move(temp, rangeFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+  }
+}
@@ -28,6 +28,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
 import org.jetbrains.idea.perforce.PerforceBundle;
+import org.jetbrains.idea.perforce.StreamGobbler;
 import org.jetbrains.idea.perforce.application.PerforceManager;
 import org.jetbrains.idea.perforce.application.PerforceVcs;
 import org.jetbrains.idea.perforce.perforce.ExecResult;
@@ -154,10 +155,18 @@ public abstract class AbstractP4Connection implements P4Connection {
     setEnvironment(cwd, cmd.getEnvironment());
 
     final CommandDebugInfoWrapper debugInfoWrapper = new CommandDebugInfoWrapper(cmd);
-    final Tracer tracer = new Tracer(project, p4args.length > 0 ? p4args[0] : "", debugInfoWrapper);
+    final String commandName = getCommandName(p4args);
+    final String recordName = P4OutputRecorder.isEnabled() ? P4OutputRecorder.getRecordName(commandName, p4args) : null;
+    final Tracer tracer = new Tracer(project, commandName, debugInfoWrapper);
 
     debugCmd(cwd, debugInfoWrapper, cmd.getEnvironment());
 
+    String statisticsKey = getStatisticsKey();
+    String serverKey = getServerKey();
+    long waitStart = System.nanoTime();
+    P4ProcessSlots.acquire(statisticsKey, serverKey);
+    long executionStart = System.nanoTime();
+
     int rc = -42;
     Process proc = null;
     MyInterruptibleProcess worker = null;
@@ -172,7 +181,11 @@ public abstract class AbstractP4Connection implements P4Connection {
 
       worker = new MyInterruptibleProcess(project, proc, perforceSettings.getServerTimeout());
 
-      processWaiter = new PerforceProcessWaiter();
+      ExecResult.OutputConsumer outputConsumer =
+        recordName != null ? P4OutputRecorder.tee(recordName, retVal.getOutputConsumer()) : retVal.getOutputConsumer();
+      processWaiter = outputConsumer == null
+                      ? new PerforceProcessWaiter()
+                      : new PerforceProcessWaiter(proc.getInputStream(), stdout -> outputConsumer.consume(stdout, retVal));
       worker.setOnBeforeInterrupt(processWaiter::cancelListeners);
       rc = processWaiter.execute(worker, perforceSettings.getServerTimeout());
     }
@@ -193,12 +206,22 @@ public abstract class AbstractP4Connection implements P4Connection {
       } else if (proc != null) {
         InterruptibleProcess.close(proc);
       }
+      P4ProcessSlots.release(statisticsKey, serverKey);
+      recordStatistics(statisticsKey, commandName, executionStart - waitStart, System.nanoTime() - executionStart,
+                       rc, worker, processWaiter);
     }
 
     if (rc == 0) {
       retVal.setExitCode(worker.getExitCode());
       retVal.setOutputGobbler(processWaiter.getInStreamListener());
       retVal.setErrorGobbler(processWaiter.getErrStreamListener());
+      Throwable outputConsumerError = processWaiter.getInStreamListener().getStreamConsumerError();
+      if (outputConsumerError != null) {
+        retVal.setException(outputConsumerError);
+      }
+      if (recordName != null) {
+        P4OutputRecorder.record(recordName, p4args, retVal);
+      }
 
       // checked here, since in PerforceRunner we deal with more high-level commands (that require authentication)
       // but this class can be used solely, without PerforceRunner wrapping
@@ -240,6 +263,37 @@ public abstract class AbstractP4Connection implements P4Connection {
     }
   }
 
+  // global options such as "-x file" or "-G" may precede the command
+  private static String getCommandName(String[] p4args) {
+    int i = 0;
+    while (i < p4args.length && p4args[i].startsWith("-")) {
+      i += "-x".equals(p4args[i]) ? 2 : 1;
+    }
+    return i < p4args.length ? p4args[i] : "";
+  }
+
+  /**
+   * @return the key {@link P4ProcessSlots process slots} and {@link P4CommandStatistics command statistics} are grouped by
+   */
+  protected @NotNull String getStatisticsKey() {
+    return getConnectionKey().toString();
+  }
+
+  /**
+   * @return the key the process slots of all connections to the same server are grouped by
+   */
+  protected @NotNull String getServerKey() {
+    return getConnectionKey().getServer();
+  }
+
+  private static void recordStatistics(String statisticsKey, String command, long waitNanos, long executionNanos, int rc,
+                                       @Nullable MyInterruptibleProcess worker, @Nullable PerforceProcessWaiter processWaiter) {
+    StreamGobbler output = processWaiter == null ? null : processWaiter.getInStreamListener();
+    boolean failed = rc != 0 || worker == null || worker.getExitCode() != 0;
+    P4CommandStatistics.getInstance().record(statisticsKey, command, waitNanos, executionNanos,
+                                             output == null ? 0 : output.getResultLength(), failed);
+  }
+
   @TestOnly
   public static void setTestEnvironment(Map<String, String> env, Disposable parentDisposable) {
     if (!ourTestEnvironment.isEmpty()) {
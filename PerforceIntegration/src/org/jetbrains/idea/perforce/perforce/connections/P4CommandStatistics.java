@@ -0,0 +1,332 @@
+// Copyright 2000-2026 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package org.jetbrains.idea.perforce.perforce.connections;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.ThrowableComputable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and throughput counters of p4 commands, per connection and command name.
+ * Execution times are also collected in a histogram with power-of-two millisecond buckets, for percentiles.
+ * <p>
+ * Time spent waiting for a {@link P4ProcessSlots process slot} is counted separately from the execution time,
+ * so that the effect of the slot limit can be told apart from the server latency.
+ * Refreshes of local changes are counted too, with the number of commands they ran, see {@link CommandCounter}.
+ * The summary is logged on application shutdown, and on every command with debug logging enabled. {@link #toJson()} exports it.
+ */
+@Service(Service.Level.APP)
+public final class P4CommandStatistics implements Disposable {
+  private static final Logger LOG = Logger.getInstance(P4CommandStatistics.class);
+  // bucket 0 counts commands faster than 1 ms, bucket i the ones in [2^(i-1), 2^i) ms, the last one everything slower
+  static final int HISTOGRAM_BUCKETS = 20;
+
+  private final Map<Key, Counters> myCounters = new ConcurrentHashMap<>();
+  private final RefreshCounters myRefreshCounters = new RefreshCounters();
+
+  public static P4CommandStatistics getInstance() {
+    return ApplicationManager.getApplication().getService(P4CommandStatistics.class);
+  }
+
+  public void record(@NotNull String connection,
+                     @NotNull String command,
+                     long waitNanos,
+                     long executionNanos,
+                     long outputBytes,
+                     boolean failed) {
+    CommandCounter.commandRun();
+    Counters counters = myCounters.computeIfAbsent(new Key(connection, command), k -> new Counters());
+    synchronized (counters) {
+      counters.count++;
+      if (failed) counters.failures++;
+      counters.waitNanos += waitNanos;
+      counters.executionNanos += executionNanos;
+      counters.maxExecutionNanos = Math.max(counters.maxExecutionNanos, executionNanos);
+      counters.outputBytes += outputBytes;
+      counters.histogram[bucket(TimeUnit.NANOSECONDS.toMillis(executionNanos))]++;
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("[" + connection + "] p4 " + command + ": " + TimeUnit.NANOSECONDS.toMillis(executionNanos) + " ms, waited " +
+                TimeUnit.NANOSECONDS.toMillis(waitNanos) + " ms, " + outputBytes + " bytes");
+    }
+  }
+
+  public void recordRefresh(long durationNanos, long commands) {
+    synchronized (myRefreshCounters) {
+      myRefreshCounters.count++;
+      myRefreshCounters.nanos += durationNanos;
+      myRefreshCounters.maxNanos = Math.max(myRefreshCounters.maxNanos, durationNanos);
+      myRefreshCounters.commands += commands;
+      myRefreshCounters.maxCommands = Math.max(myRefreshCounters.maxCommands, commands);
+    }
+  }
+
+  public @NotNull RefreshStatistics refreshSnapshot() {
+    synchronized (myRefreshCounters) {
+      return new RefreshStatistics(myRefreshCounters.count, TimeUnit.NANOSECONDS.toMillis(myRefreshCounters.nanos),
+                                   TimeUnit.NANOSECONDS.toMillis(myRefreshCounters.maxNanos), myRefreshCounters.commands,
+                                   myRefreshCounters.maxCommands);
+    }
+  }
+
+  /**
+   * @return counters sorted by the total execution time, the slowest first
+   */
+  public @NotNull List<CommandStatistics> snapshot() {
+    List<CommandStatistics> result = new ArrayList<>();
+    for (Map.Entry<Key, Counters> entry : myCounters.entrySet()) {
+      Counters counters = entry.getValue();
+      synchronized (counters) {
+        result.add(new CommandStatistics(entry.getKey().connection(), entry.getKey().command(), counters.count, counters.failures,
+                                         TimeUnit.NANOSECONDS.toMillis(counters.executionNanos),
+                                         TimeUnit.NANOSECONDS.toMillis(counters.maxExecutionNanos),
+                                         TimeUnit.NANOSECONDS.toMillis(counters.waitNanos),
+                                         counters.outputBytes, counters.histogram.clone()));
+      }
+    }
+    result.sort(Comparator.comparingLong(CommandStatistics::totalMs).reversed());
+    return result;
+  }
+
+  public void reset() {
+    myCounters.clear();
+    synchronized (myRefreshCounters) {
+      myRefreshCounters.count = 0;
+      myRefreshCounters.nanos = 0;
+      myRefreshCounters.maxNanos = 0;
+      myRefreshCounters.commands = 0;
+      myRefreshCounters.maxCommands = 0;
+    }
+  }
+
+  /**
+   * @return the command and refresh statistics as a JSON object
+   */
+  public @NotNull String toJson() {
+    StringBuilder json = new StringBuilder("{\n  \"commands\": [");
+    List<CommandStatistics> statistics = snapshot();
+    for (int i = 0; i < statistics.size(); i++) {
+      CommandStatistics s = statistics.get(i);
+      json.append(i == 0 ? "\n" : ",\n").append("    {");
+      json.append("\"connection\": ").append(jsonString(s.connection()));
+      json.append(", \"command\": ").append(jsonString(s.command()));
+      json.append(", \"count\": ").append(s.count());
+      json.append(", \"failures\": ").append(s.failures());
+      json.append(", \"totalMs\": ").append(s.totalMs());
+      json.append(", \"maxMs\": ").append(s.maxMs());
+      json.append(", \"waitMs\": ").append(s.waitMs());
+      json.append(", \"outputBytes\": ").append(s.outputBytes());
+      json.append(", \"p50Ms\": ").append(s.percentileMs(0.5));
+      json.append(", \"p90Ms\": ").append(s.percentileMs(0.9));
+      json.append(", \"p99Ms\": ").append(s.percentileMs(0.99));
+      json.append(", \"histogram\": [");
+      for (int bucket = 0; bucket < HISTOGRAM_BUCKETS; bucket++) {
+        if (bucket > 0) json.append(", ");
+        json.append(s.histogram()[bucket]);
+      }
+      json.append("]}");
+    }
+    RefreshStatistics refreshes = refreshSnapshot();
+    json.append(statistics.isEmpty() ? "],\n" : "\n  ],\n");
+    json.append("  \"refreshes\": {\"count\": ").append(refreshes.count())
+      .append(", \"totalMs\": ").append(refreshes.totalMs())
+      .append(", \"maxMs\": ").append(refreshes.maxMs())
+      .append(", \"commands\": ").append(refreshes.commands())
+      .append(", \"maxCommands\": ").append(refreshes.maxCommands())
+      .append("}\n}\n");
+    return json.toString();
+  }
+
+  @Override
+  public void dispose() {
+    List<CommandStatistics> statistics = snapshot();
+    if (statistics.isEmpty()) return;
+
+    StringBuilder report = new StringBuilder("p4 command statistics:");
+    for (CommandStatistics s : statistics) {
+      report.append("\n  ").append(s);
+    }
+    RefreshStatistics refreshes = refreshSnapshot();
+    if (refreshes.count() > 0) {
+      report.append("\n  ").append(refreshes);
+    }
+    LOG.info(report.toString());
+  }
+
+  static int bucket(long ms) {
+    if (ms <= 0) return 0;
+    return Math.min(HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(ms));
+  }
+
+  /**
+   * @return the exclusive upper bound of the bucket in ms, {@link Long#MAX_VALUE} for the last one
+   */
+  static long bucketUpperBoundMs(int bucket) {
+    return bucket == HISTOGRAM_BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+  }
+
+  private static String jsonString(String value) {
+    StringBuilder result = new StringBuilder("\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"' -> result.append("\\\"");
+        case '\\' -> result.append("\\\\");
+        case '\n' -> result.append("\\n");
+        case '\r' -> result.append("\\r");
+        case '\t' -> result.append("\\t");
+        default -> {
+          if (c < 0x20) result.append(String.format("\\u%04x", (int)c));
+          else result.append(c);
+        }
+      }
+    }
+    return result.append('"').toString();
+  }
+
+  /**
+   * Counts the commands run by one activity: by the thread which {@link #start started} the counter, and by the
+   * {@link org.jetbrains.idea.perforce.perforce.P4ParallelExecutor workers} it runs commands on, until the counter is closed.
+   * Commands run concurrently by other activities aren't counted.
+   */
+  public static final class CommandCounter implements AutoCloseable {
+    private static final ThreadLocal<CommandCounter> ourCurrent = new ThreadLocal<>();
+
+    private final AtomicLong myCount = new AtomicLong();
+    private final @Nullable CommandCounter myPrevious;
+
+    private CommandCounter(@Nullable CommandCounter previous) {
+      myPrevious = previous;
+    }
+
+    public static @NotNull CommandCounter start() {
+      CommandCounter counter = new CommandCounter(ourCurrent.get());
+      ourCurrent.set(counter);
+      return counter;
+    }
+
+    /**
+     * @return the counter of the calling thread, to be passed to {@link #runWith} on the threads it hands commands to
+     */
+    public static @Nullable CommandCounter current() {
+      return ourCurrent.get();
+    }
+
+    public static <T, E extends Throwable> T runWith(@Nullable CommandCounter counter, @NotNull ThrowableComputable<T, E> computable) throws E {
+      CommandCounter previous = ourCurrent.get();
+      ourCurrent.set(counter);
+      try {
+        return computable.compute();
+      }
+      finally {
+        ourCurrent.set(previous);
+      }
+    }
+
+    private static void commandRun() {
+      CommandCounter counter = ourCurrent.get();
+      if (counter != null) {
+        counter.myCount.incrementAndGet();
+      }
+    }
+
+    public long getCount() {
+      return myCount.get();
+    }
+
+    @Override
+    public void close() {
+      ourCurrent.set(myPrevious);
+    }
+  }
+
+  private record Key(@NotNull String connection, @NotNull String command) {
+  }
+
+  private static final class Counters {
+    int count;
+    int failures;
+    long waitNanos;
+    long executionNanos;
+    long maxExecutionNanos;
+    long outputBytes;
+    final long[] histogram = new long[HISTOGRAM_BUCKETS];
+  }
+
+  private static final class RefreshCounters {
+    int count;
+    long nanos;
+    long maxNanos;
+    long commands;
+    long maxCommands;
+  }
+
+  public record CommandStatistics(@NotNull String connection,
+                                  @NotNull String command,
+                                  int count,
+                                  int failures,
+                                  long totalMs,
+                                  long maxMs,
+                                  long waitMs,
+                                  long outputBytes,
+                                  long @NotNull [] histogram) {
+    public double averageMs() {
+      return count == 0 ? 0 : (double)totalMs / count;
+    }
+
+    /**
+     * @return the upper bound of the histogram bucket containing the percentile, capped by the maximum
+     */
+    public long percentileMs(double fraction) {
+      long threshold = (long)Math.ceil(count * fraction);
+      long seen = 0;
+      for (int bucket = 0; bucket < histogram.length; bucket++) {
+        seen += histogram[bucket];
+        if (seen >= threshold && seen > 0) {
+          return Math.min(bucketUpperBoundMs(bucket), maxMs);
+        }
+      }
+      return maxMs;
+    }
+
+    /**
+     * @return commands per second of execution time
+     */
+    public double throughput() {
+      return totalMs == 0 ? 0 : count * 1000.0 / totalMs;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("[%s] %s: %d runs (%d failed), total %d ms, avg %.1f ms, p90 %d ms, max %d ms, waited %d ms, %d bytes",
+                           connection, command, count, failures, totalMs, averageMs(), percentileMs(0.9), maxMs, waitMs, outputBytes);
+    }
+  }
+
+  public record RefreshStatistics(int count, long totalMs, long maxMs, long commands, long maxCommands) {
+    public double averageMs() {
+      return count == 0 ? 0 : (double)totalMs / count;
+    }
+
+    public double averageCommands() {
+      return count == 0 ? 0 : (double)commands / count;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("local changes refresh: %d runs, avg %.1f ms, max %d ms, avg %.1f commands, max %d commands",
+                           count, averageMs(), maxMs, averageCommands(), maxCommands);
+    }
+  }
+}
@@ -0,0 +1,145 @@
+// Copyright 2000-2026 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package org.jetbrains.idea.perforce.perforce.connections;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.idea.perforce.perforce.ExecResult;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the output of p4 commands as fixtures for replaying it through the parsers without a server.
+ * <p>
+ * Enabled with {@code -Dp4.record.output.dir=<dir>}. Command number {@code n} is written as {@code <n>-<command>.args}
+ * (the arguments, one per line), {@code <n>-<command>.stdout} (the output as received) and {@code <n>-<command>.stderr}.
+ * Tagged commands ({@code p4 -G}) are written as {@code <n>-<command>.tagged.*}. The output of commands streamed to a consumer
+ * while running is {@link #tee copied} as the consumer reads it, the buffered output is copied without using it up.
+ */
+final class P4OutputRecorder {
+  private static final Logger LOG = Logger.getInstance(P4OutputRecorder.class);
+  private static final @Nullable Path ourDir = getDir();
+  private static final AtomicInteger ourCounter = new AtomicInteger();
+
+  private P4OutputRecorder() {
+  }
+
+  static boolean isEnabled() {
+    return ourDir != null;
+  }
+
+  /**
+   * @return the name the output of the command is recorded under
+   */
+  static @NotNull String getRecordName(@NotNull String command, String @NotNull [] p4args) {
+    String name = ourCounter.incrementAndGet() + "-" + command.replaceAll("[^\\w.-]", "_");
+    int commandIndex = Arrays.asList(p4args).indexOf(command);
+    boolean tagged = Arrays.asList(p4args).subList(0, Math.max(commandIndex, 0)).contains("-G");
+    return tagged ? name + ".tagged" : name;
+  }
+
+  /**
+   * Wraps {@code consumer}, so that the output it reads is written to the recorded stdout.
+   */
+  static @Nullable ExecResult.OutputConsumer tee(@NotNull String name, @Nullable ExecResult.OutputConsumer consumer) {
+    if (ourDir == null || consumer == null) return consumer;
+    return (stdout, result) -> {
+      OutputStream copy;
+      try {
+        Files.createDirectories(ourDir);
+        copy = new BufferedOutputStream(Files.newOutputStream(ourDir.resolve(name + ".stdout")));
+      }
+      catch (IOException e) {
+        LOG.info("Failed to record the output of p4 " + name, e);
+        consumer.consume(stdout, result);
+        return;
+      }
+      TeeInputStream tee = new TeeInputStream(stdout, copy);
+      try {
+        consumer.consume(tee, result);
+      }
+      finally {
+        tee.closeCopy();
+      }
+    };
+  }
+
+  static void record(@NotNull String name, String @NotNull [] p4args, @NotNull ExecResult result) {
+    if (ourDir == null) return;
+    try {
+      Files.createDirectories(ourDir);
+      Files.write(ourDir.resolve(name + ".args"), String.join("\n", p4args).getBytes(StandardCharsets.UTF_8));
+      if (result.getOutputConsumer() == null) {
+        try (OutputStream stdout = Files.newOutputStream(ourDir.resolve(name + ".stdout"))) {
+          result.copyStdout(stdout);
+        }
+      }
+      Files.write(ourDir.resolve(name + ".stderr"), result.getStderr().getBytes(result.getCharset()));
+    }
+    catch (IOException e) {
+      LOG.info("Failed to record the output of p4 " + name, e);
+    }
+  }
+
+  private static @Nullable Path getDir() {
+    String dir = System.getProperty("p4.record.output.dir");
+    return dir == null || dir.isEmpty() ? null : Path.of(dir);
+  }
+
+  /**
+   * Copies what is read to another stream; a failure to write the copy stops copying without failing the reader.
+   */
+  private static final class TeeInputStream extends FilterInputStream {
+    private @Nullable OutputStream myCopy;
+
+    private TeeInputStream(@NotNull InputStream in, @NotNull OutputStream copy) {
+      super(in);
+      myCopy = copy;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) copy(new byte[]{(byte)b}, 0, 1);
+      return b;
+    }
+
+    @Override
+    public int read(byte @NotNull [] b, int off, int len) throws IOException {
+      int read = super.read(b, off, len);
+      if (read > 0) copy(b, off, read);
+      return read;
+    }
+
+    private void copy(byte[] b, int off, int len) {
+      if (myCopy == null) return;
+      try {
+        myCopy.write(b, off, len);
+      }
+      catch (IOException e) {
+        LOG.info("Failed to record the streamed output of p4", e);
+        closeCopy();
+      }
+    }
+
+    private void closeCopy() {
+      if (myCopy == null) return;
+      try {
+        myCopy.close();
+      }
+      catch (IOException e) {
+        LOG.info("Failed to record the streamed output of p4", e);
+      }
+      myCopy = null;
+    }
+  }
+}
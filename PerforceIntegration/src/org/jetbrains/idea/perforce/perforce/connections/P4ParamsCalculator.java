@@ -4,6 +4,7 @@ import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.VcsException;
@@ -18,9 +19,11 @@ import org.jetbrains.idea.perforce.perforce.PerforceTimeoutException;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class P4ParamsCalculator {
   private static final String ourInConfig = "(config";
@@ -29,6 +32,7 @@ public class P4ParamsCalculator {
   private static final String ourInEnvironment2 = "(env";
 
   private static final Logger LOG = Logger.getInstance(P4ParamsCalculator.class);
+  private static final Map<File, ParsedConfig> ourParsedConfigs = new ConcurrentHashMap<>();
   private final Project myProject;
 
   public P4ParamsCalculator(Project project) {
@@ -114,15 +118,8 @@ public class P4ParamsCalculator {
     JBIterable<File> allConfigs = JBIterable.generate(configParentDir, File::getParentFile).map(dir -> new File(dir, name)).filter(File::exists);
     try {
       for (File ioFile : ContainerUtil.reverse(allConfigs.toList())) {
-        final String data = String.valueOf(FileUtil.loadFileText(ioFile));
-        final Map<String, P4ConfigFields> fields = p4FieldsAsMap();
-        for (String line : StringUtil.splitByLines(data)) {
-          List<String> split = Lists.newArrayList(Splitter.on('=').limit(2).trimResults().split(line));
-          if (split.size() == 2) {
-            String key = split.get(0);
-            P4ConfigFields p4ConfigField = fields.get(StringUtil.toLowerCase(key));
-            setField(p4ConfigField, split.get(1), parameters);
-          }
+        for (Pair<P4ConfigFields, String> field : readConfigFields(ioFile)) {
+          setField(field.first, field.second, parameters);
         }
       }
     }
@@ -132,6 +129,39 @@ public class P4ParamsCalculator {
     return parameters;
   }
 
+  /**
+   * Drops the parsed contents of the config file, e.g. when it's known to be changed within the resolution of its modification time.
+   */
+  public static void invalidateConfig(@NotNull File ioFile) {
+    ourParsedConfigs.remove(ioFile);
+  }
+
+  // config files are shared by the roots of all projects under them, so they're parsed once until they change
+  private static List<Pair<P4ConfigFields, String>> readConfigFields(File ioFile) throws IOException {
+    long modified = ioFile.lastModified();
+    long length = ioFile.length();
+    ParsedConfig parsed = ourParsedConfigs.get(ioFile);
+    if (parsed != null && parsed.modified() == modified && parsed.length() == length) {
+      return parsed.fields();
+    }
+
+    final String data = String.valueOf(FileUtil.loadFileText(ioFile));
+    final Map<String, P4ConfigFields> fields = p4FieldsAsMap();
+    List<Pair<P4ConfigFields, String>> result = new ArrayList<>();
+    for (String line : StringUtil.splitByLines(data)) {
+      List<String> split = Lists.newArrayList(Splitter.on('=').limit(2).trimResults().split(line));
+      if (split.size() == 2) {
+        String key = split.get(0);
+        P4ConfigFields p4ConfigField = fields.get(StringUtil.toLowerCase(key));
+        if (p4ConfigField != null) {
+          result.add(Pair.create(p4ConfigField, split.get(1)));
+        }
+      }
+    }
+    ourParsedConfigs.put(ioFile, new ParsedConfig(modified, length, result));
+    return result;
+  }
+
   private static Map<String, P4ConfigFields> p4FieldsAsMap() {
     final P4ConfigFields[] p4ConfigFields = P4ConfigFields.values();
     final Map<String, P4ConfigFields> fields = new HashMap<>();
@@ -160,4 +190,7 @@ public class P4ParamsCalculator {
       parameters.setIgnoreFileName(value);
     }
   }
+
+  private record ParsedConfig(long modified, long length, @NotNull List<Pair<P4ConfigFields, String>> fields) {
+  }
 }
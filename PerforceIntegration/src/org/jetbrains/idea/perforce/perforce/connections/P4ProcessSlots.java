@@ -0,0 +1,73 @@
+// Copyright 2000-2026 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package org.jetbrains.idea.perforce.perforce.connections;
+
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.util.SystemProperties;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds the number of p4 processes running at the same time against one connection and against one server.
+ * <p>
+ * The p4 command line client executes a single command per process and authenticates on every start,
+ * so a burst of commands for many roots of the same server (e.g. on refresh after a sync) ends up in as many concurrent handshakes.
+ * Processes over the limit wait for a free slot instead, the limits are set with {@code -Dp4.max.processes.per.connection}
+ * and {@code -Dp4.max.processes.per.server}, 0 disables a limit.
+ * Only the server limit is set by default: it bounds the handshakes a server sees, a connection isn't limited any further.
+ */
+final class P4ProcessSlots {
+  private static final Slots ourConnectionSlots = new Slots(SystemProperties.getIntProperty("p4.max.processes.per.connection", 0));
+  private static final Slots ourServerSlots = new Slots(SystemProperties.getIntProperty("p4.max.processes.per.server", 8));
+
+  private P4ProcessSlots() {
+  }
+
+  /**
+   * Waits for a free slot of the server and of the connection, checking for cancellation.
+   * The slots must be released with {@link #release}.
+   */
+  static void acquire(@NotNull String connection, @NotNull String server) throws InterruptedException {
+    ourServerSlots.acquire(server);
+    try {
+      ourConnectionSlots.acquire(connection);
+    }
+    catch (Throwable e) {
+      ourServerSlots.release(server);
+      throw e;
+    }
+  }
+
+  static void release(@NotNull String connection, @NotNull String server) {
+    ourConnectionSlots.release(connection);
+    ourServerSlots.release(server);
+  }
+
+  private static final class Slots {
+    private final int myLimit;
+    private final Map<String, Semaphore> mySemaphores = new ConcurrentHashMap<>();
+
+    private Slots(int limit) {
+      myLimit = limit;
+    }
+
+    void acquire(@NotNull String key) throws InterruptedException {
+      if (myLimit <= 0) return;
+      Semaphore semaphore = mySemaphores.computeIfAbsent(key, k -> new Semaphore(myLimit, true));
+      while (!semaphore.tryAcquire(50, TimeUnit.MILLISECONDS)) {
+        ProgressManager.checkCanceled();
+      }
+    }
+
+    void release(@NotNull String key) {
+      if (myLimit <= 0) return;
+      Semaphore semaphore = mySemaphores.get(key);
+      if (semaphore != null) {
+        semaphore.release();
+      }
+    }
+  }
+}
@@ -16,12 +16,14 @@ import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.messages.MessageBusConnection;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.idea.perforce.application.ClientRootsCache;
 import org.jetbrains.idea.perforce.application.PerforceManager;
 import org.jetbrains.idea.perforce.perforce.P4File;
 import org.jetbrains.idea.perforce.perforce.PerforceSettings;
 
 import java.io.File;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -191,11 +193,49 @@ public class PerforceConnectionManager implements PerforceConnectionManagerI {
     synchronized (myLock) {
       myConnectionMapper = null;
     }
+    ClientRootsCache.clearCanonicalPaths();
     scheduleInitialization();
     final PerforceManager manager = PerforceManager.getInstance(getProject());
     manager.configurationChanged();
   }
 
+  @Override
+  public void updateChangedConnections() {
+    PerforceMultipleConnections old = getMultipleConnectionObject();
+    if (old == null || isSingletonConnectionUsed()) {
+      updateConnections();
+      return;
+    }
+
+    ApplicationManager.getApplication().executeOnPooledThread(() -> {
+      if (myProject.isDisposed()) return;
+
+      P4ConnectionCalculator calculator = new P4ConnectionCalculator(myProject);
+      calculator.execute();
+      PerforceMultipleConnections updated = calculator.getMultipleConnections();
+      Set<VirtualFile> changedRoots = old.getChangedRoots(updated);
+      if (changedRoots == null) {
+        updateConnections();
+        return;
+      }
+      if (changedRoots.isEmpty()) {
+        LOG.debug("p4config change doesn't change any connection");
+        return;
+      }
+
+      synchronized (myLock) {
+        // the connections were updated meanwhile
+        if (myConnectionMapper != old) return;
+        myConnectionMapper = updated;
+      }
+      myNotifier.setProblems(updated.hasAnyErrors(), false);
+      Map<VirtualFile, P4Connection> changed = new HashMap<>(updated.getAllConnections());
+      changed.keySet().retainAll(changedRoots);
+      LOG.debug("p4config change updates connections of " + changedRoots);
+      PerforceManager.getInstance(myProject).connectionsChanged(changed);
+    });
+  }
+
   @Override
   public boolean isUnderProjectConnections(final @NotNull File file) {
     PerforceConnectionMapper mapper = getConnectionMapper();
@@ -22,6 +22,13 @@ public interface PerforceConnectionManagerI {
   boolean isSingletonConnectionUsed();
   void updateConnections();
 
+  /**
+   * Updates the connections after a change of p4config files, resetting the state of only those whose parameters changed.
+   */
+  default void updateChangedConnections() {
+    updateConnections();
+  }
+
   boolean isUnderProjectConnections(@NotNull File file);
   boolean isInitialized();
 }
@@ -38,6 +38,16 @@ public class PerforceLocalConnection extends AbstractP4Connection {
     throw new UnsupportedOperationException();
   }
 
+  @Override
+  protected @NotNull String getStatisticsKey() {
+    return myCwd.getPath();
+  }
+
+  @Override
+  protected @NotNull String getServerKey() {
+    return myCwd.getPath();
+  }
+
   @Override
   public ConnectionId getId() {
     return myConnectionId;
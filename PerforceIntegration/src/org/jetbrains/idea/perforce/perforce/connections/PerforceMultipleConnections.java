@@ -12,7 +12,10 @@ import java.io.File;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 public class PerforceMultipleConnections implements PerforceConnectionMapper {
   private static final Logger LOG = Logger.getInstance(PerforceMultipleConnections.class);
@@ -103,4 +106,46 @@ public class PerforceMultipleConnections implements PerforceConnectionMapper {
   public Map<VirtualFile, File> getConfigsMap() {
     return myConfigsMap;
   }
+
+  /**
+   * @return the roots whose connection parameters differ in {@code other}, or null if the roots or the defaults differ,
+   * so that all connections have to be updated
+   */
+  @Nullable Set<VirtualFile> getChangedRoots(@NotNull PerforceMultipleConnections other) {
+    if (!Objects.equals(myP4ConfigValue, other.myP4ConfigValue) || !sameParameters(myDefaultParameters, other.myDefaultParameters)) {
+      return null;
+    }
+    Map<VirtualFile, P4ConnectionParameters> parameters = toMap(getAllConnectionParameters());
+    Map<VirtualFile, P4ConnectionParameters> otherParameters = toMap(other.getAllConnectionParameters());
+    if (!parameters.keySet().equals(otherParameters.keySet())) return null;
+
+    Set<VirtualFile> changed = new HashSet<>();
+    for (Map.Entry<VirtualFile, P4ConnectionParameters> entry : parameters.entrySet()) {
+      VirtualFile root = entry.getKey();
+      if (!sameParameters(entry.getValue(), otherParameters.get(root)) ||
+          !Objects.equals(myConfigsMap.get(root), other.myConfigsMap.get(root))) {
+        changed.add(root);
+      }
+    }
+    return changed;
+  }
+
+  private static Map<VirtualFile, P4ConnectionParameters> toMap(Collection<Pair<VirtualFile, P4ConnectionParameters>> entries) {
+    Map<VirtualFile, P4ConnectionParameters> result = new HashMap<>();
+    for (Pair<VirtualFile, P4ConnectionParameters> entry : entries) {
+      result.put(entry.first, entry.second);
+    }
+    return result;
+  }
+
+  // equals() compares only the fields identifying the connection
+  private static boolean sameParameters(@NotNull P4ConnectionParameters parameters, @NotNull P4ConnectionParameters other) {
+    return parameters.equals(other) &&
+           Objects.equals(parameters.getCharset(), other.getCharset()) &&
+           Objects.equals(parameters.getConfigFileName(), other.getConfigFileName()) &&
+           Objects.equals(parameters.getIgnoreFileName(), other.getIgnoreFileName()) &&
+           parameters.isNoConfigFound() == other.isNoConfigFound() &&
+           parameters.hasProblems() == other.hasProblems() &&
+           parameters.getWarnings().equals(other.getWarnings());
+  }
 }
@@ -4,17 +4,24 @@ import com.intellij.openapi.Disposable;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.vcs.ProjectLevelVcsManager;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileEvent;
 import com.intellij.openapi.vfs.VirtualFileListener;
 import com.intellij.openapi.vfs.VirtualFileMoveEvent;
 import com.intellij.openapi.vfs.VirtualFilePropertyEvent;
+import com.intellij.util.containers.ContainerUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.idea.perforce.application.PerforceVcs;
 
+import java.io.File;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -114,19 +121,55 @@ public class PerforceP4ConfigVirtualFileListener implements VirtualFileListener
 
   private void processFileEvent(final VirtualFileEvent event) {
     String fileName = event.getFileName();
-    processFileChanged(fileName);
+    List<File> files = new ArrayList<>(2);
+    files.add(new File(event.getFile().getPath()));
+    if (event instanceof VirtualFileMoveEvent moveEvent) {
+      files.add(new File(moveEvent.getOldParent().getPath(), fileName));
+    }
+    processFileChanged(fileName, event, files);
   }
 
-  private void processFileChanged(@NotNull String fileName) {
+  /**
+   * @param event null if the file isn't in VFS, then it's known to be relevant
+   * @param files the locations of the changed file
+   */
+  private void processFileChanged(@NotNull String fileName, @Nullable VirtualFileEvent event, @NotNull List<File> files) {
     if (isIgnoredFileName(fileName)) {
       LOG.debug("p4ignore file changed");
       PerforceVcs.getInstance(myProject).getOnlineChangeProvider().discardCache();
     }
 
     if (isConfigFileName(fileName)) {
+      if (event != null && !affectsVcsRoots(event)) {
+        LOG.debug("p4config file changed, but it isn't used by any Perforce root: " + event.getFile().getPath());
+        return;
+      }
       LOG.debug("p4config file changed");
-      myConnectionManager.updateConnections();
+      // its modification time might not change, e.g. on a quick edit within its resolution
+      files.forEach(P4ParamsCalculator::invalidateConfig);
+      myConnectionManager.updateChangedConnections();
+    }
+  }
+
+  /**
+   * The config of a root is looked up in the root and its parents, so config files elsewhere
+   * (e.g. in other projects or deeper in the roots) don't change any connection.
+   */
+  private boolean affectsVcsRoots(@NotNull VirtualFileEvent event) {
+    List<VirtualFile> dirs = new ArrayList<>(2);
+    ContainerUtil.addIfNotNull(dirs, event.getParent());
+    if (event instanceof VirtualFileMoveEvent moveEvent) {
+      ContainerUtil.addIfNotNull(dirs, moveEvent.getOldParent());
     }
+    if (dirs.isEmpty()) return true;
+
+    VirtualFile[] roots = ProjectLevelVcsManager.getInstance(myProject).getRootsUnderVcs(PerforceVcs.getInstance(myProject));
+    for (VirtualFile dir : dirs) {
+      for (VirtualFile root : roots) {
+        if (VfsUtilCore.isAncestor(dir, root, false)) return true;
+      }
+    }
+    return false;
   }
 
    private class MyPerforceConfigListener implements P4ConfigListener {
@@ -138,7 +181,7 @@ public class PerforceP4ConfigVirtualFileListener implements VirtualFileListener
          Path fileNamePath = path.getFileName();
 
          if (fileNamePath != null) {
-           processFileChanged(fileNamePath.toString());
+           processFileChanged(fileNamePath.toString(), null, List.of(path.toFile()));
          }
          else {
            LOG.warn("Invalid config path: " + configPath);
@@ -1,11 +1,30 @@
 package org.jetbrains.idea.perforce.perforce.connections;
 
 import com.intellij.openapi.vcs.impl.ProcessWaiter;
+import com.intellij.util.ThrowableConsumer;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.idea.perforce.StreamGobbler;
 
+import java.io.IOException;
 import java.io.InputStream;
 
 public class PerforceProcessWaiter extends ProcessWaiter<StreamGobbler> {
+  private final @Nullable InputStream myStdout;
+  private final @Nullable ThrowableConsumer<InputStream, IOException> myStdoutConsumer;
+
+  public PerforceProcessWaiter() {
+    this(null, null);
+  }
+
+  /**
+   * @param stdout         the standard output of the process
+   * @param stdoutConsumer reads {@code stdout} while the process is running, instead of buffering it
+   */
+  public PerforceProcessWaiter(@Nullable InputStream stdout, @Nullable ThrowableConsumer<InputStream, IOException> stdoutConsumer) {
+    myStdout = stdout;
+    myStdoutConsumer = stdoutConsumer;
+  }
+
   @Override
   protected boolean tryReadStreams(int rc) {
     return rc != AbstractP4Connection.TIMEOUT_EXIT_CODE;
@@ -13,7 +32,7 @@ public class PerforceProcessWaiter extends ProcessWaiter<StreamGobbler> {
 
   @Override
   protected StreamGobbler createStreamListener(InputStream stream) {
-    return new StreamGobbler(stream);
+    return new StreamGobbler(stream, stream == myStdout ? myStdoutConsumer : null);
   }
 
   public void clearGobblers() {
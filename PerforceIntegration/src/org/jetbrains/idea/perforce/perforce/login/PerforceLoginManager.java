@@ -83,6 +83,15 @@ public final class PerforceLoginManager implements LoginSupport {
     }
   }
 
+  public void clear(@NotNull Collection<? extends P4Connection> connections) {
+    synchronized (myMapLock) {
+      for (P4Connection connection : connections) {
+        myAuthNotifier.removeLazyNotification(connection);
+        myState.remove(connection);
+      }
+    }
+  }
+
   public void refreshLoginState() {
     if (!loginPingAllowed()) {
       return;
@@ -38,6 +38,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static com.intellij.testFramework.UsefulTestCase.assertEmpty;
 import static com.intellij.testFramework.UsefulTestCase.assertEquals;
@@ -183,6 +184,22 @@ public class PerforceOperationsTest extends PerforceTestCase {
     assertEquals("1", annotation.getLineRevisionNumber(1).toString());
   }
 
+  @Test
+  public void testBatchedPrintMatchesSinglePrints() throws VcsException {
+    enableSilentOperation(VcsConfiguration.StandardConfirmation.ADD);
+    createFileInCommand("a.txt", "foo\nbar\n");
+    createFileInCommand("b.txt", "\u00e4\u00f6\u00fc \u20ac\n");
+    addFile("a.txt");
+    addFile("b.txt");
+    submitDefaultList("initial");
+
+    PerforceRunner runner = PerforceRunner.getInstance(myProject);
+    Map<String, byte[]> contents = runner.getByteContents(List.of("//depot/a.txt#1", "//depot/b.txt#1", "//depot/missing.txt#1"), getConnection());
+    assertSameElements(contents.keySet(), "//depot/a.txt#1", "//depot/b.txt#1");
+    Assert.assertArrayEquals(runner.getByteContent("//depot/a.txt", "#1", getConnection()), contents.get("//depot/a.txt#1"));
+    Assert.assertArrayEquals(runner.getByteContent("//depot/b.txt", "#1", getConnection()), contents.get("//depot/b.txt#1"));
+  }
+
   @Test
   public void testRevertDeletesEmptyChangelist() throws Exception {
     enableSilentOperation(VcsConfiguration.StandardConfirmation.ADD);
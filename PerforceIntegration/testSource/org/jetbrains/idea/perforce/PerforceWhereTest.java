@@ -0,0 +1,41 @@
+package org.jetbrains.idea.perforce;
+
+import com.intellij.openapi.vcs.VcsException;
+import org.jetbrains.idea.perforce.application.PerforceManager;
+import org.jetbrains.idea.perforce.perforce.PerforceRunner;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+
+public class PerforceWhereTest extends PerforceTestCase {
+  @Test
+  public void testClientViewEditedOutsideOfIdeIsSeenAfterConnectionRefresh() throws VcsException {
+    String path = new File(myClientRoot, "a.txt").getPath();
+    assertEquals("//depot/a.txt", whereDepot(path));
+
+    editClientView("//depot/other/...");
+    PerforceManager.getInstance(myProject).clearInfoClientCache();
+    assertEquals("//depot/other/a.txt", whereDepot(path));
+  }
+
+  @Test
+  public void testClientViewIsReloadedAfterClientSpecChange() throws VcsException {
+    String path = new File(myClientRoot, "a.txt").getPath();
+    assertEquals("//depot/a.txt", whereDepot(path));
+
+    editClientView("//depot/other/...");
+    PerforceManager.getInstance(myProject).clientSpecChanged(getConnection());
+    assertEquals("//depot/other/a.txt", whereDepot(path));
+  }
+
+  private void editClientView(String depotMapping) {
+    String spec = buildTestClientSpecCore("test", myClientRoot.getPath()) + "\t" + depotMapping + " //test/..." + System.lineSeparator();
+    verify(runP4(new String[]{"client", "-i"}, spec));
+  }
+
+  private String whereDepot(String path) throws VcsException {
+    return PerforceRunner.getInstance(myProject).where(path, getConnection()).getDepot();
+  }
+}
@@ -0,0 +1,76 @@
+package org.jetbrains.idea.perforce.application
+
+import junit.framework.TestCase
+
+class ActivationRefreshThrottleTest : TestCase() {
+  private var now = 100_000L
+  private var lastFullRefresh = 0L
+  private var refreshes = 0
+  private val scheduled = mutableListOf<Pair<Long, () -> Unit>>()
+
+  private val throttle = ActivationRefreshThrottle(
+    lastFullRefresh = { lastFullRefresh },
+    refresh = { refreshes++ },
+    schedule = { delayMs, action -> scheduled.add(delayMs to action) },
+    clock = { now },
+  )
+
+  fun testActivationAfterIntervalRefreshesImmediately() {
+    throttle.activated(INTERVAL)
+    assertEquals(1, refreshes)
+
+    now += INTERVAL
+    throttle.activated(INTERVAL)
+    assertEquals(2, refreshes)
+    assertTrue(scheduled.isEmpty())
+  }
+
+  fun testActivationsWithinIntervalAreDeferredToSingleRefresh() {
+    throttle.activated(INTERVAL)
+    now += 10_000
+    throttle.activated(INTERVAL)
+    now += 5_000
+    throttle.activated(INTERVAL)
+    assertEquals(1, refreshes)
+    assertEquals(listOf(20_000L), scheduled.map { it.first })
+
+    now += 15_000
+    runScheduled()
+    assertEquals(2, refreshes)
+
+    // the deferred refresh counts as the last one
+    now += 1_000
+    throttle.activated(INTERVAL)
+    assertEquals(2, refreshes)
+    assertEquals(listOf(29_000L), scheduled.map { it.first })
+  }
+
+  fun testRecentFullRefreshDefersActivation() {
+    lastFullRefresh = now - 20_000
+    throttle.activated(INTERVAL)
+    assertEquals(0, refreshes)
+    assertEquals(listOf(10_000L), scheduled.map { it.first })
+  }
+
+  fun testDeferredRefreshIsSkippedAfterFullRefresh() {
+    throttle.activated(INTERVAL)
+    now += 10_000
+    throttle.activated(INTERVAL)
+
+    now += 5_000
+    lastFullRefresh = now
+    now += 15_000
+    runScheduled()
+    assertEquals(1, refreshes)
+  }
+
+  private fun runScheduled() {
+    val actions = scheduled.map { it.second }
+    scheduled.clear()
+    actions.forEach { it() }
+  }
+
+  private companion object {
+    const val INTERVAL = 30_000L
+  }
+}
@@ -0,0 +1,72 @@
+package org.jetbrains.idea.perforce.application;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class HaveListSnapshotTest extends TestCase {
+  private static HaveListSnapshot createSnapshot() {
+    Map<String, Long> revisions = new LinkedHashMap<>();
+    revisions.put("/work/project/src/b.txt", 2L);
+    revisions.put("/work/project/src/a.txt", 1L);
+    revisions.put("/work/project/src/sub/c.txt", 3L);
+    revisions.put("/work/project/src-gen/d.txt", 4L);
+    revisions.put("/work/project/readme.txt", 5L);
+    return HaveListSnapshot.create(List.of("/work/project"), revisions, "42");
+  }
+
+  public void testSubtreeQueries() {
+    HaveListSnapshot snapshot = createSnapshot();
+    assertEquals(List.of("/work/project/src/a.txt#1", "/work/project/src/b.txt#2", "/work/project/src/sub/c.txt#3"),
+                 query(snapshot, "/work/project/src", true));
+    assertEquals(List.of(), query(snapshot, "/work/project/src", false));
+    assertEquals(List.of("/work/project/readme.txt#5"), query(snapshot, "/work/project/readme.txt", false));
+    assertEquals(List.of(), query(snapshot, "/work/project/missing.txt", false));
+  }
+
+  public void testCoverage() {
+    HaveListSnapshot snapshot = createSnapshot();
+    assertTrue(snapshot.covers("/work/project"));
+    assertTrue(snapshot.covers("/work/project/src/new.txt"));
+    assertFalse(snapshot.covers("/work/project2/a.txt"));
+    assertFalse(snapshot.covers("/work"));
+  }
+
+  public void testWithRevisions() {
+    HaveListSnapshot snapshot = createSnapshot().withRevisions(Map.of("/work/project/src/a.txt", 6L,
+                                                                      "/work/project/src/new.txt", 1L,
+                                                                      "/work/project2/outside.txt", 1L),
+                                                               List.of("/work/project/src/sub/c.txt"), "43");
+    assertEquals("43", snapshot.getStamp());
+    assertEquals(List.of("/work/project/src/a.txt#6", "/work/project/src/b.txt#2", "/work/project/src/new.txt#1"),
+                 query(snapshot, "/work/project/src", true));
+    assertEquals(5, snapshot.size());
+    assertFalse(snapshot.covers("/work/project2/outside.txt"));
+  }
+
+  public void testPersistence() throws IOException {
+    HaveListSnapshot snapshot = createSnapshot();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    snapshot.write(new DataOutputStream(bytes));
+
+    HaveListSnapshot read = HaveListSnapshot.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals("42", read.getStamp());
+    assertEquals(5, read.size());
+    assertEquals(query(snapshot, "/work/project", true), query(read, "/work/project", true));
+    assertTrue(read.covers("/work/project/src"));
+  }
+
+  private static List<String> query(HaveListSnapshot snapshot, String path, boolean recursive) {
+    List<String> result = new ArrayList<>();
+    snapshot.forEach(path, recursive, (p, revision) -> result.add(p + "#" + revision));
+    return result;
+  }
+}
@@ -0,0 +1,116 @@
+// Copyright 2000-2026 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package org.jetbrains.idea.perforce.application;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.vcs.VcsConfiguration;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vcs.VcsShowConfirmationOption;
+import com.intellij.openapi.vcs.changes.VcsDirtyScopeManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.vcsUtil.VcsUtil;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.idea.perforce.PerforceTestCase;
+import org.jetbrains.idea.perforce.perforce.P4File;
+import org.jetbrains.idea.perforce.perforce.PerforceChange;
+import org.jetbrains.idea.perforce.perforce.PerforceRunner;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PerforceHaveListMirrorTest extends PerforceTestCase {
+  @Override
+  @Before
+  public void before() throws Exception {
+    super.before();
+    setStandardConfirmation("Perforce", VcsConfiguration.StandardConfirmation.ADD, VcsShowConfirmationOption.Value.DO_NOTHING_SILENTLY);
+    Registry.get("p4.have.list.mirror").setValue(true, myTestRootDisposable);
+  }
+
+  @Test
+  public void testFullRescanSeedsMirror() throws VcsException {
+    VirtualFile file = createFileWithTwoRevisions();
+    discardUnversionedCacheAndWaitFullRefresh();
+
+    assertEquals(List.of(file.getPath() + "#2"), queryMirror(file));
+  }
+
+  @Test
+  public void testSubmitOutsideOfIdeOutdatesMirror() throws VcsException {
+    VirtualFile file = createFileWithTwoRevisions();
+    discardUnversionedCacheAndWaitFullRefresh();
+
+    openForEdit(file);
+    setFileText(file, "third revision");
+    verify(runP4WithClient("submit", "-d", "third"));
+    getMirror().expireValidation();
+    assertNull(queryMirror(file));
+  }
+
+  @Test
+  public void testSyncByIdeIsAppliedToMirror() throws VcsException {
+    VirtualFile file = createFileWithTwoRevisions();
+    discardUnversionedCacheAndWaitFullRefresh();
+
+    PerforceRunner runner = PerforceRunner.getInstance(myProject);
+    runner.sync(P4File.create(file), "0");
+    getMirror().expireValidation();
+    assertEquals(List.of(), queryMirror(file));
+
+    runner.sync(P4File.create(file), false);
+    getMirror().expireValidation();
+    assertEquals(List.of(file.getPath() + "#2"), queryMirror(file));
+  }
+
+  @Test
+  public void testSubmitByIdeIsAppliedToMirror() throws VcsException {
+    VirtualFile file = createFileWithTwoRevisions();
+    discardUnversionedCacheAndWaitFullRefresh();
+
+    openForEdit(file);
+    setFileText(file, "third revision");
+    PerforceChange change = PerforceChange.createOn("//depot/a.txt\t# edit", PerforceManager.getInstance(myProject).getClient(getConnection()));
+    PerforceRunner.getInstance(myProject).submitForConnection(getConnection(), List.of(change), -1, "third", null);
+    getMirror().expireValidation();
+    assertEquals(List.of(file.getPath() + "#3"), queryMirror(file));
+  }
+
+  @Test
+  public void testDroppedMirrorIsSeededAgainByNextScan() throws VcsException {
+    VirtualFile file = createFileWithTwoRevisions();
+    discardUnversionedCacheAndWaitFullRefresh();
+
+    getMirror().invalidateAll();
+    assertNull(queryMirror(file));
+
+    VcsDirtyScopeManager.getInstance(myProject).fileDirty(file);
+    getChangeListManager().ensureUpToDate();
+    assertEquals(List.of(file.getPath() + "#2"), queryMirror(file));
+  }
+
+  private VirtualFile createFileWithTwoRevisions() {
+    VirtualFile file = createFileInCommand("a.txt", "first");
+    addFile("a.txt");
+    submitDefaultList("first");
+    openForEdit(file);
+    setFileText(file, "second revision");
+    submitDefaultList("second");
+    return file;
+  }
+
+  private PerforceHaveListMirror getMirror() {
+    return PerforceHaveListMirror.getInstance(myProject);
+  }
+
+  private @Nullable List<String> queryMirror(VirtualFile file) throws VcsException {
+    List<String> result = new ArrayList<>();
+    boolean answered = getMirror().forEachHaveRevision(getConnection(), List.of(VcsUtil.getFilePath(file)), (path, revision) ->
+      result.add(FileUtil.toSystemIndependentName(path) + "#" + revision));
+    return answered ? result : null;
+  }
+}
@@ -0,0 +1,56 @@
+package org.jetbrains.idea.perforce.application.annotation;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+
+public class PerforceAnnotationCacheTest extends TestCase {
+  public void testMergeTakesUnchangedLinesFromOlderAnnotation() {
+    AnnotationInfo older = new AnnotationInfo("a\nb\nc\nd\n", new long[]{1, 2, 1, 3}, false);
+    // #3,#5: "b" was changed in #4, "x" was added in #5, the rest is reported as #3
+    AnnotationInfo range = new AnnotationInfo("a\nB\nc\nx\nd\n", new long[]{3, 4, 3, 5, 3}, false);
+
+    AnnotationInfo merged = PerforceAnnotationCache.merge(older, 3, range);
+    assertNotNull(merged);
+    assertEquals(range.getContent(), merged.getContent());
+    assertEquals(1, merged.getRevision(0));
+    assertEquals(4, merged.getRevision(1));
+    assertEquals(1, merged.getRevision(2));
+    assertEquals(5, merged.getRevision(3));
+    assertEquals(3, merged.getRevision(4));
+  }
+
+  public void testMergeFailsWhenLineIsNotInOlderRevision() {
+    AnnotationInfo older = new AnnotationInfo("a\nb\n", new long[]{1, 2}, false);
+    // whitespace changes are ignored by annotate, but not by the line matching
+    AnnotationInfo range = new AnnotationInfo("a\n b\n", new long[]{2, 2}, false);
+    assertNull(PerforceAnnotationCache.merge(older, 2, range));
+  }
+
+  public void testMergeFailsWhenRepeatedLineHasDifferentRevisions() {
+    // the blank lines were added in different revisions, p4 and a diff may match the remaining one with either
+    AnnotationInfo older = new AnnotationInfo("a\n\nb\n\nc\n", new long[]{1, 1, 2, 3, 3}, false);
+    AnnotationInfo range = new AnnotationInfo("a\nb\n\nc\n", new long[]{3, 3, 3, 3}, false);
+    assertNull(PerforceAnnotationCache.merge(older, 3, range));
+  }
+
+  public void testMergeTakesRepeatedLineWithSameRevision() {
+    AnnotationInfo older = new AnnotationInfo("{\n}\n{\n}\n", new long[]{1, 1, 1, 1}, false);
+    AnnotationInfo range = new AnnotationInfo("{\nx\n}\n", new long[]{2, 3, 2}, false);
+
+    AnnotationInfo merged = PerforceAnnotationCache.merge(older, 2, range);
+    assertNotNull(merged);
+    assertEquals(1, merged.getRevision(0));
+    assertEquals(3, merged.getRevision(1));
+    assertEquals(1, merged.getRevision(2));
+  }
+
+  public void testSerialization() throws IOException {
+    AnnotationInfo info = new AnnotationInfo("first\nsecond\n", new long[]{12, 34}, true);
+    AnnotationInfo read = AnnotationInfo.fromBytes(info.toBytes());
+    assertEquals(info.getContent(), read.getContent());
+    assertEquals(2, read.getLineCount());
+    assertEquals(34, read.getRevision(1));
+    assertTrue(read.isUseChangelistNumbers());
+  }
+}
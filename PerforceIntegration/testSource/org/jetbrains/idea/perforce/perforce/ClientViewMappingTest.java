@@ -0,0 +1,60 @@
+package org.jetbrains.idea.perforce.perforce;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+public class ClientViewMappingTest extends TestCase {
+  private final ClientViewMapping myMapping = ClientViewMapping.create("ws", List.of(
+    "//depot/main/... //ws/main/...",
+    "-//depot/main/generated/... //ws/main/generated/...",
+    "//depot/main/generated/keep.txt //ws/main/generated/keep.txt",
+    "+//depot/overlay/... //ws/main/res/...",
+    "//depot/lib/*.jar //ws/jars/*.jar",
+    "//depot/rel/%%1/%%2.txt //ws/rel/%%2/%%1.txt",
+    "\"//depot/with space/...\" \"//ws/with space/...\""), false);
+
+  public void testPlainMapping() {
+    assertEquals("//ws/main/src/A.java", myMapping.depotToClient("//depot/main/src/A.java"));
+    assertEquals("//depot/main/src/A.java", myMapping.clientToDepot("//ws/main/src/A.java"));
+  }
+
+  public void testExclusionAndLaterLines() {
+    assertNull(myMapping.depotToClient("//depot/main/generated/B.java"));
+    assertNull(myMapping.clientToDepot("//ws/main/generated/B.java"));
+    assertEquals("//ws/main/generated/keep.txt", myMapping.depotToClient("//depot/main/generated/keep.txt"));
+  }
+
+  public void testOverlayWinsForClientPath() {
+    assertEquals("//ws/main/res/x.png", myMapping.depotToClient("//depot/overlay/x.png"));
+    assertEquals("//depot/overlay/x.png", myMapping.clientToDepot("//ws/main/res/x.png"));
+  }
+
+  public void testWildcards() {
+    assertEquals("//ws/jars/util.jar", myMapping.depotToClient("//depot/lib/util.jar"));
+    assertNull(myMapping.depotToClient("//depot/lib/sub/util.jar"));
+    assertEquals("//ws/rel/b/a.txt", myMapping.depotToClient("//depot/rel/a/b.txt"));
+    assertEquals("//depot/rel/a/b.txt", myMapping.clientToDepot("//ws/rel/b/a.txt"));
+  }
+
+  public void testQuotedAndCaseInsensitive() {
+    assertEquals("//ws/with space/f.txt", myMapping.depotToClient("//depot/with space/f.txt"));
+    assertEquals("//ws/main/a.txt", myMapping.depotToClient("//DEPOT/Main/a.txt"));
+    assertNull(myMapping.depotToClient("//other/a.txt"));
+  }
+
+  public void testCaseSensitiveServer() {
+    ClientViewMapping mapping = ClientViewMapping.create("ws", List.of("//depot/main/... //ws/main/...",
+                                                                       "//depot/Main/... //ws/upper/..."), true);
+    assertNotNull(mapping);
+    assertEquals("//ws/main/a.txt", mapping.depotToClient("//depot/main/a.txt"));
+    assertEquals("//ws/upper/a.txt", mapping.depotToClient("//depot/Main/a.txt"));
+    assertNull(mapping.depotToClient("//DEPOT/main/a.txt"));
+    assertNull(mapping.clientToDepot("//WS/main/a.txt"));
+    assertEquals("//depot/Main/a.txt", mapping.clientToDepot("//ws/upper/a.txt"));
+  }
+
+  public void testUnparsableView() {
+    assertNull(ClientViewMapping.create("ws", List.of("//depot/... //ws/... extra"), false));
+  }
+}
@@ -0,0 +1,126 @@
+package org.jetbrains.idea.perforce.perforce;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class NumberedRecordLogTest extends TestCase {
+  private Path myDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("p4RecordLog", null).toPath();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testAppendAndReopen() throws IOException {
+    Path file = myDir.resolve("changes");
+    try (NumberedRecordLog log = NumberedRecordLog.open(file)) {
+      log.append(records(30, 10, 20));
+      // existing numbers aren't rewritten
+      log.append(Map.of(20L, bytes("other")));
+      assertEquals(3, log.size());
+      assertEquals("20", text(log.read(20)));
+      assertNull(log.read(15));
+    }
+
+    try (NumberedRecordLog log = NumberedRecordLog.open(file)) {
+      assertEquals(3, log.size());
+      assertTrue(log.contains(10));
+      assertEquals("30", text(log.read(30)));
+      log.append(records(5));
+      assertEquals("5", text(log.read(5)));
+    }
+  }
+
+  public void testReplaceAndReopen() throws IOException {
+    Path file = myDir.resolve("changes");
+    try (NumberedRecordLog log = NumberedRecordLog.open(file)) {
+      log.append(records(1, 2));
+      log.replace(Map.of(2L, bytes("edited"), 3L, bytes("3")));
+      assertEquals(3, log.size());
+      assertEquals("edited", text(log.read(2)));
+      assertEquals("3", text(log.read(3)));
+    }
+
+    try (NumberedRecordLog log = NumberedRecordLog.open(file)) {
+      assertEquals(3, log.size());
+      assertEquals("1", text(log.read(1)));
+      assertEquals("edited", text(log.read(2)));
+      assertEquals(List.of(3L, 2L, 1L), descending(log, 0, 10, 10));
+    }
+  }
+
+  public void testForEachDescending() throws IOException {
+    try (NumberedRecordLog log = NumberedRecordLog.open(myDir.resolve("changes"))) {
+      log.append(records(1, 7, 3, 9, 5));
+      assertEquals(List.of(7L, 5L, 3L), descending(log, 2, 8, 10));
+      assertEquals(List.of(9L, 7L), descending(log, 0, 100, 2));
+      assertEquals(List.of(), descending(log, 10, 20, 10));
+    }
+  }
+
+  public void testTruncatedRecordIsDropped() throws IOException {
+    Path file = myDir.resolve("changes");
+    try (NumberedRecordLog log = NumberedRecordLog.open(file)) {
+      log.append(records(1, 2));
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(Files.size(file) - 1);
+    }
+
+    try (NumberedRecordLog log = NumberedRecordLog.open(file)) {
+      assertEquals(1, log.size());
+      assertFalse(log.contains(2));
+      log.append(records(3));
+    }
+    try (NumberedRecordLog log = NumberedRecordLog.open(file)) {
+      assertEquals("3", text(log.read(3)));
+    }
+  }
+
+  private static List<Long> descending(NumberedRecordLog log, long from, long to, int limit) {
+    List<Long> result = new ArrayList<>();
+    log.forEachDescending(from, to, number -> {
+      result.add(number);
+      return result.size() < limit;
+    });
+    return result;
+  }
+
+  private static Map<Long, byte[]> records(long... numbers) {
+    Map<Long, byte[]> records = new LinkedHashMap<>();
+    for (long number : numbers) {
+      records.put(number, bytes(String.valueOf(number)));
+    }
+    return records;
+  }
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String text(byte[] bytes) {
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,89 @@
+package org.jetbrains.idea.perforce.perforce;
+
+import junit.framework.TestCase;
+import org.jetbrains.idea.perforce.perforce.connections.P4CommandStatistics;
+import org.jetbrains.idea.perforce.perforce.connections.P4CommandStatistics.CommandCounter;
+import org.jetbrains.idea.perforce.perforce.connections.P4CommandStatistics.CommandStatistics;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class P4CommandStatisticsTest extends TestCase {
+  public void testCountersAreAggregatedPerConnectionAndCommand() {
+    P4CommandStatistics statistics = new P4CommandStatistics();
+    statistics.record("server, user@client", "fstat", ms(5), ms(100), 1000, false);
+    statistics.record("server, user@client", "fstat", 0, ms(300), 3000, true);
+    statistics.record("server, user@client", "opened", 0, ms(10), 10, false);
+    statistics.record("other, user@client", "fstat", 0, ms(50), 10, false);
+
+    List<CommandStatistics> snapshot = statistics.snapshot();
+    assertEquals(3, snapshot.size());
+
+    CommandStatistics fstat = snapshot.get(0);
+    assertEquals("server, user@client", fstat.connection());
+    assertEquals("fstat", fstat.command());
+    assertEquals(2, fstat.count());
+    assertEquals(1, fstat.failures());
+    assertEquals(400, fstat.totalMs());
+    assertEquals(300, fstat.maxMs());
+    assertEquals(5, fstat.waitMs());
+    assertEquals(4000, fstat.outputBytes());
+    assertEquals(200.0, fstat.averageMs(), 0.001);
+    assertEquals(5.0, fstat.throughput(), 0.001);
+
+    statistics.reset();
+    assertTrue(statistics.snapshot().isEmpty());
+  }
+
+  public void testPercentilesFromHistogram() {
+    P4CommandStatistics statistics = new P4CommandStatistics();
+    for (int i = 0; i < 9; i++) {
+      statistics.record("server", "have", 0, ms(3), 0, false);
+    }
+    statistics.record("server", "have", 0, ms(1000), 0, false);
+
+    CommandStatistics have = statistics.snapshot().get(0);
+    // 3 ms falls into [2, 4)
+    assertEquals(4, have.percentileMs(0.5));
+    assertEquals(4, have.percentileMs(0.9));
+    // [512, 1024) is capped by the maximum
+    assertEquals(1000, have.percentileMs(0.99));
+  }
+
+  public void testJsonExport() {
+    P4CommandStatistics statistics = new P4CommandStatistics();
+    statistics.record("server \"a\"", "fstat", 0, ms(100), 10, false);
+    statistics.recordRefresh(ms(250), 7);
+
+    String json = statistics.toJson();
+    assertTrue(json, json.contains("\"connection\": \"server \\\"a\\\"\", \"command\": \"fstat\", \"count\": 1"));
+    assertTrue(json, json.contains("\"p50Ms\": 100"));
+    assertTrue(json, json.contains("\"refreshes\": {\"count\": 1, \"totalMs\": 250, \"maxMs\": 250, \"commands\": 7, \"maxCommands\": 7}"));
+  }
+
+  public void testCommandCounterCountsOnlyCommandsOfItsActivity() throws Exception {
+    P4CommandStatistics statistics = new P4CommandStatistics();
+    try (CommandCounter counter = CommandCounter.start()) {
+      statistics.record("server", "opened", 0, ms(10), 0, false);
+
+      CommandCounter propagated = CommandCounter.current();
+      Thread worker = new Thread(() -> CommandCounter.runWith(propagated, () -> {
+        statistics.record("server", "describe", 0, ms(10), 0, false);
+        return null;
+      }));
+      Thread other = new Thread(() -> statistics.record("server", "fstat", 0, ms(10), 0, false));
+      worker.start();
+      other.start();
+      worker.join();
+      other.join();
+
+      assertEquals(2, counter.getCount());
+    }
+    assertNull(CommandCounter.current());
+    assertEquals(3, statistics.snapshot().size());
+  }
+
+  private static long ms(long millis) {
+    return TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+}
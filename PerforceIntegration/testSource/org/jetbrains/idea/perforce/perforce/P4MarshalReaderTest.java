@@ -0,0 +1,120 @@
+package org.jetbrains.idea.perforce.perforce;
+
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class P4MarshalReaderTest extends TestCase {
+  public void testRecords() throws IOException {
+    byte[] output = new Marshal()
+      .dict().str("code").str("stat").str("depotFile").str("//depot/a.txt").str("rev").integer(3).end()
+      .dict().str("code").str("error").str("data").str("b.txt - file(s) not opened on this client.\n")
+      .str("severity").integer(2).str("generic").integer(17).end()
+      .bytes();
+
+    P4MarshalReader reader = new P4MarshalReader(new ByteArrayInputStream(output), StandardCharsets.UTF_8);
+    P4Record stat = reader.next();
+    assertNotNull(stat);
+    assertEquals("stat", stat.getCode());
+    assertFalse(stat.isError());
+    assertEquals("//depot/a.txt", stat.get("depotFile"));
+    assertEquals("3", stat.get("rev"));
+
+    P4Record error = reader.next();
+    assertNotNull(error);
+    assertTrue(error.isError());
+    assertEquals(P4Record.SEVERITY_WARN, error.getSeverity());
+    assertEquals(P4Record.GENERIC_EMPTY, error.getGeneric());
+    assertEquals("b.txt - file(s) not opened on this client.", error.getMessage());
+
+    assertNull(reader.next());
+  }
+
+  public void testTruncatedOutput() {
+    byte[] output = new Marshal().dict().str("code").str("stat").bytes();
+    P4MarshalReader reader = new P4MarshalReader(new ByteArrayInputStream(output), StandardCharsets.UTF_8);
+    try {
+      reader.next();
+      fail();
+    }
+    catch (EOFException ignored) {
+    }
+    catch (IOException e) {
+      fail(e.getMessage());
+    }
+  }
+
+  public void testParserSkipsEmptyResultErrorsAndReportsOthers() throws IOException {
+    byte[] output = new Marshal()
+      .dict().str("code").str("stat").str("depotFile").str("//depot/a.txt").str("rev").str("5").end()
+      .dict().str("code").str("error").str("data").str("no such file(s).").str("severity").integer(2).str("generic").integer(17).end()
+      .dict().str("code").str("error").str("data").str("Your session has expired, please login again.")
+      .str("severity").integer(3).str("generic").integer(7).end()
+      .bytes();
+
+    Object2LongMap<String> revisions = new Object2LongOpenHashMap<>();
+    P4TaggedParser parser = new P4TaggedParser(P4Command.opened, revisions) {
+      @Override
+      protected ParsedLine consumeLine(@NotNull String outputLine) {
+        throw new AssertionError(outputLine);
+      }
+
+      @Override
+      protected ParsedLine consumeRecord(@NotNull P4Record record) {
+        return new ParsedLine(record.get("depotFile"), Long.parseLong(record.get("rev")));
+      }
+    };
+    ExecResult result = new ExecResult();
+    parser.readRecords(new ByteArrayInputStream(output), result);
+
+    assertEquals(5, revisions.getLong("//depot/a.txt"));
+    assertEquals(1, revisions.size());
+    assertEquals("Your session has expired, please login again.\n", result.getStderr());
+  }
+
+  private static final class Marshal {
+    private final ByteArrayOutputStream myBytes = new ByteArrayOutputStream();
+
+    Marshal dict() {
+      myBytes.write('{');
+      return this;
+    }
+
+    Marshal end() {
+      myBytes.write('0');
+      return this;
+    }
+
+    Marshal str(String value) {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      myBytes.write('s');
+      writeInt(bytes.length);
+      myBytes.writeBytes(bytes);
+      return this;
+    }
+
+    Marshal integer(int value) {
+      myBytes.write('i');
+      writeInt(value);
+      return this;
+    }
+
+    private void writeInt(int value) {
+      myBytes.write(value & 0xff);
+      myBytes.write((value >> 8) & 0xff);
+      myBytes.write((value >> 16) & 0xff);
+      myBytes.write((value >> 24) & 0xff);
+    }
+
+    byte[] bytes() {
+      return myBytes.toByteArray();
+    }
+  }
+}
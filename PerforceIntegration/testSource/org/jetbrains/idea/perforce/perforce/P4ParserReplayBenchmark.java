@@ -0,0 +1,222 @@
+package org.jetbrains.idea.perforce.perforce;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.testFramework.PerformanceUnitTest;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.idea.perforce.P4TestUtil;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Replays p4 output recorded with {@code -Dp4.record.output.dir} through the parsers, so that their regressions show up
+ * without a server. Tagged output ({@code p4 -G}) is replayed through {@link P4TaggedParser#readRecords}.
+ * <p>
+ * The fixtures committed to {@code testData/replay} are parsed and checked on every run. With {@code -Dp4.replay.benchmark=true}
+ * the fixtures of {@code -Dp4.replay.fixtures.dir} (the committed ones by default) are also parsed {@code -Dp4.replay.iterations}
+ * times after a warm-up, and the median is reported.
+ */
+@PerformanceUnitTest
+public class P4ParserReplayBenchmark {
+  private static final boolean BENCHMARK = Boolean.getBoolean("p4.replay.benchmark");
+  private static final int WARMUP_ITERATIONS = 3;
+  private static final int ITERATIONS = Integer.getInteger("p4.replay.iterations", 20);
+
+  @Test
+  public void fstat() throws Exception {
+    List<FStat> stats = parseFStat(loadFixture("fstat"));
+    assertEquals(3, stats.size());
+    assertEquals("//depot/src/a.txt", stats.get(0).depotFile);
+    assertEquals("/work/src/a.txt", stats.get(0).clientFile);
+    assertEquals("3", stats.get(0).headRev);
+    assertEquals("edit", stats.get(0).action);
+    assertEquals("1", stats.get(1).haveRev);
+    assertEquals("", stats.get(1).action);
+    assertEquals("delete", stats.get(2).action);
+    assertEquals("15", stats.get(2).change);
+
+    benchmark("fstat", fixture -> parseFStat(fixture).size());
+  }
+
+  @Test
+  public void have() throws Exception {
+    Object2LongMap<String> revisions = parseHave(loadFixture("have"));
+    assertEquals(4, revisions.size());
+    assertEquals(3, revisions.getLong(local("/work/src/a.txt")));
+    assertEquals(1, revisions.getLong(local("/work/src/b.txt")));
+    assertEquals(4, revisions.getLong(local("/work/src/with - dash.txt")));
+
+    benchmark("have", fixture -> parseHave(fixture).size());
+  }
+
+  @Test
+  public void opened() throws Exception {
+    Object2LongMap<String> revisions = parseOpened(loadFixture("opened"));
+    assertEquals(3, revisions.size());
+    assertEquals(3, revisions.getLong("//depot/src/a.txt"));
+    assertEquals(2, revisions.getLong("//depot/src/c.txt"));
+    assertEquals(1, revisions.getLong("//depot/src/new.txt"));
+
+    benchmark("opened", fixture -> parseOpened(fixture).size());
+  }
+
+  @Test
+  public void taggedHave() throws Exception {
+    ExecResult result = new ExecResult();
+    Object2LongMap<String> revisions = parseTaggedHave(loadFixture("have.tagged"), result);
+    // the "not on client" record is skipped
+    assertEquals(3, revisions.size());
+    assertEquals(3, revisions.getLong(local("/work/src/a.txt")));
+    assertEquals(2, revisions.getLong(local("/work/src/c.txt")));
+    assertEquals("", result.getStderr());
+
+    benchmark("have.tagged", fixture -> parseTaggedHave(fixture, new ExecResult()).size());
+  }
+
+  @Test
+  public void taggedOpened() throws Exception {
+    Object2LongMap<String> revisions = parseTaggedOpened(loadFixture("opened.tagged"));
+    assertEquals(2, revisions.size());
+    assertEquals(3, revisions.getLong("//depot/src/a.txt"));
+    assertEquals(2, revisions.getLong("//depot/src/c.txt"));
+
+    benchmark("opened.tagged", fixture -> parseTaggedOpened(fixture).size());
+  }
+
+  @Test
+  public void where() throws Exception {
+    WhereParser parser = parseWhere(loadFixture("where"));
+    assertNotNull(parser);
+    assertEquals("//depot/src/a.txt", parser.getDepot());
+    assertEquals("//test/src/a.txt", parser.getLocalRootRelative());
+    assertEquals("/work/src/a.txt", parser.getLocal());
+
+    benchmark("where", fixture -> parseWhere(fixture) == null ? 0 : 1);
+  }
+
+  private static List<FStat> parseFStat(Fixture fixture) throws Exception {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(fixture.stdout), StandardCharsets.UTF_8));
+    List<FStat> result = new ArrayList<>();
+    FStat stat;
+    while ((stat = FStat.parseFStat(reader)) != null) {
+      result.add(stat);
+    }
+    return result;
+  }
+
+  private static Object2LongMap<String> parseHave(Fixture fixture) throws Exception {
+    Object2LongOpenHashMap<String> revisions = new Object2LongOpenHashMap<>();
+    new P4HaveParser(path -> path, revisions).readOutput(new ByteArrayInputStream(fixture.stdout));
+    return revisions;
+  }
+
+  private static Object2LongMap<String> parseOpened(Fixture fixture) throws Exception {
+    Object2LongOpenHashMap<String> revisions = new Object2LongOpenHashMap<>();
+    new P4OpenedParser(revisions).readOutput(new ByteArrayInputStream(fixture.stdout));
+    return revisions;
+  }
+
+  private static Object2LongMap<String> parseTaggedHave(Fixture fixture, ExecResult result) throws Exception {
+    Object2LongOpenHashMap<String> revisions = new Object2LongOpenHashMap<>();
+    new P4HaveParser(path -> path, revisions).readRecords(new ByteArrayInputStream(fixture.stdout), result);
+    return revisions;
+  }
+
+  private static Object2LongMap<String> parseTaggedOpened(Fixture fixture) throws Exception {
+    Object2LongOpenHashMap<String> revisions = new Object2LongOpenHashMap<>();
+    new P4OpenedParser(revisions).readRecords(new ByteArrayInputStream(fixture.stdout), new ExecResult());
+    return revisions;
+  }
+
+  private static @Nullable WhereParser parseWhere(Fixture fixture) throws Exception {
+    String line = getLastLine(new String(fixture.stdout, StandardCharsets.UTF_8));
+    // the client name isn't recorded, it's the first segment of the client path
+    int clientStart = line.indexOf(" //") + 3;
+    int clientEnd = line.indexOf('/', clientStart);
+    if (clientStart < 3 || clientEnd < 0) return null;
+    WhereParser parser = new WhereParser(line, List.of(), line.substring(clientStart, clientEnd), fixture.args[fixture.args.length - 1]);
+    parser.execute();
+    return parser;
+  }
+
+  private static String local(String path) {
+    return FileUtil.toSystemDependentName(path);
+  }
+
+  private static Fixture loadFixture(String command) throws IOException {
+    List<Fixture> fixtures = loadFixtures(getCommittedFixturesDir(), command);
+    assertEquals("recorded p4 " + command, 1, fixtures.size());
+    return fixtures.get(0);
+  }
+
+  private static Path getCommittedFixturesDir() {
+    return P4TestUtil.getResource("testData/replay").toPath();
+  }
+
+  private static void benchmark(String command, FixtureParser parser) throws Exception {
+    if (!BENCHMARK) return;
+    String dir = System.getProperty("p4.replay.fixtures.dir");
+    List<Fixture> fixtures = loadFixtures(dir != null ? Path.of(dir) : getCommittedFixturesDir(), command);
+
+    for (Fixture fixture : fixtures) {
+      int results = 0;
+      for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+        results = parser.parse(fixture);
+      }
+      long[] times = new long[ITERATIONS];
+      for (int i = 0; i < ITERATIONS; i++) {
+        long start = System.nanoTime();
+        parser.parse(fixture);
+        times[i] = System.nanoTime() - start;
+      }
+      Arrays.sort(times);
+      double medianMs = times[times.length / 2] / 1_000_000.0;
+      System.out.printf("%s: %d bytes, %d results, median %.3f ms, %.1f MB/s%n", fixture.name, fixture.stdout.length, results, medianMs,
+                        medianMs == 0 ? 0 : fixture.stdout.length / medianMs / 1000);
+    }
+  }
+
+  private static List<Fixture> loadFixtures(Path dir, String command) throws IOException {
+    List<Fixture> fixtures = new ArrayList<>();
+    try (Stream<Path> files = Files.list(dir)) {
+      for (Path stdout : files.filter(file -> file.getFileName().toString().endsWith("-" + command + ".stdout")).sorted().toList()) {
+        String name = StringUtil.trimEnd(stdout.getFileName().toString(), ".stdout");
+        Path args = dir.resolve(name + ".args");
+        String[] arguments = Files.exists(args) ? Files.readString(args).split("\n") : new String[]{""};
+        fixtures.add(new Fixture(name, arguments, Files.readAllBytes(stdout)));
+      }
+    }
+    return fixtures;
+  }
+
+  private static String getLastLine(String output) {
+    String[] lines = output.trim().split("\n");
+    return lines[lines.length - 1].trim();
+  }
+
+  private record Fixture(String name, String[] args, byte[] stdout) {
+  }
+
+  private interface FixtureParser {
+    /**
+     * @return the number of parsed entries
+     */
+    int parse(Fixture fixture) throws Exception;
+  }
+}
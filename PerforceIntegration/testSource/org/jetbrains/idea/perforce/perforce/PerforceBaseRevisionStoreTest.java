@@ -0,0 +1,106 @@
+package org.jetbrains.idea.perforce.perforce;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+public class PerforceBaseRevisionStoreTest extends TestCase {
+  private Path myDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("p4BaseRevisions", null).toPath();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testStoreAndLoad() {
+    PerforceBaseRevisionStore store = new PerforceBaseRevisionStore(myDir, () -> 1024 * 1024);
+    byte[] content = "base content".getBytes(StandardCharsets.UTF_8);
+    store.put(List.of("local:/work/a.txt", "depot://depot/a.txt#3"), 3, content);
+
+    assertEquals("base content", new String(store.get("local:/work/a.txt", 3), StandardCharsets.UTF_8));
+    assertEquals("base content", new String(store.get("depot://depot/a.txt#3", 3), StandardCharsets.UTF_8));
+    assertNull(store.get("local:/work/a.txt", 4));
+    assertNull(store.get("local:/work/b.txt", 3));
+
+    store.remove("local:/work/a.txt");
+    assertNull(store.get("local:/work/a.txt", 3));
+    assertNotNull(store.get("depot://depot/a.txt#3", 3));
+  }
+
+  public void testSameContentIsStoredOnce() throws IOException {
+    PerforceBaseRevisionStore store = new PerforceBaseRevisionStore(myDir, () -> 1024 * 1024);
+    byte[] content = "shared".getBytes(StandardCharsets.UTF_8);
+    store.put(List.of("local:/work/a.txt"), 1, content);
+    store.put(List.of("local:/work/copy/a.txt"), 1, content);
+    assertEquals(1, countBlobs());
+
+    store.remove("local:/work/a.txt");
+    assertEquals(1, countBlobs());
+    store.remove("local:/work/copy/a.txt");
+    assertEquals(0, countBlobs());
+    assertEquals(0, store.getTotalSize());
+  }
+
+  public void testLeastRecentlyUsedEvicted() {
+    byte[] first = randomBytes(1);
+    byte[] second = randomBytes(2);
+    byte[] third = randomBytes(3);
+    PerforceBaseRevisionStore store = new PerforceBaseRevisionStore(myDir, () -> 2 * 10_000 + 1_000);
+    store.put(List.of("first"), 1, first);
+    store.put(List.of("second"), 1, second);
+    assertNotNull(store.get("first", 1));
+
+    store.put(List.of("third"), 1, third);
+    assertNotNull(store.get("first", 1));
+    assertNull(store.get("second", 1));
+    assertNotNull(store.get("third", 1));
+  }
+
+  public void testLargeContentSurvivesRestart() {
+    byte[] content = new byte[8 * 1024 * 1024];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte)('a' + i % 26);
+    }
+    PerforceBaseRevisionStore store = new PerforceBaseRevisionStore(myDir, () -> 64 * 1024 * 1024);
+    store.put(List.of("local:/work/generated.txt"), 7, content);
+    store.put(List.of("local:/work/small.txt"), 1, "small".getBytes(StandardCharsets.UTF_8));
+    assertTrue(store.getTotalSize() < content.length / 10);
+    store.flush();
+
+    PerforceBaseRevisionStore reopened = new PerforceBaseRevisionStore(myDir, () -> 64 * 1024 * 1024);
+    assertTrue(Arrays.equals(content, reopened.get("local:/work/generated.txt", 7)));
+    assertEquals("small", new String(reopened.get("local:/work/small.txt", 1), StandardCharsets.UTF_8));
+  }
+
+  private long countBlobs() throws IOException {
+    try (Stream<Path> files = Files.list(myDir)) {
+      return files.filter(file -> file.getFileName().toString().endsWith(".z")).count();
+    }
+  }
+
+  // incompressible, so that the compressed size is predictable
+  private static byte[] randomBytes(long seed) {
+    byte[] bytes = new byte[10_000];
+    new Random(seed).nextBytes(bytes);
+    return bytes;
+  }
+}
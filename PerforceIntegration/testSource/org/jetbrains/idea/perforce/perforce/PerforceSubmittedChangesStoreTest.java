@@ -0,0 +1,194 @@
+package org.jetbrains.idea.perforce.perforce;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vcs.versionBrowser.ChangeBrowserSettings;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.idea.perforce.ChangeListData;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+public class PerforceSubmittedChangesStoreTest extends TestCase {
+  private static final String ROOT = "//depot/...";
+
+  private Path myDir;
+  private final List<PerforceSubmittedChangesStore> myStores = new ArrayList<>();
+  private final FakeServer myServer = new FakeServer();
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("p4SubmittedChanges", null).toPath();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myStores.forEach(PerforceSubmittedChangesStore::dispose);
+      FileUtil.delete(myDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testNewestWindowIsAnsweredFromStore() throws VcsException {
+    myServer.submit(1, 50);
+    PerforceSubmittedChangesStore store = createStore(Long.MAX_VALUE);
+
+    assertEquals(range(50, 41), numbers(query(store, new ChangeBrowserSettings(), 10)));
+    assertEquals(range(50, 31), numbers(query(store, new ChangeBrowserSettings(), 20)));
+    assertEquals(List.of(ROOT + " -m1000", ROOT + "@51,@now -m10000"), myServer.requests);
+  }
+
+  public void testNewChangesAreFetchedAboveCoveredRange() throws VcsException {
+    myServer.submit(1, 50);
+    PerforceSubmittedChangesStore store = createStore(Long.MAX_VALUE);
+    query(store, new ChangeBrowserSettings(), 10);
+
+    myServer.submit(51, 52);
+    assertEquals(range(52, 48), numbers(query(store, new ChangeBrowserSettings(), 5)));
+  }
+
+  public void testOlderWindowIsFetchedPageByPage() throws VcsException {
+    myServer.submit(1, 2500);
+    PerforceSubmittedChangesStore store = createStore(Long.MAX_VALUE);
+
+    assertEquals(range(2500, 1200), numbers(query(store, changesAfter(1200), 0)));
+    assertEquals(List.of(ROOT + " -m1000", ROOT + "@1,@1500 -m1000"), myServer.requests);
+
+    // the covered range now reaches down to 501
+    assertEquals(range(1000, 600), numbers(query(store, changesBetween(600, 1000), 0)));
+    assertEquals(List.of(ROOT + " -m1000", ROOT + "@1,@1500 -m1000", ROOT + "@2501,@now -m10000"), myServer.requests);
+  }
+
+  public void testWindowBelowCoveredRangeIsLeftToServer() throws VcsException {
+    myServer.submit(1, 2500);
+    PerforceSubmittedChangesStore store = createStore(Long.MAX_VALUE);
+    query(store, new ChangeBrowserSettings(), 10);
+
+    assertNull(query(store, changesBefore(1000), 0));
+  }
+
+  public void testGapAfterLongAbsenceIsNotAnsweredFromStore() throws VcsException {
+    myServer.submit(1, 10);
+    PerforceSubmittedChangesStore store = createStore(Long.MAX_VALUE);
+    assertEquals(range(10, 1), numbers(query(store, new ChangeBrowserSettings(), 0)));
+
+    // more new changes than a refresh fetches, the covered range starts anew at 12
+    myServer.submit(11, 10_011);
+    assertEquals(range(10_011, 10_002), numbers(query(store, new ChangeBrowserSettings(), 10)));
+    assertNull(query(store, changesBefore(11), 0));
+  }
+
+  public void testEditedDescriptionIsRefreshed() throws VcsException {
+    myServer.submit(1, 5);
+    PerforceSubmittedChangesStore store = createStore(0);
+    assertEquals("change 4", query(store, new ChangeBrowserSettings(), 0).get(1).DESCRIPTION);
+
+    myServer.changes.get(4L).DESCRIPTION = "edited";
+    assertEquals("edited", query(store, new ChangeBrowserSettings(), 0).get(1).DESCRIPTION);
+
+    store.dispose();
+    PerforceSubmittedChangesStore reopened = createStore(Long.MAX_VALUE);
+    List<ChangeListData> changes = query(reopened, new ChangeBrowserSettings(), 0);
+    assertEquals(range(5, 1), numbers(changes));
+    assertEquals("edited", changes.get(1).DESCRIPTION);
+  }
+
+  private PerforceSubmittedChangesStore createStore(long revalidationIntervalMs) {
+    PerforceSubmittedChangesStore store = new PerforceSubmittedChangesStore(myDir, revalidationIntervalMs);
+    myStores.add(store);
+    return store;
+  }
+
+  private List<ChangeListData> query(PerforceSubmittedChangesStore store, ChangeBrowserSettings settings, int maxCount)
+    throws VcsException {
+    return store.query("server\nclient\n" + ROOT, ROOT, null, null, settings, maxCount, myServer);
+  }
+
+  private static ChangeBrowserSettings changesAfter(long number) {
+    ChangeBrowserSettings settings = new ChangeBrowserSettings();
+    settings.USE_CHANGE_AFTER_FILTER = true;
+    settings.CHANGE_AFTER = String.valueOf(number);
+    settings.STRICTLY_AFTER = false;
+    return settings;
+  }
+
+  private static ChangeBrowserSettings changesBefore(long number) {
+    ChangeBrowserSettings settings = new ChangeBrowserSettings();
+    settings.USE_CHANGE_BEFORE_FILTER = true;
+    settings.CHANGE_BEFORE = String.valueOf(number);
+    return settings;
+  }
+
+  private static ChangeBrowserSettings changesBetween(long after, long before) {
+    ChangeBrowserSettings settings = changesAfter(after);
+    settings.USE_CHANGE_BEFORE_FILTER = true;
+    settings.CHANGE_BEFORE = String.valueOf(before);
+    return settings;
+  }
+
+  private static List<Long> numbers(List<ChangeListData> changes) {
+    assertNotNull(changes);
+    List<Long> numbers = new ArrayList<>();
+    for (ChangeListData data : changes) {
+      numbers.add(data.NUMBER);
+    }
+    return numbers;
+  }
+
+  private static List<Long> range(long from, long downTo) {
+    List<Long> numbers = new ArrayList<>();
+    for (long number = from; number >= downTo; number--) {
+      numbers.add(number);
+    }
+    return numbers;
+  }
+
+  private static final class FakeServer implements PerforceSubmittedChangesStore.Fetcher {
+    final TreeMap<Long, ChangeListData> changes = new TreeMap<>();
+    final List<String> requests = new ArrayList<>();
+
+    void submit(long from, long to) {
+      for (long number = from; number <= to; number++) {
+        ChangeListData data = new ChangeListData();
+        data.NUMBER = number;
+        data.DATE = "2026/01/01 10:00:00";
+        data.USER = "user";
+        data.CLIENT = "client";
+        data.DESCRIPTION = "change " + number;
+        changes.put(number, data);
+      }
+    }
+
+    @Override
+    public @NotNull List<ChangeListData> fetch(@NotNull String fileSpec, int maxCount) {
+      requests.add(fileSpec + " -m" + maxCount);
+      long from = 1;
+      long to = Long.MAX_VALUE;
+      int at = fileSpec.indexOf('@');
+      if (at >= 0) {
+        String[] bounds = fileSpec.substring(at + 1).split(",@");
+        from = Long.parseLong(bounds[0]);
+        to = "now".equals(bounds[1]) ? Long.MAX_VALUE : Long.parseLong(bounds[1]);
+      }
+      List<ChangeListData> result = new ArrayList<>();
+      for (ChangeListData data : changes.subMap(from, true, to, true).descendingMap().values()) {
+        if (result.size() == maxCount) break;
+        ChangeListData copy = new ChangeListData();
+        copy.NUMBER = data.NUMBER;
+        copy.DATE = data.DATE;
+        copy.USER = data.USER;
+        copy.CLIENT = data.CLIENT;
+        copy.DESCRIPTION = data.DESCRIPTION;
+        result.add(copy);
+      }
+      return result;
+    }
+  }
+}
@@ -192,7 +192,7 @@ public class PbTextParser implements PsiParser, LightPsiParser {
   }
 
   /* ********************************************************** */
-  // FieldName ((':' Value) | (':'? (MessageValue | ValueList))) (';' | ',')?
+  // FieldName ((':' Value) | (':'? (LazyMessageValue | ValueList))) (';' | ',')?
   public static boolean Field(PsiBuilder builder, int level) {
     if (!recursion_guard_(builder, level, "Field")) return false;
     boolean result, pinned;
@@ -205,7 +205,7 @@ public class PbTextParser implements PsiParser, LightPsiParser {
     return result || pinned;
   }
 
-  // (':' Value) | (':'? (MessageValue | ValueList))
+  // (':' Value) | (':'? (LazyMessageValue | ValueList))
   private static boolean Field_1(PsiBuilder builder, int level) {
     if (!recursion_guard_(builder, level, "Field_1")) return false;
     boolean result;
@@ -227,7 +227,7 @@ public class PbTextParser implements PsiParser, LightPsiParser {
     return result;
   }
 
-  // ':'? (MessageValue | ValueList)
+  // ':'? (LazyMessageValue | ValueList)
   private static boolean Field_1_1(PsiBuilder builder, int level) {
     if (!recursion_guard_(builder, level, "Field_1_1")) return false;
     boolean result;
@@ -245,11 +245,11 @@ public class PbTextParser implements PsiParser, LightPsiParser {
     return true;
   }
 
-  // MessageValue | ValueList
+  // LazyMessageValue | ValueList
   private static boolean Field_1_1_1(PsiBuilder builder, int level) {
     if (!recursion_guard_(builder, level, "Field_1_1_1")) return false;
     boolean result;
-    result = MessageValue(builder, level + 1);
+    result = LazyMessageValue(builder, level + 1);
     if (!result) result = ValueList(builder, level + 1);
     return result;
   }
@@ -305,6 +305,12 @@ public class PbTextParser implements PsiParser, LightPsiParser {
     return result;
   }
 
+  /* ********************************************************** */
+  // <<parseLazyMessageValue MessageValue>>
+  static boolean LazyMessageValue(PsiBuilder builder, int level) {
+    return parseLazyMessageValue(builder, level + 1, PbTextParser::MessageValue);
+  }
+
   /* ********************************************************** */
   // !(FieldName | '}' | '>')
   static boolean MessageRecovery(PsiBuilder builder, int level) {
@@ -592,12 +598,12 @@ public class PbTextParser implements PsiParser, LightPsiParser {
   }
 
   /* ********************************************************** */
-  // Value | MessageValue
+  // Value | LazyMessageValue
   static boolean ValueOrMessage(PsiBuilder builder, int level) {
     if (!recursion_guard_(builder, level, "ValueOrMessage")) return false;
     boolean result;
     result = Value(builder, level + 1);
-    if (!result) result = MessageValue(builder, level + 1);
+    if (!result) result = LazyMessageValue(builder, level + 1);
     return result;
   }
 
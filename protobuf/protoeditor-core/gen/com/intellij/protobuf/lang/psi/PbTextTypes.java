@@ -4,6 +4,7 @@ package com.intellij.protobuf.lang.psi;
 import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.PsiElement;
 import com.intellij.lang.ASTNode;
+import com.intellij.protobuf.lang.psi.type.PbTextCustomTypes;
 import com.intellij.protobuf.lang.psi.impl.*;
 
 public interface PbTextTypes {
@@ -13,7 +14,7 @@ public interface PbTextTypes {
   IElementType FIELD = new PbTextElementType("FIELD");
   IElementType FIELD_NAME = new PbTextElementType("FIELD_NAME");
   IElementType IDENTIFIER_VALUE = new PbTextElementType("IDENTIFIER_VALUE");
-  IElementType MESSAGE_VALUE = new PbTextElementType("MESSAGE_VALUE");
+  IElementType MESSAGE_VALUE = PbTextCustomTypes.get("MESSAGE_VALUE");
   IElementType NUMBER_VALUE = new PbTextElementType("NUMBER_VALUE");
   IElementType STRING_PART = new PbTextElementType("STRING_PART");
   IElementType STRING_VALUE = new PbTextElementType("STRING_VALUE");
@@ -22,11 +22,12 @@ import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.project.DumbAware;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.protobuf.ide.folding.ProtoFoldingUtils.ConsecutiveElementGrouper;
+import com.intellij.protobuf.lang.PbTextLargeFileMode;
 import com.intellij.protobuf.lang.psi.ProtoBlockBody;
 import com.intellij.protobuf.lang.psi.ProtoTokenTypes;
 import com.intellij.psi.PsiComment;
 import com.intellij.psi.PsiElement;
-import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.PsiRecursiveElementWalkingVisitor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -40,13 +41,15 @@ public class ProtoFoldingBuilder extends FoldingBuilderEx implements DumbAware {
   public FoldingDescriptor @NotNull [] buildFoldRegions(
       @NotNull PsiElement root, @NotNull Document document, boolean quick) {
 
-    Collection<PsiElement> elements =
-        PsiTreeUtil.findChildrenOfAnyType(root, ProtoBlockBody.class, PsiComment.class);
+    Collection<PsiElement> elements = findFoldedElements(root);
     final List<FoldingDescriptor> descriptors = new ArrayList<>(elements.size());
 
     ConsecutiveElementGrouper grouper = new ConsecutiveElementGrouper();
     for (PsiElement element : elements) {
-      if (element instanceof ProtoBlockBody) {
+      if (PbTextLargeFileMode.isUnparsed(element)) {
+        ProtoFoldingUtils.addIfNotNull(
+            descriptors, buildUnparsedBlockDescriptor(element.getNode()));
+      } else if (element instanceof ProtoBlockBody) {
         ProtoFoldingUtils.addIfNotNull(descriptors, buildBlockDescriptor((ProtoBlockBody) element));
       } else if (ProtoTokenTypes.BLOCK_COMMENT.equals(element.getNode().getElementType())) {
         descriptors.add(new FoldingDescriptor(element.getNode(), element.getTextRange()));
@@ -80,6 +83,47 @@ public class ProtoFoldingBuilder extends FoldingBuilderEx implements DumbAware {
     return false;
   }
 
+  /*
+   * Returns the block bodies and comments within the given root. The message values of large
+   * prototext files are parsed lazily and aren't expanded here.
+   */
+  private static List<PsiElement> findFoldedElements(PsiElement root) {
+    List<PsiElement> elements = new ArrayList<>();
+    root.accept(
+        new PsiRecursiveElementWalkingVisitor() {
+          @Override
+          public void visitElement(@NotNull PsiElement element) {
+            if (element != root
+                && (element instanceof ProtoBlockBody || element instanceof PsiComment)) {
+              elements.add(element);
+            }
+            if (!PbTextLargeFileMode.isUnparsed(element)) {
+              super.visitElement(element);
+            }
+          }
+        });
+    return elements;
+  }
+
+  // Uses the text of an unparsed block, which starts and ends with its braces.
+  private static FoldingDescriptor buildUnparsedBlockDescriptor(ASTNode block) {
+    CharSequence text = block.getChars();
+    if (text.length() < 2) {
+      return null;
+    }
+    char open = text.charAt(0);
+    char close = text.charAt(text.length() - 1);
+    if (!isMatchingBrace(open, close)) {
+      return null;
+    }
+    return new FoldingDescriptor(
+        block, block.getTextRange(), /* group= */ null, open + "..." + close);
+  }
+
+  private static boolean isMatchingBrace(char open, char close) {
+    return (open == '{' && close == '}') || (open == '<' && close == '>');
+  }
+
   private static FoldingDescriptor buildBlockDescriptor(ProtoBlockBody block) {
     PsiElement open = block.getStart();
     PsiElement close = block.getEnd();
@@ -0,0 +1,34 @@
+package com.intellij.protobuf.ide.highlighter;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.util.Condition;
+import com.intellij.protobuf.lang.PbTextLargeFileMode;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+
+/**
+ * Keeps the highlighting and inspection passes out of the unparsed message values of a large
+ * prototext file, unless they are in the chunks annotated in one of its editors. Walking into them
+ * would parse the whole file.
+ *
+ * <p>Values parsed by the annotation of newly shown chunks are highlighted once the viewport
+ * listener restarts highlighting.
+ *
+ * @see PbTextLargeFileViewportListener
+ */
+public class PbTextLargeFileHighlightFilter implements Condition<PsiElement> {
+  @Override
+  public boolean value(PsiElement element) {
+    if (!PbTextLargeFileMode.isUnparsed(element)) {
+      return true;
+    }
+    PsiFile file = element.getContainingFile();
+    if (file == null || !PbTextLargeFileMode.isLarge(file)) {
+      return true;
+    }
+    Document document = file.getViewProvider().getDocument();
+    return document != null
+        && PbTextLargeFileViewportListener.intersectsAnnotatedRange(
+            document, element.getTextRange());
+  }
+}
@@ -0,0 +1,101 @@
+package com.intellij.protobuf.ide.highlighter;
+
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.EditorFactoryEvent;
+import com.intellij.openapi.editor.event.EditorFactoryListener;
+import com.intellij.openapi.editor.ex.util.EditorUtil;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileTypes.FileTypeRegistry;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.protobuf.lang.PbTextFileType;
+import com.intellij.protobuf.lang.PbTextLargeFileMode;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.util.Alarm;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+
+/**
+ * Restarts the highlighting of a large prototext file once its editor is scrolled to chunks that
+ * weren't annotated yet.
+ *
+ * @see PbTextLargeFileMode#getAnnotatedRange
+ */
+public class PbTextLargeFileViewportListener implements EditorFactoryListener {
+  private static final Key<TextRange> ANNOTATED_RANGE = Key.create("protobuf.text.annotated.range");
+  private static final int RESTART_DELAY_MS = 300;
+
+  @Override
+  public void editorCreated(@NotNull EditorFactoryEvent event) {
+    Editor editor = event.getEditor();
+    Project project = editor.getProject();
+    VirtualFile file = FileDocumentManager.getInstance().getFile(editor.getDocument());
+    if (project == null
+        || file == null
+        || !FileTypeRegistry.getInstance().isFileOfType(file, PbTextFileType.INSTANCE)) {
+      return;
+    }
+    Disposable disposable = Disposer.newDisposable("PbTextLargeFileViewportListener");
+    EditorUtil.disposeWithEditor(editor, disposable);
+    Alarm alarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, disposable);
+    editor
+        .getScrollingModel()
+        .addVisibleAreaListener(
+            e -> {
+              if (!PbTextLargeFileMode.isLarge(editor.getDocument().getTextLength())) {
+                return;
+              }
+              TextRange range = PbTextLargeFileMode.getAnnotatedRange(getVisibleRange(editor));
+              if (range.equals(editor.getUserData(ANNOTATED_RANGE))) {
+                return;
+              }
+              editor.putUserData(ANNOTATED_RANGE, range);
+              alarm.cancelAllRequests();
+              alarm.addRequest(() -> restartHighlighting(project, editor), RESTART_DELAY_MS);
+            },
+            disposable);
+  }
+
+  /**
+   * Returns true if {@code range} intersects the chunks annotated in one of the editors of {@code
+   * document}.
+   */
+  static boolean intersectsAnnotatedRange(@NotNull Document document, @NotNull TextRange range) {
+    for (Editor editor : EditorFactory.getInstance().getEditors(document)) {
+      TextRange annotatedRange = editor.getUserData(ANNOTATED_RANGE);
+      if (annotatedRange != null && annotatedRange.intersects(range)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static TextRange getVisibleRange(Editor editor) {
+    Rectangle area = editor.getScrollingModel().getVisibleArea();
+    int start = editor.logicalPositionToOffset(editor.xyToLogicalPosition(area.getLocation()));
+    int end =
+        editor.logicalPositionToOffset(
+            editor.xyToLogicalPosition(new Point(area.x + area.width, area.y + area.height)));
+    return new TextRange(start, Math.max(start, end));
+  }
+
+  private static void restartHighlighting(Project project, Editor editor) {
+    if (project.isDisposed() || editor.isDisposed()) {
+      return;
+    }
+    PsiFile file = PsiDocumentManager.getInstance(project).getPsiFile(editor.getDocument());
+    if (file != null) {
+      DaemonCodeAnalyzer.getInstance(project).restart(file);
+    }
+  }
+}
@@ -7,21 +7,17 @@ import com.intellij.openapi.application.runReadAction
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.roots.ProjectRootManager
 import com.intellij.openapi.util.Computable
-import com.intellij.openapi.util.text.StringUtil
 import com.intellij.openapi.vfs.VfsUtil
 import com.intellij.openapi.vfs.VirtualFile
 import com.intellij.protobuf.ide.PbCompositeModificationTracker
 import com.intellij.protobuf.ide.settings.PbProjectSettings.ImportPathEntry
-import com.intellij.protobuf.lang.PbFileType
-import com.intellij.protobuf.lang.psi.PbFile
-import com.intellij.psi.PsiManager
-import com.intellij.psi.search.FileTypeIndex
+import com.intellij.protobuf.lang.resolve.PbImportPathSuffixIndex
+import com.intellij.protobuf.lang.resolve.PbImportStatementIndex
 import com.intellij.psi.search.FilenameIndex
 import com.intellij.psi.search.GlobalSearchScope
 import com.intellij.psi.util.CachedValueProvider
 import com.intellij.psi.util.CachedValuesManager
 import com.intellij.util.Plow
-import com.intellij.util.asSafely
 import java.util.stream.Stream
 import kotlin.streams.asStream
 
@@ -111,14 +107,9 @@ internal fun getBuiltInIncludeEntry(): ImportPathEntry? {
   }
 }
 
-internal fun findFileByImportPath(searchedFileName: String,
-                                  searchScope: GlobalSearchScope,
-                                  path: String): VirtualFile? {
-  return Plow.of { processor ->
-    FileTypeIndex.processFiles(PbFileType.INSTANCE, processor, searchScope)
-  }.find { file ->
-    file.nameWithoutExtension == searchedFileName && file.url.endsWith(path)
-  }
+internal fun findFileByImportPath(searchScope: GlobalSearchScope, path: String): VirtualFile? {
+  // the shortest path first, so that the choice among several candidates doesn't depend on the index order
+  return PbImportPathSuffixIndex.findFiles(path, searchScope).minWithOrNull(compareBy<VirtualFile> { it.path.length }.thenBy { it.path })
 }
 
 fun getOrComputeImportPathsForAllImportStatements(project: Project): List<String> {
@@ -134,37 +125,20 @@ fun getOrComputeImportPathsForAllImportStatements(project: Project): List<String
     }
 }
 
+/**
+ * Derives import roots from the import statements of all proto files: a file matching an import path at its end is
+ * imported relative to the directory that precedes the path. Both the imports and the files are taken from indexes
+ * which are updated per changed file, so no PSI is loaded here.
+ */
 internal fun computeImportPathsForAllImportStatements(project: Project): List<String> {
-  val allProtoFiles = runReadAction { FileTypeIndex.getFiles(PbFileType.INSTANCE, GlobalSearchScope.allScope(project)) }
-  val psiManager = PsiManager.getInstance(project)
-
-  val importStatements = allProtoFiles.flatMap { virtualFile ->
-    ApplicationManager.getApplication().runReadAction(Computable {
-      psiManager.findFile(virtualFile)?.asSafely<PbFile>()
-        ?.importStatements
-        ?.flatMap { importStatement -> importStatement.importName?.stringValue?.stringParts.orEmpty() }
-        ?.mapNotNull { singleImport -> singleImport.text?.let(StringUtil::unquoteString) }
-        .orEmpty()
-    })
-  }
-    .filter(String::isNotBlank)
-    .toSet()
-
-  val allProtoFileUrls = ApplicationManager.getApplication().runReadAction(Computable { allProtoFiles.map(VirtualFile::getUrl) })
-
-  return allProtoFileUrls.asSequence()
-    .flatMap { fileUrl ->
-      importStatements.mapNotNull { importStatement ->
-        fileUrl.substringWithoutSuffixOrNull(importStatement)
+  return runReadAction {
+    val scope = GlobalSearchScope.allScope(project)
+    PbImportStatementIndex.getImportedPaths(scope).asSequence()
+      .flatMap { importPath ->
+        PbImportPathSuffixIndex.findFiles(importPath, scope).asSequence().map { file -> file.url.removeSuffix(importPath.trimStart('/')) }
       }
-    }.distinct()
-    .toList()
-}
-
-private fun String.substringWithoutSuffixOrNull(suffix: String): String? {
-  return when {
-    suffix.isEmpty() -> null
-    !this.endsWith(suffix) -> null
-    else -> this.removeSuffix(suffix)
+      .distinct()
+      .sorted()
+      .toList()
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,74 @@
+package com.intellij.protobuf.lang;
+
+import com.intellij.openapi.util.TextRange;
+import com.intellij.protobuf.lang.psi.PbTextFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiRecursiveElementWalkingVisitor;
+import com.intellij.psi.impl.source.tree.LazyParseableElement;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Consumer;
+
+/**
+ * Large-file mode of prototext files.
+ *
+ * <p>Text of at least {@link #getThreshold()} characters is parsed with lazy message values: the tokens of a message
+ * value are collapsed into a chameleon that is parsed when its contents are first accessed. Annotations of a large
+ * file are limited to the chunks of the file shown in its editor, and message values outside of them stay unparsed.
+ */
+public final class PbTextLargeFileMode {
+  /** The system property overriding the length from which text is handled in large-file mode. */
+  public static final String THRESHOLD_PROPERTY = "protobuf.text.large.file.threshold";
+
+  private static final int DEFAULT_THRESHOLD = 1024 * 1024;
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  public static int getThreshold() {
+    return Integer.getInteger(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD);
+  }
+
+  public static boolean isLarge(int textLength) {
+    return textLength >= getThreshold();
+  }
+
+  public static boolean isLarge(@NotNull PsiFile file) {
+    return file instanceof PbTextFile && isLarge(file.getTextLength());
+  }
+
+  /**
+   * Returns the range annotated while the given range is visible: the chunks it intersects. Scrolling within these
+   * chunks doesn't require annotating the file again.
+   */
+  public static @NotNull TextRange getAnnotatedRange(@NotNull TextRange visibleRange) {
+    int start = visibleRange.getStartOffset() / CHUNK_SIZE * CHUNK_SIZE;
+    int end = (visibleRange.getEndOffset() / CHUNK_SIZE + 1) * CHUNK_SIZE;
+    return new TextRange(start, end);
+  }
+
+  /**
+   * Passes the elements of {@code file} intersecting {@code annotatedRange} to {@code consumer}, parents first. Elements
+   * outside of the range aren't descended into, so their unparsed message values aren't expanded.
+   */
+  public static void processAnnotatedElements(
+      @NotNull PsiFile file, @NotNull TextRange annotatedRange, @NotNull Consumer<PsiElement> consumer) {
+    file.accept(
+        new PsiRecursiveElementWalkingVisitor() {
+          @Override
+          public void visitElement(@NotNull PsiElement element) {
+            if (!annotatedRange.intersects(element.getTextRange())) {
+              return;
+            }
+            consumer.accept(element);
+            super.visitElement(element);
+          }
+        });
+  }
+
+  /** Returns true for a message value of a large file whose contents haven't been parsed yet. */
+  public static boolean isUnparsed(@NotNull PsiElement element) {
+    return element.getNode() instanceof LazyParseableElement lazy && !lazy.isParsed();
+  }
+
+  private PbTextLargeFileMode() {}
+}
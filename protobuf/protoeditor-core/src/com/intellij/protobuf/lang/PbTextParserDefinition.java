@@ -21,7 +21,7 @@ import com.intellij.lang.PsiParser;
 import com.intellij.lexer.Lexer;
 import com.intellij.openapi.project.Project;
 import com.intellij.protobuf.lang.lexer.ProtoLexer;
-import com.intellij.protobuf.lang.parser.PbTextParser;
+import com.intellij.protobuf.lang.parser.PbTextFileParser;
 import com.intellij.protobuf.lang.psi.PbTextTypes;
 import com.intellij.protobuf.lang.psi.ProtoTokenTypes;
 import com.intellij.protobuf.lang.psi.impl.PbTextFileImpl;
@@ -47,7 +47,7 @@ public class PbTextParserDefinition implements ParserDefinition {
 
   @Override
   public @NotNull PsiParser createParser(final Project project) {
-    return new PbTextParser();
+    return new PbTextFileParser();
   }
 
   @Override
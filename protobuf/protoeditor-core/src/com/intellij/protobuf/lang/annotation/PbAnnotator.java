@@ -729,10 +729,7 @@ public final class PbAnnotator implements Annotator, DumbAware {
     // definition, in this order of preference:
     // * a symbol in the same file at a smaller text offset
     // * a symbol in a different file
-    Collection<PbSymbol> symbols = file.getFullQualifiedSymbolMap().get(qualifiedName);
-    if (symbols == null) {
-      return false;
-    }
+    Collection<PbSymbol> symbols = file.getFullSymbolTable().get(qualifiedName);
     for (PbSymbol otherSymbol : symbols) {
       if (symbol.equals(otherSymbol)) {
         continue;
@@ -26,6 +26,7 @@ import com.intellij.openapi.util.TextRange;
 import com.intellij.protobuf.ide.highlighter.PbSyntaxHighlighter;
 import com.intellij.protobuf.ide.highlighter.PbTextSyntaxHighlighter;
 import com.intellij.protobuf.lang.PbLangBundle;
+import com.intellij.protobuf.lang.PbTextLargeFileMode;
 import com.intellij.protobuf.lang.annotation.OptionOccurrenceTracker.Occurrence;
 import com.intellij.protobuf.lang.psi.PbEnumDefinition;
 import com.intellij.protobuf.lang.psi.PbField;
@@ -67,6 +68,22 @@ public class PbTextAnnotator implements Annotator {
 
   @Override
   public void annotate(@NotNull PsiElement element, final @NotNull AnnotationHolder holder) {
+    // Large files are annotated at once from the file, limited to the part of the file shown in
+    // the editor. The message values elsewhere are left unparsed.
+    AnnotationSession session = holder.getCurrentAnnotationSession();
+    if (PbTextLargeFileMode.isLarge(session.getFile())) {
+      if (element instanceof PsiFile file) {
+        TextRange range = PbTextLargeFileMode.getAnnotatedRange(session.getPriorityRange());
+        PbTextLargeFileMode.processAnnotatedElements(
+            file, range, child -> annotateElement(child, holder));
+      }
+      return;
+    }
+    annotateElement(element, holder);
+  }
+
+  private static void annotateElement(
+      @NotNull PsiElement element, @NotNull AnnotationHolder holder) {
     // We always annotate strings.
     if (element instanceof PbTextStringPart part) {
       SharedAnnotations.annotateStringPart(part, holder, getInvalidEscapeAttributes(part));
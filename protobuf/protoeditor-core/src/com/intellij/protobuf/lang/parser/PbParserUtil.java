@@ -17,6 +17,8 @@ package com.intellij.protobuf.lang.parser;
 
 import com.intellij.lang.PsiBuilder;
 import com.intellij.lang.parser.GeneratedParserUtilBase;
+import com.intellij.openapi.util.Key;
+import com.intellij.protobuf.lang.psi.PbTextTypes;
 import com.intellij.protobuf.lang.psi.ProtoKeywordTokenType;
 import com.intellij.protobuf.lang.psi.ProtoTokenTypes;
 import com.intellij.psi.tree.IElementType;
@@ -25,6 +27,9 @@ import org.jetbrains.annotations.Nullable;
 /** Static parsing utility functions for parsing proto files. */
 public final class PbParserUtil extends GeneratedParserUtilBase {
 
+  private static final Key<Boolean> LAZY_MESSAGE_VALUES =
+      Key.create("protobuf.text.lazy.message.values");
+
   /**
    * This function is used to parse a keyword token as an identifier. The proto language allows
    * keywords (e.g., "message" or "import") to be used as identifiers, such as type names. If the
@@ -53,6 +58,46 @@ public final class PbParserUtil extends GeneratedParserUtilBase {
     return PbTextParser.FieldName(builder, level);
   }
 
+  /** Makes {@link #parseLazyMessageValue} collapse the message values parsed by the builder. */
+  static void enableLazyMessageValues(PsiBuilder builder) {
+    builder.putUserData(LAZY_MESSAGE_VALUES, Boolean.TRUE);
+  }
+
+  /**
+   * Parses a prototext MessageValue element at the builder's current position. If lazy message
+   * values are enabled, the tokens up to the matching closing brace are collapsed into a
+   * MESSAGE_VALUE chameleon instead, which is parsed when its contents are first accessed.
+   */
+  public static boolean parseLazyMessageValue(PsiBuilder builder, int level, Parser messageValue) {
+    if (!Boolean.TRUE.equals(builder.getUserData(LAZY_MESSAGE_VALUES))
+        || !isMessageValueStart(builder.getTokenType())) {
+      return messageValue.parse(builder, level);
+    }
+    PsiBuilder.Marker marker = builder.mark();
+    int balance = 0;
+    do {
+      IElementType type = builder.getTokenType();
+      if (isMessageValueStart(type)) {
+        balance++;
+      } else if (isMessageValueEnd(type)) {
+        balance--;
+      }
+      builder.advanceLexer();
+    } while (balance > 0 && !builder.eof());
+    marker.collapse(PbTextTypes.MESSAGE_VALUE);
+    return true;
+  }
+
+  /** Returns true if the given token opens a prototext message value. */
+  public static boolean isMessageValueStart(@Nullable IElementType type) {
+    return ProtoTokenTypes.LBRACE.equals(type) || ProtoTokenTypes.LT.equals(type);
+  }
+
+  /** Returns true if the given token closes a prototext message value. */
+  public static boolean isMessageValueEnd(@Nullable IElementType type) {
+    return ProtoTokenTypes.RBRACE.equals(type) || ProtoTokenTypes.GT.equals(type);
+  }
+
   /*
    * Generated parsers call exit_section(...) after normal parsing for a rule has finished and
    * recovery (if any) should start. We override exit_section_ and wrap the recovery parser such
@@ -0,0 +1,20 @@
+package com.intellij.protobuf.lang.parser;
+
+import com.intellij.lang.PsiBuilder;
+import com.intellij.protobuf.lang.PbTextLargeFileMode;
+import com.intellij.psi.tree.IElementType;
+
+/**
+ * Parses prototext files and their message values, collapsing nested message values when the parsed text is large.
+ *
+ * @see PbTextLargeFileMode
+ */
+public class PbTextFileParser extends PbTextParser {
+  @Override
+  public void parseLight(IElementType type, PsiBuilder builder) {
+    if (PbTextLargeFileMode.isLarge(builder.getOriginalText().length())) {
+      PbParserUtil.enableLazyMessageValues(builder);
+    }
+    super.parseLight(type, builder);
+  }
+}
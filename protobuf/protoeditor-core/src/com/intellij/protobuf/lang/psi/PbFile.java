@@ -111,6 +111,20 @@ public interface PbFile
   @NotNull
   Map<QualifiedName, Collection<PbSymbol>> getFullQualifiedSymbolMap();
 
+  /**
+   * Returns the symbols exported when this file is imported, as a table with the layers of this file and its public
+   * imports. This is the layered form of {@link #getExportedQualifiedSymbolMap()}.
+   */
+  @NotNull
+  PbSymbolTable getExportedSymbolTable();
+
+  /**
+   * Returns the symbols defined in this and imported files, as a table with the layers of this file and its imports.
+   * This is the layered form of {@link #getFullQualifiedSymbolMap()}.
+   */
+  @NotNull
+  PbSymbolTable getFullSymbolTable();
+
   /**
    * Returns the {@link PbSymbolOwner} that owns the elements defined in this file. This is either
    * the most-qualified {@link PbPackageName}, or the file itself if no package is defined.
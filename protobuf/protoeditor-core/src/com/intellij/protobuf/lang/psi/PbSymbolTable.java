@@ -0,0 +1,119 @@
+package com.intellij.protobuf.lang.psi;
+
+import com.intellij.psi.util.QualifiedName;
+import com.intellij.util.SmartList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fully-qualified symbols visible from a file, kept as layers instead of a merged copy.
+ *
+ * <p>Each layer is the {@link PbFile#getLocalQualifiedSymbolMap()} of one file: the file itself followed by the files it
+ * imports. A local map is cached by its file only, so it's shared by the tables of all files importing it, and lookups
+ * walk the layers.
+ */
+public final class PbSymbolTable {
+  private static final PbSymbolTable EMPTY = new PbSymbolTable(Collections.emptyList());
+
+  private final List<PbFile> files;
+
+  private PbSymbolTable(List<PbFile> files) {
+    this.files = files;
+  }
+
+  /** Returns a table with the local symbols of the given files, the duplicates are skipped. */
+  public static @NotNull PbSymbolTable create(@NotNull Collection<? extends PbFile> files) {
+    return files.isEmpty() ? EMPTY : new PbSymbolTable(List.copyOf(new LinkedHashSet<>(files)));
+  }
+
+  /** Returns a table with the layers of all given tables. */
+  public static @NotNull PbSymbolTable union(@NotNull Collection<PbSymbolTable> tables) {
+    Set<PbFile> files = new LinkedHashSet<>();
+    for (PbSymbolTable table : tables) {
+      files.addAll(table.files);
+    }
+    return create(files);
+  }
+
+  public static @NotNull PbSymbolTable empty() {
+    return EMPTY;
+  }
+
+  /** Returns the files whose local symbols make up the layers of this table. */
+  public @NotNull List<PbFile> getFiles() {
+    return files;
+  }
+
+  /** Returns the symbols with the given qualified name in the order of the layers, or an empty collection. */
+  public @NotNull Collection<PbSymbol> get(@NotNull QualifiedName name) {
+    Collection<PbSymbol> first = null;
+    List<PbSymbol> merged = null;
+    for (PbFile file : files) {
+      Collection<PbSymbol> symbols = file.getLocalQualifiedSymbolMap().get(name);
+      if (symbols == null || symbols.isEmpty()) {
+        continue;
+      }
+      if (first == null) {
+        // usually a name is defined in a single layer, its collection is returned as is
+        first = symbols;
+      } else {
+        if (merged == null) {
+          merged = new SmartList<>(first);
+        }
+        merged.addAll(symbols);
+      }
+    }
+    if (merged != null) {
+      return merged;
+    }
+    return first != null ? first : Collections.emptyList();
+  }
+
+  /**
+   * Returns a read-only map view of this table. Lookups walk the layers, iteration merges them on the first use.
+   */
+  public @NotNull Map<QualifiedName, Collection<PbSymbol>> asMap() {
+    return new LayeredMap();
+  }
+
+  private final class LayeredMap extends AbstractMap<QualifiedName, Collection<PbSymbol>> {
+    private Set<Entry<QualifiedName, Collection<PbSymbol>>> entries;
+
+    @Override
+    public @Nullable Collection<PbSymbol> get(Object key) {
+      if (!(key instanceof QualifiedName name)) {
+        return null;
+      }
+      Collection<PbSymbol> symbols = PbSymbolTable.this.get(name);
+      return symbols.isEmpty() ? null : symbols;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return get(key) != null;
+    }
+
+    @Override
+    public @NotNull Set<Entry<QualifiedName, Collection<PbSymbol>>> entrySet() {
+      if (entries == null) {
+        Map<QualifiedName, Collection<PbSymbol>> merged = new LinkedHashMap<>();
+        for (PbFile file : files) {
+          file.getLocalQualifiedSymbolMap()
+              .forEach((name, symbols) -> merged.computeIfAbsent(name, k -> new ArrayList<>()).addAll(symbols));
+        }
+        entries = Collections.unmodifiableMap(merged).entrySet();
+      }
+      return entries;
+    }
+  }
+}
@@ -18,7 +18,10 @@ package com.intellij.protobuf.lang.psi;
 import com.intellij.protobuf.lang.PbTextLanguage;
 import com.intellij.psi.tree.IElementType;
 
-/** The {@link IElementType type} implemented by all prototext composite types. */
+/**
+ * The {@link IElementType type} implemented by all prototext composite types, except for those in
+ * {@link com.intellij.protobuf.lang.psi.type.PbTextCustomTypes}.
+ */
 public class PbTextElementType extends IElementType {
 
   PbTextElementType(String debugName) {
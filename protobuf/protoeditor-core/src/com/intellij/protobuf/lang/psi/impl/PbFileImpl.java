@@ -18,7 +18,6 @@ package com.intellij.protobuf.lang.psi.impl;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
-import com.google.common.collect.ImmutableSetMultimap;
 import com.intellij.extapi.psi.PsiFileBase;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.fileTypes.FileType;
@@ -37,6 +36,7 @@ import com.intellij.protobuf.lang.psi.PbPackageStatement;
 import com.intellij.protobuf.lang.psi.PbStatement;
 import com.intellij.protobuf.lang.psi.PbSymbol;
 import com.intellij.protobuf.lang.psi.PbSymbolOwner;
+import com.intellij.protobuf.lang.psi.PbSymbolTable;
 import com.intellij.protobuf.lang.psi.PbSyntaxStatement;
 import com.intellij.protobuf.lang.psi.SyntaxLevel;
 import com.intellij.protobuf.lang.psi.util.PbPsiImplUtil;
@@ -220,32 +220,44 @@ public class PbFileImpl extends PsiFileBase implements PbFile {
 
   @Override
   public @NotNull Map<QualifiedName, Collection<PbSymbol>> getLocalQualifiedSymbolMap() {
+    // Depends on this file only, so an edit elsewhere doesn't invalidate it. The symbol tables of the importing files
+    // refer to this map instead of copying it.
     return CachedValuesManager.getCachedValue(
-        this,
-        () ->
-            Result.create(
-                computeLocalQualifiedSymbolMap(), PbCompositeModificationTracker.byElement(this)))
+        this, () -> Result.create(computeLocalQualifiedSymbolMap(), this))
         .asMap();
   }
 
   @Override
   public @NotNull Map<QualifiedName, Collection<PbSymbol>> getExportedQualifiedSymbolMap() {
+    return getExportedSymbolTable().asMap();
+  }
+
+  @Override
+  public @NotNull Map<QualifiedName, Collection<PbSymbol>> getFullQualifiedSymbolMap() {
+    return getFullSymbolTable().asMap();
+  }
+
+  @Override
+  public @NotNull PbSymbolTable getExportedSymbolTable() {
+    // This file and the transitive set of its public imports. Only the list of files is cached here, it changes
+    // with the resolution of imports.
     return CachedValuesManager.getCachedValue(
         this,
         () ->
             Result.create(
-                computeExportedQualifiedSymbolMap(), PbCompositeModificationTracker.byElement(this)))
-        .asMap();
+                createSymbolTable(/* includePrivate= */ false),
+                PbCompositeModificationTracker.byElement(this)));
   }
 
   @Override
-  public @NotNull Map<QualifiedName, Collection<PbSymbol>> getFullQualifiedSymbolMap() {
+  public @NotNull PbSymbolTable getFullSymbolTable() {
+    // This file and the files exporting symbols to it.
     return CachedValuesManager.getCachedValue(
         this,
         () ->
             Result.create(
-                computeFullQualifiedSymbolMap(), PbCompositeModificationTracker.byElement(this)))
-        .asMap();
+                createSymbolTable(/* includePrivate= */ true),
+                PbCompositeModificationTracker.byElement(this)));
   }
 
   private ImmutableMultimap<QualifiedName, PbSymbol> computeLocalQualifiedSymbolMap() {
@@ -267,26 +279,11 @@ public class PbFileImpl extends PsiFileBase implements PbFile {
     }
   }
 
-  private ImmutableMultimap<QualifiedName, PbSymbol> computeExportedQualifiedSymbolMap() {
-    // Return all local symbols from this file and all files in the transitive set of public
-    // imports.
-    ImmutableMultimap.Builder<QualifiedName, PbSymbol> builder = ImmutableListMultimap.builder();
-
-    getLocalQualifiedSymbolMap().forEach(builder::putAll);
-    for (PbFile importedFile : getImportedFileList(/* includePrivate= */ false)) {
-      importedFile.getLocalQualifiedSymbolMap().forEach(builder::putAll);
-    }
-    return builder.build();
-  }
-
-  private ImmutableSetMultimap<QualifiedName, PbSymbol> computeFullQualifiedSymbolMap() {
-    // Return all local symbols from this file and exported symbols from all imported files.
-    ImmutableSetMultimap.Builder<QualifiedName, PbSymbol> builder = ImmutableSetMultimap.builder();
-    getLocalQualifiedSymbolMap().forEach(builder::putAll);
-    for (PbFile importedFile : getImportedFileList(/* includePrivate= */ true)) {
-      importedFile.getLocalQualifiedSymbolMap().forEach(builder::putAll);
-    }
-    return builder.build();
+  private PbSymbolTable createSymbolTable(boolean includePrivate) {
+    List<PbFile> files = new ArrayList<>();
+    files.add(this);
+    files.addAll(getImportedFileList(includePrivate));
+    return PbSymbolTable.create(files);
   }
 
   private PbPackageName findPackageChildForName(QualifiedName name) {
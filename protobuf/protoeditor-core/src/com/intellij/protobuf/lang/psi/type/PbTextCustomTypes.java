@@ -0,0 +1,15 @@
+package com.intellij.protobuf.lang.psi.type;
+
+import com.intellij.psi.tree.IElementType;
+
+/** Custom element types used in textformat.bnf. */
+public interface PbTextCustomTypes {
+  IElementType MESSAGE_VALUE = new PbTextMessageValueType("MESSAGE_VALUE");
+
+  static IElementType get(String name) {
+    if ("MESSAGE_VALUE".equals(name)) {
+      return MESSAGE_VALUE;
+    }
+    throw new IllegalArgumentException("Unknown type: " + name);
+  }
+}
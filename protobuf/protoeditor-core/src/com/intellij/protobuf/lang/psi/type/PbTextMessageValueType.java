@@ -0,0 +1,82 @@
+package com.intellij.protobuf.lang.psi.type;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.lang.Language;
+import com.intellij.lang.LightPsiParser;
+import com.intellij.lang.LighterASTNode;
+import com.intellij.lang.LighterLazyParseableNode;
+import com.intellij.lang.PsiBuilder;
+import com.intellij.lang.PsiBuilderFactory;
+import com.intellij.lexer.Lexer;
+import com.intellij.openapi.project.Project;
+import com.intellij.protobuf.lang.PbTextLanguage;
+import com.intellij.protobuf.lang.PbTextParserDefinition;
+import com.intellij.protobuf.lang.parser.PbParserUtil;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.impl.source.tree.LazyParseableElement;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.IErrorCounterReparseableElementType;
+import com.intellij.psi.tree.ILightLazyParseableElementType;
+import com.intellij.util.diff.FlyweightCapableTreeStructure;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A reparseable prototext message value. In large-file mode the parser collapses message values into nodes of this
+ * type, their contents are parsed when first accessed.
+ */
+class PbTextMessageValueType extends IErrorCounterReparseableElementType
+    implements ILightLazyParseableElementType {
+
+  PbTextMessageValueType(final @NonNls String debugName) {
+    super(debugName, PbTextLanguage.INSTANCE);
+  }
+
+  @Override
+  public @NotNull FlyweightCapableTreeStructure<LighterASTNode> parseContents(
+      final @NotNull LighterLazyParseableNode chameleon) {
+    PsiElement psi = chameleon.getContainingFile();
+    assert psi != null : chameleon;
+    Project project = psi.getProject();
+    PsiBuilder builder = PsiBuilderFactory.getInstance().createBuilder(project, chameleon);
+    LightPsiParser parser = (LightPsiParser) PbTextParserDefinition.INSTANCE.createParser(project);
+    parser.parseLight(this, builder);
+    return builder.getLightTree();
+  }
+
+  /** Returns the number of unmatched braces found within the input. */
+  @Override
+  public int getErrorsCount(CharSequence seq, Language fileLanguage, Project project) {
+    // Message values embedded in proto files are lexed differently, they're reparsed with the enclosing block.
+    if (fileLanguage != PbTextLanguage.INSTANCE) {
+      return IErrorCounterReparseableElementType.FATAL_ERROR;
+    }
+    Lexer lexer = PbTextParserDefinition.INSTANCE.createLexer(project);
+    lexer.start(seq);
+    if (!PbParserUtil.isMessageValueStart(lexer.getTokenType())) {
+      return IErrorCounterReparseableElementType.FATAL_ERROR;
+    }
+    lexer.advance();
+    int balance = 1;
+    IElementType type = lexer.getTokenType();
+    while (type != null) {
+      if (balance == 0) {
+        return IErrorCounterReparseableElementType.FATAL_ERROR;
+      }
+      if (PbParserUtil.isMessageValueStart(type)) {
+        balance++;
+      } else if (PbParserUtil.isMessageValueEnd(type)) {
+        balance--;
+      }
+      lexer.advance();
+      type = lexer.getTokenType();
+    }
+    return balance;
+  }
+
+  @Override
+  public @Nullable ASTNode createNode(CharSequence text) {
+    return new LazyParseableElement(this, text);
+  }
+}
@@ -0,0 +1,58 @@
+package com.intellij.protobuf.lang.resolve
+
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.protobuf.lang.PbFileType
+import com.intellij.psi.search.GlobalSearchScope
+import com.intellij.util.indexing.DataIndexer
+import com.intellij.util.indexing.DefaultFileTypeSpecificInputFilter
+import com.intellij.util.indexing.FileBasedIndex
+import com.intellij.util.indexing.FileContent
+import com.intellij.util.indexing.ID
+import com.intellij.util.indexing.ScalarIndexExtension
+import com.intellij.util.io.EnumeratorStringDescriptor
+import com.intellij.util.io.KeyDescriptor
+
+/**
+ * Maps every `/`-separated suffix of a proto file path to the file: `/root/google/api/http.proto` is found by `http.proto`,
+ * `api/http.proto`, `google/api/http.proto` and so on. This way an import path is resolved to its candidate files
+ * with a single lookup instead of a scan of all proto files in scope.
+ */
+internal class PbImportPathSuffixIndex : ScalarIndexExtension<String>() {
+  override fun getName(): ID<String, Void> = INDEX_ID
+
+  override fun getIndexer(): DataIndexer<String, Void, FileContent> = DataIndexer { inputData ->
+    importPathSuffixes(inputData.file.path).associateWith { null }
+  }
+
+  override fun getKeyDescriptor(): KeyDescriptor<String> = EnumeratorStringDescriptor.INSTANCE
+
+  override fun getInputFilter(): FileBasedIndex.InputFilter = DefaultFileTypeSpecificInputFilter(PbFileType.INSTANCE)
+
+  override fun dependsOnFileContent(): Boolean = false
+
+  override fun getVersion(): Int = 0
+
+  companion object {
+    private val INDEX_ID: ID<String, Void> = ID.create("protobuf.import.path.suffix")
+
+    /**
+     * @return the files whose paths end with [importPath] at a directory boundary
+     */
+    fun findFiles(importPath: String, scope: GlobalSearchScope): Collection<VirtualFile> {
+      val key = importPath.trimStart('/')
+      if (key.isEmpty()) return emptyList()
+      return FileBasedIndex.getInstance().getContainingFiles(INDEX_ID, key, scope)
+    }
+
+    internal fun importPathSuffixes(path: String): List<String> {
+      val suffixes = ArrayList<String>()
+      var slash = path.lastIndexOf('/')
+      if (slash < 0) return listOf(path)
+      while (slash >= 0) {
+        if (slash < path.length - 1) suffixes.add(path.substring(slash + 1))
+        slash = if (slash == 0) -1 else path.lastIndexOf('/', slash - 1)
+      }
+      return suffixes
+    }
+  }
+}
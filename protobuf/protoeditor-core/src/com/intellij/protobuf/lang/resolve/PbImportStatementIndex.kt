@@ -0,0 +1,53 @@
+package com.intellij.protobuf.lang.resolve
+
+import com.intellij.openapi.util.text.StringUtil
+import com.intellij.protobuf.lang.PbFileType
+import com.intellij.protobuf.lang.psi.PbFile
+import com.intellij.psi.search.GlobalSearchScope
+import com.intellij.util.indexing.DataIndexer
+import com.intellij.util.indexing.DefaultFileTypeSpecificInputFilter
+import com.intellij.util.indexing.FileBasedIndex
+import com.intellij.util.indexing.FileContent
+import com.intellij.util.indexing.ID
+import com.intellij.util.indexing.ScalarIndexExtension
+import com.intellij.util.io.EnumeratorStringDescriptor
+import com.intellij.util.io.KeyDescriptor
+
+/**
+ * Maps the paths imported by proto files to the importing files. It's updated per changed file, so the paths imported
+ * in the project are known without loading the PSI of every proto file.
+ */
+internal class PbImportStatementIndex : ScalarIndexExtension<String>() {
+  override fun getName(): ID<String, Void> = INDEX_ID
+
+  override fun getIndexer(): DataIndexer<String, Void, FileContent> = DataIndexer { inputData ->
+    (inputData.psiFile as? PbFile)?.importStatements.orEmpty()
+      .flatMap { importStatement -> importStatement.importName?.stringValue?.stringParts.orEmpty() }
+      .mapNotNull { singleImport -> singleImport.text?.let(StringUtil::unquoteString) }
+      .filter(String::isNotBlank)
+      .associateWith { null }
+  }
+
+  override fun getKeyDescriptor(): KeyDescriptor<String> = EnumeratorStringDescriptor.INSTANCE
+
+  override fun getInputFilter(): FileBasedIndex.InputFilter = DefaultFileTypeSpecificInputFilter(PbFileType.INSTANCE)
+
+  override fun dependsOnFileContent(): Boolean = true
+
+  override fun getVersion(): Int = 0
+
+  companion object {
+    private val INDEX_ID: ID<String, Void> = ID.create("protobuf.import.statement")
+
+    /**
+     * @return the paths imported by at least one proto file in [scope]
+     */
+    fun getImportedPaths(scope: GlobalSearchScope): List<String> {
+      val index = FileBasedIndex.getInstance()
+      val keys = ArrayList<String>()
+      index.processAllKeys(INDEX_ID, { key -> keys.add(key) }, scope, null)
+      // the keys no longer imported anywhere can be reported until the index storage is compacted
+      return keys.filter { key -> !index.processValues(INDEX_ID, key, null, { _, _ -> false }, scope) }
+    }
+  }
+}
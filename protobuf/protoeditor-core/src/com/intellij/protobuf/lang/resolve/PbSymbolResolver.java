@@ -16,19 +16,16 @@
 package com.intellij.protobuf.lang.resolve;
 
 import com.google.common.collect.ImmutableMultimap;
-import com.google.common.collect.ImmutableSetMultimap;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
 import com.intellij.openapi.util.Condition;
 import com.intellij.protobuf.lang.psi.PbFile;
 import com.intellij.protobuf.lang.psi.PbSymbol;
 import com.intellij.protobuf.lang.psi.PbSymbolOwner;
+import com.intellij.protobuf.lang.psi.PbSymbolTable;
 import com.intellij.psi.util.QualifiedName;
-import com.intellij.util.SmartList;
+import com.intellij.util.containers.ContainerUtil;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -36,41 +33,30 @@ import java.util.stream.Collectors;
 /** Utilities for finding PbSymbol elements using protobuf's scoping and resolution rules. */
 public class PbSymbolResolver {
 
-  private final Multimap<QualifiedName, PbSymbol> symbols;
+  private final PbSymbolTable symbols;
 
-  private PbSymbolResolver(Multimap<QualifiedName, PbSymbol> symbols) {
+  private PbSymbolResolver(PbSymbolTable symbols) {
     this.symbols = symbols;
   }
 
   /** Returns a PbSymbolResolver that can resolve symbols in the given file and its imports. */
   public static PbSymbolResolver forFile(PbFile file) {
-    return new PbSymbolResolver(convertJdkMapToGuava(file.getFullQualifiedSymbolMap()));
+    return new PbSymbolResolver(file.getFullSymbolTable());
   }
 
   /** Returns a PbSymbolResolver that can resolve symbols exported by the given file. */
   public static PbSymbolResolver forFileExports(PbFile file) {
-    return new PbSymbolResolver(convertJdkMapToGuava(file.getExportedQualifiedSymbolMap()));
+    return new PbSymbolResolver(file.getExportedSymbolTable());
   }
 
   /** Returns a PbSymbolResolver that can resolve symbols exported by the given files. */
   public static PbSymbolResolver forFileExports(List<PbFile> files) {
-    ImmutableSetMultimap.Builder<QualifiedName, PbSymbol> builder = ImmutableSetMultimap.builder();
-    for (PbFile file : files) {
-      Multimap<QualifiedName, PbSymbol> multimap = convertJdkMapToGuava(file.getExportedQualifiedSymbolMap());
-      builder.putAll(multimap);
-    }
-    return new PbSymbolResolver(builder.build());
-  }
-
-  private static Multimap<QualifiedName, PbSymbol> convertJdkMapToGuava(Map<QualifiedName, Collection<PbSymbol>> jdkMap) {
-    Multimap<QualifiedName, PbSymbol> multimap = Multimaps.newListMultimap(new HashMap<>(), SmartList::new);
-    jdkMap.forEach((key, value) -> multimap.putAll(key, value));
-    return multimap;
+    return new PbSymbolResolver(PbSymbolTable.union(ContainerUtil.map(files, PbFile::getExportedSymbolTable)));
   }
 
   /** Returns an empty PbSymbolResolver. */
   public static PbSymbolResolver empty() {
-    return new PbSymbolResolver(ImmutableMultimap.of());
+    return new PbSymbolResolver(PbSymbolTable.empty());
   }
 
   public List<PbResolveResult> resolveRelativeName(
@@ -158,25 +144,25 @@ public class PbSymbolResolver {
   }
 
   private ImmutableMultimap<String, PbSymbol> findTopLevelSymbols(Condition<PbSymbol> condition) {
-    // First, filter the symbols map to the collection of top-level symbols matching the given
-    // predicate.
-    Multimap<QualifiedName, PbSymbol> filtered =
-      Multimaps.filterEntries(
-        symbols,
-        e -> e.getKey().getComponentCount() == 1 && condition.value(e.getValue()));
-
-    // Next, convert the map into a Multimap<String, PbSymbol>
+    // Collect the top-level symbols matching the given predicate from every layer into a
+    // Multimap<String, PbSymbol>.
     ImmutableMultimap.Builder<String, PbSymbol> builder = ImmutableMultimap.builder();
-    for (Map.Entry<QualifiedName, Collection<PbSymbol>> entry : filtered.asMap().entrySet()) {
-      QualifiedName name = entry.getKey();
-      if (name == null) {
-        continue;
-      }
-      String first = name.getFirstComponent();
-      if (first == null) {
-        continue;
+    for (PbFile file : symbols.getFiles()) {
+      for (Map.Entry<QualifiedName, Collection<PbSymbol>> entry : file.getLocalQualifiedSymbolMap().entrySet()) {
+        QualifiedName name = entry.getKey();
+        if (name == null || name.getComponentCount() != 1) {
+          continue;
+        }
+        String first = name.getFirstComponent();
+        if (first == null) {
+          continue;
+        }
+        for (PbSymbol symbol : entry.getValue()) {
+          if (condition.value(symbol)) {
+            builder.put(first, symbol);
+          }
+        }
       }
-      builder.putAll(first, entry.getValue());
     }
     return builder.build();
   }
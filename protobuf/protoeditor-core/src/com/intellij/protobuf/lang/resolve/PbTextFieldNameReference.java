@@ -18,6 +18,7 @@ package com.intellij.protobuf.lang.resolve;
 import com.intellij.codeInsight.lookup.LookupElement;
 import com.intellij.lang.ASTNode;
 import com.intellij.openapi.util.TextRange;
+import com.intellij.protobuf.ide.PbCompositeModificationTracker;
 import com.intellij.protobuf.lang.annotation.OptionOccurrenceTracker;
 import com.intellij.protobuf.lang.psi.PbField;
 import com.intellij.protobuf.lang.psi.PbGroupDefinition;
@@ -32,7 +33,10 @@ import com.intellij.psi.PsiReference;
 import com.intellij.psi.PsiReferenceBase;
 import com.intellij.psi.impl.source.resolve.ResolveCache;
 import com.intellij.psi.impl.source.tree.LeafElement;
+import com.intellij.psi.util.CachedValueProvider.Result;
+import com.intellij.psi.util.CachedValuesManager;
 import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.containers.ConcurrentFactoryMap;
 import com.intellij.util.containers.ContainerUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -40,6 +44,7 @@ import org.jetbrains.annotations.Nullable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /** A {@link PsiReference} implementation for {@link PbTextFieldName}. */
 public class PbTextFieldNameReference extends PsiReferenceBase<PbTextFieldName> {
@@ -81,7 +86,24 @@ public class PbTextFieldNameReference extends PsiReferenceBase<PbTextFieldName>
     if (type == null) {
       return null;
     }
+    return getFieldsByName(type).get(name);
+  }
+
+  /**
+   * Returns the fields of the given type by the names used to set them in text format. Text files
+   * set the same fields of a type many times, so they're resolved once per type and name rather
+   * than once per reference.
+   */
+  private static Map<String, PbField> getFieldsByName(PbMessageType type) {
+    return CachedValuesManager.getCachedValue(
+        type,
+        () ->
+            Result.create(
+                ConcurrentFactoryMap.createMap(name -> resolveNamedFieldInTypeNoCache(name, type)),
+                PbCompositeModificationTracker.byElement(type)));
+  }
 
+  private static @Nullable PbField resolveNamedFieldInTypeNoCache(String name, PbMessageType type) {
     Collection<PbSymbol> pbSymbols = type.getSymbolMap().get(name);
     if (pbSymbols == null || pbSymbols.isEmpty()) return null;
     PbSymbol symbol = ContainerUtil.find(pbSymbols, s -> s instanceof PbField || s instanceof PbGroupDefinition);
@@ -0,0 +1,38 @@
+package com.intellij.protobuf.ide.settings
+
+import com.intellij.openapi.application.runWriteAction
+import com.intellij.openapi.vfs.VfsUtil
+import com.intellij.protobuf.fixtures.PbCodeInsightFixtureTestCase
+import org.junit.Assert
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+
+@RunWith(JUnit4::class)
+class PbImportPathsDiscoveryTest : PbCodeInsightFixtureTestCase() {
+  @Test
+  fun `test import roots are derived from import statements`() {
+    val imported = myFixture.addFileToProject("third_party/api/annotations.proto", "").virtualFile
+    myFixture.addFileToProject("service/main.proto", """
+      import "api/annotations.proto";
+      import "missing/file.proto";
+    """.trimIndent())
+
+    val importRoots = computeImportPathsForAllImportStatements(project)
+    Assert.assertTrue(importRoots.contains(imported.parent.parent.url + "/"))
+    Assert.assertFalse(importRoots.any { it.contains("missing") })
+  }
+
+  @Test
+  fun `test import roots follow edited files`() {
+    val first = myFixture.addFileToProject("third_party/api/annotations.proto", "").virtualFile.parent.parent.url + "/"
+    val second = myFixture.addFileToProject("other/api/annotations.proto", "").virtualFile.parent.parent.url + "/"
+    val importing = myFixture.addFileToProject("service/main.proto", """import "api/annotations.proto";""").virtualFile
+    Assert.assertTrue(computeImportPathsForAllImportStatements(project).containsAll(listOf(first, second)))
+
+    runWriteAction { VfsUtil.saveText(importing, "") }
+    val importRoots = computeImportPathsForAllImportStatements(project)
+    Assert.assertFalse(importRoots.contains(first))
+    Assert.assertFalse(importRoots.contains(second))
+  }
+}
@@ -0,0 +1,202 @@
+package com.intellij.protobuf.lang.parser
+
+import com.intellij.openapi.command.WriteCommandAction
+import com.intellij.openapi.util.TextRange
+import com.intellij.protobuf.TestUtils
+import com.intellij.protobuf.fixtures.PbCodeInsightFixtureTestCase
+import com.intellij.protobuf.ide.folding.ProtoFoldingBuilder
+import com.intellij.protobuf.lang.PbTextFileType
+import com.intellij.protobuf.lang.PbTextLargeFileMode
+import com.intellij.protobuf.lang.psi.PbTextFieldName
+import com.intellij.protobuf.lang.psi.PbTextMessageValue
+import com.intellij.protobuf.lang.psi.PbTextTypes
+import com.intellij.psi.PsiDocumentManager
+import com.intellij.psi.PsiElement
+import com.intellij.psi.PsiFile
+import com.intellij.psi.PsiFileFactory
+import com.intellij.psi.impl.DebugUtil
+import com.intellij.psi.impl.source.tree.LazyParseableElement
+import com.intellij.psi.util.PsiTreeUtil
+import com.intellij.testFramework.EditorTestUtil
+import org.junit.Assert
+import org.junit.Assume
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+
+@RunWith(JUnit4::class)
+class PbTextLargeFileModeTest : PbCodeInsightFixtureTestCase() {
+  @Test
+  fun `test message values of large files are parsed on demand`() {
+    val text = syntheticText(10_000)
+    val file = withThreshold(1_000) { parse("large.textproto", text) }
+    val values = topLevelMessageValues(file)
+    Assert.assertTrue(values.size > 10)
+    Assert.assertTrue(values.none { it.isParsed })
+
+    Assert.assertEquals(3, (values[5].psi as PbTextMessageValue).fields.size)
+    Assert.assertTrue(values[5].isParsed)
+    Assert.assertFalse(values[6].isParsed)
+
+    Assert.assertEquals(DebugUtil.psiToString(parse("small.textproto", text), true), DebugUtil.psiToString(file, true))
+  }
+
+  @Test
+  fun `test edited message value of a large file is reparsed`() {
+    withThreshold(1_000) {
+      myFixture.configureByText("large.textproto", syntheticText(10_000))
+      val document = myFixture.editor.document
+      WriteCommandAction.runWriteCommandAction(project) {
+        document.insertString(document.text.indexOf("id: 7") + "id: ".length, "1")
+        document.insertString(document.text.indexOf("child <") + "child <".length, " extra { } ")
+        PsiDocumentManager.getInstance(project).commitDocument(document)
+      }
+    }
+    val expected = parse("expected.textproto", myFixture.editor.document.text)
+    Assert.assertEquals(DebugUtil.psiToString(expected, true), DebugUtil.psiToString(myFixture.file, true))
+  }
+
+  @Test
+  fun `test unparsed message values are folded`() {
+    val file = withThreshold(1_000) { parse("large.textproto", syntheticText(10_000)) }
+    val document = PsiDocumentManager.getInstance(project).getDocument(file)!!
+    val values = topLevelMessageValues(file)
+
+    val descriptors = ProtoFoldingBuilder().buildFoldRegions(file, document, false)
+    Assert.assertEquals(values.map { it.textRange }, descriptors.map { it.range })
+    Assert.assertTrue(values.none { it.isParsed })
+  }
+
+  @Test
+  fun `test field names resolve through the cache of their message type`() {
+    TestUtils.addTestFileResolveProvider(project, testRootDisposable)
+    val schema = myFixture.addFileToProject("schema.proto", """
+      syntax = "proto2";
+      package test;
+      message Item { optional string name = 1; }
+      message Items { repeated Item item = 1; }
+    """.trimIndent())
+    myFixture.configureByText("items.textproto", """
+      # proto-file: schema.proto
+      # proto-message: test.Items
+      item { name: "a" }
+      item { name: "b" }
+    """.trimIndent())
+    val names = PsiTreeUtil.findChildrenOfType(myFixture.file, PbTextFieldName::class.java).filter { it.text == "name" }
+    val fields = names.map { it.effectiveReference?.resolve() }
+    Assert.assertEquals(2, fields.size)
+    Assert.assertNotNull(fields[0])
+    Assert.assertSame(fields[0], fields[1])
+
+    val document = PsiDocumentManager.getInstance(project).getDocument(schema)!!
+    WriteCommandAction.runWriteCommandAction(project) {
+      val offset = document.text.indexOf("name = 1")
+      document.replaceString(offset, offset + "name".length, "title")
+      PsiDocumentManager.getInstance(project).commitDocument(document)
+    }
+    Assert.assertTrue(names.all { it.effectiveReference?.resolve() == null })
+  }
+
+  @Test
+  fun `test annotated range covers the chunks of the visible range`() {
+    Assert.assertEquals(TextRange(0, 65_536), PbTextLargeFileMode.getAnnotatedRange(TextRange(10, 2_000)))
+    Assert.assertEquals(TextRange(65_536, 196_608), PbTextLargeFileMode.getAnnotatedRange(TextRange(100_000, 140_000)))
+  }
+
+  @Test
+  fun `test message values outside of the annotated range stay unparsed`() {
+    val file = withThreshold(1_000) { parse("large.textproto", syntheticText(10_000)) }
+    val values = topLevelMessageValues(file)
+    val annotatedRange = TextRange(0, values[2].textRange.endOffset)
+
+    val visited = mutableListOf<PsiElement>()
+    PbTextLargeFileMode.processAnnotatedElements(file, annotatedRange) { visited.add(it) }
+    Assert.assertTrue(values.take(3).all { it.isParsed })
+    Assert.assertTrue(values.drop(3).none { it.isParsed })
+    Assert.assertTrue(visited.any { it is PbTextFieldName && it.textRange.startOffset > values[1].textRange.startOffset })
+    Assert.assertTrue(visited.all { annotatedRange.intersects(it.textRange) })
+  }
+
+  @Test
+  fun `test highlighting leaves message values outside of the viewport unparsed`() {
+    withThreshold(1_000) {
+      myFixture.configureByText("large.textproto", syntheticText(300_000))
+      EditorTestUtil.setEditorVisibleSize(myFixture.editor, 80, 20)
+      myFixture.doHighlighting()
+    }
+    val values = topLevelMessageValues(myFixture.file)
+    val annotatedRange = PbTextLargeFileMode.getAnnotatedRange(TextRange(0, 0))
+    Assert.assertTrue(values.first().isParsed)
+    Assert.assertTrue(values.filterNot { annotatedRange.intersects(it.textRange) }.none { it.isParsed })
+  }
+
+  /**
+   * Parses a synthetic 100MB textproto eagerly and in large-file mode, then expands a single message value of the
+   * latter. Both parsers are warmed up on a smaller text first, and the eager parse runs first so that its tree is
+   * unreachable while the lazy one is measured. Run with `-Dprotobuf.text.benchmark=true` and a heap large enough for
+   * the eager tree.
+   */
+  @Test
+  fun `test large file benchmark`() {
+    Assume.assumeTrue(java.lang.Boolean.getBoolean("protobuf.text.benchmark"))
+    val warmupText = syntheticText(BENCHMARK_LENGTH / 100)
+    repeat(WARMUP_ITERATIONS) {
+      withThreshold(Int.MAX_VALUE) { parse("warmup.textproto", warmupText) }
+      withThreshold(1_000) { topLevelMessageValues(parse("warmup.textproto", warmupText)).forEach { it.firstChildNode } }
+    }
+    val text = syntheticText(BENCHMARK_LENGTH)
+
+    val eagerStart = System.nanoTime()
+    withThreshold(Int.MAX_VALUE) { parse("eager.textproto", text) }
+    val eagerMs = (System.nanoTime() - eagerStart) / 1_000_000
+
+    val lazyStart = System.nanoTime()
+    val lazyFile = parse("lazy.textproto", text)
+    val lazyMs = (System.nanoTime() - lazyStart) / 1_000_000
+
+    val values = topLevelMessageValues(lazyFile)
+    val expandStart = System.nanoTime()
+    (values[values.size / 2].psi as PbTextMessageValue).fields
+    val expandUs = (System.nanoTime() - expandStart) / 1_000
+
+    println("${text.length / (1024 * 1024)}MB, ${values.size} messages: eager parse $eagerMs ms, " +
+            "large-file mode parse $lazyMs ms, expanding one message $expandUs us")
+  }
+
+  private fun parse(name: String, text: String): PsiFile {
+    val file = PsiFileFactory.getInstance(project).createFileFromText(name, PbTextFileType.INSTANCE, text)
+    // builds the tree of the file
+    file.node.lastChildNode
+    return file
+  }
+
+  private fun topLevelMessageValues(file: PsiFile): List<LazyParseableElement> =
+    file.node.getChildren(null).mapNotNull { it.findChildByType(PbTextTypes.MESSAGE_VALUE) as? LazyParseableElement }
+
+  private fun <T> withThreshold(threshold: Int, action: () -> T): T {
+    System.setProperty(PbTextLargeFileMode.THRESHOLD_PROPERTY, threshold.toString())
+    try {
+      return action()
+    }
+    finally {
+      System.clearProperty(PbTextLargeFileMode.THRESHOLD_PROPERTY)
+    }
+  }
+
+  private fun syntheticText(minLength: Int): String {
+    val builder = StringBuilder(minLength + 256)
+    var index = 0
+    while (builder.length < minLength) {
+      builder.append("item {\n  id: ").append(index)
+        .append("\n  name: \"item ").append(index).append("\"\n")
+        .append("  child < value: ").append(index * 0.5).append(" tags: [\"a\", \"b\"] >\n}\n")
+      index++
+    }
+    return builder.toString()
+  }
+
+  private companion object {
+    const val BENCHMARK_LENGTH = 100 * 1024 * 1024
+    const val WARMUP_ITERATIONS = 5
+  }
+}
@@ -0,0 +1,92 @@
+package com.intellij.protobuf.lang.resolve
+
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.protobuf.fixtures.PbCodeInsightFixtureTestCase
+import com.intellij.protobuf.ide.settings.findFileByImportPath
+import com.intellij.protobuf.lang.PbFileType
+import com.intellij.psi.search.FileTypeIndex
+import com.intellij.psi.search.GlobalSearchScope
+import com.intellij.util.Plow
+import org.junit.Assert
+import org.junit.Assume
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+
+@RunWith(JUnit4::class)
+class PbImportPathSuffixIndexTest : PbCodeInsightFixtureTestCase() {
+  @Test
+  fun `test suffixes start at directory boundaries`() {
+    Assert.assertEquals(listOf("c.proto", "b/c.proto", "a/b/c.proto"), PbImportPathSuffixIndex.importPathSuffixes("/a/b/c.proto"))
+    Assert.assertEquals(listOf("c.proto"), PbImportPathSuffixIndex.importPathSuffixes("c.proto"))
+  }
+
+  @Test
+  fun `test import path is matched at directory boundary`() {
+    val expected = myFixture.addFileToProject("a/x/common.proto", "").virtualFile
+    myFixture.addFileToProject("b/yx/common.proto", "")
+    myFixture.addFileToProject("c/x/other.proto", "")
+
+    val scope = GlobalSearchScope.projectScope(project)
+    Assert.assertEquals(expected, findFileByImportPath(scope, "x/common.proto"))
+    Assert.assertEquals(2, PbImportPathSuffixIndex.findFiles("common.proto", scope).size)
+    Assert.assertNull(findFileByImportPath(scope, "z/common.proto"))
+  }
+
+  @Test
+  fun `test renamed file is found by its new path`() {
+    val file = myFixture.addFileToProject("dir/old.proto", "").virtualFile
+    myFixture.renameElement(myFixture.psiManager.findFile(file)!!, "new.proto")
+
+    val scope = GlobalSearchScope.projectScope(project)
+    Assert.assertNull(findFileByImportPath(scope, "dir/old.proto"))
+    Assert.assertEquals(file, findFileByImportPath(scope, "dir/new.proto"))
+  }
+
+  /**
+   * Compares the resolution of imports through the suffix index with the scan of all proto files it replaced,
+   * for a growing number of files. Run with `-Dprotobuf.import.benchmark=true`.
+   */
+  @Test
+  fun `test import resolution benchmark`() {
+    Assume.assumeTrue(java.lang.Boolean.getBoolean("protobuf.import.benchmark"))
+    val scope = GlobalSearchScope.projectScope(project)
+    var created = 0
+    for (fileCount in listOf(1_000, 4_000, 16_000, 40_000)) {
+      while (created < fileCount) {
+        myFixture.tempDirFixture.createFile(importPath(created), "")
+        created++
+      }
+      val imports = (0 until IMPORTS_PER_ROUND).map { importPath(it * fileCount / IMPORTS_PER_ROUND) }
+
+      val scanMs = measureMs { imports.forEach { Assert.assertNotNull(scanForImportPath(scope, it)) } }
+      val indexMs = measureMs { imports.forEach { Assert.assertNotNull(findFileByImportPath(scope, it)) } }
+      println("$fileCount proto files, $IMPORTS_PER_ROUND imports: scan $scanMs ms, suffix index $indexMs ms")
+    }
+  }
+
+  private fun importPath(index: Int): String = "pkg${index / 100}/sub${index % 10}/file$index.proto"
+
+  private fun scanForImportPath(scope: GlobalSearchScope, path: String): VirtualFile? {
+    val name = path.substringAfterLast('/').substringBeforeLast('.')
+    return Plow.of { processor -> FileTypeIndex.processFiles(PbFileType.INSTANCE, processor, scope) }
+      .find { file -> file.nameWithoutExtension == name && file.url.endsWith(path) }
+  }
+
+  private fun measureMs(action: () -> Unit): Long {
+    repeat(WARMUP_ROUNDS) { action() }
+    val times = LongArray(MEASURED_ROUNDS) {
+      val start = System.nanoTime()
+      action()
+      (System.nanoTime() - start) / 1_000_000
+    }
+    times.sort()
+    return times[times.size / 2]
+  }
+
+  private companion object {
+    const val IMPORTS_PER_ROUND = 200
+    const val WARMUP_ROUNDS = 2
+    const val MEASURED_ROUNDS = 5
+  }
+}
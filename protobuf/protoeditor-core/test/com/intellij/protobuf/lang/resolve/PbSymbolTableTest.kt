@@ -0,0 +1,61 @@
+package com.intellij.protobuf.lang.resolve
+
+import com.intellij.openapi.command.WriteCommandAction
+import com.intellij.protobuf.fixtures.PbCodeInsightFixtureTestCase
+import com.intellij.protobuf.ide.settings.PbProjectSettings
+import com.intellij.protobuf.lang.psi.PbFile
+import com.intellij.psi.PsiDocumentManager
+import com.intellij.psi.util.QualifiedName
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+
+@RunWith(JUnit4::class)
+class PbSymbolTableTest : PbCodeInsightFixtureTestCase() {
+  private lateinit var common: PbFile
+  private lateinit var api: PbFile
+  private lateinit var service: PbFile
+
+  @Before
+  fun createFiles() {
+    PbProjectSettings.getInstance(myFixture.project).isIndexBasedResolveEnabled = true
+    common = myFixture.addFileToProject("common.proto", """
+      package common;
+      message Id {}
+    """.trimIndent()) as PbFile
+    api = myFixture.addFileToProject("api.proto", """
+      package api;
+      import public "common.proto";
+      message Request {}
+    """.trimIndent()) as PbFile
+    service = myFixture.addFileToProject("service.proto", """
+      package service;
+      import "api.proto";
+      message Service {}
+    """.trimIndent()) as PbFile
+  }
+
+  @Test
+  fun `test tables are layered over imported files`() {
+    Assert.assertEquals(listOf(api, common), api.exportedSymbolTable.files)
+    Assert.assertEquals(listOf(service, api, common), service.fullSymbolTable.files)
+    Assert.assertEquals(1, service.fullSymbolTable.get(QualifiedName.fromDottedString("common.Id")).size)
+    Assert.assertTrue(service.fullSymbolTable.get(QualifiedName.fromDottedString("common.Missing")).isEmpty())
+    Assert.assertEquals(1, PbSymbolResolver.forFile(service).resolveName(QualifiedName.fromDottedString("api.Request")) { true }.size)
+  }
+
+  @Test
+  fun `test local symbols of a file survive edits of other files`() {
+    val commonSymbols = common.localQualifiedSymbolMap
+    val document = PsiDocumentManager.getInstance(project).getDocument(service)!!
+    WriteCommandAction.runWriteCommandAction(project) {
+      document.insertString(document.textLength, "\nmessage Other {}")
+      PsiDocumentManager.getInstance(project).commitDocument(document)
+    }
+
+    Assert.assertSame(commonSymbols, common.localQualifiedSymbolMap)
+    Assert.assertEquals(1, service.fullSymbolTable.get(QualifiedName.fromDottedString("service.Other")).size)
+  }
+}
@@ -47,7 +47,7 @@ class HighlightedReportDataImpl private constructor(
   override val isMatchingForProject: Boolean,
   override val sourceReportDescriptor: ReportDescriptor,
   override val allProblems: Set<SarifProblem>,
-  private val problemsByRelativeFilePath: Map<Path, List<SarifProblem>>,
+  private val problemsIndex: SarifProblemsPathIndex,
   override val inspectionsInfoProvider: InspectionInfoProvider,
   override val reportMetadata: AggregatedReportMetadata,
   override val reportName: String,
@@ -61,11 +61,11 @@ class HighlightedReportDataImpl private constructor(
       val validatedSarif = loadedReport.validatedSarif
       return withContext(QodanaDispatchers.Default) {
         val problems: List<SarifProblem> = SarifProblem.fromReport(project, loadedReport.validatedSarif)
-        val isMatchingForProject = async {
-          problems.isEmpty() || isAnySarifProblemMatchingProject(project, problems)
+        val problemsIndex = async {
+          SarifProblemsPathIndex.build(problems)
         }
-        val problemsByRelativeFilePath = async {
-          problems.groupBy { Path(it.relativePathToFile) }
+        val isMatchingForProject = async {
+          problems.isEmpty() || isAnySarifProblemMatchingProject(project, problemsIndex.await())
         }
         val inspectionsInfoProvider = async {
           val inspectionsIds = problems.map { it.inspectionId }
@@ -77,7 +77,7 @@ class HighlightedReportDataImpl private constructor(
           isMatchingForProject.await(),
           sourceReportDescriptor,
           problems.toSet(),
-          problemsByRelativeFilePath.await(),
+          problemsIndex.await(),
           inspectionsInfoProvider.await(),
           loadedReport.aggregatedReportMetadata,
           loadedReport.reportName,
@@ -178,9 +178,9 @@ class HighlightedReportDataImpl private constructor(
     }
 
     if (isDeleteEvent) {
-      return problemsByRelativeFilePath.filter { it.key.startsWith(relativeFilePath) }.values.flatten()
+      return problemsIndex.problemsUnder(relativeFilePath)
     }
-    return problemsByRelativeFilePath[relativeFilePath] ?: return emptyList()
+    return problemsIndex.problemsOfFile(relativeFilePath)
   }
 
   private fun createUpdatersFromVfsEvents(): Flow<Set<SarifProblemPropertiesUpdater>> {
@@ -245,13 +245,14 @@ private fun getAppearedFileFromEvent(event: VFileEvent): String? {
   }
 }
 
-private suspend fun isAnySarifProblemMatchingProject(project: Project, problems: List<SarifProblem>): Boolean {
+private suspend fun isAnySarifProblemMatchingProject(project: Project, problemsIndex: SarifProblemsPathIndex): Boolean {
   return withContext(QodanaDispatchers.Default) {
-    problems.withIndex().any {
+    // problems of the same file resolve to the same virtual file, so only one problem per file is checked
+    problemsIndex.problemsByFile.withIndex().any {
       if (it.index % 10000 == 0) {
         yield()
       }
-      it.value.getVirtualFile(project) != null
+      it.value.first().getVirtualFile(project) != null
     }
   }
 }
\ No newline at end of file
@@ -9,10 +9,14 @@ import com.intellij.lang.LanguageUtil
 import com.intellij.openapi.editor.Document
 import com.intellij.openapi.project.DumbService
 import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.Key
 import com.intellij.openapi.util.TextRange
 import com.intellij.psi.PsiFile
+import com.intellij.util.containers.CollectionFactory
 import com.intellij.util.diff.Diff
 import org.jetbrains.qodana.problem.SarifProblem
+import java.lang.ref.WeakReference
+import java.util.IdentityHashMap
 import kotlin.math.min
 
 internal class QodanaRangeCalculator(
@@ -39,48 +43,82 @@ internal class QodanaRangeCalculator(
   private fun getTextRangesForRevision(problems: List<SarifProblem>, revisionDocument: Document?): List<ProblemWithRange> {
     if (problems.isEmpty()) return emptyList()
 
-    val rangesInCurrentDocument = problems.map { ProblemWithRange(it, it.getTextRangeInDocument(document)) } //ranges in current state of file
-
     //TODO: show ui element with error - can't find revision
     if (revisionDocument == null) {
-      return rangesInCurrentDocument
+      return problems.map { ProblemWithRange(it, it.getTextRangeInDocument(document)) } //ranges in current state of file
     }
-    val changes = Diff.buildChanges(revisionDocument.text, document.text)
-
-    val diffs = ByWordRt.compare(revisionDocument.text, document.text, ComparisonPolicy.DEFAULT, CancellationChecker.EMPTY)
+    val translations = getRangeTranslations(problems, revisionDocument)
+
+    return problems.map { problem ->
+      val localProblem = ProblemWithRange(problem, problem.getTextRangeInDocument(document))
+      when (val translation = translations[problem]) {
+        null, RangeTranslation.Local -> localProblem
+        RangeTranslation.Missing -> ProblemWithRange(problem, null)
+        is RangeTranslation.Translated -> {
+          val textRange = translation.range
+          when {
+            textRange.endOffset > document.textLength -> localProblem
+            !problem.matchesSnippet(document, textRange) -> ProblemWithRange(problem, null)
+            isProblemSuppressed(problem, textRange, highlightedReportData) -> ProblemWithRange(problem, null)
+            else -> ProblemWithRange(problem, textRange)
+          }
+        }
+      }
+    }
+  }
 
-    return List(problems.size) { index ->
-      val problem = problems[index]
-      val problemWithNullRange = ProblemWithRange(problem, null)
-      val localProblem = rangesInCurrentDocument[index]
+  /**
+   * Diff translations are cached in the current document until either document changes,
+   * so repeated highlighting passes of an unchanged file don't compare the revisions again.
+   * The cache references neither the revision documents nor the report strongly, it doesn't keep them alive after they are closed.
+   */
+  private fun getRangeTranslations(problems: List<SarifProblem>, revisionDocument: Document): Map<SarifProblem, RangeTranslation> {
+    val cache = document.getUserData(QODANA_RANGE_TRANSLATIONS)
+      ?.takeIf { it.documentStamp == document.modificationStamp && it.reportData.get() === highlightedReportData }
+      ?: QodanaRangeTranslations(document.modificationStamp, highlightedReportData)
+    val cached = cache.byRevision[revisionDocument]?.takeIf { it.revisionStamp == revisionDocument.modificationStamp }
+    if (cached != null && problems.all { it in cached.translations }) return cached.translations
 
-      if (problem.startLine == null || problem.startLine >= revisionDocument.lineCount || problem.startColumn == null) return@List localProblem
-      if (problem.snippetText == null && Diff.translateLine(changes, problem.startLine) == -1) return@List problemWithNullRange
+    val changes = Diff.buildChanges(revisionDocument.text, document.text)
+    val diffs = ByWordRt.compare(revisionDocument.text, document.text, ComparisonPolicy.DEFAULT, CancellationChecker.EMPTY)
 
-      val problemLength =
-        problem.charLength ?:
-        if (problem.endLine != null && problem.endLine < revisionDocument.lineCount && problem.endColumn != null) {
-          revisionDocument.getLineStartOffset(problem.endLine) + problem.endColumn - revisionDocument.getLineStartOffset(problem.startLine) - problem.startColumn
-        } else {
-          return@List localProblem
-        }
-      val startOffsetInRevisionFile = revisionDocument.getLineStartOffset(problem.startLine) + problem.startColumn
+    val translations = IdentityHashMap<SarifProblem, RangeTranslation>()
+    cached?.let { translations.putAll(it.translations) }
+    for (problem in problems) {
+      if (problem !in translations) translations[problem] = translateRange(problem, revisionDocument, changes, diffs)
+    }
+    cache.byRevision[revisionDocument] = QodanaRevisionRangeTranslations(revisionDocument.modificationStamp, translations)
+    document.putUserData(QODANA_RANGE_TRANSLATIONS, cache)
+    return translations
+  }
 
-      var lastRelatedIndex = diffs.binarySearch {
-        it.endOffset1 - startOffsetInRevisionFile
+  private fun translateRange(
+    problem: SarifProblem,
+    revisionDocument: Document,
+    changes: Diff.Change?,
+    diffs: List<DiffFragment>,
+  ): RangeTranslation {
+    if (problem.startLine == null || problem.startLine >= revisionDocument.lineCount || problem.startColumn == null) return RangeTranslation.Local
+    if (problem.snippetText == null && Diff.translateLine(changes, problem.startLine) == -1) return RangeTranslation.Missing
+
+    val problemLength =
+      problem.charLength ?:
+      if (problem.endLine != null && problem.endLine < revisionDocument.lineCount && problem.endColumn != null) {
+        revisionDocument.getLineStartOffset(problem.endLine) + problem.endColumn - revisionDocument.getLineStartOffset(problem.startLine) - problem.startColumn
+      } else {
+        return RangeTranslation.Local
       }
-      if (lastRelatedIndex < 0) lastRelatedIndex = - lastRelatedIndex - 1
-      val relatedDiffs = diffs.subList(0, min(lastRelatedIndex + 1, diffs.size))
-
-      val textRange = tryTranslateOffsetsByDiffs(startOffsetInRevisionFile, startOffsetInRevisionFile + problemLength, relatedDiffs)
-                      ?: return@List localProblem
+    val startOffsetInRevisionFile = revisionDocument.getLineStartOffset(problem.startLine) + problem.startColumn
 
-      if (textRange.endOffset > document.textLength) return@List localProblem
-      val textEqualToSnippet = problem.matchesSnippet(document, textRange)
-      if (!textEqualToSnippet) return@List problemWithNullRange
-      if (isProblemSuppressed(problems[index], textRange, highlightedReportData)) return@List problemWithNullRange
-      ProblemWithRange(problems[index], textRange)
+    var lastRelatedIndex = diffs.binarySearch {
+      it.endOffset1 - startOffsetInRevisionFile
     }
+    if (lastRelatedIndex < 0) lastRelatedIndex = - lastRelatedIndex - 1
+    val relatedDiffs = diffs.subList(0, min(lastRelatedIndex + 1, diffs.size))
+
+    val textRange = tryTranslateOffsetsByDiffs(startOffsetInRevisionFile, startOffsetInRevisionFile + problemLength, relatedDiffs)
+                    ?: return RangeTranslation.Local
+    return RangeTranslation.Translated(textRange)
   }
 
   private fun tryTranslateOffsetsByDiffs(startOffset: Int, endOffset: Int, diffs: List<DiffFragment>): TextRange? {
@@ -119,4 +157,26 @@ internal class QodanaRangeCalculator(
 
     return !inspectionSuppressors.all { !it.isSuppressedFor(element, toolId) }
   }
-}
\ No newline at end of file
+}
+
+private val QODANA_RANGE_TRANSLATIONS = Key.create<QodanaRangeTranslations>("Qodana.Range.Translations")
+
+private class QodanaRangeTranslations(val documentStamp: Long, reportData: HighlightedReportData) {
+  val reportData = WeakReference(reportData)
+  val byRevision: MutableMap<Document, QodanaRevisionRangeTranslations> = CollectionFactory.createConcurrentWeakIdentityMap()
+}
+
+private class QodanaRevisionRangeTranslations(val revisionStamp: Long, val translations: Map<SarifProblem, RangeTranslation>)
+
+/**
+ * Range of a problem in the current document, translated from the analysed revision by the diff between them
+ */
+private sealed interface RangeTranslation {
+  /** The problem can't be located in the revision, its range is taken from the current document as is */
+  object Local : RangeTranslation
+
+  /** The problem's line was changed since the revision */
+  object Missing : RangeTranslation
+
+  class Translated(val range: TextRange) : RangeTranslation
+}
@@ -0,0 +1,57 @@
+package org.jetbrains.qodana.highlight
+
+import org.jetbrains.qodana.problem.SarifProblem
+import java.nio.file.Path
+import kotlin.io.path.invariantSeparatorsPathString
+
+/**
+ * Problems of a report indexed by their project-relative file path, built once when the report is opened.
+ *
+ * Problems of a file are found with a hash lookup, problems under a deleted or moved directory
+ * with a binary search over the sorted paths, instead of scanning all problems of the report.
+ */
+internal class SarifProblemsPathIndex private constructor(
+  private val sortedPaths: Array<String>,
+  private val problemsByPath: Map<String, List<SarifProblem>>,
+) {
+  companion object {
+    fun build(problems: List<SarifProblem>): SarifProblemsPathIndex {
+      val problemsByPath = HashMap<String, MutableList<SarifProblem>>()
+      for (problem in problems) {
+        problemsByPath.getOrPut(key(problem.relativeNioFile)) { ArrayList(1) }.add(problem)
+      }
+      val sortedPaths = problemsByPath.keys.toTypedArray()
+      sortedPaths.sort()
+      return SarifProblemsPathIndex(sortedPaths, problemsByPath)
+    }
+
+    private fun key(relativePath: Path): String = relativePath.normalize().invariantSeparatorsPathString
+  }
+
+  /**
+   * Problems grouped by file, in the order of paths
+   */
+  val problemsByFile: Sequence<List<SarifProblem>>
+    get() = sortedPaths.asSequence().map { problemsByPath.getValue(it) }
+
+  fun problemsOfFile(relativePath: Path): List<SarifProblem> = problemsByPath[key(relativePath)].orEmpty()
+
+  /**
+   * Problems of the file or of all files in the directory at [relativePath]
+   */
+  fun problemsUnder(relativePath: Path): List<SarifProblem> {
+    val key = key(relativePath)
+    if (key.isEmpty()) return problemsByFile.flatten().toList()
+
+    val problems = problemsOfFile(relativePath).toMutableList()
+    // paths of the directory children are in ["$key/", "${key}0"), as '0' follows '/'
+    val from = "$key/"
+    val to = "${key}0"
+    var index = sortedPaths.binarySearch(from).let { if (it < 0) -it - 1 else it }
+    while (index < sortedPaths.size && sortedPaths[index] < to) {
+      problems.addAll(problemsByPath.getValue(sortedPaths[index]))
+      index++
+    }
+    return problems
+  }
+}
@@ -34,7 +34,7 @@ import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaException
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaScopeModifier
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.getOutputFormat
 import org.jetbrains.qodana.staticAnalysis.profile.QodanaInspectionProfile
-import org.jetbrains.qodana.staticAnalysis.sarif.hasFixes
+import org.jetbrains.qodana.staticAnalysis.sarif.ResultCounts
 import org.jetbrains.qodana.staticAnalysis.script.DEFAULT_SCRIPT_NAME
 import java.nio.file.Files
 import java.nio.file.Path
@@ -203,6 +203,7 @@ data class QodanaConfig(
   val php: QodanaPhpConfig?,
   val jvm: QodanaJvmConfig,
   val dependencyAnalysis: DependencyAnalysisConfig,
+  val shard: QodanaShard? = null,
 
   val skipPreamble: Boolean = System.getProperty("qodana.skip.preamble").toBoolean(), // Set by CLI for second run in scoped script
   val skipResultStrategy: SkipResultStrategy = SkipResultStrategy.fromParameters(),
@@ -248,7 +249,8 @@ data class QodanaConfig(
         }
       ),
       rootJavaProjects: List<Path> = yaml.rootJavaProjects,
-      mavenSettingsPath: Path? = yaml.mavenSettingsPath?.let { if (it.isAbsolute) it.normalize() else projectPath.resolve(it).normalize() }
+      mavenSettingsPath: Path? = yaml.mavenSettingsPath?.let { if (it.isAbsolute) it.normalize() else projectPath.resolve(it).normalize() },
+      shard: QodanaShard? = null,
     ): QodanaConfig {
       val dotnet = yaml.dotnet
       val php = yaml.php
@@ -288,7 +290,8 @@ data class QodanaConfig(
         jvm = jvm,
         dependencyAnalysis = dependencyAnalysis,
         rootJavaProjects = rootJavaProjects,
-        mavenSettingsPath = mavenSettingsPath
+        mavenSettingsPath = mavenSettingsPath,
+        shard = shard,
       )
     }
   }
@@ -347,19 +350,20 @@ enum class SkipResultStrategy {
     }
   }
 
-  suspend fun shouldSkip(run: Run): Boolean {
-    val newByBaseline: (Result) -> Boolean = { result ->
-      result.baselineState == null
-      || (result.baselineState != Result.BaselineState.ABSENT
-          && result.baselineState != Result.BaselineState.UNCHANGED)
+  suspend fun shouldSkip(run: Run): Boolean =
+    shouldSkip(withContext(StaticAnalysisDispatchers.Default) { ResultCounts.of(run.results.orEmpty()) })
+
+  fun shouldSkip(counts: ResultCounts): Boolean {
+    val newByBaseline: (ResultCounts.Key) -> Boolean = { key ->
+      key.baselineState == null
+      || (key.baselineState != Result.BaselineState.ABSENT
+          && key.baselineState != Result.BaselineState.UNCHANGED)
     }
-    return withContext(StaticAnalysisDispatchers.Default) {
-      when (this@SkipResultStrategy) {
-        ALWAYS -> true
-        ANY -> run.results.any { newByBaseline(it) }
-        FIXABLE -> run.results.any { newByBaseline(it) && it.hasFixes() }
-        NEVER -> false
-      }
+    return when (this) {
+      ALWAYS -> true
+      ANY -> counts.any { newByBaseline(it) }
+      FIXABLE -> counts.any { newByBaseline(it) && it.hasFixes }
+      NEVER -> false
     }
   }
 }
@@ -0,0 +1,65 @@
+package org.jetbrains.qodana.staticAnalysis.inspections.config
+
+import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaException
+
+enum class ShardingStrategy {
+  /** Files are distributed by the hash of their project-relative path */
+  PATH,
+
+  /** Files are distributed by the hash of their module name, so that a module is analysed by a single shard */
+  MODULE;
+
+  companion object {
+    fun fromString(value: String): ShardingStrategy =
+      entries.firstOrNull { it.name.equals(value, ignoreCase = true) }
+      ?: throw QodanaException("Unknown sharding strategy '$value', expected one of ${entries.joinToString { it.name.lowercase() }}")
+  }
+}
+
+/**
+ * Part `index` of `count` of a sharded analysis, set with `--shard index/count`.
+ *
+ * Local and global simple inspections run only on the files owned by the shard.
+ * Global inspections, external tools and duplicates need the whole project, so they run only in the [isPrimary] shard.
+ * The tool results databases of all shards are combined by the `merge-shards` script.
+ */
+data class QodanaShard(val index: Int, val count: Int, val strategy: ShardingStrategy = ShardingStrategy.PATH) {
+  init {
+    if (count < 1 || index !in 0 until count) throw QodanaException("Invalid shard $index/$count, expected 0 <= index < count")
+  }
+
+  val isPrimary: Boolean
+    get() = index == 0
+
+  val databaseFileName: String
+    get() = "tool-results.shard-$index-of-$count.db"
+
+  /**
+   * @param key project-relative path or module name, depending on [strategy]
+   */
+  fun owns(key: String): Boolean = Math.floorMod(mix(key.hashCode()), count) == index
+
+  override fun toString(): String = "$index/$count"
+
+  companion object {
+    fun parse(value: String, strategy: String? = null): QodanaShard {
+      val parts = value.split('/')
+      val index = parts.getOrNull(0)?.trim()?.toIntOrNull()
+      val count = parts.getOrNull(1)?.trim()?.toIntOrNull()
+      if (parts.size != 2 || index == null || count == null) {
+        throw QodanaException("Invalid shard '$value', expected 'index/count', e.g. '0/4'")
+      }
+      return QodanaShard(index, count, strategy?.let(ShardingStrategy::fromString) ?: ShardingStrategy.PATH)
+    }
+
+    // String.hashCode is stable across JVMs, but neighbouring paths differ in the low bits only
+    private fun mix(hash: Int): Int {
+      var h = hash
+      h = h xor (h ushr 16)
+      h *= -0x7a143595
+      h = h xor (h ushr 13)
+      h *= -0x3d4d51cb
+      return h xor (h ushr 16)
+    }
+  }
+}
@@ -36,4 +36,10 @@ fun MetricTable.Companion.getSchemaForAllTables(): String {
     $indexStatements
     COMMIT;
     """.trimIndent()
-}
\ No newline at end of file
+}
+/**
+ * Copies the rows of the table from the database attached as [schema].
+ */
+fun MetricTable.getCopyStatement(schema: String): String {
+  return "INSERT OR REPLACE INTO $tableName SELECT * FROM $schema.$tableName;"
+}
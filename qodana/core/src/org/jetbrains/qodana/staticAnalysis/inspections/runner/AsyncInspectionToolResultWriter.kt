@@ -5,8 +5,6 @@ import com.intellij.openapi.components.PathMacroManager
 import com.intellij.openapi.diagnostic.logger
 import com.intellij.openapi.project.Project
 import com.intellij.platform.util.coroutines.childScope
-import com.jetbrains.qodana.sarif.SarifUtil
-import com.jetbrains.qodana.sarif.model.Result
 import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.CoroutineStart
@@ -16,34 +14,57 @@ import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.job
 import kotlinx.coroutines.joinAll
 import kotlinx.coroutines.launch
-import kotlinx.coroutines.withContext
+import org.jetbrains.qodana.qodanaMeter
 import org.jetbrains.qodana.staticAnalysis.StaticAnalysisDispatchers
 import org.jetbrains.qodana.staticAnalysis.profile.QodanaProfile
 import org.jetbrains.qodana.staticAnalysis.sarif.fingerprints.BaselineEqualityV1
 import org.jetbrains.qodana.staticAnalysis.sarif.fingerprints.fingerprintOf
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.math.max
 
 private val LOG = logger<AsyncInspectionToolResultWriter>()
 
+private const val CHANNEL_CAPACITY = 1000
+
 internal class AsyncInspectionToolResultWriter(
   private val scope: CoroutineScope,
   val project: Project,
   private val database: QodanaToolResultDatabase,
   private val profileState: QodanaProfile.QodanaProfileState,
-  private val macroManager: PathMacroManager
+  private val macroManager: PathMacroManager,
+  private val resultsCache: QodanaInspectionResultsCache? = null,
 ) {
-  private val channel: Channel<List<Problem>> = Channel(1000)
-  private val gson = SarifUtil.createGson()
+  private val channel: Channel<List<Problem>> = Channel(CHANNEL_CAPACITY)
+
+  // queue depth is the number of batches sent by inspection threads but not yet taken by the writer
+  private val queueDepth = AtomicInteger()
+  private val maxQueueDepth = AtomicInteger()
+  private val backpressureEvents = AtomicInteger()
+  private val writtenRows = AtomicLong()
+
+  private val meter = qodanaMeter()
+  private val writtenRowsCounter = meter.counterBuilder("qodana.results.writer.rows").build()
+  private val queueDepthGauge = meter.gaugeBuilder("qodana.results.writer.queue.depth").ofLongs()
+    .buildWithCallback { it.record(queueDepth.get().toLong()) }
 
   private val writerJob: Job =
     // WHY IO? – Database stuff, need to investigate and refactor
     // TODO – run database on IO dispatcher, not whole function stack
     scope.launch(StaticAnalysisDispatchers.IO, CoroutineStart.LAZY) {
       LOG.info("Async result writer started")
-      for (problems in channel) {
-        for (problem in problems) {
-          writeProblem(problem, profileState)
+      val startNanos = System.nanoTime()
+      database.batchWriter().use { batchWriter ->
+        for (problems in channel) {
+          queueDepth.decrementAndGet()
+          for (problem in problems) {
+            writeProblem(problem, profileState, batchWriter)
+          }
+          commitRows { batchWriter.flushIfNeeded() }
         }
+        commitRows { batchWriter.flush() }
       }
+      logWriterStatistics(System.nanoTime() - startNanos)
     }
 
   private val consumerScope: CoroutineScope  = scope.childScope()
@@ -53,7 +74,12 @@ internal class AsyncInspectionToolResultWriter(
     val filteredProblems = problems.filter { handler(it) }
     if (filteredProblems.isEmpty()) return
 
+    val depth = queueDepth.incrementAndGet()
+    maxQueueDepth.updateAndGet { max(it, depth) }
     consumerScope.launch(StaticAnalysisDispatchers.Default, start = CoroutineStart.UNDISPATCHED) {
+      if (channel.trySend(filteredProblems).isSuccess) return@launch
+      // channel is full, the inspection thread is suspended until the writer catches up
+      backpressureEvents.incrementAndGet()
       channel.send(filteredProblems)
     }
   }
@@ -65,25 +91,30 @@ internal class AsyncInspectionToolResultWriter(
 
     channel.close()
     writerJob.join()
+    queueDepthGauge.close()
 
     scope.coroutineContext.job.cancelAndJoin()
   }
 
-  private suspend fun writeProblem(problem: Problem, profileState: QodanaProfile.QodanaProfileState) {
+  private suspend fun writeProblem(
+    problem: Problem,
+    profileState: QodanaProfile.QodanaProfileState,
+    batchWriter: QodanaToolResultDatabase.ResultsBatchWriter,
+  ) {
+    // problems refer to their file with collapsed path macros, the same URL the results cache captures by
+    val fileUrl = if (resultsCache != null) problem.getFile() else null
     try {
       val sarif = problem.getSarif(macroManager, database) ?: return
       val inspectionGroup = profileState.stateByInspectionId[sarif.ruleId]!!.inspectionGroup.name
       val fingerprint = requireNotNull(sarif.fingerprintOf(BaselineEqualityV1)) { "Fingerprints not generated" }
-      withContext(StaticAnalysisDispatchers.IO) {
-        database.insert(inspectionGroup,
-                        sarif.ruleId,
-                        fingerprint,
-                        gson.toJson(sarif, Result::class.java))
-
-        val hashFrom = problem.getRelatedProblemHashFrom()
-        if (hashFrom != null) {
-          database.insertRelatedProblem(hashFrom, gson.toJson(sarif, Result::class.java))
-        }
+      batchWriter.insert(inspectionGroup, sarif.ruleId, fingerprint, sarif)
+
+      val hashFrom = problem.getRelatedProblemHashFrom()
+      if (hashFrom != null) {
+        batchWriter.insertRelatedProblem(hashFrom, sarif)
+      }
+      if (fileUrl != null) {
+        resultsCache?.capture(fileUrl, problem.getModule(), sarif.ruleId, sarif)
       }
     }
     catch (e: CancellationException) {
@@ -91,6 +122,30 @@ internal class AsyncInspectionToolResultWriter(
     }
     catch(e: Exception) {
       LOG.warn(e)
+      fileUrl?.let { resultsCache?.discardCapture(it) }
     }
   }
+
+  private inline fun commitRows(flush: () -> Int) {
+    try {
+      val committed = flush()
+      if (committed == 0) return
+      writtenRows.addAndGet(committed.toLong())
+      writtenRowsCounter.add(committed.toLong())
+    }
+    catch (e: CancellationException) {
+      throw e
+    }
+    catch (e: Exception) {
+      LOG.warn(e)
+    }
+  }
+
+  private fun logWriterStatistics(durationNanos: Long) {
+    val rows = writtenRows.get()
+    val durationMs = durationNanos / 1_000_000
+    val rowsPerSecond = if (durationMs > 0) rows * 1000 / durationMs else rows
+    LOG.info("Async result writer finished: $rows rows in $durationMs ms ($rowsPerSecond rows/s), " +
+             "max queue depth ${maxQueueDepth.get()}/$CHANNEL_CAPACITY, backpressure events ${backpressureEvents.get()}")
+  }
 }
@@ -6,14 +6,25 @@ import org.jetbrains.qodana.staticAnalysis.inspections.coverageData.CoverageData
 import org.jetbrains.qodana.staticAnalysis.inspections.metrics.CodeQualityMetrics
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.CommandLineTable.Companion.DEFAULT_COLUMN_SIZE
 import org.jetbrains.qodana.staticAnalysis.sarif.QodanaSeverity
+import org.jetbrains.qodana.staticAnalysis.sarif.ResultCounts
 import org.jetbrains.qodana.staticAnalysis.sarif.qodanaSeverity
+import org.jetbrains.qodana.staticAnalysis.stat.INSPECTION_PROFILE_ARTIFACT_NAME
+import org.jetbrains.qodana.staticAnalysis.stat.InspectionTimingProfile
+import java.util.Locale
 
 class CommandLineResultsPrinter(
   private val inspectionIdToName: (inspectionId: String) -> String,
   private val cliPrinter: (result: String) -> Unit,
 ) {
   fun printResultsWithBaselineState(results: List<Result>, includeAbsent: Boolean) {
-    val resultsCountByBaselineState = results.groupingBy { it.baselineState }.eachCount()
+    printResultsWithBaselineState(ResultCounts.of(results), includeAbsent)
+  }
+
+  /**
+   * Results without a baseline state aren't printed.
+   */
+  fun printResultsWithBaselineState(counts: ResultCounts, includeAbsent: Boolean) {
+    val resultsCountByBaselineState = counts.countBy { it.baselineState }
 
     val groupingMessage = QodanaBundle.message(
       "cli.baseline.results.grouping.message",
@@ -22,17 +33,13 @@ class CommandLineResultsPrinter(
       if (includeAbsent) 1 else 0, resultsCountByBaselineState[Result.BaselineState.ABSENT] ?: 0
     )
 
-    val countedProblems = (
-      results
-        .takeIf { !includeAbsent }?.filter { it.baselineState != Result.BaselineState.ABSENT }
-      ?: results)
-      .groupingBy {
-        Triple(
-          inspectionIdToName.invoke(it.ruleId),
-          it.baselineState,
-          it.qodanaSeverity
-        )
-      }.eachCount()
+    val countedProblems = counts.countBy({ it.baselineState != null && (includeAbsent || it.baselineState != Result.BaselineState.ABSENT) }) {
+      Triple(
+        inspectionIdToName.invoke(it.ruleId.orEmpty()),
+        it.baselineState!!,
+        it.severity
+      )
+    }
 
     printProblemsCountTable(
       QodanaBundle.message("cli.baseline.results.title"),
@@ -95,14 +102,60 @@ class CommandLineResultsPrinter(
     cliPrinter.invoke(result.toString())
   }
 
+  fun printInspectionCacheStatistics(statistics: InspectionCacheStatistics, sectionTitle: String) {
+    val total = statistics.hits + statistics.misses
+    val hitRate = if (total > 0) statistics.hits * 100 / total else 0
+    val result = StringBuilder()
+    result.appendLine(sectionTitle)
+    result.append(QodanaBundle.message("cli.inspection.cache.statistics", statistics.hits, statistics.misses, hitRate))
+    cliPrinter.invoke(result.toString())
+  }
+
+  fun printInspectionTimingProfile(profile: InspectionTimingProfile, sectionTitle: String, limit: Int = 10) {
+    val result = StringBuilder()
+    result.appendLine(System.lineSeparator() + sectionTitle)
+    result.appendLine(QodanaBundle.message("cli.inspection.profile.message", limit, INSPECTION_PROFILE_ARTIFACT_NAME))
+    val rows = profile.inspections
+      .groupBy { it.inspectionId }
+      .map { (inspectionId, timings) ->
+        listOf(
+          inspectionIdToName.invoke(inspectionId),
+          timings.sumOf { it.files }.toString(),
+          formatMillis(timings.sumOf { it.wallTimeMs }),
+          formatMillis(timings.sumOf { it.cpuTimeMs }),
+          formatMillis(timings.maxOf { it.maxWallTimeMs }),
+        ) to timings.sumOf { it.wallTimeMs }
+      }
+      .sortedByDescending { it.second }
+      .take(limit)
+      .map { it.first }
+    val commandLineTable = CommandLineTable(
+      listOf(
+        QodanaBundle.message("cli.results.table.header.inspection.name"),
+        QodanaBundle.message("cli.inspection.profile.table.header.files"),
+        QodanaBundle.message("cli.inspection.profile.table.header.wall.time"),
+        QodanaBundle.message("cli.inspection.profile.table.header.cpu.time"),
+        QodanaBundle.message("cli.inspection.profile.table.header.max.time"),
+      ),
+      rows,
+      listOf(DEFAULT_COLUMN_SIZE, 0, 0, 0, 0),
+    )
+    result.appendLine(commandLineTable.buildTable())
+    cliPrinter.invoke(result.toString())
+  }
+
   fun printResults(results: List<Result>, sectionTitle: String, message: String? = null) {
-    val countedByLevels = results.groupingBy { it.qodanaSeverity }.eachCount().toSortedMap(compareByDescending { it })
+    printResults(ResultCounts.of(results), sectionTitle, message)
+  }
+
+  fun printResults(counts: ResultCounts, sectionTitle: String, message: String? = null) {
+    val countedByLevels = counts.countBy { it.severity }.toSortedMap(compareByDescending { it })
     val groupingMessage = message ?: QodanaBundle.message(
       "cli.main.results.grouping.message.by.severity",
       countedByLevels.map { "${it.key} - ${it.value}" }.joinToString(", ")
     )
 
-    val countedProblems = results.groupingBy { inspectionIdToName(it.ruleId) to it.qodanaSeverity }.eachCount()
+    val countedProblems = counts.countBy { inspectionIdToName(it.ruleId.orEmpty()) to it.severity }
 
     printProblemsCountTable(
       sectionTitle,
@@ -184,6 +237,8 @@ class CommandLineResultsPrinter(
     cliPrinter.invoke(result.toString())
   }
 
+  private fun formatMillis(millis: Long): String = String.format(Locale.ROOT, "%.1fs", millis / 1000.0)
+
   private fun generateProgressBar(percentage: Int, totalWidth: Int = DEFAULT_COLUMN_SIZE): String {
     val filled = if (percentage < 50) "\u001B[31m▓\u001B[0m" else "\u001B[32m▓\u001B[0m" // TODO: align with the QG, when implemented
     val empty = "░"
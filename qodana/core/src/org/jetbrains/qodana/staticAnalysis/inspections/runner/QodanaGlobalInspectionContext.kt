@@ -6,6 +6,7 @@ import com.intellij.codeInspection.ex.GlobalInspectionContextImpl
 import com.intellij.codeInspection.ex.InspectionToolWrapper
 import com.intellij.codeInspection.ex.JobDescriptor
 import com.intellij.codeInspection.ex.Tools
+import com.intellij.openapi.components.PathMacroManager
 import com.intellij.openapi.progress.runBlockingCancellable
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.util.NotNullLazyValue
@@ -20,7 +21,9 @@ import org.jetbrains.qodana.staticAnalysis.inspections.runner.externalTools.Exte
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.externalTools.ExternalToolsProvider
 import org.jetbrains.qodana.staticAnalysis.profile.QodanaInspectionProfile
 import org.jetbrains.qodana.staticAnalysis.profile.QodanaProfile
+import org.jetbrains.qodana.staticAnalysis.scopes.ownsFile
 import org.jetbrains.qodana.staticAnalysis.script.QodanaProgressIndicator
+import org.jetbrains.qodana.staticAnalysis.stat.InspectionTimingProfilerService
 import java.nio.file.Path
 
 /** @param outputPath in the Docker container, this is `/data/results` */
@@ -42,12 +45,17 @@ open class QodanaGlobalInspectionContext(
   val profileState: QodanaProfile.QodanaProfileState = profile.createState(this)
   var effectiveProfile: QodanaInspectionProfile = profile.effectiveProfile
   val database = QodanaToolResultDatabase.create(outputPath)
-  val consumer = QodanaProblemConsumer(project, database, profileState, qodanaRunScope)
+  val resultsCache: QodanaInspectionResultsCache? = QodanaInspectionResultsCache.openIfEnabled(effectiveProfile)
+  val consumer = QodanaProblemConsumer(project, database, profileState, qodanaRunScope, resultsCache)
+  private val macroManager = PathMacroManager.getInstance(project)
+  @Volatile
+  private var analysisCompleted = false
 
   init {
     setProblemConsumer(consumer)
     setExternalProfile(effectiveProfile)
     myViewClosed = false // if closed, will stop running inspections at some point in UI mode
+    InspectionTimingProfilerService.getInstance(project).reset()
   }
 
   override fun createEnabledInspectionsProvider(localTools: List<Tools>, globalSimpleTools: List<Tools>, project: Project): EnabledInspectionsProvider {
@@ -59,11 +67,46 @@ open class QodanaGlobalInspectionContext(
     psiFile: PsiFile,
     includeDoNotShow: Boolean
   ): EnabledInspectionsProvider.ToolWrappers {
+    // the platform inspects the file on this thread right after, see InspectionTimingProfilerService.fileAnalyzed
+    psiFile.virtualFile?.let { InspectionTimingProfilerService.getInstance(project).fileStarted(it) }
+    val shard = config.shard
+    if (shard != null && shard.isPrimary && psiFile.virtualFile?.let { shard.ownsFile(it, project, config.projectPath) } == false) {
+      // the primary shard analyses the whole scope for global inspections, local ones run only on its own files
+      return EnabledInspectionsProvider.ToolWrappers(emptyList(), emptyList())
+    }
     val wrappers = super.getWrappersFromTools(enabledInspectionsProvider, psiFile, includeDoNotShow)
-    return EnabledInspectionsProvider.ToolWrappers(
+    val effectiveWrappers = EnabledInspectionsProvider.ToolWrappers(
       wrappers.allLocalWrappers.filterNot { shouldSkip(it.shortName, psiFile, wrappers) },
       wrappers.allGlobalSimpleWrappers.filterNot { shouldSkip(it.shortName, psiFile, wrappers) },
     )
+    return resultsCache?.let { replayCachedProblems(it, psiFile, effectiveWrappers) } ?: effectiveWrappers
+  }
+
+  /**
+   * @return no wrappers if the problems of [psiFile] were replayed from [cache], null if the file has to be inspected
+   */
+  private fun replayCachedProblems(
+    cache: QodanaInspectionResultsCache,
+    psiFile: PsiFile,
+    wrappers: EnabledInspectionsProvider.ToolWrappers,
+  ): EnabledInspectionsProvider.ToolWrappers? {
+    val fileUrl = psiFile.virtualFile?.url ?: return null
+    if (wrappers.allLocalWrappers.isEmpty()) return null
+    if (wrappers.allGlobalSimpleWrappers.isNotEmpty()) {
+      cache.onUncacheableFile()
+      return null
+    }
+    val collapsedFileUrl = macroManager.collapsePath(fileUrl)
+    val fileKey = cache.fileKey(collapsedFileUrl, psiFile.viewProvider.contents, wrappers.allLocalWrappers.map { it.shortName })
+    val cachedProblems = cache.lookup(fileKey)
+    if (cachedProblems == null) {
+      cache.startCapture(collapsedFileUrl, fileKey)
+      return null
+    }
+    for ((inspectionId, problems) in cachedProblems) {
+      consumer.consume(problems, inspectionId)
+    }
+    return EnabledInspectionsProvider.ToolWrappers(emptyList(), emptyList())
   }
 
   protected open fun shouldSkip(inspectionId: String, psiFile: PsiFile, wrappers: EnabledInspectionsProvider.ToolWrappers): Boolean {
@@ -71,6 +114,7 @@ open class QodanaGlobalInspectionContext(
   }
 
   override fun runExternalTools() {
+    if (config.shard?.isPrimary == false) return
     runBlockingCancellable {
       sequenceOf(ExternalToolsConfigurationProvider.runAnnounceJobDescriptors(this@QodanaGlobalInspectionContext),
                  ExternalToolsProvider.runAnnounceJobDescriptors(this@QodanaGlobalInspectionContext))
@@ -90,12 +134,15 @@ open class QodanaGlobalInspectionContext(
     toolWrapper: InspectionToolWrapper<*, *>
   ) {
     if (toolWrapper is ExternalInspectionToolWrapper) return
-    super.classifyTool(outGlobalTools, outLocalTools, outGlobalSimpleTools, currentTools, toolWrapper)
+    // global inspections need the whole project, so they run only in the primary shard
+    val globalTools = if (config.shard?.isPrimary == false) mutableListOf() else outGlobalTools
+    super.classifyTool(globalTools, outLocalTools, outGlobalSimpleTools, currentTools, toolWrapper)
   }
 
   override fun runTools(scope: AnalysisScope, runGlobalToolsOnly: Boolean, isOfflineInspections: Boolean) {
     registerLocalAnalysisIndicator()
     super.runTools(scope, runGlobalToolsOnly, isOfflineInspections)
+    analysisCompleted = true
   }
 
   private fun registerLocalAnalysisIndicator() {
@@ -135,6 +182,7 @@ open class QodanaGlobalInspectionContext(
 
   suspend fun closeQodanaContext() {
     consumer.close()
+    resultsCache?.close(analysisCompleted)
     profileState.onFinish()
     profileState.dump()
     database.close()
@@ -154,7 +154,9 @@ class QodanaInspectionApplication(
       LOG.info("sessionId: " + EventLogConfiguration.getInstance().getOrCreate("FUS").sessionId)
     }
 
-    if (!config.skipResultStrategy.shouldSkip(sarif.getOrCreateRun())) {
+    val skipResults = runner.resultCounts?.let { config.skipResultStrategy.shouldSkip(it) }
+                      ?: config.skipResultStrategy.shouldSkip(sarif.getOrCreateRun())
+    if (!skipResults) {
       val openInIdeCloudMetadata = publishResultsToCloudIfNeeded(config.outPath)
       if (openInIdeCloudMetadata != null) {
         val openInIdeMetadata = OpenInIdeMetadata(
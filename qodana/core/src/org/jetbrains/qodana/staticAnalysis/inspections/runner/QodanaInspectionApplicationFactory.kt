@@ -16,6 +16,7 @@ import org.jetbrains.qodana.staticAnalysis.StaticAnalysisDispatchers
 import org.jetbrains.qodana.staticAnalysis.inspections.config.FixesStrategy
 import org.jetbrains.qodana.staticAnalysis.inspections.config.QodanaConfig
 import org.jetbrains.qodana.staticAnalysis.inspections.config.QodanaScriptConfig
+import org.jetbrains.qodana.staticAnalysis.inspections.config.QodanaShard
 import org.jetbrains.qodana.staticAnalysis.inspections.config.QodanaYamlConfig
 import org.jetbrains.qodana.staticAnalysis.inspections.config.QodanaYamlFiles
 import org.jetbrains.qodana.staticAnalysis.inspections.config.QodanaYamlReader
@@ -53,6 +54,8 @@ class QodanaInspectionApplicationFactory {
     addOption("profilePath", null, true, QodanaBundle.message("profilePath.deprecated.option.description"))
     addOption(null, "fixes-strategy", true, QodanaBundle.message("fixes.strategy.inspections.option.description"))
     addOption(null, "stub-profile", true, QodanaBundle.message("stubProfile.option.description"))
+    addOption(null, "shard", true, QodanaBundle.message("shard.option.description"))
+    addOption(null, "shard-by", true, QodanaBundle.message("shard.by.option.description"))
   }
 
   suspend fun getApplication(args: List<String>): QodanaInspectionApplication {
@@ -163,7 +166,8 @@ class QodanaInspectionApplicationFactory {
       }
       else {
         yamlConfig.failureConditions.copy(severityThresholds = yamlConfig.failureConditions.severityThresholds.copy(any = failThresholdArg))
-      }
+      },
+      shard = commandLine.getOptionValue("shard")?.let { QodanaShard.parse(it, commandLine.getOptionValue("shard-by")) },
     )
     if (qodanaConfig.script.name == "distillate-commits" || qodanaConfig.script.name == "pr-edict") {
       qodanaConfig.apply {
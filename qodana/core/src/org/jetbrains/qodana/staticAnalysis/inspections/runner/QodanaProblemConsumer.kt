@@ -24,7 +24,8 @@ class QodanaProblemConsumer(
   private val project: Project,
   private val database: QodanaToolResultDatabase,
   private val profileState: QodanaProfileState,
-  qodanaRunScope: CoroutineScope
+  qodanaRunScope: CoroutineScope,
+  private val resultsCache: QodanaInspectionResultsCache? = null,
 ) : InspectionProblemConsumer {
   private val macroManager = PathMacroManager.getInstance(project)
   private val writer = AsyncInspectionToolResultWriter(
@@ -32,7 +33,8 @@ class QodanaProblemConsumer(
     project,
     database,
     profileState,
-    macroManager
+    macroManager,
+    resultsCache
   )
 
   private val databaseMetricWriter = AsyncDatabaseMetricWriter(
@@ -97,7 +99,11 @@ class QodanaProblemConsumer(
       val relativePath = problem.getFile()
       val module = problem.getModule()
 
-      return@batchConsume profileGroupState.onConsumeProblem(inspectionId, relativePath, module)
+      val accepted = profileGroupState.onConsumeProblem(inspectionId, relativePath, module)
+      if (!accepted && relativePath != null) {
+        resultsCache?.discardCapture(relativePath)
+      }
+      return@batchConsume accepted
     }
   }
 
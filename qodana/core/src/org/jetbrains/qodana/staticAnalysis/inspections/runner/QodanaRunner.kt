@@ -29,15 +29,19 @@ import org.jetbrains.qodana.staticAnalysis.inspections.metrics.CodeQualityMetric
 import org.jetbrains.qodana.staticAnalysis.inspections.metrics.aggregators.MetricAggregator
 import org.jetbrains.qodana.staticAnalysis.inspections.metrics.codeQualityMetrics
 import org.jetbrains.qodana.staticAnalysis.inspections.metrics.results.MetricResult
+import org.jetbrains.qodana.staticAnalysis.sarif.ResultCounts
 import org.jetbrains.qodana.staticAnalysis.sarif.createSarifReport
 import org.jetbrains.qodana.staticAnalysis.sarif.getOrCreateRun
-import org.jetbrains.qodana.staticAnalysis.sarif.resultsFlowByGroup
+import org.jetbrains.qodana.staticAnalysis.sarif.partitionedResultsFlowByGroup
 import org.jetbrains.qodana.staticAnalysis.sarif.writeReport
 import org.jetbrains.qodana.staticAnalysis.script.QodanaScript
 import org.jetbrains.qodana.staticAnalysis.script.QodanaScriptResult
 import org.jetbrains.qodana.staticAnalysis.stat.QodanaEventsService
+import org.jetbrains.qodana.staticAnalysis.stat.writeInspectionTimingProfile
 import org.jetbrains.qodana.util.QodanaMessageReporter
 import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
 import kotlin.io.path.exists
 
 internal const val FULL_SARIF_REPORT_NAME = "qodana.sarif.json"
@@ -65,9 +69,16 @@ class QodanaRunner(val script: QodanaScript, private val config: QodanaConfig, p
     }
   }
 
+  /**
+   * Counts of the results of the resulting run, known after [run] even if the results were streamed to the report.
+   */
+  var resultCounts: ResultCounts? = null
+    private set
+
   suspend fun run(): SarifReport {
     val sarif: SarifReport = createSarifReport(emptyList())
     val sarifRun = sarif.getOrCreateRun()
+    var executedScriptResult: QodanaScriptResult? = null
     try {
       val resultsStorageDir = config.resultsStorage
       runInterruptible(StaticAnalysisDispatchers.IO) {
@@ -87,22 +98,26 @@ class QodanaRunner(val script: QodanaScript, private val config: QodanaConfig, p
 
       val scriptResult = qodanaTracer().spanBuilder("qodanaScriptRun").setAttribute("name", scriptName).useWithScope {
         script.execute(sarif)
-      }
+      }.also { executedScriptResult = it }
       sarifRun.run {
         storeSanityResults(this, scriptResult)
         storePromoResults(this, scriptResult)
         storeCoverageData(this, scriptResult)
         storeMetricsData(this, scriptResult)
       }
+      scriptResult.inspectionTimingProfile?.let { writeInspectionTimingProfile(it, config.outPath) }
 
       sarif.getOrCreateRun().run {
-        if (config.skipResultStrategy.shouldSkip(this)) return@run
-        createCommandLineResultsPrinter(getInspectionNamesFromRun(this, scriptResult)).let { commandLineResultsPrinter ->
+        val counts = resultCountsOf(this, scriptResult).also { resultCounts = it }
+        if (config.skipResultStrategy.shouldSkip(counts ?: ResultCounts.EMPTY)) return@run
+        createCommandLineResultsPrinter(getInspectionNamesFromRun(this, counts, scriptResult)).let { commandLineResultsPrinter ->
           printSanityResults(this, commandLineResultsPrinter)
-          printMainResults(this, commandLineResultsPrinter)
+          printMainResults(counts, commandLineResultsPrinter)
           printPromoResults(this, commandLineResultsPrinter)
           printCoverageData(this, commandLineResultsPrinter)
           printMetricsData(this, commandLineResultsPrinter)
+          printInspectionCacheStatistics(scriptResult, commandLineResultsPrinter)
+          printInspectionTimingProfile(scriptResult, commandLineResultsPrinter)
         }
       }
 
@@ -125,37 +140,49 @@ class QodanaRunner(val script: QodanaScript, private val config: QodanaConfig, p
     finally {
       setInvocationExitStatus(sarif.getOrCreateRun(), config)
       withContext(NonCancellable) {
-        clearResultsDirIfNeeded()
-        writeFullSarifReport(sarif)
+        preserveShardDatabase()
+        val databaseResults = executedScriptResult?.databaseResults
+        writeFullSarifReport(sarif, databaseResults)
         writeShortSarifReport(sarif)
         // if report run was substituted, store original as well
         if (sarifRun != sarif.getOrCreateRun()) {
           createSarifReport(listOf(sarifRun)).let {
-            writeFullSarifReport(it, VARY_RUN_PREFIX)
+            writeFullSarifReport(it, databaseResults, VARY_RUN_PREFIX)
             writeShortSarifReport(it, VARY_RUN_PREFIX)
           }
         }
+        // streamed results are read from the tool results database in the results dir, so it is cleared only after the reports are written
+        clearResultsDirIfNeeded()
       }
     }
   }
 
+  /**
+   * Results of the main run are counted from the tool results database if they were streamed, see [QodanaScriptResult.databaseResults].
+   * Null if the script didn't set results.
+   */
+  private suspend fun resultCountsOf(resultingRun: Run, scriptResult: QodanaScriptResult): ResultCounts? {
+    val databaseResults = scriptResult.databaseResults
+    if (databaseResults != null && databaseResults.run === resultingRun) return databaseResults.counts()
+    val results = resultingRun.results ?: return null
+    return withContext(StaticAnalysisDispatchers.Default) { ResultCounts.of(results) }
+  }
+
   private fun printMainResults(
-    resultingRun: Run,
+    counts: ResultCounts?,
     commandLineResultsPrinter: CommandLineResultsPrinter?,
   ) {
-    val sarifResults = resultingRun.results
     when {
-      sarifResults == null -> Unit // do nothing if script didn't set results
+      counts == null -> Unit // do nothing if script didn't set results
       config.baseline != null -> {
-        val resultsWithBaselineState = sarifResults.filter { it.baselineState != null }
         commandLineResultsPrinter?.printResultsWithBaselineState(
-          resultsWithBaselineState,
+          counts,
           config.includeAbsent
         )
       }
       else -> {
         commandLineResultsPrinter?.printResults(
-          sarifResults,
+          counts,
           sectionTitle = QodanaBundle.message("cli.main.results.title")
         )
       }
@@ -289,7 +316,27 @@ class QodanaRunner(val script: QodanaScript, private val config: QodanaConfig, p
     }
   }
 
-  private suspend fun getInspectionNamesFromRun(resultingRun: Run, scriptResult: QodanaScriptResult) =
+  private fun printInspectionCacheStatistics(
+    scriptResult: QodanaScriptResult,
+    commandLineResultsPrinter: CommandLineResultsPrinter,
+  ) {
+    scriptResult.inspectionCacheStatistics?.let { statistics ->
+      commandLineResultsPrinter.printInspectionCacheStatistics(statistics, sectionTitle = QodanaBundle.message("cli.inspection.cache.title"))
+    }
+  }
+
+  private fun printInspectionTimingProfile(
+    scriptResult: QodanaScriptResult,
+    commandLineResultsPrinter: CommandLineResultsPrinter,
+  ) {
+    scriptResult.inspectionTimingProfile?.let { profile ->
+      if (profile.inspections.isNotEmpty()) {
+        commandLineResultsPrinter.printInspectionTimingProfile(profile, sectionTitle = QodanaBundle.message("cli.inspection.profile.title"))
+      }
+    }
+  }
+
+  private suspend fun getInspectionNamesFromRun(resultingRun: Run, counts: ResultCounts?, scriptResult: QodanaScriptResult) =
     withContext(StaticAnalysisDispatchers.Default) {
       buildMap {
         val nullPsiElement: PsiElement? = null
@@ -313,8 +360,8 @@ class QodanaRunner(val script: QodanaScript, private val config: QodanaConfig, p
           }
         }
 
-        resultingRun.results?.filter(shouldIncludeResult)?.forEach { result ->
-          result.ruleId?.let { put(it, profile.getInspectionTool(it, nullPsiElement)?.displayName ?: resolveUnknown(it)) }
+        counts?.countBy({ it.baselineState != Result.BaselineState.ABSENT }) { it.ruleId }?.keys?.forEach { ruleId ->
+          ruleId?.let { put(it, profile.getInspectionTool(it, nullPsiElement)?.displayName ?: resolveUnknown(it)) }
         }
 
         resultingRun.convertPropertyToResults("qodana.sanity.results")
@@ -342,7 +389,7 @@ class QodanaRunner(val script: QodanaScript, private val config: QodanaConfig, p
       val inspectionGroupStateIsPresent = groupName in scriptResult.profileState.stateByGroupName
 
       if (inspectionGroupStateIsPresent) {
-        db.resultsFlowByGroup(groupName).toList()
+        db.partitionedResultsFlowByGroup(groupName).toList()
       }
       else {
         null
@@ -350,6 +397,27 @@ class QodanaRunner(val script: QodanaScript, private val config: QodanaConfig, p
     }
   }
 
+  /**
+   * The tool results database of a shard is kept in the results dir, so that it can be merged by the `merge-shards` script.
+   */
+  private suspend fun preserveShardDatabase() {
+    val shard = config.shard ?: return
+    val database = config.resultsStorage.resolve(QODANA_DB_FILENAME)
+    try {
+      runInterruptible(StaticAnalysisDispatchers.IO) {
+        if (database.exists()) {
+          // rows may still be in the write-ahead log next to the database file
+          QodanaToolResultDatabase.open(config.resultsStorage).use { it.checkpoint() }
+          config.outPath.createDirectories()
+          Files.copy(database, config.outPath.resolve(shard.databaseFileName), StandardCopyOption.REPLACE_EXISTING)
+        }
+      }
+    }
+    catch (e: Exception) {
+      LOG.warn("Failed to preserve the tool results database of shard $shard", e)
+    }
+  }
+
   private suspend fun clearResultsDirIfNeeded() {
     if (config.outputFormat != OutputFormat.INSPECT_SH_FORMAT) {
       runInterruptible(StaticAnalysisDispatchers.IO) {
@@ -362,6 +430,17 @@ class QodanaRunner(val script: QodanaScript, private val config: QodanaConfig, p
     writeReport(config.outPath.resolve(prefix + FULL_SARIF_REPORT_NAME), sarif)
   }
 
+  /**
+   * Results streamed by the script are written from the tool results database, see [DatabaseRunResults.resultsOf].
+   */
+  private suspend fun writeFullSarifReport(sarif: SarifReport, databaseResults: DatabaseRunResults?, prefix: String = "") {
+    if (databaseResults == null) {
+      writeFullSarifReport(sarif, prefix)
+      return
+    }
+    writeReport(config.outPath.resolve(prefix + FULL_SARIF_REPORT_NAME), sarif, databaseResults::resultsOf)
+  }
+
   suspend fun writeShortSarifReport(sarif: SarifReport, prefix: String = "") {
     val sarifRun = sarif.getOrCreateRun()
     // avoid creating a copy because it can easily OOM on large reports
@@ -0,0 +1,426 @@
+package org.jetbrains.qodana.staticAnalysis.inspections.runner
+
+import com.google.gson.JsonObject
+import com.google.gson.JsonParser
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import com.intellij.openapi.application.PathManager
+import com.intellij.openapi.diagnostic.logger
+import com.intellij.openapi.util.io.NioFiles
+import com.intellij.util.io.createDirectories
+import com.jetbrains.qodana.sarif.SarifUtil
+import com.jetbrains.qodana.sarif.model.Result
+import org.intellij.lang.annotations.Language
+import org.jetbrains.sqlite.EmptyBinder
+import org.jetbrains.sqlite.ObjectBinder
+import org.jetbrains.sqlite.SqliteConnection
+import java.io.IOException
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.attribute.FileTime
+import java.security.MessageDigest
+import java.util.BitSet
+import java.util.concurrent.TimeUnit
+import kotlin.io.path.bufferedReader
+import kotlin.io.path.exists
+import kotlin.io.path.getLastModifiedTime
+import kotlin.io.path.inputStream
+import kotlin.io.path.listDirectoryEntries
+import kotlin.io.path.name
+import kotlin.io.path.setLastModifiedTime
+
+private val LOG = logger<BaselineIndex>()
+
+@Language("SQLite")
+private const val INDEX_SCHEMA = """
+  BEGIN TRANSACTION;
+
+  CREATE TABLE baseline_results (
+    id INTEGER PRIMARY KEY,
+    payload BLOB
+  );
+
+  CREATE TABLE baseline_fingerprints (
+    fingerprint TEXT,
+    result INTEGER
+  );
+
+  CREATE TABLE interned_strings (
+    id INTEGER PRIMARY KEY,
+    value TEXT
+  );
+
+  COMMIT;
+"""
+
+@Language("SQLite")
+private const val INDEX_FINGERPRINTS = "CREATE INDEX idx_baseline_fingerprints ON baseline_fingerprints (fingerprint);"
+
+private const val INSERT_RESULT = "INSERT INTO baseline_results VALUES (?, ?);"
+private const val INSERT_FINGERPRINT = "INSERT INTO baseline_fingerprints VALUES (?, ?);"
+private const val SELECT_ALL_RESULTS = "SELECT id, payload FROM baseline_results ORDER BY id;"
+private const val SELECT_RESULT_COUNT = "SELECT COUNT(*) FROM baseline_results;"
+private const val INSERT_INTERNED_STRING = "INSERT INTO interned_strings VALUES (?, ?);"
+private const val SELECT_INTERNED_STRINGS = "SELECT value FROM interned_strings ORDER BY id;"
+
+private const val CREATE_CURRENT_FINGERPRINTS = "CREATE TEMP TABLE current_fingerprints (fingerprint TEXT);"
+private const val INSERT_CURRENT_FINGERPRINT = "INSERT INTO current_fingerprints VALUES (?);"
+private const val DROP_CURRENT_FINGERPRINTS = "DROP TABLE IF EXISTS current_fingerprints;"
+private const val SELECT_MATCHING_RESULTS = """
+  SELECT DISTINCT b.result FROM baseline_fingerprints b JOIN current_fingerprints c ON b.fingerprint = c.fingerprint;
+"""
+
+private const val INDEX_BATCH_SIZE = 10_000
+
+/**
+ * Upper bound of ids queried at once, see [BaselineIndex.loadResults].
+ */
+private const val MAX_QUERIED_IDS = 500
+
+/**
+ * Part of the index file name, bumped whenever the layout or the payload encoding changes, so that stale indexes aren't reused.
+ */
+private const val INDEX_FORMAT_VERSION = 2
+private const val INDEX_FILE_EXTENSION = ".db"
+private const val TEMP_FILE_EXTENSION = ".tmp"
+
+/**
+ * Number of most recently used indexes kept in the index dir.
+ */
+private const val MAX_INDEX_FILES = 5
+private val STALE_TEMP_FILE_AGE_MS = TimeUnit.DAYS.toMillis(1)
+
+private val gson = SarifUtil.createGson()
+
+/**
+ * On-disk index of the baseline report results keyed by their partial fingerprints
+ * ([org.jetbrains.qodana.staticAnalysis.sarif.fingerprints.BaselineEqualityV1], [org.jetbrains.qodana.staticAnalysis.sarif.fingerprints.BaselineEqualityV2]
+ * and the other indicators present in the report).
+ *
+ * The baseline is read once with a streaming [JsonReader], so it never has to be fully on the heap.
+ * Results are stored with [ResultBinaryCodec], the strings it interns are kept in the index itself.
+ * The index is stored in the IDE system directory under the SHA-256 of the baseline file and reused by subsequent runs
+ * while the baseline content doesn't change. Every process builds the index in its own temp file, which is then atomically moved in place.
+ * Only the [MAX_INDEX_FILES] most recently used indexes are kept.
+ *
+ * Only single-run baselines are indexed, [open] returns null for other reports.
+ */
+internal class BaselineIndex private constructor(private val connection: SqliteConnection) : AutoCloseable by connection {
+  private val codec by lazy { ResultBinaryCodec(InternedStrings(loadInternedStrings())) }
+
+  companion object {
+    fun open(baselineFile: Path, indexDir: Path = defaultIndexDir()): BaselineIndex? {
+      val indexFile = indexDir.resolve("${checksum(baselineFile)}.v$INDEX_FORMAT_VERSION$INDEX_FILE_EXTENSION")
+      if (!indexFile.exists()) {
+        indexDir.createDirectories()
+        val tempFile = Files.createTempFile(indexDir, indexFile.name, TEMP_FILE_EXTENSION)
+        try {
+          val indexed = SqliteConnection(tempFile).use { build(baselineFile, it) }
+          if (!indexed) return null
+          moveInPlace(tempFile, indexFile)
+        }
+        finally {
+          NioFiles.deleteRecursively(tempFile)
+        }
+      }
+      else {
+        LOG.info("Reusing baseline index $indexFile")
+        indexFile.setLastModifiedTime(FileTime.fromMillis(System.currentTimeMillis()))
+      }
+      evictUnused(indexDir, indexFile)
+      return BaselineIndex(SqliteConnection(indexFile))
+    }
+
+    private fun defaultIndexDir(): Path = PathManager.getSystemDir().resolve("qodana").resolve("baseline-index")
+
+    /**
+     * A concurrent process may have built the same index in the meantime, its content is identical, so either file can win.
+     */
+    private fun moveInPlace(tempFile: Path, indexFile: Path) {
+      try {
+        Files.move(tempFile, indexFile, StandardCopyOption.ATOMIC_MOVE)
+      }
+      catch (_: AtomicMoveNotSupportedException) {
+        Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING)
+      }
+      catch (e: IOException) {
+        if (!indexFile.exists()) throw e
+      }
+    }
+
+    /**
+     * Deletes indexes beyond the [MAX_INDEX_FILES] most recently used ones and temp files left by crashed processes.
+     * Indexes are marked as used by their modification time.
+     */
+    private fun evictUnused(indexDir: Path, currentIndexFile: Path) {
+      try {
+        val files = indexDir.listDirectoryEntries()
+        val now = System.currentTimeMillis()
+        val staleTempFiles = files.filter {
+          it.name.endsWith(TEMP_FILE_EXTENSION) && now - it.getLastModifiedTime().toMillis() > STALE_TEMP_FILE_AGE_MS
+        }
+        val unusedIndexFiles = files
+          .filter { it.name.endsWith(INDEX_FILE_EXTENSION) && it != currentIndexFile }
+          .sortedByDescending { it.getLastModifiedTime() }
+          .drop(MAX_INDEX_FILES - 1)
+        for (file in staleTempFiles + unusedIndexFiles) {
+          LOG.info("Deleting unused baseline index $file")
+          NioFiles.deleteRecursively(file)
+        }
+      }
+      catch (e: IOException) {
+        LOG.warn("Failed to evict unused baseline indexes from $indexDir", e)
+      }
+    }
+
+    private fun checksum(file: Path): String {
+      val digest = MessageDigest.getInstance("SHA-256")
+      file.inputStream().use { input ->
+        val buffer = ByteArray(64 * 1024)
+        while (true) {
+          val read = input.read(buffer)
+          if (read < 0) break
+          digest.update(buffer, 0, read)
+        }
+      }
+      return digest.digest().joinToString("") { "%02x".format(it) }
+    }
+
+    /**
+     * @return false if the report has more than one run and can't be compared by the index
+     */
+    private fun build(baselineFile: Path, connection: SqliteConnection): Boolean {
+      connection.execute(INDEX_SCHEMA)
+      val resultBinder = ObjectBinder(paramCount = 2)
+      val resultStatement = connection.prepareStatement(INSERT_RESULT, resultBinder)
+      val fingerprintBinder = ObjectBinder(paramCount = 2)
+      val fingerprintStatement = connection.prepareStatement(INSERT_FINGERPRINT, fingerprintBinder)
+      val strings = InternedStrings(emptyList())
+      val codec = ResultBinaryCodec(strings)
+      try {
+        var pending = 0
+        var resultId = 0
+        fun flush() {
+          if (pending == 0) return
+          connection.execute("BEGIN TRANSACTION;")
+          persistInternedStrings(connection, strings)
+          resultStatement.executeBatch()
+          fingerprintStatement.executeBatch()
+          connection.execute("COMMIT;")
+          pending = 0
+        }
+
+        val runs = baselineFile.bufferedReader().use { reader ->
+          JsonReader(reader).use { json ->
+            forEachRunResult(json) { result ->
+              resultBinder.bindMultiple(resultId, codec.encode(gson.fromJson(result, Result::class.java)))
+              resultBinder.addBatch()
+              for (fingerprint in fingerprintsOf(result.getAsJsonObject("partialFingerprints"))) {
+                fingerprintBinder.bindMultiple(fingerprint, resultId)
+                fingerprintBinder.addBatch()
+              }
+              resultId++
+              if (++pending >= INDEX_BATCH_SIZE) flush()
+            }
+          }
+        }
+        flush()
+        if (runs > 1) return false
+
+        connection.execute(INDEX_FINGERPRINTS)
+        LOG.info("Indexed $resultId baseline results from $baselineFile")
+        return true
+      }
+      finally {
+        resultStatement.close()
+        fingerprintStatement.close()
+      }
+    }
+
+    /**
+     * Streams `runs[].results[]`, stops after the second run is found.
+     * @return number of runs seen
+     */
+    private fun forEachRunResult(json: JsonReader, consumer: (JsonObject) -> Unit): Int {
+      var runs = 0
+      json.beginObject()
+      while (json.hasNext()) {
+        if (json.nextName() != "runs" || json.peek() != JsonToken.BEGIN_ARRAY) {
+          json.skipValue()
+          continue
+        }
+        json.beginArray()
+        while (json.hasNext()) {
+          if (++runs > 1) return runs
+          json.beginObject()
+          while (json.hasNext()) {
+            if (json.nextName() != "results" || json.peek() != JsonToken.BEGIN_ARRAY) {
+              json.skipValue()
+              continue
+            }
+            json.beginArray()
+            while (json.hasNext()) {
+              consumer(JsonParser.parseReader(json).asJsonObject)
+            }
+            json.endArray()
+          }
+          json.endObject()
+        }
+        json.endArray()
+      }
+      json.endObject()
+      return runs
+    }
+
+    /**
+     * Writes the strings interned since the last call, in the transaction of the rows referencing them.
+     */
+    private fun persistInternedStrings(connection: SqliteConnection, strings: InternedStrings) {
+      val (firstId, values) = strings.notPersisted()
+      if (values.isEmpty()) return
+      val binder = ObjectBinder(paramCount = 2)
+      val statement = connection.prepareStatement(INSERT_INTERNED_STRING, binder)
+      try {
+        values.forEachIndexed { index, value ->
+          binder.bindMultiple(firstId + index, value)
+          binder.addBatch()
+        }
+        statement.executeBatch()
+      }
+      finally {
+        statement.close()
+      }
+      strings.markPersisted(firstId + values.size)
+    }
+
+    fun fingerprintsOf(partialFingerprints: JsonObject?): List<String> =
+      partialFingerprints?.entrySet()?.mapNotNull { (key, value) ->
+        if (value.isJsonPrimitive) "$key:${value.asString}" else null
+      }.orEmpty()
+  }
+
+  /**
+   * Ids of baseline results sharing at least one partial fingerprint with [results], computed with a single join.
+   */
+  fun matchingResultIds(results: Iterable<Result>): BitSet {
+    connection.execute(CREATE_CURRENT_FINGERPRINTS)
+    try {
+      val binder = ObjectBinder(paramCount = 1)
+      val insertStatement = connection.prepareStatement(INSERT_CURRENT_FINGERPRINT, binder)
+      try {
+        for (result in results) {
+          val partialFingerprints = result.partialFingerprints ?: continue
+          for (fingerprint in fingerprintsOf(gson.toJsonTree(partialFingerprints).asJsonObject)) {
+            binder.bind(fingerprint)
+            binder.addBatch()
+          }
+        }
+        connection.execute("BEGIN TRANSACTION;")
+        insertStatement.executeBatch()
+        connection.execute("COMMIT;")
+      }
+      finally {
+        insertStatement.close()
+      }
+
+      val matched = BitSet()
+      val selectStatement = connection.prepareStatement(SELECT_MATCHING_RESULTS, EmptyBinder)
+      try {
+        val resultSet = selectStatement.executeQuery()
+        while (resultSet.next()) {
+          matched.set(resultSet.getInt(0))
+        }
+      }
+      finally {
+        selectStatement.close()
+      }
+      return matched
+    }
+    finally {
+      connection.execute(DROP_CURRENT_FINGERPRINTS)
+    }
+  }
+
+  /**
+   * Number of indexed baseline results, their ids are `0 until size` in the order of the baseline report.
+   */
+  val size: Int by lazy {
+    val statement = connection.prepareStatement(SELECT_RESULT_COUNT, EmptyBinder)
+    try {
+      val resultSet = statement.executeQuery()
+      if (resultSet.next()) resultSet.getInt(0) else 0
+    }
+    finally {
+      statement.close()
+    }
+  }
+
+  /**
+   * Loads baseline results with the given [ids], in the order of the baseline report.
+   * Unlike [loadResults] with a filter, only the requested rows are read, at most [MAX_QUERIED_IDS] ids per query.
+   */
+  fun loadResults(ids: BitSet): List<Result> {
+    val results = mutableListOf<Result>()
+    for (chunk in ids.stream().iterator().asSequence().chunked(MAX_QUERIED_IDS)) {
+      val binder = ObjectBinder(paramCount = chunk.size)
+      val placeholders = chunk.joinToString(", ") { "?" }
+      @Language("SQLite") val query = "SELECT payload FROM baseline_results WHERE id IN ($placeholders) ORDER BY id;"
+      val statement = connection.prepareStatement(query, binder)
+      try {
+        binder.bindMultiple(*chunk.toTypedArray())
+        val resultSet = statement.executeQuery()
+        while (resultSet.next()) {
+          results.add(codec.decode(resultSet.getBytes(0)!!))
+        }
+      }
+      finally {
+        statement.close()
+      }
+    }
+    return results
+  }
+
+  /**
+   * Loads baseline results selected by [filter], in the order of the baseline report.
+   */
+  fun loadResults(filter: (Int) -> Boolean): List<Result> {
+    val results = mutableListOf<Result>()
+    forEachResult(filter) { results.add(it) }
+    return results
+  }
+
+  /**
+   * Decodes baseline results selected by [filter] one by one, in the order of the baseline report.
+   */
+  fun forEachResult(filter: (Int) -> Boolean, consumer: (Result) -> Unit) {
+    val statement = connection.prepareStatement(SELECT_ALL_RESULTS, EmptyBinder)
+    try {
+      val resultSet = statement.executeQuery()
+      while (resultSet.next()) {
+        if (filter(resultSet.getInt(0))) {
+          consumer(codec.decode(resultSet.getBytes(1)!!))
+        }
+      }
+    }
+    finally {
+      statement.close()
+    }
+  }
+
+  private fun loadInternedStrings(): List<String> {
+    val strings = mutableListOf<String>()
+    val statement = connection.prepareStatement(SELECT_INTERNED_STRINGS, EmptyBinder)
+    try {
+      val resultSet = statement.executeQuery()
+      while (resultSet.next()) {
+        strings.add(resultSet.getString(0)!!)
+      }
+    }
+    finally {
+      statement.close()
+    }
+    return strings
+  }
+}
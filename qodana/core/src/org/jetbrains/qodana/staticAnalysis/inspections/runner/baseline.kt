@@ -1,13 +1,22 @@
 package org.jetbrains.qodana.staticAnalysis.inspections.runner
 
+import com.google.gson.JsonParseException
 import com.google.gson.JsonSyntaxException
+import com.intellij.openapi.diagnostic.logger
 import com.intellij.openapi.vfs.LocalFileSystem
 import com.intellij.openapi.vfs.VirtualFile
 import com.jetbrains.qodana.sarif.SarifUtil
 import com.jetbrains.qodana.sarif.baseline.BaselineCalculation
 import com.jetbrains.qodana.sarif.model.ArtifactLocation
 import com.jetbrains.qodana.sarif.model.Result
+import com.jetbrains.qodana.sarif.model.Run
 import com.jetbrains.qodana.sarif.model.SarifReport
+import com.jetbrains.qodana.sarif.model.Tool
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.flow.toList
 import kotlinx.coroutines.runInterruptible
 import org.jetbrains.qodana.staticAnalysis.StaticAnalysisDispatchers
 import org.jetbrains.qodana.staticAnalysis.inspections.config.QodanaConfig
@@ -20,21 +29,31 @@ import org.jetbrains.qodana.util.QodanaMessageReporter
 import java.io.IOException
 import java.nio.file.Path
 import java.nio.file.Paths
+import java.util.BitSet
 import kotlin.io.path.Path
 import kotlin.io.path.notExists
 
+private val LOG = logger<BaselineIndex>()
+
 private suspend fun readBaselineReport(
   baseline: String,
   projectPath: Path,
   readResults: Boolean = true,
 ): SarifReport? {
-  val baselineFile = runInterruptible(StaticAnalysisDispatchers.IO) {
-    Path(baseline).takeIf(Path::isAbsolute) ?: projectPath.resolve(baseline)
-  }
+  val baselineFile = resolveBaselineFile(baseline, projectPath)
 
   if (baselineFile.notExists()) {
     return null
   }
+  return readBaselineReport(baselineFile, readResults)
+}
+
+private suspend fun resolveBaselineFile(baseline: String, projectPath: Path): Path =
+  runInterruptible(StaticAnalysisDispatchers.IO) {
+    Path(baseline).takeIf(Path::isAbsolute) ?: projectPath.resolve(baseline)
+  }
+
+private suspend fun readBaselineReport(baselineFile: Path, readResults: Boolean): SarifReport {
   try {
     return runInterruptible(StaticAnalysisDispatchers.IO) {
       SarifUtil.readReport(baselineFile, readResults)
@@ -52,6 +71,31 @@ private suspend fun readBaselineReport(
 internal suspend fun getBaselineReport(config: QodanaConfig, includeResults: Boolean = true): SarifReport? =
   config.baseline?.let { readBaselineReport(config.baseline, config.projectPath, includeResults) }
 
+/**
+ * Compares results with the baseline through [BaselineIndex] instead of reading the whole baseline report, see [compareWithIndexedBaseline].
+ */
+private val useBaselineIndex: Boolean = System.getProperty("qodana.baseline.index").toBoolean()
+
+/**
+ * Compares [report] with the baseline through an [IndexedComparison], so the whole baseline is never loaded.
+ * Absent results are decided by [BaselineCalculation] exactly as for the whole baseline, see [IndexedComparison].
+ *
+ * Returns false if the baseline can't be indexed and the report wasn't compared.
+ */
+private suspend fun compareWithIndexedBaseline(
+  report: SarifReport,
+  config: QodanaConfig,
+  scope: QodanaAnalysisScope,
+): Boolean {
+  val baseline = config.baseline ?: return false
+  val baselineFile = resolveBaselineFile(baseline, config.projectPath)
+  if (baselineFile.notExists()) return false
+  val comparison = IndexedComparison.open(baselineFile, getOptions(scope, config), config.includeAbsent) ?: return false
+  val run = report.runs.single()
+  run.results = comparison.compare(run.results.orEmpty().asFlow(), run.tool).toList()
+  return true
+}
+
 internal suspend fun applyBaselineCalculation(
   report: SarifReport,
   config: QodanaConfig,
@@ -59,6 +103,7 @@ internal suspend fun applyBaselineCalculation(
   reporter: QodanaMessageReporter
 ) {
   if (config.baseline == null) return
+  if (useBaselineIndex && report.runs?.size == 1 && compareWithIndexedBaseline(report, config, scope)) return
   val baseline = readBaselineReport(config.baseline, config.projectPath) ?: run {
     reporter.reportError("Can't find baseline report file: ${config.baseline}. Baseline will be calculated against empty report.")
     createSarifReport(emptyList())
@@ -69,18 +114,162 @@ internal suspend fun applyBaselineCalculation(
   BaselineCalculation.compare(report, baseline, options)
 }
 
+/**
+ * Streaming counterpart of [applyBaselineCalculation]: [results] are compared with the baseline chunk by chunk, see [IndexedComparison].
+ *
+ * If the baseline can't be indexed, the results are loaded to their run and compared there, null is returned then.
+ */
+internal suspend fun applyBaselineCalculation(
+  results: DatabaseRunResults,
+  report: SarifReport,
+  config: QodanaConfig,
+  scope: QodanaAnalysisScope,
+  reporter: QodanaMessageReporter,
+): DatabaseRunResults? {
+  if (config.baseline == null) return results
+  val baselineFile = resolveBaselineFile(config.baseline, config.projectPath)
+  if (baselineFile.notExists()) {
+    reporter.reportError("Can't find baseline report file: ${config.baseline}. Baseline will be calculated against empty report.")
+  }
+  val comparison = IndexedComparison.open(baselineFile, getOptions(scope, config), config.includeAbsent)
+  if (comparison == null) {
+    results.run.results = results.load()
+    applyBaselineCalculation(report, config, scope, reporter)
+    return null
+  }
+  return results.comparedWith(comparison)
+}
+
+/**
+ * Compares streamed results with a baseline looked up in a [BaselineIndex], so that neither the results nor the baseline
+ * have to be fully on the heap.
+ *
+ * Results are compared by [BaselineCalculation] in chunks of [chunkSize], each chunk with the baseline results sharing
+ * a partial fingerprint with it. Every baseline result is offered to the first such chunk only, so it is matched or reported
+ * as absent at most once. The baseline results never offered can't match any result: with [includeAbsent], they are compared
+ * with empty chunks at the end, so [BaselineCalculation] decides which of them are absent exactly as it does for the whole report.
+ */
+internal class IndexedComparison private constructor(
+  private val header: SarifReport,
+  private val baselineFile: Path?,
+  private val indexDir: Path?,
+  private val options: BaselineCalculation.Options,
+  private val includeAbsent: Boolean,
+  private val chunkSize: Int,
+) {
+  companion object {
+    private const val DEFAULT_CHUNK_SIZE = 1000
+
+    /**
+     * A missing [baselineFile] is compared as an empty report.
+     * Returns null if the baseline can't be indexed, see [BaselineIndex.open].
+     *
+     * @param indexDir where the index is kept, the IDE system directory by default
+     */
+    suspend fun open(
+      baselineFile: Path,
+      options: BaselineCalculation.Options,
+      includeAbsent: Boolean,
+      indexDir: Path? = null,
+      chunkSize: Int = DEFAULT_CHUNK_SIZE,
+    ): IndexedComparison? {
+      if (runInterruptible(StaticAnalysisDispatchers.IO) { baselineFile.notExists() }) {
+        return IndexedComparison(createSarifReport(emptyList()), null, null, options, includeAbsent, chunkSize)
+      }
+      val header = readBaselineReport(baselineFile, readResults = false)
+      if (header.runs?.size != 1) return null
+      // the index is built here, so that a baseline which can't be indexed is known before the results are streamed
+      val indexed = runInterruptible(StaticAnalysisDispatchers.IO) { openIndex(baselineFile, indexDir)?.use { true } ?: false }
+      if (!indexed) return null
+      return IndexedComparison(header, baselineFile, indexDir, options, includeAbsent, chunkSize)
+    }
+  }
+
+  /**
+   * Results of [results] with their baseline state set, followed by the absent baseline results with [includeAbsent].
+   *
+   * @param tool the tool of the run the results belong to
+   */
+  fun compare(results: Flow<Result>, tool: Tool): Flow<Result> = flow {
+    val index = baselineFile?.let { openIndex(it, indexDir) ?: throw IOException("Cannot index baseline report '$it'") }
+    try {
+      val offered = BitSet()
+      val chunk = ArrayList<Result>(chunkSize)
+      results.collect { result ->
+        chunk.add(result)
+        if (chunk.size >= chunkSize) {
+          compareChunk(chunk, index, offered, tool).forEach { emit(it) }
+          chunk.clear()
+        }
+      }
+      if (chunk.isNotEmpty()) {
+        compareChunk(chunk, index, offered, tool).forEach { emit(it) }
+      }
+
+      if (includeAbsent && index != null) {
+        val neverOffered = BitSet().apply {
+          set(0, index.size)
+          andNot(offered)
+        }
+        for (ids in neverOffered.stream().iterator().asSequence().chunked(chunkSize)) {
+          val baselineResults = index.loadResults(BitSet().apply { ids.forEach(::set) })
+          compare(emptyList(), baselineResults, tool).forEach { emit(it) }
+        }
+      }
+    }
+    finally {
+      index?.close()
+    }
+  }.flowOn(StaticAnalysisDispatchers.IO)
+
+  private fun compareChunk(chunk: List<Result>, index: BaselineIndex?, offered: BitSet, tool: Tool): List<Result> {
+    if (index == null) return compare(chunk, emptyList(), tool)
+    val matching = index.matchingResultIds(chunk)
+    matching.andNot(offered)
+    offered.or(matching)
+    return compare(chunk, index.loadResults(matching), tool)
+  }
+
+  private fun compare(results: List<Result>, baselineResults: List<Result>, tool: Tool): List<Result> {
+    val report = createSarifReport(listOf(Run(tool).withResults(results.toMutableList())))
+    header.runs.singleOrNull()?.results = baselineResults
+
+    // This mutates the `report`!
+    BaselineCalculation.compare(report, header, options)
+    return report.runs.single().results.orEmpty()
+  }
+}
+
+private fun openIndex(baselineFile: Path, indexDir: Path?): BaselineIndex? =
+  try {
+    if (indexDir != null) BaselineIndex.open(baselineFile, indexDir) else BaselineIndex.open(baselineFile)
+  }
+  catch (e: IOException) {
+    LOG.warn("Cannot index baseline report '$baselineFile', falling back to reading it fully", e)
+    null
+  }
+  catch (e: JsonParseException) {
+    LOG.warn("Cannot index baseline report '$baselineFile', falling back to reading it fully", e)
+    null
+  }
+
 private fun getOptions(scope: QodanaAnalysisScope, config: QodanaConfig): BaselineCalculation.Options {
-  val limitedScope = config.script.name == TEAMCITY_CHANGES_SCRIPT_NAME || config.script.name == SCOPED_SCRIPT_NAME
+  val check = absentResultScope(scope, config) ?: return BaselineCalculation.Options(config.includeAbsent, false)
+  return BaselineCalculation.Options(config.includeAbsent, true, true, check)
+}
 
-  if (!limitedScope) return BaselineCalculation.Options(config.includeAbsent, false)
-  val check: (Result) -> Boolean = { r ->
+/**
+ * Scripts analysing a limited scope report only the absent results located in that scope, null if all absent results are reported.
+ */
+private fun absentResultScope(scope: QodanaAnalysisScope, config: QodanaConfig): ((Result) -> Boolean)? {
+  val limitedScope = config.script.name == TEAMCITY_CHANGES_SCRIPT_NAME || config.script.name == SCOPED_SCRIPT_NAME
+  if (!limitedScope) return null
+  return { r ->
     r.locations.any {
       val virtualFile = it.physicalLocation?.artifactLocation?.toVirtualFile(config.projectPath)
       if (virtualFile == null) false else scope.contains(virtualFile)
     }
   }
-
-  return BaselineCalculation.Options(config.includeAbsent, true, true, check)
 }
 
 private fun ArtifactLocation.toVirtualFile(projectPath: Path): VirtualFile? {
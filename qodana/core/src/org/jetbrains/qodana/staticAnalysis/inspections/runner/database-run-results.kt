@@ -0,0 +1,49 @@
+package org.jetbrains.qodana.staticAnalysis.inspections.runner
+
+import com.jetbrains.qodana.sarif.model.Result
+import com.jetbrains.qodana.sarif.model.Run
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.flow.emitAll
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.toList
+import org.jetbrains.qodana.staticAnalysis.sarif.ResultCounts
+import org.jetbrains.qodana.staticAnalysis.sarif.partitionedResultsFlowByGroup
+import java.nio.file.Path
+
+/**
+ * Results of [run] kept in the tool results database instead of [Run.results]: the rows of an inspection group,
+ * passed through baseline comparisons. Every collection of [results] reads the database again, so the results are never
+ * all on the heap, only their [counts] are kept.
+ */
+class DatabaseRunResults internal constructor(
+  val run: Run,
+  private val databaseDir: Path,
+  private val inspectionGroup: String,
+  private val comparisons: List<IndexedComparison> = emptyList(),
+) {
+  private var counts: ResultCounts? = null
+
+  val results: Flow<Result>
+    get() = flow {
+      QodanaToolResultDatabase.open(databaseDir).use { db ->
+        val rows = db.partitionedResultsFlowByGroup(inspectionGroup)
+        emitAll(comparisons.fold(rows) { results, comparison -> comparison.compare(results, run.tool) })
+      }
+    }
+
+  /**
+   * Results to write for [run] of a report: streamed for this run, held by the run otherwise.
+   */
+  fun resultsOf(run: Run): Flow<Result>? = if (run === this.run) results else run.results?.asFlow()
+
+  internal fun comparedWith(comparison: IndexedComparison): DatabaseRunResults =
+    DatabaseRunResults(run, databaseDir, inspectionGroup, comparisons + comparison)
+
+  suspend fun counts(): ResultCounts = counts ?: ResultCounts.of(results).also { counts = it }
+
+  /**
+   * Loads all results, for the consumers needing them at once, e.g. fixes.
+   */
+  suspend fun load(): List<Result> = results.toList()
+}
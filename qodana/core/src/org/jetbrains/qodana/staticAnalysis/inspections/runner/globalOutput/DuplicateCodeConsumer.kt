@@ -8,7 +8,6 @@ import com.intellij.openapi.project.Project
 import com.intellij.openapi.util.io.FileUtil
 import com.intellij.openapi.vfs.VfsUtil
 import com.intellij.openapi.vfs.VirtualFileManager
-import com.jetbrains.qodana.sarif.SarifUtil
 import com.jetbrains.qodana.sarif.model.Location
 import com.jetbrains.qodana.sarif.model.Message
 import com.jetbrains.qodana.sarif.model.PropertyBag
@@ -30,7 +29,6 @@ import org.jetbrains.qodana.staticAnalysis.sarif.getProblemOffset
 import java.nio.file.Path
 
 private val LOG = logger<DuplicateCodeConsumer>()
-private val gson = SarifUtil.createGson()
 
 /**
  * Responsible for handling DuplicatedCode.xml and DuplicatedCode_aggregate.xml files as results of DuplicatedCode inspection.
@@ -74,7 +72,7 @@ class DuplicateCodeConsumer: GlobalOutputConsumer {
                                  findOffset(macroManager, problemLocation.file, problemLocation) ?: 0,
                                  0,
                                  print,
-                                 gson.toJson(sarif, Result::class.java))
+                                 sarif)
       }
       catch (e: Exception) {
         LOG.warn(e)
@@ -106,19 +104,18 @@ private class DuplicatesProblem(val element: Element): Problem {
       val end = Integer.parseInt(fragment.getAttributeValue("end"))
       val length = end - start
       database.selectDuplicate(file, line, start).use { query ->
-        val jsons = query.executeQuery().toList()
-        val json = jsons.firstOrNull()
+        val duplicates = query.executeQuery().toList()
+        val result = duplicates.firstOrNull()
 
         val problemLocation = "$file:$line:$start"
-        if (json == null) {
+        if (result == null) {
           thisLogger().warn("Can't find duplicate problem in db, $problemLocation")
           return null
         }
-        if (jsons.size > 1) {
-          thisLogger().warn("${jsons.size} duplicates of duplicate problem found, $problemLocation")
+        if (duplicates.size > 1) {
+          thisLogger().warn("${duplicates.size} duplicates of duplicate problem found, $problemLocation")
         }
 
-        val result = gson.fromJson(json, Result::class.java)
         mainResult = mainResult ?: result
         val location = result.locations.getOrNull(0) ?: return null
         locs.add(
@@ -0,0 +1,294 @@
+package org.jetbrains.qodana.staticAnalysis.inspections.runner
+
+import com.intellij.codeInspection.ex.InspectionProfileImpl
+import com.intellij.ide.plugins.PluginManagerCore
+import com.intellij.openapi.application.ApplicationInfo
+import com.intellij.openapi.application.PathManager
+import com.intellij.openapi.components.PathMacroManager
+import com.intellij.openapi.diagnostic.logger
+import com.intellij.openapi.util.JDOMUtil
+import com.intellij.util.io.createDirectories
+import com.jetbrains.qodana.sarif.SarifUtil
+import com.jetbrains.qodana.sarif.model.Result
+import org.intellij.lang.annotations.Language
+import org.jetbrains.qodana.staticAnalysis.sarif.RELATED_PROBLEMS_CHILD_HASH_PROP
+import org.jetbrains.sqlite.ObjectBinder
+import org.jetbrains.sqlite.SqliteConnection
+import java.nio.file.Path
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.io.path.Path
+
+private val LOG = logger<QodanaInspectionResultsCache>()
+
+private const val CACHE_FORMAT_VERSION = 1
+private const val CACHE_BATCH_SIZE = 1000
+private val CACHE_ENTRY_TTL_MS = TimeUnit.DAYS.toMillis(30)
+
+@Language("SQLite")
+private const val CACHE_SCHEMA = """
+  BEGIN TRANSACTION;
+
+  CREATE TABLE IF NOT EXISTS cached_files (
+    key TEXT PRIMARY KEY,
+    last_used INTEGER
+  );
+
+  CREATE TABLE IF NOT EXISTS cached_problems (
+    key TEXT,
+    inspection TEXT,
+    file TEXT,
+    module TEXT,
+    payload BLOB
+  );
+
+  CREATE INDEX IF NOT EXISTS idx_cached_problems_key ON cached_problems (key);
+
+  COMMIT;
+"""
+
+private const val SELECT_CACHED_FILE = "SELECT key FROM cached_files WHERE key = ?;"
+private const val SELECT_CACHED_PROBLEMS = "SELECT inspection, file, module, payload FROM cached_problems WHERE key = ?;"
+private const val INSERT_CACHED_PROBLEM = "INSERT INTO cached_problems VALUES (?, ?, ?, ?, ?);"
+private const val UPSERT_CACHED_FILE = "INSERT OR REPLACE INTO cached_files VALUES (?, ?);"
+private const val DELETE_EXPIRED_FILES = "DELETE FROM cached_files WHERE last_used < ?;"
+private const val DELETE_ORPHAN_PROBLEMS = "DELETE FROM cached_problems WHERE key NOT IN (SELECT key FROM cached_files);"
+
+private val gson = SarifUtil.createGson()
+
+/**
+ * Opt-in cache of local inspection results persisted between runs, enabled with `-Dqodana.inspection.cache=true`.
+ *
+ * The cache is stored in `qodana.inspection.cache.dir` or in the IDE system directory,
+ * which is a part of the Qodana cache directory (`--cache-dir`) that CI pipelines restore between runs.
+ *
+ * A file is identified by its project-relative URL, text, the local inspections enabled for it
+ * and [configurationKey], which covers the effective profile with its options, the IDE build and the enabled plugins.
+ * Files having global simple inspections enabled are never cached, as their results depend on other files.
+ *
+ * Problems of a missed file are captured when they are written to [QodanaToolResultDatabase]
+ * and stored only if the analysis finishes normally and no problem of the file was dropped by thresholds.
+ * Entries not used for 30 days are evicted.
+ */
+class QodanaInspectionResultsCache private constructor(
+  private val connection: SqliteConnection,
+  private val configurationKey: String,
+) {
+  companion object {
+    fun openIfEnabled(profile: InspectionProfileImpl): QodanaInspectionResultsCache? {
+      if (!System.getProperty("qodana.inspection.cache").toBoolean()) return null
+      val cacheDir = System.getProperty("qodana.inspection.cache.dir")?.let { Path(it) }
+                     ?: PathManager.getSystemDir().resolve("qodana").resolve("inspection-results-cache")
+      return try {
+        open(cacheDir, configurationKey(profile))
+      }
+      catch (e: Exception) {
+        LOG.warn("Failed to open inspection results cache in $cacheDir, results won't be cached", e)
+        null
+      }
+    }
+
+    fun open(cacheDir: Path, configurationKey: String): QodanaInspectionResultsCache {
+      cacheDir.createDirectories()
+      val connection = SqliteConnection(cacheDir.resolve("inspection-results-v$CACHE_FORMAT_VERSION.db"))
+      connection.execute(CACHE_SCHEMA)
+      // rows of files captured by an interrupted run
+      connection.execute(DELETE_ORPHAN_PROBLEMS)
+      LOG.info("Inspection results cache opened in $cacheDir")
+      return QodanaInspectionResultsCache(connection, configurationKey)
+    }
+
+    private fun configurationKey(profile: InspectionProfileImpl): String {
+      val plugins = PluginManagerCore.getPluginSet().enabledPlugins
+        .map { "${it.pluginId.idString}:${it.version}" }
+        .sorted()
+      return sha256(
+        CACHE_FORMAT_VERSION.toString(),
+        ApplicationInfo.getInstance().build.asString(),
+        plugins.joinToString(","),
+        JDOMUtil.write(profile.writeScheme()),
+      )
+    }
+
+    private fun sha256(vararg parts: CharSequence): String {
+      val digest = MessageDigest.getInstance("SHA-256")
+      for (part in parts) {
+        digest.update(part.toString().toByteArray(Charsets.UTF_8))
+        digest.update(0)
+      }
+      return digest.digest().joinToString("") { "%02x".format(it) }
+    }
+  }
+
+  private val lock = Any()
+  private val problemsBinder = ObjectBinder(paramCount = 5)
+  private val problemsStatement = connection.prepareStatement(INSERT_CACHED_PROBLEM, problemsBinder)
+  private var pendingProblems = 0
+
+  /** file URL to the key of a missed file, which problems are captured in this run */
+  private val captured = ConcurrentHashMap<String, String>()
+  private val discarded = ConcurrentHashMap.newKeySet<String>()
+  private val replayed = ConcurrentHashMap.newKeySet<String>()
+
+  private val hits = AtomicInteger()
+  private val misses = AtomicInteger()
+
+  val statistics: InspectionCacheStatistics
+    get() = InspectionCacheStatistics(hits.get(), misses.get())
+
+  /**
+   * @param fileUrl URL with collapsed path macros, so that the key doesn't depend on the project location
+   */
+  fun fileKey(fileUrl: String, text: CharSequence, inspectionIds: Collection<String>): String =
+    sha256(configurationKey, fileUrl, text, inspectionIds.sorted().joinToString(","))
+
+  fun onUncacheableFile() {
+    misses.incrementAndGet()
+  }
+
+  /**
+   * @return problems of the file grouped by inspection id, empty if they were already replayed, null if the file is not cached
+   */
+  fun lookup(fileKey: String): Map<String, List<Problem>>? {
+    if (fileKey in replayed) return emptyMap()
+    val problems = try {
+      synchronized(lock) { selectProblems(fileKey) }
+    }
+    catch (e: Exception) {
+      LOG.warn("Failed to read inspection results cache", e)
+      null
+    }
+    if (problems == null) {
+      misses.incrementAndGet()
+      return null
+    }
+    // wrappers of the same file may be requested more than once, the problems are replayed only the first time
+    if (!replayed.add(fileKey)) return emptyMap()
+    hits.incrementAndGet()
+    return problems
+  }
+
+  /**
+   * Starts capturing problems of a missed file.
+   * @param fileUrl URL with collapsed path macros, the same as the file of its problems matched in [capture]
+   */
+  fun startCapture(fileUrl: String, fileKey: String) {
+    captured[fileUrl] = fileKey
+  }
+
+  /**
+   * @param file URL of the problem's file with collapsed path macros, as it is written to the SARIF report
+   */
+  fun capture(file: String, module: String?, inspectionId: String, result: Result) {
+    val fileKey = captured[file] ?: return
+    synchronized(lock) {
+      problemsBinder.bindMultiple(fileKey, inspectionId, file, module, deflateJson(gson.toJson(result)))
+      problemsBinder.addBatch()
+      if (++pendingProblems >= CACHE_BATCH_SIZE) flushProblems()
+    }
+  }
+
+  /**
+   * The file will not be cached, because not all of its problems were written.
+   * @param file URL of the file with collapsed path macros
+   */
+  fun discardCapture(file: String) {
+    captured[file]?.let { discarded.add(it) }
+  }
+
+  /**
+   * @param analysisCompleted whether all captured files were fully inspected, otherwise nothing is stored
+   */
+  fun close(analysisCompleted: Boolean) {
+    synchronized(lock) {
+      try {
+        flushProblems()
+        val now = System.currentTimeMillis()
+        val completedFiles = if (analysisCompleted) captured.values.filterNot { it in discarded } else emptyList()
+        connection.execute("BEGIN TRANSACTION;")
+        try {
+          for (fileKey in completedFiles + replayed) {
+            connection.execute(UPSERT_CACHED_FILE, arrayOf<Any>(fileKey, now))
+          }
+          connection.execute(DELETE_EXPIRED_FILES, arrayOf<Any>(now - CACHE_ENTRY_TTL_MS))
+          connection.execute(DELETE_ORPHAN_PROBLEMS)
+          connection.execute("COMMIT;")
+        }
+        catch (e: Throwable) {
+          connection.execute("ROLLBACK;")
+          throw e
+        }
+        LOG.info("Inspection results cache: ${hits.get()} hits, ${misses.get()} misses, ${completedFiles.size} files stored")
+      }
+      catch (e: Exception) {
+        LOG.warn("Failed to store inspection results cache", e)
+      }
+      finally {
+        problemsStatement.close()
+        connection.close()
+      }
+    }
+  }
+
+  private fun selectProblems(fileKey: String): Map<String, List<Problem>>? {
+    val fileBinder = ObjectBinder(paramCount = 1)
+    val fileStatement = connection.prepareStatement(SELECT_CACHED_FILE, fileBinder)
+    try {
+      fileBinder.bind(fileKey)
+      if (!fileStatement.executeQuery().next()) return null
+    }
+    finally {
+      fileStatement.close()
+    }
+
+    val binder = ObjectBinder(paramCount = 1)
+    val statement = connection.prepareStatement(SELECT_CACHED_PROBLEMS, binder)
+    try {
+      binder.bind(fileKey)
+      val problems = mutableMapOf<String, MutableList<Problem>>()
+      val resultSet = statement.executeQuery()
+      while (resultSet.next()) {
+        val result = gson.fromJson(inflateJson(resultSet.getBytes(3)!!), Result::class.java)
+        problems.getOrPut(resultSet.getString(0)!!) { mutableListOf() }
+          .add(CachedProblem(result, resultSet.getString(1), resultSet.getString(2)))
+      }
+      return problems
+    }
+    finally {
+      statement.close()
+    }
+  }
+
+  private fun flushProblems() {
+    if (pendingProblems == 0) return
+    connection.execute("BEGIN TRANSACTION;")
+    try {
+      problemsStatement.executeBatch()
+      connection.execute("COMMIT;")
+    }
+    catch (e: Throwable) {
+      connection.execute("ROLLBACK;")
+      throw e
+    }
+    finally {
+      pendingProblems = 0
+    }
+  }
+}
+
+data class InspectionCacheStatistics(val hits: Int, val misses: Int)
+
+/**
+ * Problem replayed from [QodanaInspectionResultsCache], its SARIF is already computed.
+ */
+internal class CachedProblem(private val result: Result, private val file: String?, private val module: String?) : Problem {
+  override suspend fun getSarif(macroManager: PathMacroManager, database: QodanaToolResultDatabase): Result = result
+
+  override fun getFile(): String? = file
+
+  override fun getModule(): String? = module
+
+  override fun getRelatedProblemHashFrom(): String? = result.properties?.get(RELATED_PROBLEMS_CHILD_HASH_PROP) as? String
+}
@@ -0,0 +1,579 @@
+package org.jetbrains.qodana.staticAnalysis.inspections.runner
+
+import com.google.gson.ExclusionStrategy
+import com.google.gson.FieldAttributes
+import com.google.gson.JsonArray
+import com.google.gson.JsonElement
+import com.google.gson.JsonNull
+import com.google.gson.JsonObject
+import com.google.gson.JsonPrimitive
+import com.google.gson.internal.LazilyParsedNumber
+import com.google.gson.stream.JsonWriter
+import com.jetbrains.qodana.sarif.SarifUtil
+import com.jetbrains.qodana.sarif.model.ArtifactContent
+import com.jetbrains.qodana.sarif.model.ArtifactLocation
+import com.jetbrains.qodana.sarif.model.Level
+import com.jetbrains.qodana.sarif.model.Location
+import com.jetbrains.qodana.sarif.model.Message
+import com.jetbrains.qodana.sarif.model.PhysicalLocation
+import com.jetbrains.qodana.sarif.model.Region
+import com.jetbrains.qodana.sarif.model.Result
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.io.Writer
+import java.lang.reflect.Type
+import java.util.zip.Deflater
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.InflaterInputStream
+
+private const val FORMAT_PLAIN: Byte = 0
+private const val FORMAT_DEFLATED: Byte = 1
+
+private const val TAG_NULL = 0
+private const val TAG_TRUE = 1
+private const val TAG_FALSE = 2
+private const val TAG_LONG = 3
+private const val TAG_NUMBER = 4
+private const val TAG_STRING = 5
+private const val TAG_INTERNED_STRING = 6
+private const val TAG_ARRAY = 7
+private const val TAG_OBJECT = 8
+private const val TAG_END = 9
+
+/**
+ * A message, location or region written field by field instead of by Gson.
+ */
+private const val TAG_DIRECT = 10
+
+private const val KEY_END = 0
+private const val KEY_INLINE = 1
+private const val KEY_INTERNED_BASE = 2
+
+private const val REGION_NUMBERS = 6
+private const val REGION_SNIPPET_FLAG = 1 shl REGION_NUMBERS
+private const val REGION_LANGUAGE_FLAG = 1 shl (REGION_NUMBERS + 1)
+
+private const val COMPRESSION_THRESHOLD = 512
+private const val MAX_INTERNED_VALUE_LENGTH = 256
+private const val MAX_INTERNED_STRINGS = 1 shl 20
+
+/**
+ * Fields of [Result] written by [ResultBinaryCodec] itself, the rest of a result is written by Gson.
+ */
+private val DIRECT_RESULT_FIELDS = setOf("ruleId", "level", "baselineState", "message", "locations")
+
+/**
+ * Compact binary encoding of SARIF [Result]s stored in [QodanaToolResultDatabase].
+ *
+ * The fields every result has are written directly: the rule id, level, baseline state, message and the physical locations
+ * (artifact URI, region and context region). A message or location with any other field set is written by Gson as a whole.
+ * The remaining fields of a result (properties, partial fingerprints, related locations etc.) are streamed by Gson
+ * through [BinaryJsonWriter], so no JSON tree or text is built when encoding.
+ *
+ * Only low-cardinality values (rule ids, levels, URIs, URI base ids and languages) and object keys are replaced with ids
+ * from [InternedStrings], which is persisted as a side table; message and snippet text is written inline.
+ * Numbers are written as var-length integers. Payloads larger than [COMPRESSION_THRESHOLD] bytes are deflated.
+ *
+ * JSON text is produced only when the SARIF report is exported.
+ */
+internal class ResultBinaryCodec(private val strings: InternedStrings) {
+  private val gson = SarifUtil.createGson()
+  private val remainderGson = gson.newBuilder()
+    .addSerializationExclusionStrategy(DirectResultFieldsExclusionStrategy)
+    .create()
+
+  fun encode(result: Result): ByteArray {
+    val output = BinaryOutput()
+    output.writeResult(result)
+    if (output.size() < COMPRESSION_THRESHOLD) {
+      return ByteArray(output.size() + 1).also {
+        it[0] = FORMAT_PLAIN
+        output.copyTo(it, 1)
+      }
+    }
+
+    val compressed = ByteArrayOutputStream(output.size() / 2)
+    compressed.write(FORMAT_DEFLATED.toInt())
+    val deflater = Deflater(Deflater.BEST_SPEED)
+    try {
+      DeflaterOutputStream(compressed, deflater).use { output.writeTo(it) }
+    }
+    finally {
+      deflater.end()
+    }
+    return compressed.toByteArray()
+  }
+
+  fun decode(payload: ByteArray): Result {
+    val input = when (payload.firstOrNull()) {
+      FORMAT_PLAIN -> BinaryInput(payload, 1)
+      FORMAT_DEFLATED -> InflaterInputStream(payload.inputStream(1, payload.size - 1)).use { BinaryInput(it.readAllBytes(), 0) }
+      else -> throw IOException("Unknown result payload format: ${payload.firstOrNull()}")
+    }
+    return input.readResult()
+  }
+
+  private fun BinaryOutput.writeResult(result: Result) {
+    writeInterned(result.ruleId)
+    writeInterned(result.level?.name)
+    writeInterned(result.baselineState?.name)
+    writeMessage(result.message)
+    val locations = result.locations
+    if (locations == null) {
+      write(TAG_NULL)
+    }
+    else {
+      write(TAG_ARRAY)
+      writeVarInt(locations.size)
+      for (location in locations) {
+        writeLocation(location)
+      }
+    }
+    remainderGson.toJson(result, Result::class.java, BinaryJsonWriter(this, strings))
+  }
+
+  private fun BinaryInput.readResult(): Result {
+    val ruleId = readInterned()
+    val level = readInterned()?.let { Level.valueOf(it) }
+    val baselineState = readInterned()?.let { Result.BaselineState.valueOf(it) }
+    val message = readMessage()
+    val locations = when (val tag = read()) {
+      TAG_NULL -> null
+      TAG_ARRAY -> MutableList(readVarInt()) { readLocation() }
+      else -> throw IOException("Unexpected tag of result locations: $tag")
+    }
+    return gson.fromJson(readElement(read()), Result::class.java).apply {
+      this.ruleId = ruleId
+      this.level = level
+      this.baselineState = baselineState
+      this.message = message
+      this.locations = locations
+    }
+  }
+
+  private fun BinaryOutput.writeMessage(message: Message?) {
+    if (message == null) {
+      write(TAG_NULL)
+      return
+    }
+    if (message != Message().withText(message.text).withMarkdown(message.markdown)) {
+      writeGeneric(message, Message::class.java)
+      return
+    }
+    write(TAG_DIRECT)
+    writeNullableString(message.text)
+    writeNullableString(message.markdown)
+  }
+
+  private fun BinaryInput.readMessage(): Message? =
+    when (val tag = read()) {
+      TAG_NULL -> null
+      TAG_DIRECT -> Message().withText(readNullableString()).withMarkdown(readNullableString())
+      else -> gson.fromJson(readElement(tag), Message::class.java)
+    }
+
+  private fun BinaryOutput.writeLocation(location: Location) {
+    val physicalLocation = location.physicalLocation
+    if (physicalLocation == null || location != copyPhysicalLocation(physicalLocation)) {
+      writeGeneric(location, Location::class.java)
+      return
+    }
+    write(TAG_DIRECT)
+    val artifactLocation = physicalLocation.artifactLocation
+    if (artifactLocation == null) {
+      write(TAG_NULL)
+    }
+    else {
+      write(TAG_DIRECT)
+      writeInterned(artifactLocation.uri)
+      writeInterned(artifactLocation.uriBaseId)
+    }
+    writeRegion(physicalLocation.region)
+    writeRegion(physicalLocation.contextRegion)
+  }
+
+  private fun BinaryInput.readLocation(): Location {
+    val tag = read()
+    if (tag != TAG_DIRECT) return gson.fromJson(readElement(tag), Location::class.java)
+    val artifactLocation = when (val artifactTag = read()) {
+      TAG_NULL -> null
+      TAG_DIRECT -> ArtifactLocation().withUri(readInterned()).withUriBaseId(readInterned())
+      else -> throw IOException("Unexpected tag of artifact location: $artifactTag")
+    }
+    return Location().withPhysicalLocation(
+      PhysicalLocation()
+        .withArtifactLocation(artifactLocation)
+        .withRegion(readRegion())
+        .withContextRegion(readRegion())
+    )
+  }
+
+  private fun BinaryOutput.writeRegion(region: Region?) {
+    if (region == null) {
+      write(TAG_NULL)
+      return
+    }
+    write(TAG_DIRECT)
+    val numbers = region.numbers()
+    val snippet = region.snippet
+    val language = region.sourceLanguage
+    var flags = 0
+    numbers.forEachIndexed { index, number -> if (number != null) flags = flags or (1 shl index) }
+    if (snippet != null) flags = flags or REGION_SNIPPET_FLAG
+    if (language != null) flags = flags or REGION_LANGUAGE_FLAG
+    write(flags)
+    for (number in numbers) {
+      if (number != null) writeVarInt(number)
+    }
+    if (snippet != null) writeNullableString(snippet.text)
+    if (language != null) writeInterned(language)
+  }
+
+  private fun BinaryInput.readRegion(): Region? {
+    when (val tag = read()) {
+      TAG_NULL -> return null
+      TAG_DIRECT -> Unit
+      else -> throw IOException("Unexpected tag of region: $tag")
+    }
+    val flags = read()
+    val numbers = Array(REGION_NUMBERS) { index -> if (flags and (1 shl index) != 0) readVarInt() else null }
+    val snippet = if (flags and REGION_SNIPPET_FLAG != 0) ArtifactContent().withText(readNullableString()) else null
+    val language = if (flags and REGION_LANGUAGE_FLAG != 0) readInterned() else null
+    return Region()
+      .withStartLine(numbers[0])
+      .withStartColumn(numbers[1])
+      .withEndLine(numbers[2])
+      .withEndColumn(numbers[3])
+      .withCharOffset(numbers[4])
+      .withCharLength(numbers[5])
+      .withSnippet(snippet)
+      .withSourceLanguage(language)
+  }
+
+  private fun BinaryOutput.writeGeneric(value: Any, type: Type) {
+    gson.toJson(value, type, BinaryJsonWriter(this, strings))
+  }
+
+  private fun BinaryOutput.writeInterned(value: String?) {
+    val id = value?.takeIf { it.length <= MAX_INTERNED_VALUE_LENGTH }?.let { strings.idOf(it) }
+    when {
+      value == null -> write(TAG_NULL)
+      id == null -> {
+        write(TAG_STRING)
+        writeString(value)
+      }
+      else -> {
+        write(TAG_INTERNED_STRING)
+        writeVarInt(id)
+      }
+    }
+  }
+
+  private fun BinaryInput.readInterned(): String? =
+    when (val tag = read()) {
+      TAG_NULL -> null
+      TAG_STRING -> readString()
+      TAG_INTERNED_STRING -> strings.valueOf(readVarInt())
+      else -> throw IOException("Unexpected tag of string: $tag")
+    }
+
+  private fun BinaryInput.readElement(tag: Int): JsonElement {
+    return when (tag) {
+      TAG_NULL -> JsonNull.INSTANCE
+      TAG_TRUE -> JsonPrimitive(true)
+      TAG_FALSE -> JsonPrimitive(false)
+      TAG_LONG -> JsonPrimitive(readVarLong())
+      TAG_NUMBER -> JsonPrimitive(LazilyParsedNumber(readString()))
+      TAG_STRING -> JsonPrimitive(readString())
+      TAG_ARRAY -> JsonArray().apply {
+        while (true) {
+          val itemTag = read()
+          if (itemTag == TAG_END) break
+          add(readElement(itemTag))
+        }
+      }
+      TAG_OBJECT -> JsonObject().apply {
+        while (true) {
+          val key = when (val marker = readVarInt()) {
+            KEY_END -> break
+            KEY_INLINE -> readString()
+            else -> strings.valueOf(marker - KEY_INTERNED_BASE)
+          }
+          add(key, readElement(read()))
+        }
+      }
+      else -> throw IOException("Unknown result payload tag: $tag")
+    }
+  }
+}
+
+/**
+ * The location, if only the fields written directly by [ResultBinaryCodec] are set.
+ */
+private fun copyPhysicalLocation(physicalLocation: PhysicalLocation): Location {
+  val artifactLocation = physicalLocation.artifactLocation
+  return Location().withPhysicalLocation(
+    PhysicalLocation()
+      .withArtifactLocation(artifactLocation?.let { ArtifactLocation().withUri(it.uri).withUriBaseId(it.uriBaseId) })
+      .withRegion(physicalLocation.region?.let(::copyRegion))
+      .withContextRegion(physicalLocation.contextRegion?.let(::copyRegion))
+  )
+}
+
+private fun copyRegion(region: Region): Region {
+  val numbers = region.numbers()
+  return Region()
+    .withStartLine(numbers[0])
+    .withStartColumn(numbers[1])
+    .withEndLine(numbers[2])
+    .withEndColumn(numbers[3])
+    .withCharOffset(numbers[4])
+    .withCharLength(numbers[5])
+    .withSnippet(region.snippet?.let { ArtifactContent().withText(it.text) })
+    .withSourceLanguage(region.sourceLanguage)
+}
+
+private fun Region.numbers(): Array<Int?> = arrayOf(startLine, startColumn, endLine, endColumn, charOffset, charLength)
+
+private object DirectResultFieldsExclusionStrategy : ExclusionStrategy {
+  override fun shouldSkipField(field: FieldAttributes): Boolean =
+    field.declaringClass == Result::class.java && field.name in DIRECT_RESULT_FIELDS
+
+  override fun shouldSkipClass(clazz: Class<*>): Boolean = false
+}
+
+/**
+ * Writes what Gson serializes in the tagged form read by [ResultBinaryCodec], without building a JSON tree.
+ * Object entries are prefixed with a key marker ([KEY_END], [KEY_INLINE] or an interned key id), arrays end with [TAG_END].
+ */
+private class BinaryJsonWriter(private val output: BinaryOutput, private val strings: InternedStrings) : JsonWriter(UnwritableWriter) {
+  private var pendingName: String? = null
+
+  override fun beginObject(): JsonWriter {
+    writePendingName()
+    output.write(TAG_OBJECT)
+    return this
+  }
+
+  override fun endObject(): JsonWriter {
+    output.writeVarInt(KEY_END)
+    return this
+  }
+
+  override fun beginArray(): JsonWriter {
+    writePendingName()
+    output.write(TAG_ARRAY)
+    return this
+  }
+
+  override fun endArray(): JsonWriter {
+    output.write(TAG_END)
+    return this
+  }
+
+  override fun name(name: String): JsonWriter {
+    pendingName = name
+    return this
+  }
+
+  override fun nullValue(): JsonWriter {
+    if (pendingName != null && !serializeNulls) {
+      pendingName = null
+      return this
+    }
+    writePendingName()
+    output.write(TAG_NULL)
+    return this
+  }
+
+  override fun value(value: String?): JsonWriter {
+    if (value == null) return nullValue()
+    writePendingName()
+    output.write(TAG_STRING)
+    output.writeString(value)
+    return this
+  }
+
+  override fun value(value: Boolean): JsonWriter {
+    writePendingName()
+    output.write(if (value) TAG_TRUE else TAG_FALSE)
+    return this
+  }
+
+  override fun value(value: Boolean?): JsonWriter = if (value == null) nullValue() else value(value)
+
+  override fun value(value: Long): JsonWriter {
+    writePendingName()
+    output.write(TAG_LONG)
+    output.writeVarLong(value)
+    return this
+  }
+
+  override fun value(value: Double): JsonWriter = writeNumber(value.toString())
+
+  override fun value(value: Float): JsonWriter = writeNumber(value.toString())
+
+  override fun value(value: Number?): JsonWriter =
+    when (value) {
+      null -> nullValue()
+      is Int, is Long, is Short, is Byte -> value(value.toLong())
+      else -> writeNumber(value.toString())
+    }
+
+  override fun jsonValue(value: String?): JsonWriter = throw UnsupportedOperationException("Raw JSON values can't be encoded")
+
+  override fun flush() {}
+
+  override fun close() {}
+
+  private fun writeNumber(text: String): JsonWriter {
+    writePendingName()
+    output.write(TAG_NUMBER)
+    output.writeString(text)
+    return this
+  }
+
+  private fun writePendingName() {
+    val name = pendingName ?: return
+    pendingName = null
+    val id = name.takeIf { it.length <= MAX_INTERNED_VALUE_LENGTH }?.let { strings.idOf(it) }
+    if (id == null) {
+      output.writeVarInt(KEY_INLINE)
+      output.writeString(name)
+    }
+    else {
+      output.writeVarInt(id + KEY_INTERNED_BASE)
+    }
+  }
+}
+
+private object UnwritableWriter : Writer() {
+  override fun write(buffer: CharArray, offset: Int, length: Int): Unit = throw AssertionError()
+  override fun flush(): Unit = throw AssertionError()
+  override fun close(): Unit = throw AssertionError()
+}
+
+/**
+ * Thread-safe dictionary of strings shared by all encoded results of a database.
+ * Ids are assigned sequentially, so the entries that were not yet written to the database are always the tail.
+ * Once [maxSize] strings are interned, new strings are no longer interned and have to be written inline.
+ */
+internal class InternedStrings(persisted: List<String>, private val maxSize: Int = MAX_INTERNED_STRINGS) {
+  private val values = ArrayList(persisted)
+  private val ids = HashMap<String, Int>(persisted.size * 2).apply { persisted.forEachIndexed { id, value -> put(value, id) } }
+  private var persistedCount = persisted.size
+
+  /**
+   * @return id of [value], null if the dictionary is full and [value] isn't in it
+   */
+  @Synchronized
+  fun idOf(value: String): Int? {
+    ids[value]?.let { return it }
+    if (values.size >= maxSize) return null
+    values.add(value)
+    return (values.size - 1).also { ids[value] = it }
+  }
+
+  @Synchronized
+  fun valueOf(id: Int): String = values.getOrNull(id) ?: throw IOException("Unknown interned string id: $id")
+
+  /**
+   * @return id of the first entry and the entries that still have to be written to the database
+   */
+  @Synchronized
+  fun notPersisted(): Pair<Int, List<String>> = persistedCount to values.subList(persistedCount, values.size).toList()
+
+  @Synchronized
+  fun markPersisted(count: Int) {
+    persistedCount = maxOf(persistedCount, count)
+  }
+}
+
+private class BinaryOutput : ByteArrayOutputStream(256) {
+  fun copyTo(destination: ByteArray, offset: Int) {
+    System.arraycopy(buf, 0, destination, offset, count)
+  }
+
+  fun writeVarInt(value: Int) {
+    writeVarLong(value.toLong())
+  }
+
+  fun writeVarLong(value: Long) {
+    // zig-zag, so that small negative numbers stay short
+    var v = (value shl 1) xor (value shr 63)
+    while (v and 0x7FL.inv() != 0L) {
+      write(((v and 0x7F) or 0x80).toInt())
+      v = v ushr 7
+    }
+    write(v.toInt())
+  }
+
+  fun writeString(value: String) {
+    val bytes = value.toByteArray(Charsets.UTF_8)
+    writeVarInt(bytes.size)
+    write(bytes, 0, bytes.size)
+  }
+
+  fun writeNullableString(value: String?) {
+    if (value == null) {
+      write(TAG_NULL)
+    }
+    else {
+      write(TAG_STRING)
+      writeString(value)
+    }
+  }
+}
+
+private class BinaryInput(private val bytes: ByteArray, private var position: Int) {
+  fun read(): Int {
+    if (position >= bytes.size) throw IOException("Unexpected end of result payload")
+    return bytes[position++].toInt() and 0xFF
+  }
+
+  fun readVarInt(): Int = readVarLong().toInt()
+
+  fun readVarLong(): Long {
+    var result = 0L
+    var shift = 0
+    while (true) {
+      val b = read()
+      result = result or ((b and 0x7F).toLong() shl shift)
+      if (b and 0x80 == 0) break
+      shift += 7
+    }
+    return (result ushr 1) xor -(result and 1)
+  }
+
+  fun readString(): String {
+    val length = readVarInt()
+    if (length < 0 || position + length > bytes.size) throw IOException("Malformed string in result payload")
+    return String(bytes, position, length, Charsets.UTF_8).also { position += length }
+  }
+
+  fun readNullableString(): String? =
+    when (val tag = read()) {
+      TAG_NULL -> null
+      TAG_STRING -> readString()
+      else -> throw IOException("Unexpected tag of string: $tag")
+    }
+}
+
+/**
+ * Deflated UTF-8 JSON, used by the inspection results cache, whose rows are written and pruned by many runs
+ * and therefore can't share [InternedStrings].
+ */
+internal fun deflateJson(json: String): ByteArray {
+  val output = ByteArrayOutputStream(json.length / 4)
+  val deflater = Deflater(Deflater.BEST_SPEED)
+  try {
+    DeflaterOutputStream(output, deflater).use { it.write(json.toByteArray(Charsets.UTF_8)) }
+  }
+  finally {
+    deflater.end()
+  }
+  return output.toByteArray()
+}
+
+internal fun inflateJson(payload: ByteArray): String =
+  InflaterInputStream(payload.inputStream()).use { String(it.readAllBytes(), Charsets.UTF_8) }
@@ -1,7 +1,10 @@
 package org.jetbrains.qodana.staticAnalysis.inspections.runner
 
+import com.intellij.openapi.diagnostic.logger
 import com.intellij.openapi.util.io.NioFiles
+import com.jetbrains.qodana.sarif.model.Result
 import org.intellij.lang.annotations.Language
+import org.jetbrains.qodana.staticAnalysis.inspections.metrics.database.getCopyStatement
 import org.jetbrains.qodana.staticAnalysis.inspections.metrics.database.getDeleteStatementForFile
 import org.jetbrains.qodana.staticAnalysis.inspections.metrics.database.getInsertStatement
 import org.jetbrains.qodana.staticAnalysis.inspections.metrics.database.getSchemaForAllTables
@@ -13,6 +16,7 @@ import org.jetbrains.sqlite.ObjectBinder
 import org.jetbrains.sqlite.SqliteConnection
 import org.jetbrains.sqlite.SqlitePreparedStatement
 import java.nio.file.Path
+import java.util.concurrent.TimeUnit
 
 @Language("SQLite")
 private const val TABLE_SCHEMA = """
@@ -22,7 +26,7 @@ private const val TABLE_SCHEMA = """
     inspectionGroup TEXT,
     inspection TEXT,
     hash TEXT,
-    json TEXT
+    payload BLOB
   );
   
   CREATE INDEX idx_results_inspection_hash ON results (inspection, hash);
@@ -33,36 +37,71 @@ private const val TABLE_SCHEMA = """
     start INT,
     end INT,
     hash TEXT,
-    json TEXT
+    payload BLOB
   );
   
   CREATE INDEX idx_duplicates_location ON duplicates (file, line, start, end);
   
   CREATE TABLE related_problem (
     hash TEXT,
-    json TEXT
+    payload BLOB
   );
   
   CREATE INDEX idx_related_problem_hash ON related_problem (hash);
   
+  CREATE TABLE interned_strings (
+    id INTEGER PRIMARY KEY,
+    value TEXT
+  );
+  
   COMMIT;
 """
 
 private const val INSERT_STATEMENT = "INSERT INTO results VALUES (?, ?, ?, ?);"
-private const val SELECT_STATEMENT = "SELECT inspection, hash, json FROM results WHERE inspectionGroup = ? ORDER BY inspection, hash;"
+private const val SELECT_STATEMENT = "SELECT inspection, hash, payload FROM results WHERE inspectionGroup = ? ORDER BY inspection, hash;"
 
 private const val SELECT_INSPECTION_IDS = "SELECT DISTINCT inspection FROM results;"
+private const val SELECT_GROUP_INSPECTION_IDS = "SELECT DISTINCT inspection FROM results WHERE inspectionGroup = ? ORDER BY inspection;"
+private const val SELECT_PARTITION_STATEMENT = "SELECT hash, payload FROM results WHERE inspectionGroup = ? AND inspection = ? ORDER BY hash;"
 
 private const val INSERT_DUPLICATES_STATEMENT = "INSERT INTO duplicates VALUES (?, ?, ?, ?, ?, ?);"
-private const val SELECT_DUPLICATES_STATEMENT = "SELECT json FROM duplicates WHERE file = ? AND line = ? AND start = ? ORDER BY hash;"
+private const val SELECT_DUPLICATES_STATEMENT = "SELECT payload FROM duplicates WHERE file = ? AND line = ? AND start = ? ORDER BY hash;"
 
 private const val INSERT_RELATED_PROBLEM = "INSERT INTO related_problem VALUES (?, ?);"
-private const val SELECT_RELATED_PROBLEM = "SELECT json FROM related_problem WHERE hash = ?;"
+private const val SELECT_RELATED_PROBLEM = "SELECT payload FROM related_problem WHERE hash = ?;"
+private const val SELECT_ALL_RELATED_PROBLEMS = "SELECT hash, payload FROM related_problem ORDER BY hash;"
+
+/**
+ * SQLite limits the number of parameters of a statement to 999.
+ */
+private const val MAX_RELATED_PROBLEM_HASHES = 500
+
+private const val SELECT_ALL_RESULTS = "SELECT inspectionGroup, inspection, hash, payload FROM results;"
+private const val SELECT_ALL_DUPLICATES = "SELECT file, line, start, end, hash, payload FROM duplicates;"
+
+private const val INSERT_INTERNED_STRING = "INSERT OR IGNORE INTO interned_strings VALUES (?, ?);"
+private const val SELECT_INTERNED_STRINGS = "SELECT value FROM interned_strings ORDER BY id;"
+
+/**
+ * The database is a scratch file re-created on every run, so durability is traded for write throughput.
+ */
+@Language("SQLite")
+private const val SCRATCH_PRAGMAS = """
+  PRAGMA journal_mode = WAL;
+  PRAGMA synchronous = OFF;
+  PRAGMA temp_store = MEMORY;
+"""
 
 internal const val QODANA_DB_FILENAME = "tool-results.db"
 
+private const val DEFAULT_BATCH_SIZE = 1000
+private const val DEFAULT_BATCH_FLUSH_INTERVAL_MS = 500L
+
+private val LOG = logger<QodanaToolResultDatabase>()
+
 /**
  * SQLite based database with thread-safe interface that holds inspection tool execution results.
+ * Results are stored in the compact binary form produced by [ResultBinaryCodec].
  * Connection is established only if [insert] or [select] methods are called.
  * Provided methods are synchronous, but if [close] is called, it terminates all the queries that were not fully executed.
  * Factory method provide:
@@ -71,10 +110,19 @@ internal const val QODANA_DB_FILENAME = "tool-results.db"
  *  Note, there is no lock file provided, that prevents opening non-closed DB.
  */
 class QodanaToolResultDatabase private constructor(private val connection: SqliteConnection) : AutoCloseable by connection {
+  private val internedStrings by lazy { InternedStrings(loadInternedStrings()) }
+  private val codec by lazy { ResultBinaryCodec(internedStrings) }
+
+  /**
+   * Guards all writes to [connection], so that statements of other threads don't end up in the transaction of a [ResultsBatchWriter].
+   */
+  private val writeLock = Any()
+
   companion object {
     fun create(path: Path): QodanaToolResultDatabase {
       NioFiles.deleteRecursively(path.resolve(QODANA_DB_FILENAME))
       val db = open(path)
+      db.connection.execute(SCRATCH_PRAGMAS)
       db.connection.execute(TABLE_SCHEMA)
       @Language("SQLite") val createMetricsTableSchema: String = MetricTable.getSchemaForAllTables()
       db.connection.execute(createMetricsTableSchema)
@@ -85,37 +133,49 @@ class QodanaToolResultDatabase private constructor(private val connection: Sqlit
       QodanaToolResultDatabase(SqliteConnection(path.resolve(QODANA_DB_FILENAME)))
   }
 
-  fun insert(inspectionGroup: String, inspectionId: String, hash: String, json: String) {
-    connection.execute(INSERT_STATEMENT, arrayOf(inspectionGroup, inspectionId, hash, json))
+  fun insert(inspectionGroup: String, inspectionId: String, hash: String, result: Result) {
+    val payload = codec.encode(result)
+    synchronized(writeLock) {
+      persistInternedStrings()
+      connection.execute(INSERT_STATEMENT, arrayOf(inspectionGroup, inspectionId, hash, payload))
+    }
   }
 
-  fun insertDuplicate(file: String, line: Int, start: Int, end: Int, hash: String, json: String) {
-    connection.execute(INSERT_DUPLICATES_STATEMENT, arrayOf<Any>(file, line, start, end, hash, json))
+  fun insertDuplicate(file: String, line: Int, start: Int, end: Int, hash: String, result: Result) {
+    val payload = codec.encode(result)
+    synchronized(writeLock) {
+      persistInternedStrings()
+      connection.execute(INSERT_DUPLICATES_STATEMENT, arrayOf<Any>(file, line, start, end, hash, payload))
+    }
   }
 
   fun insertMetricsData(rowData: MetricTableRowData) {
     val metricTable: MetricTable = rowData.metricTable
     @Language("SQLite") val insertStatement: String = metricTable.getInsertStatement()
-    connection.execute(insertStatement, rowData.getValues())
+    synchronized(writeLock) {
+      connection.execute(insertStatement, rowData.getValues())
+    }
   }
 
   fun deleteMetricsDataForFile(filePath: String, metricTable: MetricTable) {
     @Language("SQLite") val deleteStatement: String = metricTable.getDeleteStatementForFile()
-    connection.execute(deleteStatement, arrayOf(filePath))
+    synchronized(writeLock) {
+      connection.execute(deleteStatement, arrayOf(filePath))
+    }
   }
 
   fun select(inspectionGroup: String): ToolResultsClosableQuery {
     val binder = ObjectBinder(paramCount = 1)
     val statement = connection.prepareStatement(SELECT_STATEMENT, binder)
     binder.bind(inspectionGroup)
-    return ToolResultsClosableQuery(statement)
+    return ToolResultsClosableQuery(statement, codec)
   }
 
-  fun selectDuplicate(file: String, line: Int, start: Int): StringColumnClosableQuery {
+  fun selectDuplicate(file: String, line: Int, start: Int): ResultColumnClosableQuery {
     val binder = ObjectBinder(paramCount = 3)
     val statement = connection.prepareStatement(SELECT_DUPLICATES_STATEMENT, binder)
     binder.bindMultiple(file, line, start)
-    return StringColumnClosableQuery(statement)
+    return ResultColumnClosableQuery(statement, codec)
   }
 
   fun getResultsFromMetricsTable(@Language("SQLite") query: String, numberOfColumns: Int): MetricColumnClosableQuery {
@@ -123,20 +183,262 @@ class QodanaToolResultDatabase private constructor(private val connection: Sqlit
     return MetricColumnClosableQuery(statement, numberOfColumns)
   }
 
-  fun insertRelatedProblem(hash: String, json: String) {
-    connection.execute(INSERT_RELATED_PROBLEM, arrayOf(hash, json))
+  fun insertRelatedProblem(hash: String, result: Result) {
+    val payload = codec.encode(result)
+    synchronized(writeLock) {
+      persistInternedStrings()
+      connection.execute(INSERT_RELATED_PROBLEM, arrayOf(hash, payload))
+    }
   }
 
-  fun selectRelatedProblems(hash: String): StringColumnClosableQuery {
+  fun selectRelatedProblems(hash: String): ResultColumnClosableQuery {
     val binder = ObjectBinder(paramCount = 1)
     val statement = connection.prepareStatement(SELECT_RELATED_PROBLEM, binder)
     binder.bindMultiple(hash)
-    return StringColumnClosableQuery(statement)
+    return ResultColumnClosableQuery(statement, codec)
   }
 
   fun selectTriggeredInspectionIds(): StringColumnClosableQuery =
     StringColumnClosableQuery(connection.prepareStatement(SELECT_INSPECTION_IDS, EmptyBinder))
 
+  fun selectInspectionIds(inspectionGroup: String): StringColumnClosableQuery {
+    val binder = ObjectBinder(paramCount = 1)
+    val statement = connection.prepareStatement(SELECT_GROUP_INSPECTION_IDS, binder)
+    binder.bind(inspectionGroup)
+    return StringColumnClosableQuery(statement)
+  }
+
+  /**
+   * Selects not yet decoded results of a single inspection, ordered by hash.
+   * Decoding with [decodeResultOrNull] can be done outside the database thread.
+   */
+  fun selectPartition(inspectionGroup: String, inspectionId: String): PayloadClosableQuery {
+    val binder = ObjectBinder(paramCount = 2)
+    val statement = connection.prepareStatement(SELECT_PARTITION_STATEMENT, binder)
+    binder.bindMultiple(inspectionGroup, inspectionId)
+    return PayloadClosableQuery(statement)
+  }
+
+  /**
+   * Selects all related problems ordered by the hash of their root problem.
+   */
+  fun selectAllRelatedProblems(): PayloadClosableQuery =
+    PayloadClosableQuery(connection.prepareStatement(SELECT_ALL_RELATED_PROBLEMS, EmptyBinder))
+
+  /**
+   * Selects not yet decoded related problems of the given root problems, to be used instead of per-result [selectRelatedProblems].
+   * At most [MAX_RELATED_PROBLEM_HASHES] hashes are queried at once, so the hashes are split into several queries if needed.
+   */
+  fun selectRelatedProblems(rootHashes: Collection<String>): Sequence<PayloadClosableQuery> =
+    rootHashes.asSequence().chunked(MAX_RELATED_PROBLEM_HASHES).map { hashes ->
+      val binder = ObjectBinder(paramCount = hashes.size)
+      val placeholders = hashes.joinToString(", ") { "?" }
+      @Language("SQLite") val query = "SELECT hash, payload FROM related_problem WHERE hash IN ($placeholders);"
+      val statement = connection.prepareStatement(query, binder)
+      binder.bindMultiple(*hashes.toTypedArray())
+      PayloadClosableQuery(statement)
+    }
+
+  fun decodeResultOrNull(payload: ByteArray): Result? = decodeOrNull(codec, payload)
+
+  /**
+   * Creates a writer that reuses prepared statements and groups inserted rows into transactions.
+   * Rows are committed once [batchSize] rows are pending or [flushIntervalMs] passed since the last commit,
+   * see [ResultsBatchWriter.flushIfNeeded]. The writer must be used from a single coroutine.
+   */
+  fun batchWriter(
+    batchSize: Int = DEFAULT_BATCH_SIZE,
+    flushIntervalMs: Long = DEFAULT_BATCH_FLUSH_INTERVAL_MS,
+  ): ResultsBatchWriter = ResultsBatchWriter(batchSize, flushIntervalMs)
+
+  inner class ResultsBatchWriter internal constructor(
+    private val batchSize: Int,
+    private val flushIntervalMs: Long,
+  ) : AutoCloseable {
+    private val resultsBinder = ObjectBinder(paramCount = 4)
+    private val resultsStatement = connection.prepareStatement(INSERT_STATEMENT, resultsBinder)
+    private val relatedProblemsBinder = ObjectBinder(paramCount = 2)
+    private val relatedProblemsStatement = connection.prepareStatement(INSERT_RELATED_PROBLEM, relatedProblemsBinder)
+
+    private var pendingResults = 0
+    private var pendingRelatedProblems = 0
+    private var lastFlushNanos = System.nanoTime()
+
+    val pendingRows: Int
+      get() = pendingResults + pendingRelatedProblems
+
+    fun insert(inspectionGroup: String, inspectionId: String, hash: String, result: Result) {
+      resultsBinder.bindMultiple(inspectionGroup, inspectionId, hash, codec.encode(result))
+      resultsBinder.addBatch()
+      pendingResults++
+    }
+
+    fun insertRelatedProblem(hash: String, result: Result) {
+      relatedProblemsBinder.bindMultiple(hash, codec.encode(result))
+      relatedProblemsBinder.addBatch()
+      pendingRelatedProblems++
+    }
+
+    /**
+     * @return number of committed rows, 0 if neither the size nor the time threshold was reached
+     */
+    fun flushIfNeeded(): Int {
+      if (pendingRows >= batchSize || System.nanoTime() - lastFlushNanos >= TimeUnit.MILLISECONDS.toNanos(flushIntervalMs)) {
+        return flush()
+      }
+      return 0
+    }
+
+    /**
+     * Commits all pending rows in a single transaction, other writes to the database wait for it to complete.
+     * @return number of committed rows
+     */
+    fun flush(): Int {
+      lastFlushNanos = System.nanoTime()
+      val rows = pendingRows
+      if (rows == 0) return 0
+
+      synchronized(writeLock) {
+        connection.execute("BEGIN TRANSACTION;")
+        try {
+          persistInternedStrings()
+          if (pendingResults > 0) resultsStatement.executeBatch()
+          if (pendingRelatedProblems > 0) relatedProblemsStatement.executeBatch()
+          connection.execute("COMMIT;")
+        }
+        catch (e: Throwable) {
+          connection.execute("ROLLBACK;")
+          throw e
+        }
+        finally {
+          pendingResults = 0
+          pendingRelatedProblems = 0
+        }
+      }
+      return rows
+    }
+
+    override fun close() {
+      try {
+        flush()
+      }
+      finally {
+        resultsStatement.close()
+        relatedProblemsStatement.close()
+      }
+    }
+  }
+
+  /**
+   * Merges tool results databases of a sharded analysis (see `--shard`) into this one.
+   * Payloads are re-encoded, since every shard has its own interned strings.
+   * All rows are copied, results and related problems found by more than one shard are merged when they are read,
+   * exactly like the ones reported more than once by a single analysis (see [org.jetbrains.qodana.staticAnalysis.sarif.resultsFlowByGroup]).
+   */
+  fun mergeShards(shardFiles: List<Path>): ShardMergeStatistics {
+    val seenResults = HashSet<String>()
+    var results = 0
+    var sharedResults = 0
+    batchWriter().use { writer ->
+      for (shardFile in shardFiles) {
+        val shardResults = HashSet<String>()
+        QodanaToolResultDatabase(SqliteConnection(shardFile)).use { shard ->
+          val resultsStatement = shard.connection.prepareStatement(SELECT_ALL_RESULTS, EmptyBinder)
+          try {
+            val resultSet = resultsStatement.executeQuery()
+            while (resultSet.next()) {
+              val group = resultSet.getString(0)!!
+              val inspectionId = resultSet.getString(1)!!
+              val hash = resultSet.getString(2)!!
+              val result = shard.decodeResultOrNull(resultSet.getBytes(3)!!) ?: continue
+              writer.insert(group, inspectionId, hash, result)
+              writer.flushIfNeeded()
+              results++
+              val key = "$group\u0000$inspectionId\u0000$hash"
+              if (shardResults.add(key) && !seenResults.add(key)) sharedResults++
+            }
+          }
+          finally {
+            resultsStatement.close()
+          }
+          shard.selectAllRelatedProblems().use { query ->
+            for (record in query.executeQuery()) {
+              val result = shard.decodeResultOrNull(record.payload) ?: continue
+              writer.insertRelatedProblem(record.hash, result)
+              writer.flushIfNeeded()
+            }
+          }
+          val duplicatesStatement = shard.connection.prepareStatement(SELECT_ALL_DUPLICATES, EmptyBinder)
+          try {
+            val resultSet = duplicatesStatement.executeQuery()
+            while (resultSet.next()) {
+              val result = shard.decodeResultOrNull(resultSet.getBytes(5)!!) ?: continue
+              insertDuplicate(resultSet.getString(0)!!, resultSet.getInt(1), resultSet.getInt(2), resultSet.getInt(3),
+                              resultSet.getString(4)!!, result)
+            }
+          }
+          finally {
+            duplicatesStatement.close()
+          }
+        }
+        copyMetrics(shardFile)
+      }
+    }
+    return ShardMergeStatistics(shardFiles.size, results, sharedResults)
+  }
+
+  /**
+   * Moves all rows from the write-ahead log to the database file, so that the file can be copied on its own.
+   */
+  fun checkpoint() {
+    synchronized(writeLock) {
+      connection.execute("PRAGMA wal_checkpoint(TRUNCATE);")
+    }
+  }
+
+  private fun copyMetrics(shardFile: Path) = synchronized(writeLock) {
+    try {
+      connection.execute("ATTACH DATABASE ? AS shard;", arrayOf(shardFile.toString()))
+      try {
+        for (metricTable in MetricTable.EP.extensionList) {
+          @Language("SQLite") val copyStatement: String = metricTable.getCopyStatement("shard")
+          connection.execute(copyStatement)
+        }
+      }
+      finally {
+        connection.execute("DETACH DATABASE shard;")
+      }
+    }
+    catch (e: Exception) {
+      LOG.warn("Failed to copy metrics from $shardFile", e)
+    }
+  }
+
+  private fun loadInternedStrings(): List<String> =
+    StringColumnClosableQuery(connection.prepareStatement(SELECT_INTERNED_STRINGS, EmptyBinder)).use { it.executeQuery().toList() }
+
+  /**
+   * Writes strings interned since the last call, must precede the rows referencing them.
+   * Must be called under [writeLock]; overlapping ranges persisted twice are ignored by the `INSERT OR IGNORE` statement.
+   */
+  private fun persistInternedStrings() {
+    val (firstId, values) = internedStrings.notPersisted()
+    if (values.isEmpty()) return
+    val binder = ObjectBinder(paramCount = 2)
+    val statement = connection.prepareStatement(INSERT_INTERNED_STRING, binder)
+    try {
+      values.forEachIndexed { index, value ->
+        binder.bindMultiple(firstId + index, value)
+        binder.addBatch()
+      }
+      statement.executeBatch()
+    }
+    finally {
+      statement.close()
+    }
+    internedStrings.markPersisted(firstId + values.size)
+  }
+
   class MetricColumnClosableQuery internal constructor(
     private val statement: SqlitePreparedStatement<*>, private val numberOfColumns: Int,
   ) : AutoCloseable {
@@ -175,16 +477,57 @@ class QodanaToolResultDatabase private constructor(private val connection: Sqlit
     }
   }
 
-  class ToolResultsClosableQuery internal constructor(private val statement: SqlitePreparedStatement<*>) : AutoCloseable {
+  class PayloadClosableQuery internal constructor(private val statement: SqlitePreparedStatement<*>) : AutoCloseable {
     /**
-     * Provides iterable for sequential access to the underlying result set with tool results
+     * Provides iterable for sequential access to the underlying result set with encoded tool results
      */
     fun executeQuery() = sequence {
       val resultSet = statement.executeQuery()
       while (resultSet.next()) {
+        yield(PayloadRecord(resultSet.getString(0)!!, resultSet.getBytes(1)!!))
+      }
+    }
+
+    override fun close() {
+      statement.close()
+    }
+  }
+
+  class ResultColumnClosableQuery internal constructor(
+    private val statement: SqlitePreparedStatement<*>,
+    private val codec: ResultBinaryCodec,
+  ) : AutoCloseable {
+    /**
+     * Provides iterable for sequential access to the underlying result set with tool results.
+     * Rows that can't be decoded are logged and skipped.
+     */
+    fun executeQuery() = sequence {
+      val resultSet = statement.executeQuery()
+      while (resultSet.next()) {
+        decodeOrNull(codec, resultSet.getBytes(0)!!)?.let { yield(it) }
+      }
+    }
+
+    override fun close() {
+      statement.close()
+    }
+  }
+
+  class ToolResultsClosableQuery internal constructor(
+    private val statement: SqlitePreparedStatement<*>,
+    private val codec: ResultBinaryCodec,
+  ) : AutoCloseable {
+    /**
+     * Provides iterable for sequential access to the underlying result set with tool results.
+     * Rows that can't be decoded are logged and skipped.
+     */
+    fun executeQuery() = sequence {
+      val resultSet = statement.executeQuery()
+      while (resultSet.next()) {
+        val result = decodeOrNull(codec, resultSet.getBytes(2)!!) ?: continue
         yield(ToolResultRecord(resultSet.getString(0)!!,
                                resultSet.getString(1)!!,
-                               resultSet.getString(2)!!))
+                               result))
       }
     }
 
@@ -194,4 +537,20 @@ class QodanaToolResultDatabase private constructor(private val connection: Sqlit
   }
 }
 
-data class ToolResultRecord(val inspectionId: String, val hash: String, val json: String)
+/**
+ * @param sharedResults number of results of a shard that were already found by a previously merged shard
+ */
+data class ShardMergeStatistics(val shards: Int, val results: Int, val sharedResults: Int)
+
+data class ToolResultRecord(val inspectionId: String, val hash: String, val result: Result)
+
+class PayloadRecord(val hash: String, val payload: ByteArray)
+
+private fun decodeOrNull(codec: ResultBinaryCodec, payload: ByteArray): Result? =
+  try {
+    codec.decode(payload)
+  }
+  catch (e: Exception) {
+    LOG.error("Error of reading result from database", e)
+    null
+  }
@@ -1,7 +1,6 @@
 package org.jetbrains.qodana.staticAnalysis.sarif
 
 import com.intellij.openapi.project.Project
-import com.jetbrains.qodana.sarif.model.Result
 import com.jetbrains.qodana.sarif.model.Run
 import org.jetbrains.qodana.staticAnalysis.inspections.config.QodanaConfig
 
@@ -11,22 +10,9 @@ internal class ResultSummaryContributor : SarifReportContributor {
   }
 
   override fun contribute(run: Run, project: Project, config: QodanaConfig) {
-    val baselineFilter: (Result) -> Boolean = when {
-      config.baseline == null -> { _ -> true }
-      else -> { x -> x.baselineState == Result.BaselineState.NEW }
-    }
+    // results streamed from the tool results database are summarized by the script, see ResultCounts
+    if (run.results == null && run.resultSummary != null) return
 
-    val resultsBySeverity = run.results.orEmpty()
-      .asSequence()
-      .filter(baselineFilter)
-      .groupingBy(Result::qodanaSeverity)
-      .eachCount()
-
-    val total = resultsBySeverity.values.sum()
-
-    run.resultSummary = buildMap {
-      resultsBySeverity.forEach { (k, v) -> put(k.name.lowercase(), v) }
-      put(TOTAL_KEY, total)
-    }
+    run.resultSummary = ResultCounts.of(run.results.orEmpty()).resultSummary(baselineApplied = config.baseline != null)
   }
 }
@@ -0,0 +1,76 @@
+package org.jetbrains.qodana.staticAnalysis.sarif
+
+import com.jetbrains.qodana.sarif.model.Result
+import kotlinx.coroutines.flow.Flow
+
+/**
+ * Number of results per [Key], everything the command line output, the result summary and [org.jetbrains.qodana.staticAnalysis.inspections.config.SkipResultStrategy]
+ * need to know about the results of a run. Unlike the results themselves, the counts are small enough to be kept
+ * for runs whose results are streamed from the tool results database.
+ */
+class ResultCounts private constructor(private val counts: Map<Key, Int>) {
+  data class Key(
+    val ruleId: String?,
+    val baselineState: Result.BaselineState?,
+    val severity: QodanaSeverity,
+    val hasFixes: Boolean,
+  )
+
+  companion object {
+    val EMPTY: ResultCounts = ResultCounts(emptyMap())
+
+    fun of(results: Iterable<Result>): ResultCounts {
+      val builder = Builder()
+      results.forEach(builder::add)
+      return builder.build()
+    }
+
+    suspend fun of(results: Flow<Result>): ResultCounts {
+      val builder = Builder()
+      results.collect(builder::add)
+      return builder.build()
+    }
+  }
+
+  /**
+   * Keys are kept in the order of their first result.
+   */
+  private class Builder {
+    private val counts = LinkedHashMap<Key, Int>()
+
+    fun add(result: Result) {
+      val key = Key(result.ruleId, result.baselineState, result.qodanaSeverity, result.hasFixes())
+      counts.merge(key, 1, Int::plus)
+    }
+
+    fun build(): ResultCounts = ResultCounts(counts)
+  }
+
+  val total: Int
+    get() = counts.values.sum()
+
+  fun any(predicate: (Key) -> Boolean): Boolean = counts.keys.any(predicate)
+
+  fun count(predicate: (Key) -> Boolean): Int = counts.entries.sumOf { (key, count) -> if (predicate(key)) count else 0 }
+
+  /**
+   * Sums the counts of the keys matching [predicate] by [selector].
+   */
+  fun <T> countBy(predicate: (Key) -> Boolean = { true }, selector: (Key) -> T): Map<T, Int> =
+    buildMap {
+      for ((key, count) in counts) {
+        if (predicate(key)) merge(selector(key), count, Int::plus)
+      }
+    }
+
+  /**
+   * See [ResultSummaryContributor]: only the new results are summarized if the baseline was applied.
+   */
+  fun resultSummary(baselineApplied: Boolean): Map<String, Int> {
+    val resultsBySeverity = countBy({ !baselineApplied || it.baselineState == Result.BaselineState.NEW }) { it.severity }
+    return buildMap {
+      resultsBySeverity.forEach { (k, v) -> put(k.name.lowercase(), v) }
+      put(ResultSummaryContributor.TOTAL_KEY, resultsBySeverity.values.sum())
+    }
+  }
+}
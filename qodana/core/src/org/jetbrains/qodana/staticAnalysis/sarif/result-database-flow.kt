@@ -1,20 +1,30 @@
 package org.jetbrains.qodana.staticAnalysis.sarif
 
-import com.google.gson.JsonSyntaxException
 import com.intellij.openapi.diagnostic.logger
-import com.jetbrains.qodana.sarif.SarifUtil
+import com.jetbrains.qodana.sarif.model.Location
 import com.jetbrains.qodana.sarif.model.Result
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.async
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.flow.flowOn
 import kotlinx.coroutines.flow.transform
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 import org.jetbrains.qodana.staticAnalysis.StaticAnalysisDispatchers
+import org.jetbrains.qodana.staticAnalysis.inspections.runner.PayloadRecord
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.ProblemType
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaToolResultDatabase
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.VULNERABLE_API_INSPECTION_ID
 
 private val LOG = logger<QodanaToolResultDatabase>()
-private val GSON = SarifUtil.createGson()
+
+private val ASSEMBLY_PARALLELISM: Int =
+  System.getProperty("qodana.results.assembly.parallelism")?.toIntOrNull() ?: Runtime.getRuntime().availableProcessors()
+
+private const val ASSEMBLY_CHUNK_SIZE = 1000
 
 /**
  * Given a database filled with SARIF [Result]s provide the flow, to iterate over
@@ -34,7 +44,7 @@ fun QodanaToolResultDatabase.resultsFlowByGroup(inspectionGroup: String): Flow<R
 
 private fun QodanaToolResultDatabase.uniqueResultsFlow(inspectionGroup: String): Flow<Result> = flow {
   select(inspectionGroup).use { query ->
-    val sameHashResults = mutableListOf<String>()
+    val sameHashResults = mutableListOf<Result>()
     var previousHash = ""
     for (resultSet in query.executeQuery()) {
       if (previousHash != resultSet.hash && sameHashResults.any()) {
@@ -42,27 +52,120 @@ private fun QodanaToolResultDatabase.uniqueResultsFlow(inspectionGroup: String):
         sameHashResults.clear()
       }
       previousHash = resultSet.hash
-      sameHashResults.add(resultSet.json)
+      sameHashResults.add(resultSet.result)
     }
     processSameHash(sameHashResults)?.let { emit(it) }
   }
 }.flowOn(StaticAnalysisDispatchers.IO)
 
+/**
+ * Produces the same results in the same order as [resultsFlowByGroup], but assembles them in parallel.
+ *
+ * The group is partitioned by inspection id and partitions are split into chunks of about [chunkSize] rows,
+ * results with the same hash are never split. Chunks are read sequentially on the IO dispatcher,
+ * decoded and deduplicated on the Default dispatcher, at most [parallelism] chunks at a time.
+ * Related locations are fetched with a single query per chunk for the results of the chunk instead of a query per result.
+ * Chunks are emitted in inspection id order, so the resulting report is deterministic.
+ *
+ * Parallelism is configured with `qodana.results.assembly.parallelism`, `1` falls back to [resultsFlowByGroup].
+ */
+fun QodanaToolResultDatabase.partitionedResultsFlowByGroup(
+  inspectionGroup: String,
+  parallelism: Int = ASSEMBLY_PARALLELISM,
+  chunkSize: Int = ASSEMBLY_CHUNK_SIZE,
+): Flow<Result> {
+  if (parallelism <= 1) return resultsFlowByGroup(inspectionGroup)
+
+  return flow {
+    val inspectionIds = withContext(StaticAnalysisDispatchers.IO) {
+      selectInspectionIds(inspectionGroup).use { it.executeQuery().toList() }
+    }
+    coroutineScope {
+      // bounded, so that only a limited number of assembled chunks is held in memory
+      val chunks = Channel<Deferred<List<Result>>>(capacity = parallelism)
+      launch(StaticAnalysisDispatchers.IO) {
+        for (inspectionId in inspectionIds) {
+          selectPartition(inspectionGroup, inspectionId).use { query ->
+            for (rows in query.executeQuery().chunkedByHash(chunkSize)) {
+              chunks.send(async(StaticAnalysisDispatchers.Default) { assembleChunk(rows) })
+            }
+          }
+        }
+        chunks.close()
+      }
+      for (chunk in chunks) {
+        chunk.await().forEach { emit(it) }
+      }
+    }
+  }
+}
+
+private fun Sequence<PayloadRecord>.chunkedByHash(chunkSize: Int): Sequence<List<PayloadRecord>> = sequence {
+  var chunk = ArrayList<PayloadRecord>()
+  for (record in this@chunkedByHash) {
+    if (chunk.size >= chunkSize && chunk.last().hash != record.hash) {
+      yield(chunk)
+      chunk = ArrayList()
+    }
+    chunk.add(record)
+  }
+  if (chunk.isNotEmpty()) yield(chunk)
+}
+
+private suspend fun QodanaToolResultDatabase.assembleChunk(rows: List<PayloadRecord>): List<Result> {
+  val results = mutableListOf<Result>()
+  var index = 0
+  while (index < rows.size) {
+    val hash = rows[index].hash
+    val sameHashResults = mutableListOf<Result>()
+    while (index < rows.size && rows[index].hash == hash) {
+      decodeResultOrNull(rows[index].payload)?.let { sameHashResults.add(it) }
+      index++
+    }
+    processSameHash(sameHashResults)?.let { results.add(it) }
+  }
+
+  val rootHashes = results.mapNotNullTo(HashSet()) { it.getOrAssignProperties()[RELATED_PROBLEMS_ROOT_HASH_PROP] as? String }
+  if (rootHashes.isEmpty()) return results
+
+  val relatedLocations = withContext(StaticAnalysisDispatchers.IO) { fetchRelatedLocations(rootHashes) }
+  for (result in results) {
+    val rootHash = result.getOrAssignProperties()[RELATED_PROBLEMS_ROOT_HASH_PROP] as? String ?: continue
+    applyRelatedLocations(result, relatedLocations[rootHash].orEmpty())
+  }
+  return results
+}
+
+private fun QodanaToolResultDatabase.fetchRelatedLocations(rootHashes: Collection<String>): Map<String, Set<Location>> {
+  val locationsByHash = mutableMapOf<String, MutableSet<Location>>()
+  for (query in selectRelatedProblems(rootHashes)) {
+    query.use {
+      for (record in it.executeQuery()) {
+        val locations = decodeResultOrNull(record.payload)?.locations ?: continue
+        locationsByHash.getOrPut(record.hash) { mutableSetOf() }.addAll(locations)
+      }
+    }
+  }
+  return locationsByHash
+}
+
 private fun QodanaToolResultDatabase.updateRelatedLocations(result: Result) {
   val rootHash = result.getOrAssignProperties()[RELATED_PROBLEMS_ROOT_HASH_PROP] as? String ?: return
 
   val locations = selectRelatedProblems(rootHash).use { query ->
-    val relatedResults = query.executeQuery().toList().parseResults()
-    relatedResults.flatMap { it.locations }
+    query.executeQuery().flatMap { it.locations }.toList()
   }.toSet()
+  applyRelatedLocations(result, locations)
+}
+
+private fun applyRelatedLocations(result: Result, locations: Set<Location>) {
   result.relatedLocations = result.relatedLocations?.plus(locations) ?: locations
   if (result.ruleId == VULNERABLE_API_INSPECTION_ID && result.relatedLocations?.isNotEmpty() == true) {
     result.getOrAssignProperties()[PROBLEM_TYPE] = ProblemType.VULNERABLE_API_WITH_RELATED_LOCATIONS
   }
 }
 
-private fun processSameHash(resultJsons: List<String>): Result? {
-  val results = resultJsons.parseResults()
+private fun processSameHash(results: List<Result>): Result? {
   if (results.isEmpty() || results.size == 1) return results.firstOrNull()
 
   val uniqueResults = results.toSet()
@@ -84,14 +187,3 @@ private fun processSameHash(resultJsons: List<String>): Result? {
   }
   return resultToSubmit
 }
-
-fun List<String>.parseResults(): List<Result> {
-    return this.mapNotNull { json ->
-        try {
-            GSON.fromJson(json, Result::class.java)
-        } catch (e: JsonSyntaxException) {
-          LOG.error("Error of reading results in database '$json'", e)
-          null
-        }
-    }
-}
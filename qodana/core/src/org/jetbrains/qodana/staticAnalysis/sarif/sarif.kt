@@ -14,8 +14,6 @@ import com.intellij.openapi.project.Project
 import com.intellij.openapi.vfs.VfsUtil
 import com.intellij.openapi.vfs.VirtualFile
 import com.intellij.openapi.vfs.VirtualFileManager
-import com.intellij.util.io.createDirectories
-import com.jetbrains.qodana.sarif.SarifUtil
 import com.jetbrains.qodana.sarif.model.ArtifactContent
 import com.jetbrains.qodana.sarif.model.ArtifactLocation
 import com.jetbrains.qodana.sarif.model.Invocation
@@ -41,15 +39,19 @@ import com.jetbrains.qodana.sarif.model.SarifReport
 import com.jetbrains.qodana.sarif.model.Tool
 import com.jetbrains.qodana.sarif.model.ToolComponent
 import com.jetbrains.qodana.sarif.model.ToolComponentReference
-import kotlinx.coroutines.runInterruptible
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.asFlow
 import kotlinx.coroutines.withContext
 import org.jetbrains.qodana.staticAnalysis.StaticAnalysisDispatchers
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.getQodanaProductName
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.startup.LoadedProfile
 import org.jetbrains.qodana.staticAnalysis.profile.QodanaProfile
 import org.jetbrains.qodana.staticAnalysis.qodanaEnv
+import org.jetbrains.qodana.staticAnalysis.sarif.textFormat.RenderedDescription
+import org.jetbrains.qodana.staticAnalysis.sarif.textFormat.RuleDescriptionsBundle
 import org.jetbrains.qodana.staticAnalysis.sarif.textFormat.htmlToMarkdown
 import org.jetbrains.qodana.staticAnalysis.sarif.textFormat.htmlToPlainText
+import org.jetbrains.qodana.staticAnalysis.sarif.textFormat.textFormatCacheStatistics
 import org.jetbrains.qodana.staticAnalysis.script.AnalysisKind
 import org.jetbrains.qodana.staticAnalysis.stat.UsageCollector.profileForReporting
 import java.io.IOException
@@ -211,6 +213,7 @@ suspend fun fillComponents(tool: Tool, qodanaProfile: QodanaProfile) {
   val driver = tool.driver ?: createDriver()
   val taxonomy = InspectionsTaxonomy()
   val components = mutableMapOf<String, ToolComponent>()
+  val descriptions = RuleDescriptionsBundle.load(qodanaProfile.mainGroup.profile.name)
   qodanaProfile.mainGroup.profile.tools.forEach { tools ->
     val defaultToolWrapper = tools.getInspectionTool(null)
     val pluginId = defaultToolWrapper.extension?.pluginDescriptor?.pluginId?.idString
@@ -222,8 +225,11 @@ suspend fun fillComponents(tool: Tool, qodanaProfile: QodanaProfile) {
       driver
     }
     val (index, descriptor) = taxonomy.addTool(defaultToolWrapper)
-    component.rules.add(createRule(tools, index, descriptor.id))
+    component.rules.add(createRule(tools, index, descriptor.id, descriptions))
   }
+  descriptions.save()
+  val statistics = textFormatCacheStatistics()
+  LOG.info("Description conversions: ${statistics.hits} cached, ${statistics.misses} converted")
   driver.taxa = taxonomy.taxonomy
   tool.driver = driver
   tool.extensions = components.values.toSet()
@@ -240,7 +246,12 @@ fun createTaxonomyReference(taxonomyIndex: Int, taxonomyId: String): ReportingDe
     .withKinds(setOf("superset"))
 }
 
-suspend fun createRule(tools: ToolsImpl, taxonomyIndex: Int, taxonomyId: String): ReportingDescriptor {
+suspend fun createRule(
+  tools: ToolsImpl,
+  taxonomyIndex: Int,
+  taxonomyId: String,
+  descriptions: RuleDescriptionsBundle? = null,
+): ReportingDescriptor {
   val defaultToolWrapper = tools.getInspectionTool(null)
 
   val ideaSeverity = tools.level.severity
@@ -263,12 +274,15 @@ suspend fun createRule(tools: ToolsImpl, taxonomyIndex: Int, taxonomyId: String)
     "No description available"
   }
 
+  val renderedDescription = descriptions?.render(description)
+                            ?: RenderedDescription(htmlToPlainText(description), htmlToMarkdown(description))
+
   return ReportingDescriptor(tools.shortName)
     .withShortDescription(MultiformatMessageString().withText(defaultToolWrapper.displayName))
     .withFullDescription(
       MultiformatMessageString()
-        .withText(htmlToPlainText(description))
-        .withMarkdown(htmlToMarkdown(description))
+        .withText(renderedDescription.text)
+        .withMarkdown(renderedDescription.markdown)
     )
     .withRelationships(setOf(reportingDescriptorRelationship))
     .withDefaultConfiguration(defaultConfiguration)
@@ -325,12 +339,13 @@ internal fun Level.toSeverity(): HighlightSeverity {
   }
 }
 
-internal suspend fun writeReport(path: Path, report: SarifReport) {
+internal suspend fun writeReport(
+  path: Path,
+  report: SarifReport,
+  resultsOf: (Run) -> Flow<Result>? = { run -> run.results?.asFlow() },
+) {
   try {
-    runInterruptible(StaticAnalysisDispatchers.IO) {
-      path.parent.createDirectories()
-      SarifUtil.writeReport(path, report)
-    }
+    writeReportStreaming(path, report, resultsOf)
   }
   catch (e: IOException) {
     LOG.error("Writing sarif report error. Path: $path", e)
@@ -0,0 +1,108 @@
+package org.jetbrains.qodana.staticAnalysis.sarif
+
+import com.google.gson.Gson
+import com.google.gson.JsonObject
+import com.google.gson.stream.JsonWriter
+import com.intellij.util.io.createDirectories
+import com.jetbrains.qodana.sarif.SarifUtil
+import com.jetbrains.qodana.sarif.model.Result
+import com.jetbrains.qodana.sarif.model.Run
+import com.jetbrains.qodana.sarif.model.SarifReport
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.withContext
+import org.jetbrains.qodana.staticAnalysis.StaticAnalysisDispatchers
+import java.nio.file.Path
+import kotlin.io.path.bufferedWriter
+
+private const val RUNS_KEY = "runs"
+private const val RESULTS_KEY = "results"
+
+/**
+ * Writes [report] to [path] without materializing all results of a run at once.
+ *
+ * Results of each run are pulled from [resultsOf] and written one by one to `runs[].results[]` with a Gson [JsonWriter],
+ * run metadata (tool, invocations, taxonomies, properties) is written around that stream.
+ * The peak heap is therefore defined by the rules and other metadata, not by the number of results,
+ * given that [resultsOf] produces results lazily, e.g. from [org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaToolResultDatabase].
+ *
+ * By default, results already set to the run are written.
+ */
+internal suspend fun writeReportStreaming(
+  path: Path,
+  report: SarifReport,
+  resultsOf: (Run) -> Flow<Result>? = { run -> run.results?.asFlow() },
+) {
+  withContext(StaticAnalysisDispatchers.IO) {
+    path.parent.createDirectories()
+    val gson = SarifUtil.createGson()
+    path.bufferedWriter().use { writer ->
+      gson.newJsonWriter(writer).use { jsonWriter ->
+        StreamingSarifWriter(gson, jsonWriter).write(report, resultsOf)
+      }
+    }
+  }
+}
+
+private class StreamingSarifWriter(private val gson: Gson, private val writer: JsonWriter) {
+  suspend fun write(report: SarifReport, resultsOf: (Run) -> Flow<Result>?) {
+    val runs = report.runs
+    val metadata = withDetached({ report.runs }, { report.runs = it }, emptyList()) { gson.toJsonTree(report).asJsonObject }
+
+    writer.beginObject()
+    writeEntries(metadata) {
+      if (runs != null) {
+        writer.name(RUNS_KEY)
+        writer.beginArray()
+        for (run in runs) {
+          writeRun(run, resultsOf(run))
+        }
+        writer.endArray()
+      }
+    }
+    writer.endObject()
+  }
+
+  private suspend fun writeRun(run: Run, results: Flow<Result>?) {
+    val metadata = withDetached({ run.results }, { run.results = it }, emptyList()) { gson.toJsonTree(run).asJsonObject }
+
+    writer.beginObject()
+    writeEntries(metadata) {
+      if (results != null) {
+        writer.name(RESULTS_KEY)
+        writer.beginArray()
+        results.collect { result -> gson.toJson(result, Result::class.java, writer) }
+        writer.endArray()
+      }
+    }
+    writer.endObject()
+  }
+
+  /**
+   * Writes entries of [metadata] in their original order, the streamed part is written in place of the empty [RUNS_KEY] or [RESULTS_KEY] placeholder.
+   */
+  private suspend fun writeEntries(metadata: JsonObject, writeStreamed: suspend () -> Unit) {
+    for ((key, value) in metadata.entrySet()) {
+      if (key == RUNS_KEY || key == RESULTS_KEY) {
+        writeStreamed()
+        continue
+      }
+      writer.name(key)
+      gson.toJson(value, writer)
+    }
+  }
+}
+
+/**
+ * Temporarily replaces a (possibly huge) property with [placeholder], so that the rest of the object can be serialized into a tree.
+ */
+private inline fun <T, R> withDetached(getter: () -> T, setter: (T) -> Unit, placeholder: T, action: () -> R): R {
+  val value = getter()
+  setter(placeholder)
+  try {
+    return action()
+  }
+  finally {
+    setter(value)
+  }
+}
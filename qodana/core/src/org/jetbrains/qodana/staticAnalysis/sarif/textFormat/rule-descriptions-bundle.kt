@@ -0,0 +1,103 @@
+package org.jetbrains.qodana.staticAnalysis.sarif.textFormat
+
+import com.intellij.openapi.application.ApplicationInfo
+import com.intellij.openapi.application.PathManager
+import com.intellij.openapi.diagnostic.logger
+import com.intellij.util.io.createDirectories
+import kotlinx.coroutines.runInterruptible
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.SerializationException
+import kotlinx.serialization.json.Json
+import org.jetbrains.qodana.staticAnalysis.StaticAnalysisDispatchers
+import java.io.IOException
+import java.nio.file.Path
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.io.path.Path
+import kotlin.io.path.exists
+import kotlin.io.path.readText
+import kotlin.io.path.writeText
+
+private val LOG = logger<RuleDescriptionsBundle>()
+
+private const val BUNDLE_FORMAT_VERSION = 1
+
+@Serializable
+data class RenderedDescription(val text: String, val markdown: String)
+
+@Serializable
+private data class RuleDescriptionsBundleData(
+  val version: Int,
+  val build: String,
+  val descriptions: Map<String, RenderedDescription>,
+)
+
+/**
+ * Plain text and markdown renderings of rule descriptions, persisted between runs per inspection profile,
+ * so that the rules of the report are built without converting every description with Flexmark and Jsoup.
+ *
+ * Descriptions are keyed by the hash of their HTML, the bundle is discarded when the IDE build changes.
+ * Only descriptions used by the last run are saved. The bundle is stored in `qodana.rule.descriptions.dir`
+ * or in the IDE system directory, disabled with `-Dqodana.rule.descriptions.bundle=false`.
+ */
+class RuleDescriptionsBundle private constructor(
+  private val path: Path?,
+  private val loaded: Map<String, RenderedDescription>,
+) {
+  companion object {
+    suspend fun load(profileName: String): RuleDescriptionsBundle {
+      if (!System.getProperty("qodana.rule.descriptions.bundle", "true").toBoolean()) return RuleDescriptionsBundle(null, emptyMap())
+      val dir = System.getProperty("qodana.rule.descriptions.dir")?.let { Path(it) }
+                ?: PathManager.getSystemDir().resolve("qodana").resolve("rule-descriptions")
+      val path = dir.resolve("${sha256(profileName).take(16)}.json")
+      val descriptions = try {
+        runInterruptible(StaticAnalysisDispatchers.IO) {
+          if (!path.exists()) return@runInterruptible emptyMap()
+          val data = Json.decodeFromString<RuleDescriptionsBundleData>(path.readText())
+          if (data.version != BUNDLE_FORMAT_VERSION || data.build != currentBuild()) emptyMap() else data.descriptions
+        }
+      }
+      catch (e: IOException) {
+        LOG.warn("Failed to load rule descriptions bundle $path", e)
+        emptyMap()
+      }
+      catch (e: SerializationException) {
+        LOG.warn("Failed to load rule descriptions bundle $path", e)
+        emptyMap()
+      }
+      return RuleDescriptionsBundle(path, descriptions)
+    }
+
+    private fun currentBuild(): String = ApplicationInfo.getInstance().build.asString()
+
+    private fun sha256(value: String): String =
+      MessageDigest.getInstance("SHA-256").digest(value.toByteArray(Charsets.UTF_8)).joinToString("") { "%02x".format(it) }
+  }
+
+  private val used = ConcurrentHashMap<String, RenderedDescription>()
+
+  private val rendered = AtomicInteger()
+
+  fun render(html: String): RenderedDescription {
+    val key = sha256(html)
+    return used.computeIfAbsent(key) {
+      loaded[key] ?: RenderedDescription(htmlToPlainText(html), htmlToMarkdown(html)).also { rendered.incrementAndGet() }
+    }
+  }
+
+  suspend fun save() {
+    val path = path ?: return
+    if (rendered.get() == 0 && used.keys == loaded.keys) return
+    try {
+      runInterruptible(StaticAnalysisDispatchers.IO) {
+        path.parent.createDirectories()
+        path.writeText(Json.encodeToString(RuleDescriptionsBundleData(BUNDLE_FORMAT_VERSION, currentBuild(), used.toMap())))
+      }
+      LOG.info("Rule descriptions bundle saved: ${used.size - rendered.get()} reused, ${rendered.get()} rendered")
+    }
+    catch (e: IOException) {
+      LOG.warn("Failed to save rule descriptions bundle $path", e)
+    }
+  }
+}
@@ -1,5 +1,7 @@
 package org.jetbrains.qodana.staticAnalysis.sarif.textFormat
 
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
 import com.intellij.openapi.util.text.StringUtil
 import com.intellij.xml.util.XmlStringUtil
 import com.vladsch.flexmark.html.HtmlRenderer
@@ -13,6 +15,15 @@ import org.jsoup.nodes.Element
 
 private val htmlToMarkdownConverter by lazy { createHtmlToMarkdownConverter() }
 
+/**
+ * Descriptions and messages are often converted more than once per run, e.g. descriptions of the same inspection
+ * in several profile groups or repeated problem messages, so conversions are cached by the HTML content.
+ */
+private const val CONVERSION_CACHE_SIZE = 4096L
+
+private val htmlToMarkdownCache: Cache<String, String> = createConversionCache()
+private val htmlToPlainTextCache: Cache<String, String> = createConversionCache()
+
 private val markdownToHtmlParser by lazy { Parser.builder().build() }
 private val markdownToHtmlRenderer by lazy { HtmlRenderer.builder().build() }
 
@@ -28,11 +39,34 @@ private fun createHtmlToMarkdownConverter(): FlexmarkHtmlConverter {
     .build()
 }
 
+private fun createConversionCache(): Cache<String, String> =
+  CacheBuilder.newBuilder().maximumSize(CONVERSION_CACHE_SIZE).recordStats().build()
+
+private inline fun Cache<String, String>.getOrConvert(html: String, convert: (String) -> String): String {
+  getIfPresent(html)?.let { return it }
+  return convert(html).also { put(html, it) }
+}
+
+data class TextFormatCacheStatistics(val hits: Long, val misses: Long) {
+  val hitRate: Double
+    get() = if (hits + misses == 0L) 0.0 else hits.toDouble() / (hits + misses)
+}
+
+fun textFormatCacheStatistics(): TextFormatCacheStatistics {
+  val markdown = htmlToMarkdownCache.stats()
+  val plainText = htmlToPlainTextCache.stats()
+  return TextFormatCacheStatistics(markdown.hitCount() + plainText.hitCount(), markdown.missCount() + plainText.missCount())
+}
+
 fun htmlToMarkdown(html: String): String {
-  return htmlToMarkdownConverter.convert(html, -1)
+  return htmlToMarkdownCache.getOrConvert(html) { htmlToMarkdownConverter.convert(it, -1) }
 }
 
 fun htmlToPlainText(html: String): String {
+  return htmlToPlainTextCache.getOrConvert(html, ::convertHtmlToPlainText)
+}
+
+private fun convertHtmlToPlainText(html: String): String {
   val htmlElement = Jsoup.parse(html)
 
   val codes = htmlElement.select("code")
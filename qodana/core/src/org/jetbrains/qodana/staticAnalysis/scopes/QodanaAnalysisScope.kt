@@ -46,19 +46,27 @@ class QodanaAnalysisScope : AnalysisScope {
 
   companion object {
     fun fromConfigOrDefault(config: QodanaConfig, project: Project, onPathNotFound: (Path) -> Unit): QodanaAnalysisScope {
-      val configured = config.onlyDirectory ?: return QodanaAnalysisScope(GlobalSearchScope.projectScope(project), project)
+      val searchScope = configuredSearchScope(config, project, onPathNotFound)
+      val shard = config.shard
+      // the primary shard keeps the whole scope for global inspections, its local inspections are filtered by the context
+      if (shard != null && !shard.isPrimary) {
+        return QodanaAnalysisScope(QodanaShardSearchScope(searchScope, shard, config.projectPath), project)
+      }
+      return QodanaAnalysisScope(searchScope, project)
+    }
+
+    private fun configuredSearchScope(config: QodanaConfig, project: Project, onPathNotFound: (Path) -> Unit): GlobalSearchScope {
+      val configured = config.onlyDirectory ?: return GlobalSearchScope.projectScope(project)
       val absolute = configured.let { if (!it.isAbsolute) config.projectPath.resolve(it) else it }
 
       val vfsDir = LocalFileSystem.getInstance().findFileByPath(absolute.invariantSeparatorsPathString)
-      val searchScope = if (vfsDir == null) {
+      return if (vfsDir == null) {
         onPathNotFound(absolute)
         GlobalSearchScope.projectScope(project)
       }
       else {
         GlobalSearchScopesCore.directoriesScope(project, true, vfsDir)
       }
-
-      return QodanaAnalysisScope(searchScope, project)
     }
   }
 }
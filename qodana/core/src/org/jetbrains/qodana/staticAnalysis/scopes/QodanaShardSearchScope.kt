@@ -0,0 +1,38 @@
+package org.jetbrains.qodana.staticAnalysis.scopes
+
+import com.intellij.openapi.module.ModuleUtilCore
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.psi.search.DelegatingGlobalSearchScope
+import com.intellij.psi.search.GlobalSearchScope
+import org.jetbrains.qodana.staticAnalysis.inspections.config.QodanaShard
+import org.jetbrains.qodana.staticAnalysis.inspections.config.ShardingStrategy
+import java.nio.file.Path
+import kotlin.io.path.Path
+import kotlin.io.path.invariantSeparatorsPathString
+
+fun QodanaShard.ownsFile(file: VirtualFile, project: Project, projectPath: Path): Boolean {
+  val moduleName = if (strategy == ShardingStrategy.MODULE) ModuleUtilCore.findModuleForFile(file, project)?.name else null
+  return owns(moduleName ?: relativePath(file, projectPath))
+}
+
+private fun relativePath(file: VirtualFile, projectPath: Path): String {
+  val path = Path(file.path)
+  return if (path.startsWith(projectPath)) projectPath.relativize(path).invariantSeparatorsPathString else file.path
+}
+
+/**
+ * Narrows [baseScope] to the files owned by [shard].
+ */
+internal class QodanaShardSearchScope(
+  baseScope: GlobalSearchScope,
+  private val shard: QodanaShard,
+  private val projectPath: Path,
+) : DelegatingGlobalSearchScope(baseScope, shard) {
+  override fun contains(file: VirtualFile): Boolean {
+    if (!super.contains(file)) return false
+    if (file.isDirectory) return true
+    val project = project ?: return false
+    return shard.ownsFile(file, project, projectPath)
+  }
+}
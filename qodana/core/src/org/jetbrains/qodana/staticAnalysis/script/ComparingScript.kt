@@ -7,11 +7,15 @@ import com.jetbrains.qodana.sarif.model.Run
 import com.jetbrains.qodana.sarif.model.SarifReport
 import kotlinx.coroutines.NonCancellable
 import kotlinx.coroutines.cancelChildren
+import kotlinx.coroutines.flow.asFlow
 import kotlinx.coroutines.job
 import kotlinx.coroutines.supervisorScope
 import kotlinx.coroutines.withContext
+import org.jetbrains.qodana.staticAnalysis.inspections.config.FixesStrategy
 import org.jetbrains.qodana.staticAnalysis.inspections.config.QodanaConfig
 import org.jetbrains.qodana.staticAnalysis.inspections.coverageData.QodanaCoverageComputationState
+import org.jetbrains.qodana.staticAnalysis.inspections.runner.DatabaseRunResults
+import org.jetbrains.qodana.staticAnalysis.inspections.runner.IndexedComparison
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaGlobalInspectionContext
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaInspectionProfileLoader
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaRunContext
@@ -25,11 +29,13 @@ import org.jetbrains.qodana.staticAnalysis.sarif.createSarifReport
 import org.jetbrains.qodana.staticAnalysis.sarif.fillComponents
 import org.jetbrains.qodana.staticAnalysis.sarif.getOrCreateRun
 import org.jetbrains.qodana.staticAnalysis.sarif.maybeApplyFixes
+import org.jetbrains.qodana.staticAnalysis.sarif.resultSummary
 import org.jetbrains.qodana.staticAnalysis.sarif.writeReport
 import org.jetbrains.qodana.staticAnalysis.scopes.QodanaAnalysisScope
 import org.jetbrains.qodana.staticAnalysis.stat.CoverageFeatureEventsCollector
 import org.jetbrains.qodana.util.QodanaMessageReporter
 import java.nio.file.Paths
+import java.util.IdentityHashMap
 
 /**
  * Runs the inspections two times on the project, "before" and "after".
@@ -43,6 +49,11 @@ abstract class ComparingScript(
 ) : QodanaScript {
   protected val progressIndicator = QodanaProgressIndicator(messageReporter)
 
+  /**
+   * Results of the "before" and "after" runs kept in their tool results databases, see [runInspections].
+   */
+  private val resultsByRun = IdentityHashMap<Run, DatabaseRunResults>()
+
   override suspend fun execute(report: SarifReport): QodanaScriptResult {
     val run = report.getOrCreateRun()
     val scriptResult: QodanaScriptResult
@@ -81,23 +92,48 @@ abstract class ComparingScript(
         }
       }
 
-      writeReport(Paths.get(PathManager.getLogPath(), "before.qodana.sarif.json"), SarifReport().withRuns(listOf(beforeRun)))
-      writeReport(Paths.get(PathManager.getLogPath(), "after.qodana.sarif.json"), SarifReport().withRuns(listOf(run)))
+      val beforeResults = resultsByRun[beforeRun]
+      val afterResults = resultsByRun[run]
+      val beforeReportPath = Paths.get(PathManager.getLogPath(), "before.qodana.sarif.json")
+      writeReport(beforeReportPath, SarifReport().withRuns(listOf(beforeRun)), { beforeResults?.resultsOf(it) ?: it.results?.asFlow() })
+      writeReport(Paths.get(PathManager.getLogPath(), "after.qodana.sarif.json"), SarifReport().withRuns(listOf(run)), { afterResults?.resultsOf(it) ?: it.results?.asFlow() })
       // compare before and current, keeping only 'NEW' issues in current
-      BaselineCalculation.compare(
-        report,
-        beforeReport,
-        Options(false, false,false, false)
-      )
-      // compare current and baseline to generate the final report
-      applyBaselineCalculation(report, config, runContext.scope, messageReporter)
+      val comparedResults = if (beforeResults != null && afterResults != null) {
+        val indexDir = config.resultsStorage.resolve("before-index")
+        IndexedComparison.open(beforeReportPath, Options(false, false, false, false), includeAbsent = false, indexDir)?.let(afterResults::comparedWith)
+      }
+      else null
+      var databaseResults = if (comparedResults != null) {
+        // compare current and baseline to generate the final report
+        applyBaselineCalculation(comparedResults, report, config, runContext.scope, messageReporter)
+      }
+      else {
+        beforeResults?.let { beforeRun.results = it.load() }
+        afterResults?.let { run.results = it.load() }
+        BaselineCalculation.compare(
+          report,
+          beforeReport,
+          Options(false, false,false, false)
+        )
+        // compare current and baseline to generate the final report
+        applyBaselineCalculation(report, config, runContext.scope, messageReporter)
+        null
+      }
 
+      if (databaseResults != null && config.fixesStrategy != FixesStrategy.NONE) {
+        // fixes are applied to the results grouped by file
+        run.results = databaseResults.load()
+        databaseResults = null
+      }
       maybeApplyFixes(run, runContext)
 
+      if (databaseResults != null) {
+        run.resultSummary = databaseResults.counts().resultSummary(baselineApplied = config.baseline != null)
+      }
       SarifReportContributor.runContributors(run, runContext.project, runContext.config)
       CoverageFeatureEventsCollector.logCoverageStatistics(runContext, scriptResult.coverageStats)
       this.coroutineContext.job.cancelChildren()
-      scriptResult
+      scriptResult.copy(databaseResults = databaseResults)
     }
   }
 
@@ -160,7 +196,7 @@ abstract class ComparingScript(
     context: QodanaGlobalInspectionContext,
     runContext: QodanaRunContext) {
     runContext.runAnalysis(scope, context, progressIndicator)
-    run.results = runContext.getResultsForInspectionGroup(context)
+    resultsByRun[run] = runContext.getDatabaseResultsForInspectionGroup(context, run)
     val mainProfileState = context.profileState.mainState
     if (runContext.config.isAboveStopThreshold(mainProfileState.getCount())) {
       runContext.messageReporter.reportMessage(
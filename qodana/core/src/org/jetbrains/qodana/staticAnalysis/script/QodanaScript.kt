@@ -3,8 +3,12 @@ package org.jetbrains.qodana.staticAnalysis.script
 import com.jetbrains.qodana.sarif.model.SarifReport
 import org.jetbrains.qodana.staticAnalysis.inspections.coverageData.CoverageStatisticsData
 import org.jetbrains.qodana.staticAnalysis.inspections.coverageData.precomputedCoverageFiles
+import org.jetbrains.qodana.staticAnalysis.inspections.runner.DatabaseRunResults
+import org.jetbrains.qodana.staticAnalysis.inspections.runner.InspectionCacheStatistics
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaGlobalInspectionContext
 import org.jetbrains.qodana.staticAnalysis.profile.QodanaProfile
+import org.jetbrains.qodana.staticAnalysis.stat.InspectionTimingProfile
+import org.jetbrains.qodana.staticAnalysis.stat.InspectionTimingProfilerService
 import java.nio.file.Path
 
 interface QodanaScript {
@@ -17,15 +21,24 @@ data class QodanaScriptResult(
   val outputPath: Path,
   val coverageStats: CoverageStatisticsData?,
   val coverageFilesPresent: Boolean = false,
+  val inspectionCacheStatistics: InspectionCacheStatistics? = null,
+  val inspectionTimingProfile: InspectionTimingProfile? = null,
+  /**
+   * Results streamed from the tool results database instead of being held by their run, see [DatabaseRunResults.resultsOf].
+   */
+  val databaseResults: DatabaseRunResults? = null,
 ) {
 
   companion object {
-    fun create(ctx: QodanaGlobalInspectionContext): QodanaScriptResult = QodanaScriptResult(
+    fun create(ctx: QodanaGlobalInspectionContext, databaseResults: DatabaseRunResults? = null): QodanaScriptResult = QodanaScriptResult(
       profileState = ctx.profileState,
       outputPath = ctx.outputPath,
       coverageStats = ctx.coverageStatisticsData,
       coverageFilesPresent = ctx.getUserData(precomputedCoverageFiles)
-        ?.values?.any { it.isInitialized() && it.value.isNotEmpty() } ?: false
+        ?.values?.any { it.isInitialized() && it.value.isNotEmpty() } ?: false,
+      inspectionCacheStatistics = ctx.resultsCache?.statistics,
+      inspectionTimingProfile = InspectionTimingProfilerService.getInstance(ctx.project).takeIf { it.isEnabled }?.snapshot(),
+      databaseResults = databaseResults,
     )
   }
 }
@@ -8,6 +8,8 @@ import kotlinx.coroutines.job
 import kotlinx.coroutines.supervisorScope
 import kotlinx.coroutines.withContext
 import org.jetbrains.annotations.VisibleForTesting
+import org.jetbrains.qodana.staticAnalysis.inspections.config.FixesStrategy
+import org.jetbrains.qodana.staticAnalysis.inspections.runner.DatabaseRunResults
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaGlobalInspectionContext
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaRunContext
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.startup.QodanaRunContextFactory
@@ -15,6 +17,7 @@ import org.jetbrains.qodana.staticAnalysis.sarif.SarifReportContributor
 import org.jetbrains.qodana.staticAnalysis.sarif.fillComponents
 import org.jetbrains.qodana.staticAnalysis.sarif.getOrCreateRun
 import org.jetbrains.qodana.staticAnalysis.sarif.maybeApplyFixes
+import org.jetbrains.qodana.staticAnalysis.sarif.resultSummary
 import org.jetbrains.qodana.staticAnalysis.stat.CoverageFeatureEventsCollector
 
 abstract class QodanaSingleRunScript(
@@ -30,6 +33,11 @@ abstract class QodanaSingleRunScript(
 
   protected open suspend fun createGlobalInspectionContext(runContext: QodanaRunContext) = runContext.createGlobalInspectionContext()
 
+  /**
+   * Results of the main run set by [execute] when they are streamed from the tool results database instead of being set to the run.
+   */
+  protected var databaseResults: DatabaseRunResults? = null
+
   final override suspend fun execute(report: SarifReport): QodanaScriptResult {
     val run: () -> Run = { report.getOrCreateRun() } // we may substitute the run on the fly
     return supervisorScope {
@@ -51,12 +59,26 @@ abstract class QodanaSingleRunScript(
         }
       }
 
+      val databaseResults = loadResultsForFixes(run(), runContext)
       maybeApplyFixes(run(), runContext)
+      if (databaseResults != null && databaseResults.run === run()) {
+        run().resultSummary = databaseResults.counts().resultSummary(baselineApplied = runContext.config.baseline != null)
+      }
       SarifReportContributor.runContributors(run(), runContext.project, runContext.config)
-      val scriptResult = QodanaScriptResult.create(inspectionContext)
+      val scriptResult = QodanaScriptResult.create(inspectionContext, databaseResults)
       CoverageFeatureEventsCollector.logCoverageStatistics(runContext, scriptResult.coverageStats)
       this.coroutineContext.job.cancelChildren()
       scriptResult
     }
   }
+
+  /**
+   * Fixes are applied to the results grouped by file, so streamed results of the run are loaded to it.
+   */
+  private suspend fun loadResultsForFixes(run: Run, runContext: QodanaRunContext): DatabaseRunResults? {
+    val databaseResults = databaseResults
+    if (databaseResults == null || databaseResults.run !== run || runContext.config.fixesStrategy == FixesStrategy.NONE) return databaseResults
+    run.results = databaseResults.load()
+    return null
+  }
 }
@@ -32,7 +32,6 @@ internal open class DefaultScript(
   runContextFactory: QodanaRunContextFactory,
   analysisKind: AnalysisKind,
 ) : QodanaSingleRunScript(runContextFactory, analysisKind) {
-
   override suspend fun execute(
     report: SarifReport,
     runContext: QodanaRunContext,
@@ -40,7 +39,7 @@ internal open class DefaultScript(
   ) {
     val run = report.getOrCreateRun()
     runContext.runAnalysis(context = inspectionContext)
-    run.results = runContext.getResultsForInspectionGroup(inspectionContext)
-    applyBaselineCalculation(report, runContext.config, runContext.scope, runContext.messageReporter)
+    val results = runContext.getDatabaseResultsForInspectionGroup(inspectionContext, run)
+    databaseResults = applyBaselineCalculation(results, report, runContext.config, runContext.scope, runContext.messageReporter)
   }
 }
@@ -0,0 +1,77 @@
+package org.jetbrains.qodana.staticAnalysis.script
+
+import com.jetbrains.qodana.sarif.model.SarifReport
+import kotlinx.coroutines.runInterruptible
+import org.jetbrains.qodana.staticAnalysis.StaticAnalysisDispatchers
+import org.jetbrains.qodana.staticAnalysis.inspections.config.QodanaConfig
+import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaException
+import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaGlobalInspectionContext
+import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaRunContext
+import org.jetbrains.qodana.staticAnalysis.inspections.runner.applyBaselineCalculation
+import org.jetbrains.qodana.staticAnalysis.inspections.runner.startup.QodanaRunContextFactory
+import org.jetbrains.qodana.staticAnalysis.sarif.getOrCreateRun
+import org.jetbrains.qodana.util.QodanaMessageReporter
+import java.nio.file.Path
+import java.nio.file.Paths
+import kotlin.io.path.isDirectory
+import kotlin.io.path.isRegularFile
+import kotlin.io.path.listDirectoryEntries
+
+internal const val MERGE_SHARDS_SCRIPT_NAME = "merge-shards"
+
+private const val SHARD_PATHS = "paths"
+
+/**
+ * Builds the report of a sharded analysis (`--shard index/count`) from the tool results databases of its shards,
+ * `--script merge-shards:path1,path2` where a path is either a database file or a directory with `tool-results.shard-*.db` files.
+ * The project is not analysed again.
+ */
+class MergeShardsScriptFactory : QodanaScriptFactory {
+  override val scriptName = MERGE_SHARDS_SCRIPT_NAME
+
+  override fun parseParameters(parameters: String): Map<String, String> =
+    if (parameters.isEmpty()) emptyMap() else mapOf(SHARD_PATHS to parameters)
+
+  override fun createScript(
+    config: QodanaConfig,
+    messageReporter: QodanaMessageReporter,
+    contextFactory: QodanaRunContextFactory,
+    parameters: UnvalidatedParameters
+  ): QodanaScript {
+    val paths = parameters.optional<String>(SHARD_PATHS)
+                ?: throw QodanaException("The '$MERGE_SHARDS_SCRIPT_NAME' script requires the shard databases, e.g. '$MERGE_SHARDS_SCRIPT_NAME:shard-0,shard-1'")
+    val shardFiles = paths.split(',').map { it.trim() }.filter { it.isNotEmpty() }.flatMap { resolveShardFiles(it, config) }
+    if (shardFiles.isEmpty()) throw QodanaException("No shard databases found in '$paths'")
+    return MergeShardsScript(contextFactory, shardFiles)
+  }
+
+  private fun resolveShardFiles(value: String, config: QodanaConfig): List<Path> {
+    val path = Paths.get(value).let { if (it.isAbsolute) it else config.projectPath.resolve(it) }
+    return when {
+      path.isDirectory() -> path.listDirectoryEntries("tool-results.shard-*.db").sorted()
+      path.isRegularFile() -> listOf(path)
+      else -> throw QodanaException("Shard database '$path' does not exist")
+    }
+  }
+}
+
+private class MergeShardsScript(
+  runContextFactory: QodanaRunContextFactory,
+  private val shardFiles: List<Path>,
+) : QodanaSingleRunScript(runContextFactory, AnalysisKind.OTHER) {
+  override suspend fun execute(
+    report: SarifReport,
+    runContext: QodanaRunContext,
+    inspectionContext: QodanaGlobalInspectionContext
+  ) {
+    val run = report.getOrCreateRun()
+    val statistics = runInterruptible(StaticAnalysisDispatchers.IO) {
+      inspectionContext.database.mergeShards(shardFiles)
+    }
+    runContext.messageReporter.reportMessage(
+      1, "Merged ${statistics.results} results of ${statistics.shards} shards, ${statistics.sharedResults} of them found by more than one shard"
+    )
+    val results = runContext.getDatabaseResultsForInspectionGroup(inspectionContext, run)
+    databaseResults = applyBaselineCalculation(results, report, runContext.config, runContext.scope, runContext.messageReporter)
+  }
+}
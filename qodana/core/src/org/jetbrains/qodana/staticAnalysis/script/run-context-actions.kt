@@ -26,6 +26,7 @@ import org.jetbrains.qodana.QodanaBundle
 import org.jetbrains.qodana.runActivityWithTiming
 import org.jetbrains.qodana.staticAnalysis.StaticAnalysisDispatchers
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.ConsoleLog
+import org.jetbrains.qodana.staticAnalysis.inspections.runner.DatabaseRunResults
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaException
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaGlobalInspectionContext
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaRunContext
@@ -36,7 +37,7 @@ import org.jetbrains.qodana.staticAnalysis.projectDescription.QodanaProjectDescr
 import org.jetbrains.qodana.staticAnalysis.sarif.automationDetails
 import org.jetbrains.qodana.staticAnalysis.sarif.configProfile
 import org.jetbrains.qodana.staticAnalysis.sarif.getOrAssignProperties
-import org.jetbrains.qodana.staticAnalysis.sarif.resultsFlowByGroup
+import org.jetbrains.qodana.staticAnalysis.sarif.partitionedResultsFlowByGroup
 import org.jetbrains.qodana.staticAnalysis.scopes.QodanaAnalysisScope
 import org.jetbrains.qodana.staticAnalysis.stat.InspectionEventsCollector.QodanaActivityKind
 import java.nio.file.Files
@@ -104,7 +105,19 @@ suspend fun QodanaRunContext.getResultsForInspectionGroup(
 ): List<Result> {
   val consumer = context.consumer
   consumer.close()
-  return context.database.resultsFlowByGroup(inspectionGroupState.inspectionGroup.name).toList()
+  return context.database.partitionedResultsFlowByGroup(inspectionGroupState.inspectionGroup.name).toList()
+}
+
+/**
+ * Results of the inspection group to be streamed from the database instead of being set to [run], see [DatabaseRunResults].
+ */
+suspend fun QodanaRunContext.getDatabaseResultsForInspectionGroup(
+  context: QodanaGlobalInspectionContext,
+  run: Run,
+  inspectionGroupState: GroupState = context.profileState.mainState,
+): DatabaseRunResults {
+  context.consumer.close()
+  return DatabaseRunResults(run, context.outputPath, inspectionGroupState.inspectionGroup.name)
 }
 
 suspend fun QodanaRunContext.writeProfiles(profile: QodanaProfile) {
@@ -5,7 +5,8 @@ import com.intellij.openapi.vfs.LocalFileSystem
 import com.intellij.openapi.vfs.VfsUtilCore
 import com.intellij.openapi.vfs.VirtualFile
 import com.jetbrains.qodana.sarif.model.ArtifactLocation
-import com.jetbrains.qodana.sarif.model.SarifReport
+import com.jetbrains.qodana.sarif.model.Result
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.runInterruptible
 import kotlinx.coroutines.withContext
 import kotlinx.serialization.ExperimentalSerializationApi
@@ -15,7 +16,6 @@ import org.jetbrains.qodana.staticAnalysis.StaticAnalysisDispatchers
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaRunContext
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaRunIncrementalContext
 import org.jetbrains.qodana.staticAnalysis.sarif.SRCROOT_URI_BASE
-import org.jetbrains.qodana.staticAnalysis.sarif.getOrCreateRun
 import java.nio.file.Files
 import java.nio.file.Path
 import java.nio.file.Paths
@@ -25,7 +25,7 @@ import kotlin.io.path.Path
 internal suspend fun persistReducedScopeToPath(
   persistReducedScopePath: String,
   runContext: QodanaRunContext,
-  report: SarifReport,
+  results: Flow<Result>,
   root: VirtualFile
 ) {
   val projectDir = runContext.config.projectPath
@@ -35,7 +35,7 @@ internal suspend fun persistReducedScopeToPath(
       projectDir.resolve(p)
     }
   }
-  val nextScope = computeNextScope(runContext, report, root)
+  val nextScope = computeNextScope(runContext, results, root)
   val extendedFiles = computeScopeExtenders(
     runContext.project, nextScope, runContext.qodanaProfile, root)
   writeNextScope(path, ChangedFiles(nextScope, extendedFiles.sortedBy { it.path }))
@@ -53,21 +53,24 @@ internal suspend fun persistFullScopeToPath(
   }
 }
 
-internal suspend fun computeNextScope(runContext: QodanaRunContext, report: SarifReport, root: VirtualFile?): List<ChangedFile> {
+/**
+ * Files of [results] in the order they are first reported.
+ */
+internal suspend fun computeNextScope(runContext: QodanaRunContext, results: Flow<Result>, root: VirtualFile?): List<ChangedFile> {
   return withContext(StaticAnalysisDispatchers.IO) {
     val macroManager = PathMacroManager.getInstance(runContext.project)
-    report.getOrCreateRun().results.flatMap { result ->
+    val files = LinkedHashSet<String>()
+    results.collect { result ->
       result.locations
-        ?.mapNotNull {
-          it.physicalLocation?.artifactLocation?.uri ?: return@mapNotNull null
+        ?.mapNotNullTo(files) {
+          it.physicalLocation?.artifactLocation?.uri ?: return@mapNotNullTo null
           val physicalLocation = it.physicalLocation
           val artifactLocation: ArtifactLocation = physicalLocation.artifactLocation
-          val virtualFile = artifactLocation.toVirtualFile(runContext.config.projectPath, macroManager) ?: return@mapNotNull null
-          return@mapNotNull if (root == null) virtualFile.path else VfsUtilCore.getRelativePath(virtualFile, root)
-        } ?: emptyList()
+          val virtualFile = artifactLocation.toVirtualFile(runContext.config.projectPath, macroManager) ?: return@mapNotNullTo null
+          return@mapNotNullTo if (root == null) virtualFile.path else VfsUtilCore.getRelativePath(virtualFile, root)
+        }
     }
-      .distinct()
-      .map { ChangedFile(it, emptyList(), emptyList()) }
+    files.map { ChangedFile(it, emptyList(), emptyList()) }
   }
 }
 
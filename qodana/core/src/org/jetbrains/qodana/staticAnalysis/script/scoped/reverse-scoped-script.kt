@@ -1,5 +1,6 @@
 package org.jetbrains.qodana.staticAnalysis.script.scoped
 
+import com.intellij.openapi.util.io.NioFiles
 import com.intellij.openapi.vfs.VfsUtil
 import com.intellij.openapi.vfs.VirtualFile
 import com.jetbrains.qodana.sarif.SarifUtil
@@ -8,10 +9,19 @@ import com.jetbrains.qodana.sarif.baseline.BaselineCalculation.Options
 import com.jetbrains.qodana.sarif.model.PropertyBag
 import com.jetbrains.qodana.sarif.model.Run
 import com.jetbrains.qodana.sarif.model.SarifReport
+import com.intellij.util.io.createDirectories
 import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.NonCancellable
+import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.runInterruptible
+import kotlinx.coroutines.withContext
 import org.jetbrains.annotations.VisibleForTesting
+import org.jetbrains.qodana.staticAnalysis.StaticAnalysisDispatchers
 import org.jetbrains.qodana.staticAnalysis.inspections.config.QodanaConfig
 import org.jetbrains.qodana.staticAnalysis.inspections.coverageData.QodanaCoverageComputationState
+import org.jetbrains.qodana.staticAnalysis.inspections.runner.DatabaseRunResults
+import org.jetbrains.qodana.staticAnalysis.inspections.runner.IndexedComparison
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaException
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaGlobalInspectionContext
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaRunContext
@@ -21,18 +31,21 @@ import org.jetbrains.qodana.staticAnalysis.inspections.runner.applyBaselineCalcu
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.resolveVirtualFile
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.resolveVirtualFiles
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.startup.QodanaRunContextFactory
+import org.jetbrains.qodana.staticAnalysis.sarif.ResultCounts
 import org.jetbrains.qodana.staticAnalysis.sarif.createInvocation
 import org.jetbrains.qodana.staticAnalysis.sarif.createSarifReport
 import org.jetbrains.qodana.staticAnalysis.sarif.getOrCreateRun
+import org.jetbrains.qodana.staticAnalysis.sarif.writeReportStreaming
 import org.jetbrains.qodana.staticAnalysis.script.AnalysisKind
 import org.jetbrains.qodana.staticAnalysis.script.DefaultScript
 import org.jetbrains.qodana.staticAnalysis.script.QodanaScript
 import org.jetbrains.qodana.staticAnalysis.script.QodanaScriptFactory
 import org.jetbrains.qodana.staticAnalysis.script.UnvalidatedParameters
-import org.jetbrains.qodana.staticAnalysis.script.getResultsForInspectionGroup
+import org.jetbrains.qodana.staticAnalysis.script.getDatabaseResultsForInspectionGroup
 import org.jetbrains.qodana.staticAnalysis.script.require
 import org.jetbrains.qodana.staticAnalysis.script.runAnalysis
 import org.jetbrains.qodana.util.QodanaMessageReporter
+import java.nio.file.Files
 import java.nio.file.Path
 import kotlin.io.path.Path
 import kotlin.io.path.notExists
@@ -98,18 +111,19 @@ internal class ReverseScopedScriptNew(runContextFactory: ReverseScopedRunContext
   override suspend fun execute(report: SarifReport, runContext: QodanaRunContext, inspectionContext: QodanaGlobalInspectionContext) {
     val run = report.getOrCreateRun()
     runContext.runAnalysis(context = inspectionContext)
-    run.results = runContext.getResultsForInspectionGroup(inspectionContext)
+    val results = runContext.getDatabaseResultsForInspectionGroup(inspectionContext, run)
+      .let { applyBaselineCalculation(it, report, runContext.config, runContext.scope, runContext.messageReporter) }
+    databaseResults = results
 
-    applyBaselineCalculation(report, runContext.config, runContext.scope, runContext.messageReporter)
-
-    val requireFurtherAnalysis = runContext.config.skipResultStrategy.shouldSkip(run)
+    val counts = results?.counts() ?: ResultCounts.of(run.results.orEmpty())
+    val requireFurtherAnalysis = runContext.config.skipResultStrategy.shouldSkip(counts)
     preserveShouldSkipState(run, requireFurtherAnalysis)
     if (requireFurtherAnalysis) {
       val root = VfsUtil.findFile(runContext.config.projectPath, false)
                  ?: throw QodanaException("Cannot find VFS file for project path ${runContext.config.projectPath}")
       val persistReducedScopePath = System.getProperty(REDUCED_SCOPE_PATH)
       if (persistReducedScopePath != null) {
-        persistReducedScopeToPath(persistReducedScopePath, runContext, report, root)
+        persistReducedScopeToPath(persistReducedScopePath, runContext, results?.results ?: run.results.orEmpty().asFlow(), root)
       }
       else if (runContext is QodanaRunIncrementalContext) {
         persistFullScopeToPath(scopeFile, runContext, root)
@@ -131,13 +145,46 @@ internal class ReverseScopedScriptOld(runContextFactory: ReverseScopedRunContext
 
     val reportOld = createSarifReport(listOf(runOld)) // we create "fake" report containing current (old) run for baseline purposes
     runContext.runAnalysis(context = inspectionContext)
-    runOld.results = runContext.getResultsForInspectionGroup(inspectionContext)
-    BaselineCalculation.compare(report, reportOld, Options(false, false, false, false))
+    val resultsOld = runContext.getDatabaseResultsForInspectionGroup(inspectionContext, runOld)
+    if (compareWithIndexedRun(runNew, reportOld, resultsOld, runContext)) {
+      // the original run is written from the database as well
+      databaseResults = resultsOld
+    }
+    else {
+      runOld.results = resultsOld.load()
+      BaselineCalculation.compare(report, reportOld, Options(false, false, false, false))
+    }
 
     applyBaselineCalculation(report, runContext.config, runContext.scope, runContext.messageReporter)
 
     preserveShouldSkipState(runNew, runContext.config.skipResultStrategy.shouldSkip(runNew))
   }
+
+  /**
+   * Compares [runNew] with the results of the current (old) run without loading them: [reportOld] is written with the results
+   * streamed from the database to a temporary file, which is then indexed like a baseline.
+   *
+   * @return false if the written report can't be indexed and nothing was compared
+   */
+  private suspend fun compareWithIndexedRun(runNew: Run, reportOld: SarifReport, resultsOld: DatabaseRunResults, runContext: QodanaRunContext): Boolean {
+    val tempDir = runInterruptible(StaticAnalysisDispatchers.IO) {
+      runContext.config.resultsStorage.createDirectories()
+      Files.createTempDirectory(runContext.config.resultsStorage, "reverse-scoped-old")
+    }
+    try {
+      val reportOldPath = tempDir.resolve("old.sarif.json")
+      writeReportStreaming(reportOldPath, reportOld, resultsOld::resultsOf)
+      val comparison = IndexedComparison.open(reportOldPath, Options(false, false, false, false), includeAbsent = false, indexDir = tempDir)
+                       ?: return false
+      runNew.results = comparison.compare(runNew.results.orEmpty().asFlow(), runNew.tool).toList()
+      return true
+    }
+    finally {
+      withContext(NonCancellable) {
+        runInterruptible(StaticAnalysisDispatchers.IO) { NioFiles.deleteRecursively(tempDir) }
+      }
+    }
+  }
 }
 
 
@@ -158,7 +205,6 @@ internal class ReverseScopedScriptFixes(runContextFactory: ReverseScopedRunConte
 
 internal abstract class ReverseScopedScript(val skipCoverageComputation: Boolean, runContextFactory: ReverseScopedRunContextFactory) :
   DefaultScript(runContextFactory, AnalysisKind.INCREMENTAL) {
-
   override suspend fun createGlobalInspectionContext(runContext: QodanaRunContext): QodanaGlobalInspectionContext {
     val computationState = if (skipCoverageComputation) {
       QodanaCoverageComputationState.SKIP_COMPUTE
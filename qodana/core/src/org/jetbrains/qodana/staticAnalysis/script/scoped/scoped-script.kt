@@ -8,6 +8,7 @@ import kotlinx.coroutines.CoroutineScope
 import org.jetbrains.annotations.VisibleForTesting
 import org.jetbrains.qodana.staticAnalysis.inspections.config.QodanaConfig
 import org.jetbrains.qodana.staticAnalysis.inspections.coverageData.QodanaCoverageComputationState
+import org.jetbrains.qodana.staticAnalysis.inspections.runner.IndexedComparison
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaException
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaGlobalInspectionContext
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaRunContext
@@ -20,12 +21,13 @@ import org.jetbrains.qodana.staticAnalysis.script.DefaultScript
 import org.jetbrains.qodana.staticAnalysis.script.QodanaScript
 import org.jetbrains.qodana.staticAnalysis.script.QodanaScriptFactory
 import org.jetbrains.qodana.staticAnalysis.script.UnvalidatedParameters
-import org.jetbrains.qodana.staticAnalysis.script.getResultsForInspectionGroup
+import org.jetbrains.qodana.staticAnalysis.script.getDatabaseResultsForInspectionGroup
 import org.jetbrains.qodana.staticAnalysis.script.require
 import org.jetbrains.qodana.staticAnalysis.script.runAnalysis
 import org.jetbrains.qodana.util.QodanaMessageReporter
 import java.nio.file.Path
 import kotlin.io.path.Path
+import kotlin.io.path.exists
 import kotlin.io.path.notExists
 
 internal const val SCOPE_ARG = "scope-file"
@@ -67,15 +69,25 @@ internal class ScopedScript(runContextFactory: ScopedRunContextFactory) :
   override suspend fun execute(report: SarifReport, runContext: QodanaRunContext, inspectionContext: QodanaGlobalInspectionContext) {
     val run = report.getOrCreateRun()
     runContext.runAnalysis(context = inspectionContext)
-    run.results = runContext.getResultsForInspectionGroup(inspectionContext)
+    val results = runContext.getDatabaseResultsForInspectionGroup(inspectionContext, run)
 
     // compare before and current, keeping only 'NEW' issues in current
-    val baselineReport = getScopedBaselineReport(runContext)
-    if (baselineReport != null) {
-      BaselineCalculation.compare(report, baselineReport, Options(false, false, false, false))
+    val scopedBaselinePath = getScopedBaselinePath(runContext)
+    if (scopedBaselinePath == null) {
+      databaseResults = applyBaselineCalculation(results, report, runContext.config, runContext.scope, runContext.messageReporter)
+      return
+    }
+    // a missing report fails to be read below, as it always did
+    val options = Options(false, false, false, false)
+    val comparison = if (scopedBaselinePath.exists()) IndexedComparison.open(scopedBaselinePath, options, includeAbsent = false) else null
+    if (comparison == null) {
+      run.results = results.load()
+      BaselineCalculation.compare(report, SarifUtil.readReport(scopedBaselinePath), options)
+      applyBaselineCalculation(report, runContext.config, runContext.scope, runContext.messageReporter)
+      return
     }
 
-    applyBaselineCalculation(report, runContext.config, runContext.scope, runContext.messageReporter)
+    databaseResults = applyBaselineCalculation(results.comparedWith(comparison), report, runContext.config, runContext.scope, runContext.messageReporter)
   }
 
   override suspend fun createGlobalInspectionContext(runContext: QodanaRunContext) : QodanaGlobalInspectionContext {
@@ -91,10 +103,9 @@ internal class ScopedScript(runContextFactory: ScopedRunContextFactory) :
     return runContext.createGlobalInspectionContext(coverageComputationState = computationState)
   }
 
-  private fun getScopedBaselineReport(runContext: QodanaRunContext): SarifReport? {
+  private fun getScopedBaselinePath(runContext: QodanaRunContext): Path? {
     val scopedBaselinePath = System.getProperty(SCOPED_BASELINE_PROPERTY)?.let { Path.of(it) } ?: return null
-    val absPath = if (scopedBaselinePath.isAbsolute) scopedBaselinePath else runContext.config.projectPath.resolve(scopedBaselinePath)
-    return SarifUtil.readReport(absPath)
+    return if (scopedBaselinePath.isAbsolute) scopedBaselinePath else runContext.config.projectPath.resolve(scopedBaselinePath)
   }
 }
 
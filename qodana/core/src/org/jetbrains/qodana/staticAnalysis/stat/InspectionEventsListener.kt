@@ -28,6 +28,9 @@ class InspectionEventsListener : InspectListener {
 
     InspectionInfoQodanaReporterService.getInstance(project)
       .addInspectionFinishedEvent(duration, problemsCount, tool, kind, file?.virtualFile)
+
+    InspectionTimingProfilerService.getInstance(project)
+      .addInspectionFinishedEvent(duration, problemsCount, tool, kind, file?.virtualFile)
   }
 
   override fun activityFinished(duration: Long, threadId: Long, activityKind: String, project: Project) {
@@ -46,5 +49,7 @@ class InspectionEventsListener : InspectListener {
     }
 
     project.getService(InspectionFingerprintAggregatorService::class.java).registerAnalyzedFile(file)
+
+    file.virtualFile?.let { InspectionTimingProfilerService.getInstance(project).fileAnalyzed(it) }
   }
 }
@@ -0,0 +1,255 @@
+package org.jetbrains.qodana.staticAnalysis.stat
+
+import com.intellij.codeInspection.ex.InspectListener
+import com.intellij.codeInspection.ex.InspectionToolWrapper
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.service
+import com.intellij.openapi.diagnostic.logger
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.project.guessProjectDir
+import com.intellij.openapi.vfs.VfsUtil
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.util.io.createDirectories
+import kotlinx.coroutines.runInterruptible
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.json.Json
+import org.jetbrains.qodana.staticAnalysis.StaticAnalysisDispatchers
+import java.io.IOException
+import java.lang.management.ManagementFactory
+import java.nio.file.Path
+import java.util.PriorityQueue
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.io.path.writeText
+
+private val LOG = logger<InspectionTimingProfilerService>()
+
+const val INSPECTION_PROFILE_ARTIFACT_NAME = "qodana-inspection-profile.json"
+
+const val INSPECTION_PROFILER_PROPERTY = "qodana.inspections.profiler"
+
+/** Histogram bucket `i` holds durations in `[2^(i-1), 2^i)` ms, the first one is `[0, 1)` ms and the last one is open-ended. */
+private const val HISTOGRAM_BUCKETS = 20
+
+private val jsonEncoder = Json { prettyPrint = true }
+
+@Serializable
+data class InspectionTimingProfile(
+  val histogramUpperBoundsMs: List<Long>,
+  val inspections: List<InspectionTiming>,
+  val slowestFiles: List<InspectionFileTiming>,
+)
+
+@Serializable
+data class InspectionTiming(
+  val inspectionId: String,
+  val kind: String,
+  val files: Int,
+  val problems: Int,
+  val wallTimeMs: Long,
+  val cpuTimeMs: Long,
+  val allocatedBytes: Long,
+  val maxWallTimeMs: Long,
+  val histogram: List<Int>,
+)
+
+@Serializable
+data class InspectionFileTiming(
+  val inspectionId: String,
+  val file: String?,
+  val wallTimeMs: Long,
+  val cpuTimeMs: Long,
+  val allocatedBytes: Long,
+  val problems: Int,
+)
+
+suspend fun writeInspectionTimingProfile(profile: InspectionTimingProfile, outPath: Path) {
+  try {
+    runInterruptible(StaticAnalysisDispatchers.IO) {
+      outPath.createDirectories()
+      outPath.resolve(INSPECTION_PROFILE_ARTIFACT_NAME).writeText(jsonEncoder.encodeToString(profile))
+    }
+  }
+  catch (e: IOException) {
+    LOG.warn("Failed to write inspection profile", e)
+  }
+}
+
+/**
+ * Profiler of InspectionFinished events, records wall time, CPU time, allocations and problems count per (inspection, file) pair.
+ *
+ * Per inspection totals and duration histograms are kept for the whole run,
+ * per (inspection, file) pairs only for the `qodana.inspections.profiler.top` slowest ones, so the memory doesn't grow with the project size.
+ *
+ * Local inspections of a file are interleaved by the platform, so CPU time and allocations can't be measured per inspection.
+ * They are measured on the thread inspecting the file from [fileStarted] to [fileAnalyzed] and split between the inspections of the file
+ * proportionally to wall time. Work the platform forks to other threads isn't included, and inspections not bound to an inspected file,
+ * e.g. global ones, are recorded without CPU time and allocations.
+ *
+ * Enabled with `-Dqodana.inspections.profiler=true`, the property is read again by [reset] at the start of every analysis.
+ */
+@Service(Service.Level.PROJECT)
+class InspectionTimingProfilerService(val project: Project) {
+  companion object {
+    fun getInstance(project: Project): InspectionTimingProfilerService = project.service()
+  }
+
+  @Volatile
+  var isEnabled: Boolean = isEnabledByProperty()
+    private set
+  private val topSize = System.getProperty("qodana.inspections.profiler.top", "20").toInt()
+
+  private val threadMXBean = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+  private val cpuTimeSupported = threadMXBean?.isThreadCpuTimeSupported == true && threadMXBean.isThreadCpuTimeEnabled
+  private val allocationsSupported = threadMXBean?.isThreadAllocatedMemorySupported == true && threadMXBean.isThreadAllocatedMemoryEnabled
+
+  private data class Key(val inspectionId: String, val kind: InspectListener.InspectionKind)
+
+  private class Value {
+    var files = 0
+    var problems = 0
+    var wallTimeMs = 0L
+    var cpuTimeNanos = 0L
+    var allocatedBytes = 0L
+    var maxWallTimeMs = 0L
+    val histogram = IntArray(HISTOGRAM_BUCKETS)
+  }
+
+  private class Event(val inspectionId: String, val kind: InspectListener.InspectionKind, val duration: Long, val problemsCount: Int)
+
+  /** Events of a file being inspected, waiting for the CPU time and allocations of [threadId] since the file was started */
+  private class FileState(val threadId: Long, val cpuTimeNanos: Long, val allocatedBytes: Long) {
+    val pending = mutableListOf<Event>()
+    var closed = false
+  }
+
+  private val files = ConcurrentHashMap<VirtualFile, FileState>()
+  private val timings = ConcurrentHashMap<Key, Value>()
+  private val slowest = PriorityQueue<InspectionFileTiming>(compareBy { it.wallTimeMs })
+
+  /**
+   * Takes the CPU time and allocations baseline of the current thread, which is about to inspect [file].
+   */
+  fun fileStarted(file: VirtualFile) {
+    if (!isEnabled) return
+    val threadId = Thread.currentThread().id
+    files[file] = FileState(threadId, cpuTime(threadId), allocatedBytes(threadId))
+  }
+
+  fun addInspectionFinishedEvent(duration: Long, problemsCount: Int, tool: InspectionToolWrapper<*, *>,
+                                 kind: InspectListener.InspectionKind, file: VirtualFile?) {
+    if (!isEnabled || kind == InspectListener.InspectionKind.LOCAL_PRIORITY) return
+
+    val event = Event(tool.shortName, kind, duration, problemsCount)
+    val state = file?.let { files[it] }
+    if (state != null) {
+      synchronized(state) {
+        if (!state.closed) {
+          state.pending.add(event)
+          return
+        }
+      }
+    }
+    record(event, file?.let { relativePath(it) }, 0, 0)
+  }
+
+  /**
+   * Closes the CPU time and allocations delta of [file] taken by [fileStarted] and splits it between the inspections of the file.
+   */
+  fun fileAnalyzed(file: VirtualFile) {
+    if (!isEnabled) return
+    val state = files.remove(file) ?: return
+    val events = synchronized(state) {
+      state.closed = true
+      state.pending.toList()
+    }
+    if (events.isEmpty()) return
+
+    val cpuDelta = (cpuTime(state.threadId) - state.cpuTimeNanos).coerceAtLeast(0)
+    val allocatedDelta = (allocatedBytes(state.threadId) - state.allocatedBytes).coerceAtLeast(0)
+    val totalDuration = events.sumOf { it.duration }
+    val path = relativePath(file)
+    for (event in events) {
+      val share = if (totalDuration > 0) event.duration.toDouble() / totalDuration else 1.0 / events.size
+      record(event, path, (cpuDelta * share).toLong(), (allocatedDelta * share).toLong())
+    }
+  }
+
+  /**
+   * Drops the timings of the previous analysis, so that the profile of a run covers only its own inspections.
+   */
+  fun reset() {
+    isEnabled = isEnabledByProperty()
+    files.clear()
+    timings.clear()
+    synchronized(slowest) { slowest.clear() }
+  }
+
+  fun snapshot(): InspectionTimingProfile {
+    // files whose analysis didn't finish, e.g. cancelled, aren't measured
+    for ((file, state) in files) {
+      if (!files.remove(file, state)) continue
+      val events = synchronized(state) {
+        state.closed = true
+        state.pending.toList()
+      }
+      val path = relativePath(file)
+      events.forEach { record(it, path, 0, 0) }
+    }
+    val inspections = timings.entries.map { (key, value) ->
+      synchronized(value) {
+        InspectionTiming(
+          inspectionId = key.inspectionId,
+          kind = key.kind.name,
+          files = value.files,
+          problems = value.problems,
+          wallTimeMs = value.wallTimeMs,
+          cpuTimeMs = value.cpuTimeNanos / 1_000_000,
+          allocatedBytes = value.allocatedBytes,
+          maxWallTimeMs = value.maxWallTimeMs,
+          histogram = value.histogram.toList(),
+        )
+      }
+    }.sortedByDescending { it.wallTimeMs }
+    val slowestFiles = synchronized(slowest) { slowest.sortedByDescending { it.wallTimeMs } }
+    return InspectionTimingProfile(
+      histogramUpperBoundsMs = (0 until HISTOGRAM_BUCKETS - 1).map { 1L shl it },
+      inspections = inspections,
+      slowestFiles = slowestFiles,
+    )
+  }
+
+  private fun record(event: Event, path: String?, cpuTimeNanos: Long, allocatedBytes: Long) {
+    val value = timings.computeIfAbsent(Key(event.inspectionId, event.kind)) { Value() }
+    synchronized(value) {
+      value.files += 1
+      value.problems += event.problemsCount
+      value.wallTimeMs += event.duration
+      value.cpuTimeNanos += cpuTimeNanos
+      value.allocatedBytes += allocatedBytes
+      value.maxWallTimeMs = maxOf(value.maxWallTimeMs, event.duration)
+      value.histogram[histogramBucket(event.duration)]++
+    }
+
+    synchronized(slowest) {
+      if (slowest.size >= topSize && (slowest.peek()?.wallTimeMs ?: 0) >= event.duration) return
+      slowest.add(InspectionFileTiming(event.inspectionId, path, event.duration, cpuTimeNanos / 1_000_000, allocatedBytes, event.problemsCount))
+      if (slowest.size > topSize) slowest.poll()
+    }
+  }
+
+  private fun isEnabledByProperty(): Boolean = System.getProperty(INSPECTION_PROFILER_PROPERTY, "false").toBoolean()
+
+  private fun histogramBucket(duration: Long): Int =
+    if (duration <= 0) 0 else minOf(64 - java.lang.Long.numberOfLeadingZeros(duration), HISTOGRAM_BUCKETS - 1)
+
+  private fun relativePath(file: VirtualFile): String {
+    val projectDir = project.guessProjectDir() ?: return file.path
+    return VfsUtil.getRelativePath(file, projectDir) ?: file.path
+  }
+
+  private fun cpuTime(threadId: Long): Long =
+    if (cpuTimeSupported) threadMXBean!!.getThreadCpuTime(threadId).coerceAtLeast(0) else 0
+
+  private fun allocatedBytes(threadId: Long): Long =
+    if (allocationsSupported) threadMXBean!!.getThreadAllocatedBytes(threadId).coerceAtLeast(0) else 0
+}
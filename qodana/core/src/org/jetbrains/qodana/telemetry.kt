@@ -4,6 +4,7 @@ import com.intellij.platform.diagnostic.telemetry.IJTracer
 import com.intellij.platform.diagnostic.telemetry.Scope
 import com.intellij.platform.diagnostic.telemetry.TelemetryManager
 import com.intellij.platform.diagnostic.telemetry.helpers.useWithScope
+import io.opentelemetry.api.metrics.Meter
 import io.opentelemetry.api.trace.Span
 import kotlinx.coroutines.CoroutineScope
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.runTaskAndLogTime
@@ -15,6 +16,8 @@ val QodanaScope = Scope("qodana")
 
 fun qodanaTracer(): IJTracer = TelemetryManager.getTracer(QodanaScope)
 
+fun qodanaMeter(): Meter = TelemetryManager.getMeter(QodanaScope)
+
 private typealias SpanTag = String
 private typealias HumanReadable = String
 
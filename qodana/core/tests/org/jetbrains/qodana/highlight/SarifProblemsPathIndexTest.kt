@@ -0,0 +1,56 @@
+package org.jetbrains.qodana.highlight
+
+import com.jetbrains.qodana.sarif.model.Result.BaselineState
+import org.assertj.core.api.Assertions.assertThat
+import org.jetbrains.qodana.problem.SarifProblem
+import org.jetbrains.qodana.staticAnalysis.sarif.QodanaSeverity
+import org.junit.Test
+import kotlin.io.path.Path
+
+class SarifProblemsPathIndexTest {
+  private val main = createTestSarifProblem("src/Main.java")
+  private val mainOther = createTestSarifProblem("src/Main.java", "OtherInspection")
+  private val util = createTestSarifProblem("src/util/Util.java")
+  private val sibling = createTestSarifProblem("src0/Sibling.java")
+  private val prefixed = createTestSarifProblem("srcMain.java")
+
+  private val index = SarifProblemsPathIndex.build(listOf(main, util, mainOther, sibling, prefixed))
+
+  @Test
+  fun `problems of file`() {
+    assertThat(index.problemsOfFile(Path("src/Main.java"))).containsExactly(main, mainOther)
+    assertThat(index.problemsOfFile(Path("src/./util/Util.java"))).containsExactly(util)
+    assertThat(index.problemsOfFile(Path("src"))).isEmpty()
+  }
+
+  @Test
+  fun `problems under directory`() {
+    assertThat(index.problemsUnder(Path("src"))).containsExactlyInAnyOrder(main, mainOther, util)
+    assertThat(index.problemsUnder(Path("src/util"))).containsExactly(util)
+    assertThat(index.problemsUnder(Path("src/Main.java"))).containsExactly(main, mainOther)
+    assertThat(index.problemsUnder(Path(""))).containsExactlyInAnyOrder(main, mainOther, util, sibling, prefixed)
+  }
+
+  @Test
+  fun `problems grouped by file`() {
+    assertThat(index.problemsByFile.toList()).containsExactly(listOf(main, mainOther), listOf(util), listOf(sibling), listOf(prefixed))
+  }
+
+  private fun createTestSarifProblem(path: String, inspectionId: String = "TestInspection"): SarifProblem {
+    return SarifProblem(
+      startLine = 10,
+      startColumn = 5,
+      endLine = 10,
+      endColumn = 15,
+      charLength = 10,
+      relativePathToFile = path,
+      traces = emptyList(),
+      message = "Test problem message",
+      qodanaSeverity = QodanaSeverity.HIGH,
+      inspectionId = inspectionId,
+      baselineState = BaselineState.NEW,
+      snippetText = null,
+      revisionId = null
+    )
+  }
+}
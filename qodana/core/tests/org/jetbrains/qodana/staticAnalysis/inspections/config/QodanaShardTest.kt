@@ -0,0 +1,37 @@
+package org.jetbrains.qodana.staticAnalysis.inspections.config
+
+import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaException
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.jupiter.api.assertThrows
+
+class QodanaShardTest {
+
+  @Test
+  fun `parse shard`() {
+    assertEquals(QodanaShard(1, 4, ShardingStrategy.PATH), QodanaShard.parse("1/4"))
+    assertEquals(QodanaShard(0, 2, ShardingStrategy.MODULE), QodanaShard.parse(" 0 / 2", "Module"))
+  }
+
+  @Test
+  fun `invalid shard fails with QodanaException`() {
+    assertThrows<QodanaException> { QodanaShard.parse("4/4") }
+    assertThrows<QodanaException> { QodanaShard.parse("1") }
+    assertThrows<QodanaException> { QodanaShard.parse("a/b") }
+    assertThrows<QodanaException> { QodanaShard.parse("0/2", "package") }
+  }
+
+  @Test
+  fun `every file is owned by exactly one shard`() {
+    val shards = (0 until 4).map { QodanaShard(it, 4) }
+    val files = (0 until 1000).map { "src/main/java/org/example/File$it.java" }
+    for (file in files) {
+      assertEquals(file, 1, shards.count { it.owns(file) })
+    }
+    for (shard in shards) {
+      val owned = files.count { shard.owns(it) }
+      assertTrue("shard $shard owns $owned files", owned in 150..350)
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package org.jetbrains.qodana.staticAnalysis.inspections.runner
+
+import com.intellij.testFramework.utils.io.deleteRecursively
+import com.jetbrains.qodana.sarif.SarifUtil
+import com.jetbrains.qodana.sarif.baseline.BaselineCalculation
+import com.jetbrains.qodana.sarif.model.Message
+import com.jetbrains.qodana.sarif.model.Result
+import com.jetbrains.qodana.sarif.model.Run
+import com.jetbrains.qodana.sarif.model.SarifReport
+import com.jetbrains.qodana.sarif.model.Tool
+import com.jetbrains.qodana.sarif.model.ToolComponent
+import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.runBlocking
+import org.assertj.core.api.Assertions.assertThat
+import org.jetbrains.qodana.staticAnalysis.sarif.fingerprints.withPartialFingerprints
+import org.junit.Test
+import java.nio.file.Files
+import java.nio.file.attribute.FileTime
+import kotlin.io.path.getLastModifiedTime
+import kotlin.io.path.listDirectoryEntries
+import kotlin.io.path.name
+import kotlin.io.path.setLastModifiedTime
+
+class BaselineIndexTest {
+  @Test
+  fun `index matches results by partial fingerprints and is reused`() {
+    val path = Files.createTempDirectory(javaClass.simpleName)
+    try {
+      val baselineResults = listOf("first", "second", "third").map(::result)
+      val baselineFile = path.resolve("baseline.sarif.json")
+      val baseline = SarifReport()
+        .withRuns(listOf(Run().withTool(Tool().withDriver(ToolComponent().withName("test"))).withResults(baselineResults)))
+      SarifUtil.writeReport(baselineFile, baseline)
+      val indexDir = path.resolve("index")
+
+      BaselineIndex.open(baselineFile, indexDir)!!.use { index ->
+        val matching = index.matchingResultIds(listOf(result("second"), result("new")))
+        assertThat(matching.stream().toArray()).containsExactly(1)
+        assertThat(index.loadResults { matching.get(it) }).containsExactly(baselineResults[1])
+      }
+      val indexFiles = indexDir.listDirectoryEntries()
+
+      BaselineIndex.open(baselineFile, indexDir)!!.use { index ->
+        assertThat(index.loadResults { true }).containsExactlyElementsOf(baselineResults)
+      }
+      assertThat(indexDir.listDirectoryEntries()).containsExactlyElementsOf(indexFiles)
+    }
+    finally {
+      path.deleteRecursively()
+    }
+  }
+
+  @Test
+  fun `least recently used indexes are evicted`() {
+    val path = Files.createTempDirectory(javaClass.simpleName)
+    try {
+      val indexDir = path.resolve("index")
+      val baselineFiles = (0 until 7).map { i ->
+        path.resolve("baseline$i.sarif.json").also { file ->
+          val run = Run().withTool(Tool().withDriver(ToolComponent().withName("test"))).withResults(listOf(result("result $i")))
+          SarifUtil.writeReport(file, SarifReport().withRuns(listOf(run)))
+        }
+      }
+      for ((i, baselineFile) in baselineFiles.withIndex()) {
+        BaselineIndex.open(baselineFile, indexDir)!!.use { index ->
+          val unmatched = mutableListOf<Result>()
+          index.forEachResult({ true }) { unmatched.add(it) }
+          assertThat(unmatched).containsExactly(result("result $i"))
+        }
+        // the modification time marks the last use of an index
+        indexDir.listDirectoryEntries().forEach { it.setLastModifiedTime(FileTime.fromMillis(it.getLastModifiedTime().toMillis() - 1000)) }
+      }
+      val indexFiles = indexDir.listDirectoryEntries()
+      assertThat(indexFiles).hasSize(5)
+      assertThat(indexFiles).allMatch { it.name.endsWith(".db") }
+
+      BaselineIndex.open(baselineFiles.last(), indexDir)!!.close()
+      assertThat(indexDir.listDirectoryEntries()).containsExactlyInAnyOrderElementsOf(indexFiles)
+    }
+    finally {
+      path.deleteRecursively()
+    }
+  }
+
+  @Test
+  fun `indexed comparison matches the full comparison`(): Unit = runBlocking {
+    val path = Files.createTempDirectory(javaClass.simpleName)
+    try {
+      val tool = Tool().withDriver(ToolComponent().withName("test"))
+      val baselineResults = (0 until 5).map { result("kept $it") } +
+                            (0 until 3).map { result("removed $it") } +
+                            (0 until 2).map { result("absent before $it").withBaselineState(Result.BaselineState.ABSENT) } +
+                            result("returned").withBaselineState(Result.BaselineState.ABSENT)
+      val baselineFile = path.resolve("baseline.sarif.json")
+      SarifUtil.writeReport(baselineFile, SarifReport().withRuns(listOf(Run(tool).withResults(baselineResults))))
+      fun currentResults() = (0 until 5).map { result("kept $it") } + (0 until 3).map { result("new $it") } + result("returned")
+
+      for (includeAbsent in listOf(false, true)) {
+        val options = BaselineCalculation.Options(includeAbsent, false)
+        val fullReport = SarifReport().withRuns(listOf(Run(tool).withResults(currentResults())))
+        BaselineCalculation.compare(fullReport, SarifUtil.readReport(baselineFile), options)
+        val expected = fullReport.runs.single().results
+
+        val comparison = IndexedComparison.open(baselineFile, options, includeAbsent, indexDir = path.resolve("index"), chunkSize = 2)!!
+        val actual = comparison.compare(currentResults().asFlow(), tool).toList()
+
+        assertThat(actual).`as`("includeAbsent = $includeAbsent").containsExactlyInAnyOrderElementsOf(expected)
+        assertThat(actual.count { it.baselineState == Result.BaselineState.ABSENT }).isEqualTo(if (includeAbsent) 3 else 0)
+        assertThat(actual.single { it.message.text == "returned" }.baselineState).isEqualTo(Result.BaselineState.NEW)
+      }
+    }
+    finally {
+      path.deleteRecursively()
+    }
+  }
+
+  private fun result(text: String): Result =
+    Result().withRuleId("Rule").withMessage(Message().withText(text)).withLocations(emptyList()).withPartialFingerprints()
+}
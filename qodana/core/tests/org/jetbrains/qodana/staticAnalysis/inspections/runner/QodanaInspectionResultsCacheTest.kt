@@ -0,0 +1,84 @@
+package org.jetbrains.qodana.staticAnalysis.inspections.runner
+
+import com.intellij.testFramework.utils.io.deleteRecursively
+import com.jetbrains.qodana.sarif.model.Message
+import com.jetbrains.qodana.sarif.model.PropertyBag
+import com.jetbrains.qodana.sarif.model.Result
+import org.assertj.core.api.Assertions.assertThat
+import org.jetbrains.qodana.staticAnalysis.sarif.RELATED_PROBLEMS_CHILD_HASH_PROP
+import org.junit.Test
+import java.nio.file.Files
+
+class QodanaInspectionResultsCacheTest {
+  private val collapsedFileUrl = "file://\$PROJECT_DIR\$/src/A.java"
+
+  @Test
+  fun `captured problems are replayed by the next run`() {
+    val path = Files.createTempDirectory(javaClass.simpleName)
+    try {
+      val result = Result().withRuleId("Rule").withMessage(Message().withText("problem"))
+        .withProperties(PropertyBag().also { it[RELATED_PROBLEMS_CHILD_HASH_PROP] = "hash" })
+
+      val firstRun = QodanaInspectionResultsCache.open(path, "configuration")
+      val key = firstRun.fileKey(collapsedFileUrl, "class A {}", listOf("Rule"))
+      assertThat(firstRun.lookup(key)).isNull()
+      firstRun.startCapture(collapsedFileUrl, key)
+      firstRun.capture(collapsedFileUrl, "module", "Rule", result)
+      firstRun.close(analysisCompleted = true)
+      assertThat(firstRun.statistics).isEqualTo(InspectionCacheStatistics(hits = 0, misses = 1))
+
+      val secondRun = QodanaInspectionResultsCache.open(path, "configuration")
+      val problems = secondRun.lookup(secondRun.fileKey(collapsedFileUrl, "class A {}", listOf("Rule")))!!
+      assertThat(problems.keys).containsExactly("Rule")
+      val problem = problems.getValue("Rule").single()
+      assertThat(problem.getFile()).isEqualTo(collapsedFileUrl)
+      assertThat(problem.getModule()).isEqualTo("module")
+      assertThat(problem.getRelatedProblemHashFrom()).isEqualTo("hash")
+      assertThat(secondRun.lookup(secondRun.fileKey(collapsedFileUrl, "class A { }", listOf("Rule")))).isNull()
+      assertThat(secondRun.statistics).isEqualTo(InspectionCacheStatistics(hits = 1, misses = 1))
+      secondRun.close(analysisCompleted = true)
+    }
+    finally {
+      path.deleteRecursively()
+    }
+  }
+
+  @Test
+  fun `problems of an interrupted run are not cached`() {
+    val path = Files.createTempDirectory(javaClass.simpleName)
+    try {
+      val firstRun = QodanaInspectionResultsCache.open(path, "configuration")
+      val key = firstRun.fileKey(collapsedFileUrl, "class A {}", listOf("Rule"))
+      firstRun.startCapture(collapsedFileUrl, key)
+      firstRun.capture(collapsedFileUrl, null, "Rule", Result().withRuleId("Rule"))
+      firstRun.close(analysisCompleted = false)
+
+      val secondRun = QodanaInspectionResultsCache.open(path, "configuration")
+      assertThat(secondRun.lookup(key)).isNull()
+      secondRun.close(analysisCompleted = false)
+    }
+    finally {
+      path.deleteRecursively()
+    }
+  }
+
+  @Test
+  fun `discarded capture is not cached`() {
+    val path = Files.createTempDirectory(javaClass.simpleName)
+    try {
+      val firstRun = QodanaInspectionResultsCache.open(path, "configuration")
+      val key = firstRun.fileKey(collapsedFileUrl, "class A {}", listOf("Rule"))
+      firstRun.startCapture(collapsedFileUrl, key)
+      firstRun.capture(collapsedFileUrl, null, "Rule", Result().withRuleId("Rule"))
+      firstRun.discardCapture(collapsedFileUrl)
+      firstRun.close(analysisCompleted = true)
+
+      val secondRun = QodanaInspectionResultsCache.open(path, "configuration")
+      assertThat(secondRun.lookup(key)).isNull()
+      secondRun.close(analysisCompleted = false)
+    }
+    finally {
+      path.deleteRecursively()
+    }
+  }
+}
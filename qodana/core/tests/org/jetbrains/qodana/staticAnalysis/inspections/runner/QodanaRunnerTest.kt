@@ -53,8 +53,11 @@ import org.jetbrains.qodana.staticAnalysis.script.scoped.SCOPED_SCRIPT_NAME
 import org.jetbrains.qodana.staticAnalysis.script.scoped.SCOPE_ARG
 import org.jetbrains.qodana.staticAnalysis.script.scoped.STAGE_ARG
 import org.jetbrains.qodana.staticAnalysis.script.scoped.Stage
+import org.jetbrains.qodana.staticAnalysis.stat.INSPECTION_PROFILER_PROPERTY
+import org.jetbrains.qodana.staticAnalysis.stat.INSPECTION_PROFILE_ARTIFACT_NAME
 import org.jetbrains.qodana.staticAnalysis.stat.InspectionDurationsAggregatorService
 import org.jetbrains.qodana.staticAnalysis.stat.InspectionProblemsFoundAggregatorService
+import org.jetbrains.qodana.staticAnalysis.stat.InspectionTimingProfilerService
 import org.jetbrains.qodana.staticAnalysis.testFramework.QodanaRunnerTestCase
 import org.jetbrains.qodana.staticAnalysis.withSystemProperty
 import org.jetbrains.qodana.util.QodanaMessageReporter
@@ -93,6 +96,16 @@ class QodanaRunnerTest : QodanaRunnerTestCase() {
     assertSarifExitCode(0)
   }
 
+  @Test
+  fun `testInspection IgnoreResultOfCall, results streamed from the database`(): Unit = runBlocking {
+    runAnalysis()
+
+    // the report is written from the tool results database, the results are never set to the run
+    assertNull(manager.sarifRun.results)
+    assertSarifResults()
+    assertSarifExitCode(0)
+  }
+
   @Test
   fun `testEmpty profile`(): Unit = runBlocking {
 
@@ -314,6 +327,20 @@ class QodanaRunnerTest : QodanaRunnerTestCase() {
     assertEquals(1, unusedAssignmentProblems)
   }
 
+  @Test
+  fun `testInspection timing profile`(): Unit = runBlocking {
+    withSystemProperty(INSPECTION_PROFILER_PROPERTY, "true") {
+      runAnalysis()
+    }
+
+    val timingProfile = InspectionTimingProfilerService.getInstance(project).snapshot()
+    val constantValueTiming = timingProfile.inspections.single { it.inspectionId == "ConstantValue" }
+    assertEquals(2, constantValueTiming.files)
+    assertEquals(3, constantValueTiming.problems)
+    assertEquals(2, constantValueTiming.histogram.sum())
+    assertTrue(qodanaConfig.outPath.resolve(INSPECTION_PROFILE_ARTIFACT_NAME).exists())
+  }
+
   @Test
   fun `testScoped-script`() {
     val scope = qodanaConfig.projectPath.resolve("scope")
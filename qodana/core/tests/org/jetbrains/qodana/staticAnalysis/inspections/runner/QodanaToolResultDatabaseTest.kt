@@ -1,9 +1,22 @@
 package org.jetbrains.qodana.staticAnalysis.inspections.runner
 
 import com.intellij.testFramework.utils.io.deleteRecursively
+import com.jetbrains.qodana.sarif.model.ArtifactContent
+import com.jetbrains.qodana.sarif.model.ArtifactLocation
+import com.jetbrains.qodana.sarif.model.Location
+import com.jetbrains.qodana.sarif.model.Message
+import com.jetbrains.qodana.sarif.model.PhysicalLocation
+import com.jetbrains.qodana.sarif.model.PropertyBag
+import com.jetbrains.qodana.sarif.model.Region
+import com.jetbrains.qodana.sarif.model.Result
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.runBlocking
 import org.assertj.core.api.Assertions.assertThat
+import org.jetbrains.qodana.staticAnalysis.sarif.RELATED_PROBLEMS_ROOT_HASH_PROP
+import org.jetbrains.qodana.staticAnalysis.sarif.resultsFlowByGroup
 import org.junit.Test
 import java.nio.file.Files
+import java.nio.file.Path
 
 class QodanaToolResultDatabaseTest {
   @Test
@@ -21,4 +34,107 @@ class QodanaToolResultDatabaseTest {
       path.deleteRecursively()
     }
   }
+
+  @Test
+  fun `batch writer commits pending rows on flush and close`() {
+    val path = Files.createTempDirectory(javaClass.simpleName)
+    try {
+      QodanaToolResultDatabase.create(path).use { db ->
+        db.batchWriter(batchSize = 2, flushIntervalMs = Long.MAX_VALUE).use { writer ->
+          writer.insert("group", "A", "hash1", Result().withRuleId("A"))
+          assertThat(writer.flushIfNeeded()).isEqualTo(0)
+          writer.insert("group", "B", "hash2", Result().withRuleId("B"))
+          writer.insertRelatedProblem("hash2", Result().withRuleId("B"))
+          assertThat(writer.flushIfNeeded()).isEqualTo(3)
+          writer.insert("group", "C", "hash3", Result().withRuleId("C"))
+        }
+      }
+      QodanaToolResultDatabase.open(path).use { db ->
+        val inspections = db.select("group").use { query -> query.executeQuery().map { it.inspectionId }.toList() }
+        assertThat(inspections).containsExactly("A", "B", "C")
+        val related = db.selectRelatedProblems("hash2").use { query -> query.executeQuery().map { it.ruleId }.toList() }
+        assertThat(related).containsExactly("B")
+      }
+    }
+    finally {
+      path.deleteRecursively()
+    }
+  }
+
+  @Test
+  fun `results are restored from binary payload`() {
+    val path = Files.createTempDirectory(javaClass.simpleName)
+    try {
+      val results = (0 until 3).map { index ->
+        Result()
+          .withRuleId("ConstantValue")
+          .withMessage(Message().withText("Condition is always true").withMarkdown("Condition is always `true`"))
+          .withLocations(listOf(Location().withPhysicalLocation(
+            PhysicalLocation()
+              .withArtifactLocation(ArtifactLocation().withUri("src/Main.java").withUriBaseId("SRCROOT"))
+              .withRegion(Region().withStartLine(index + 1).withStartColumn(-1).withCharLength(1).withSnippet(
+                ArtifactContent().withText("if (\u00e9 == null) \"x\".repeat(${Long.MAX_VALUE})"))))))
+          .withProperties(PropertyBag().apply {
+            put("ideaSeverity", "WARNING")
+            put("qodanaSeverity", "High")
+            tags.add("java")
+          })
+      }
+      QodanaToolResultDatabase.create(path).use { db ->
+        results.forEachIndexed { index, result -> db.insert("group", result.ruleId, "hash$index", result) }
+      }
+      QodanaToolResultDatabase.open(path).use { db ->
+        val restored = db.select("group").use { query -> query.executeQuery().map { it.result }.toList() }
+        assertThat(restored).containsExactlyElementsOf(results)
+      }
+    }
+    finally {
+      path.deleteRecursively()
+    }
+  }
+
+  @Test
+  fun `merged shards produce the results of an unsharded analysis`() {
+    val path = Files.createTempDirectory(javaClass.simpleName)
+    try {
+      val common = result("A", "src/A.java", "java")
+      val javaTagged = result("B", "src/B.java", "java")
+      val kotlinTagged = result("B", "src/B.java", "kotlin")
+      val root = result("C", "src/C.java").also { it.properties[RELATED_PROBLEMS_ROOT_HASH_PROP] = "root" }
+      val firstRelated = result("C", "src/D.java")
+      val secondRelated = result("C", "src/E.java")
+
+      fill(path.resolve("unsharded"), listOf("a" to common, "b" to javaTagged, "b" to kotlinTagged, "c" to root),
+           listOf(firstRelated, secondRelated))
+      fill(path.resolve("shard1"), listOf("a" to common, "b" to javaTagged, "c" to root), listOf(firstRelated))
+      fill(path.resolve("shard2"), listOf("a" to common, "b" to kotlinTagged, "c" to root), listOf(firstRelated, secondRelated))
+
+      val statistics = QodanaToolResultDatabase.create(path.resolve("merged")).use { db ->
+        db.mergeShards(listOf("shard1", "shard2").map { path.resolve(it).resolve(QODANA_DB_FILENAME) })
+      }
+      assertThat(statistics).isEqualTo(ShardMergeStatistics(shards = 2, results = 6, sharedResults = 3))
+      assertThat(readResults(path.resolve("merged"))).isEqualTo(readResults(path.resolve("unsharded")))
+    }
+    finally {
+      path.deleteRecursively()
+    }
+  }
+
+  private fun result(ruleId: String, uri: String, vararg tags: String): Result =
+    Result()
+      .withRuleId(ruleId)
+      .withMessage(Message().withText("problem"))
+      .withLocations(listOf(Location().withPhysicalLocation(
+        PhysicalLocation().withArtifactLocation(ArtifactLocation().withUri(uri).withUriBaseId("SRCROOT")))))
+      .withProperties(PropertyBag().apply { this.tags.addAll(tags) })
+
+  private fun fill(path: Path, results: List<Pair<String, Result>>, relatedProblems: List<Result>) {
+    QodanaToolResultDatabase.create(path).use { db ->
+      results.forEach { (hash, result) -> db.insert("group", result.ruleId, hash, result) }
+      relatedProblems.forEach { db.insertRelatedProblem("root", it) }
+    }
+  }
+
+  private fun readResults(path: Path): List<Result> =
+    QodanaToolResultDatabase.open(path).use { db -> runBlocking { db.resultsFlowByGroup("group").toList() } }
 }
@@ -6,6 +6,7 @@ import com.intellij.openapi.roots.ModuleRootManager
 import com.intellij.openapi.roots.SourceFolder
 import com.intellij.openapi.roots.TestSourcesFilter
 import com.intellij.testFramework.TestDataPath
+import com.jetbrains.qodana.sarif.SarifUtil
 import kotlinx.coroutines.runBlocking
 import org.jetbrains.qodana.staticAnalysis.inspections.config.InspectScope
 import org.jetbrains.qodana.staticAnalysis.inspections.config.QodanaProfileConfig
@@ -15,6 +16,7 @@ import org.jetbrains.qodana.staticAnalysis.testFramework.reinstantiateInspection
 import org.junit.Assert
 import org.junit.Test
 import kotlin.io.path.absolutePathString
+import kotlin.io.path.div
 
 /**
  * Tests of yaml profile functionality.
@@ -124,7 +126,8 @@ class QodanaYamlProfileTest : QodanaRunnerTestCase() {
     }
     runAnalysis()
 
-    val resultPaths = manager.sarifRun.results.map { it.locations.single().physicalLocation.artifactLocation.uri }
+    val results = SarifUtil.readReport(qodanaConfig.outPath / FULL_SARIF_REPORT_NAME).runs.single().results
+    val resultPaths = results.map { it.locations.single().physicalLocation.artifactLocation.uri }
     Assert.assertTrue(resultPaths.any { it.endsWith("A.java") })
     Assert.assertTrue(resultPaths.any { it.endsWith("B.java") })
     Assert.assertTrue(resultPaths.none { it.endsWith("C.java") })
@@ -0,0 +1,92 @@
+package org.jetbrains.qodana.staticAnalysis.inspections.runner
+
+import com.jetbrains.qodana.sarif.SarifUtil
+import com.jetbrains.qodana.sarif.model.ArtifactContent
+import com.jetbrains.qodana.sarif.model.ArtifactLocation
+import com.jetbrains.qodana.sarif.model.Level
+import com.jetbrains.qodana.sarif.model.Location
+import com.jetbrains.qodana.sarif.model.Message
+import com.jetbrains.qodana.sarif.model.PhysicalLocation
+import com.jetbrains.qodana.sarif.model.PropertyBag
+import com.jetbrains.qodana.sarif.model.Region
+import com.jetbrains.qodana.sarif.model.Result
+import org.assertj.core.api.Assertions.assertThat
+import org.jetbrains.qodana.staticAnalysis.sarif.fingerprints.withPartialFingerprints
+import org.junit.Assume
+import org.junit.Test
+
+/**
+ * Compares [ResultBinaryCodec] with the Gson JSON text results were stored as before.
+ * The throughput benchmark runs with `-Dqodana.codec.benchmark=true`.
+ */
+class ResultBinaryCodecBenchmarkTest {
+  private val gson = SarifUtil.createGson()
+  private val results = syntheticResults(RESULTS)
+
+  @Test
+  fun `binary payloads are smaller than JSON`() {
+    val strings = InternedStrings(emptyList())
+    val codec = ResultBinaryCodec(strings)
+    val binarySize = results.sumOf { codec.encode(it).size } + strings.notPersisted().second.sumOf { it.toByteArray().size }
+    val jsonSize = results.sumOf { gson.toJson(it).toByteArray().size }
+
+    assertThat(binarySize).isLessThan(jsonSize * 3 / 4)
+  }
+
+  @Test
+  fun `encode and decode throughput`() {
+    Assume.assumeTrue(java.lang.Boolean.getBoolean("qodana.codec.benchmark"))
+    val codec = ResultBinaryCodec(InternedStrings(emptyList()))
+    val payloads = results.map { codec.encode(it) }
+    val texts = results.map { gson.toJson(it) }
+
+    repeat(WARMUP_ITERATIONS) {
+      results.forEach { codec.encode(it) }
+      payloads.forEach { codec.decode(it) }
+      results.forEach { gson.toJson(it) }
+      texts.forEach { gson.fromJson(it, Result::class.java) }
+    }
+
+    val binaryEncode = measure { results.forEach { codec.encode(it) } }
+    val binaryDecode = measure { payloads.forEach { codec.decode(it) } }
+    val jsonEncode = measure { results.forEach { gson.toJson(it) } }
+    val jsonDecode = measure { texts.forEach { gson.fromJson(it, Result::class.java) } }
+    println("$RESULTS results: binary ${payloads.sumOf { it.size }} bytes, encode $binaryEncode results/s, decode $binaryDecode results/s; " +
+            "JSON ${texts.sumOf { it.toByteArray().size }} bytes, encode $jsonEncode results/s, decode $jsonDecode results/s")
+  }
+
+  private fun measure(action: () -> Unit): Long {
+    val start = System.nanoTime()
+    repeat(MEASURED_ITERATIONS) { action() }
+    return RESULTS * MEASURED_ITERATIONS * 1_000_000_000L / (System.nanoTime() - start)
+  }
+
+  private fun syntheticResults(count: Int): List<Result> =
+    (0 until count).map { index ->
+      val line = index % 500 + 1
+      val snippet = "    val value$index = compute(input$index) ?: return null"
+      Result()
+        .withRuleId("Rule${index % 40}")
+        .withLevel(if (index % 3 == 0) Level.ERROR else Level.WARNING)
+        .withMessage(Message().withText("Problem $index is reported here").withMarkdown("Problem `$index` is reported here"))
+        .withLocations(listOf(Location().withPhysicalLocation(
+          PhysicalLocation()
+            .withArtifactLocation(ArtifactLocation().withUri("src/main/kotlin/pkg${index % 20}/File${index % 400}.kt").withUriBaseId("SRCROOT"))
+            .withRegion(Region().withStartLine(line).withStartColumn(9).withCharOffset(line * 60 + 8).withCharLength(12)
+                          .withSnippet(ArtifactContent().withText(snippet)).withSourceLanguage("kotlin"))
+            .withContextRegion(Region().withStartLine(line - 1).withStartColumn(1).withCharOffset(line * 60 - 60).withCharLength(180)
+                                 .withSnippet(ArtifactContent().withText("fun f$index() {\n$snippet\n}")).withSourceLanguage("kotlin")))))
+        .withProperties(PropertyBag().apply {
+          put("ideaSeverity", "WARNING")
+          put("qodanaSeverity", "High")
+          tags.add("kotlin")
+        })
+        .withPartialFingerprints()
+    }
+
+  private companion object {
+    const val RESULTS = 20_000
+    const val WARMUP_ITERATIONS = 5
+    const val MEASURED_ITERATIONS = 10
+  }
+}
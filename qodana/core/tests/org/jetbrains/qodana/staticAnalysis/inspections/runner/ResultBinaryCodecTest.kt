@@ -0,0 +1,87 @@
+package org.jetbrains.qodana.staticAnalysis.inspections.runner
+
+import com.jetbrains.qodana.sarif.model.ArtifactContent
+import com.jetbrains.qodana.sarif.model.ArtifactLocation
+import com.jetbrains.qodana.sarif.model.Level
+import com.jetbrains.qodana.sarif.model.Location
+import com.jetbrains.qodana.sarif.model.LogicalLocation
+import com.jetbrains.qodana.sarif.model.Message
+import com.jetbrains.qodana.sarif.model.PhysicalLocation
+import com.jetbrains.qodana.sarif.model.PropertyBag
+import com.jetbrains.qodana.sarif.model.Region
+import com.jetbrains.qodana.sarif.model.Result
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class ResultBinaryCodecTest {
+  @Test
+  fun `results with directly written fields round trip`() {
+    val codec = ResultBinaryCodec(InternedStrings(emptyList()))
+    val result = result("ConstantValue", "src/Main.java", "Condition is always true", "if (a == null) {")
+      .withBaselineState(Result.BaselineState.UNCHANGED)
+
+    assertThat(codec.decode(codec.encode(result))).isEqualTo(result)
+  }
+
+  @Test
+  fun `results with other fields round trip`() {
+    val codec = ResultBinaryCodec(InternedStrings(emptyList()))
+    val moduleLocation = Location().apply {
+      logicalLocations = setOf(LogicalLocation().withFullyQualifiedName("app").withKind("module"))
+    }
+    val related = Location().withPhysicalLocation(
+      PhysicalLocation().withArtifactLocation(ArtifactLocation().withUri("src/Other.java").withUriBaseId("SRCROOT"))
+    )
+    val result = result("UnusedDeclaration", "src/Main.java", "Unused", "void f() {}")
+      .withRelatedLocations(setOf(related))
+    result.locations = result.locations + moduleLocation
+    result.properties["count"] = 3
+    result.properties["ratio"] = 0.5
+
+    val decoded = codec.decode(codec.encode(result))
+    assertThat(decoded.locations).isEqualTo(result.locations)
+    assertThat(decoded.relatedLocations).isEqualTo(result.relatedLocations)
+    assertThat(decoded.properties.tags).isEqualTo(result.properties.tags)
+    assertThat(decoded.properties["ideaSeverity"]).isEqualTo("WARNING")
+    assertThat((decoded.properties["count"] as Number).toInt()).isEqualTo(3)
+    assertThat((decoded.properties["ratio"] as Number).toDouble()).isEqualTo(0.5)
+  }
+
+  @Test
+  fun `only low-cardinality values are interned`() {
+    val strings = InternedStrings(emptyList())
+    val codec = ResultBinaryCodec(strings)
+    codec.encode(result("ConstantValue", "src/Main.java", "Condition is always true", "if (a == null) {"))
+
+    val interned = strings.notPersisted().second
+    assertThat(interned).contains("ConstantValue", "src/Main.java", "SRCROOT", Level.WARNING.name)
+    assertThat(interned).doesNotContain("Condition is always true", "if (a == null) {")
+  }
+
+  @Test
+  fun `strings beyond the dictionary limit are written inline`() {
+    val strings = InternedStrings(emptyList(), maxSize = 2)
+    val codec = ResultBinaryCodec(strings)
+    val results = (0 until 5).map { result("Rule$it", "src/File$it.java", "problem $it", "snippet $it") }
+
+    val decoded = results.map { codec.encode(it) }.map { codec.decode(it) }
+    assertThat(decoded).containsExactlyElementsOf(results)
+    assertThat(strings.notPersisted().second).hasSize(2)
+  }
+
+  private fun result(ruleId: String, uri: String, text: String, snippet: String): Result =
+    Result()
+      .withRuleId(ruleId)
+      .withLevel(Level.WARNING)
+      .withMessage(Message().withText(text).withMarkdown(text))
+      .withLocations(listOf(Location().withPhysicalLocation(
+        PhysicalLocation()
+          .withArtifactLocation(ArtifactLocation().withUri(uri).withUriBaseId("SRCROOT"))
+          .withRegion(Region().withStartLine(3).withStartColumn(5).withCharOffset(40).withCharLength(6)
+                        .withSnippet(ArtifactContent().withText(snippet)).withSourceLanguage("JAVA"))
+          .withContextRegion(Region().withStartLine(2).withCharLength(30).withSnippet(ArtifactContent().withText(snippet))))))
+      .withProperties(PropertyBag().apply {
+        put("ideaSeverity", "WARNING")
+        tags.add("java")
+      })
+}
@@ -3,7 +3,6 @@ package org.jetbrains.qodana.staticAnalysis.sarif
 import com.intellij.openapi.application.PathManager
 import com.intellij.openapi.util.io.FileUtil
 import com.jetbrains.qodana.sarif.SarifUtil
-import com.jetbrains.qodana.sarif.model.Result
 import com.jetbrains.qodana.sarif.model.Run
 import com.jetbrains.qodana.sarif.model.SarifReport
 import kotlinx.coroutines.flow.toList
@@ -29,7 +28,7 @@ class DatabaseProblemsDuplicatesTest : QodanaTestCase() {
       commonPathsInspectionsSample.forEach { p ->
         val run = gson.fromJson(getTestDataPath().resolve(p).toFile().readText(), Run::class.java)
         run.results.forEach { r ->
-          database.insert("", r.ruleId, BaselineEqualityV1.calculate(r), gson.toJson(r, Result::class.java))
+          database.insert("", r.ruleId, BaselineEqualityV1.calculate(r), r)
         }
       }
       val testDataPath = getTestDataPath()
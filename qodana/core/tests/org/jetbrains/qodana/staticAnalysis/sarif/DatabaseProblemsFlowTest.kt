@@ -1,17 +1,24 @@
 package org.jetbrains.qodana.staticAnalysis.sarif
 
+import com.google.gson.JsonObject
 import com.intellij.openapi.application.PathManager
 import com.intellij.openapi.util.io.FileUtil
 import com.jetbrains.qodana.sarif.SarifUtil
+import com.jetbrains.qodana.sarif.baseline.BaselineCalculation
 import com.jetbrains.qodana.sarif.baseline.BaselineCalculation.EQUAL_INDICATOR
+import com.jetbrains.qodana.sarif.baseline.BaselineCalculation.Options
 import com.jetbrains.qodana.sarif.model.Result
 import com.jetbrains.qodana.sarif.model.Run
 import com.jetbrains.qodana.sarif.model.SarifReport
+import com.jetbrains.qodana.sarif.model.Tool
+import com.jetbrains.qodana.sarif.model.ToolComponent
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.toList
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.runBlocking
 import org.jetbrains.qodana.staticAnalysis.QodanaTestCase
+import org.jetbrains.qodana.staticAnalysis.inspections.runner.DatabaseRunResults
+import org.jetbrains.qodana.staticAnalysis.inspections.runner.IndexedComparison
 import org.jetbrains.qodana.staticAnalysis.inspections.runner.QodanaToolResultDatabase
 import org.jetbrains.qodana.staticAnalysis.sarif.fingerprints.BaselineEqualityV1
 import org.junit.After
@@ -20,22 +27,25 @@ import org.junit.Test
 import java.io.StringWriter
 import java.nio.file.Path
 import kotlin.io.path.absolutePathString
+import kotlin.io.path.readText
 
 class DatabaseProblemsFlowTest : QodanaTestCase() {
   private val commonPathsInspectionsSample = listOf(
     Path.of("JSUnresolvedVariable.json"),
     Path.of("BusyWait.json"),
   )
+  private lateinit var databaseDir: Path
   private lateinit var database: QodanaToolResultDatabase
   private val gson = SarifUtil.createGson()
 
   @Before
   fun setUpDb() {
-    database = QodanaToolResultDatabase.create(getTempOutputPath())
+    databaseDir = getTempOutputPath()
+    database = QodanaToolResultDatabase.create(databaseDir)
     commonPathsInspectionsSample.forEach { p ->
       val run = gson.fromJson(getTestDataPath().resolve(p).toFile().readText(), Run::class.java)
       run.results.forEach { r ->
-        database.insert("", r.ruleId, BaselineEqualityV1.calculate(r), gson.toJson(r, Result::class.java))
+        database.insert("", r.ruleId, BaselineEqualityV1.calculate(r), r)
       }
     }
   }
@@ -57,6 +67,115 @@ class DatabaseProblemsFlowTest : QodanaTestCase() {
     assertSameLinesWithFile (testSarifPath.absolutePathString(), writer.toString())
   }
 
+  @Test
+  fun `partitioned assembly produces the same report`(): Unit = runBlocking {
+    val testDataPath = getTestDataPath()
+
+    val testSarifPath = testDataPath.resolve("test-sarif.json")
+    val report = SarifReport().withRuns(listOf(Run().withResults(database.partitionedResultsFlowByGroup("", parallelism = 4).toList())))
+    val writer = StringWriter()
+    SarifUtil.writeReport(writer, report)
+
+    assertSameLinesWithFile (testSarifPath.absolutePathString(), writer.toString())
+  }
+
+  @Test
+  fun `partitioned assembly in chunks applies related locations`(): Unit = runBlocking {
+    val template = gson.fromJson(getTestDataPath().resolve("BusyWait.json").toFile().readText(), Run::class.java).results.first()
+    val root = gson.fromJson(gson.toJson(template), Result::class.java)
+    root.getOrAssignProperties()[RELATED_PROBLEMS_ROOT_HASH_PROP] = "root"
+    database.insert("", root.ruleId, "root-result", root)
+    database.insertRelatedProblem("root", gson.fromJson(gson.toJson(template), Result::class.java))
+    database.insertRelatedProblem("unreferenced", gson.fromJson(gson.toJson(template), Result::class.java))
+
+    val expected = database.resultsFlowByGroup("").toList()
+    val assembled = database.partitionedResultsFlowByGroup("", parallelism = 4, chunkSize = 1).toList()
+
+    assertEquals(expected, assembled)
+    val assembledRoot = assembled.single { it.getOrAssignProperties()[RELATED_PROBLEMS_ROOT_HASH_PROP] == "root" }
+    assertEquals(template.locations.toSet(), assembledRoot.relatedLocations)
+  }
+
+  @Test
+  fun `streaming writer pulls results from database`(): Unit = runBlocking {
+    val testSarifPath = getTestDataPath().resolve("test-sarif.json")
+    val expectedResults = SarifUtil.readReport(testSarifPath).runs.first().results
+
+    val reportPath = getTempOutputPath().resolve("streamed.sarif.json")
+    val report = SarifReport().withRuns(listOf(Run().withResults(null)))
+    writeReportStreaming(reportPath, report) { database.resultsFlowByGroup("") }
+
+    val writtenResults = SarifUtil.readReport(reportPath).runs.single().results
+    assertEquals(expectedResults, writtenResults)
+    assertNull(report.runs.single().results)
+  }
+
+  @Test
+  fun `streaming writer leaves the report untouched`(): Unit = runBlocking {
+    val results = database.resultsFlowByGroup("").toList()
+    val report = SarifReport().withRuns(listOf(Run().withResults(results)))
+    val runs = report.runs
+
+    val reportPath = getTempOutputPath().resolve("in-memory.sarif.json")
+    writeReportStreaming(reportPath, report)
+
+    assertSame(runs, report.runs)
+    assertSame(results, report.runs.single().results)
+    assertEquals(results, SarifUtil.readReport(reportPath).runs.single().results)
+  }
+
+  @Test
+  fun `streaming writer keeps the field order of the full report`(): Unit = runBlocking {
+    val results = database.resultsFlowByGroup("").toList()
+    val report = SarifReport().withRuns(listOf(Run().withTool(Tool().withDriver(ToolComponent().withName("QDJVM"))).withResults(results)))
+
+    val reportPath = getTempOutputPath().resolve("streamed.sarif.json")
+    writeReportStreaming(reportPath, report)
+    val writer = StringWriter()
+    SarifUtil.writeReport(writer, report)
+
+    val streamed = gson.fromJson(reportPath.readText(), JsonObject::class.java)
+    val expected = gson.fromJson(writer.toString(), JsonObject::class.java)
+    assertEquals(expected.keySet().toList(), streamed.keySet().toList())
+    assertEquals(runKeys(expected), runKeys(streamed))
+  }
+
+  @Test
+  fun `report is written from the database without populating run results`(): Unit = runBlocking {
+    val expectedResults = SarifUtil.readReport(getTestDataPath().resolve("test-sarif.json")).runs.first().results
+    val run = Run().withResults(null)
+    val report = SarifReport().withRuns(listOf(run))
+    val databaseResults = DatabaseRunResults(run, databaseDir, "")
+
+    val reportPath = getTempOutputPath().resolve("database.sarif.json")
+    writeReportStreaming(reportPath, report, databaseResults::resultsOf)
+
+    assertEquals(expectedResults, SarifUtil.readReport(reportPath).runs.single().results)
+    assertEquals(expectedResults.size, databaseResults.counts().total)
+    assertNull(run.results)
+  }
+
+  @Test
+  fun `indexed baseline comparison in chunks matches the full comparison`(): Unit = runBlocking {
+    val results = database.resultsFlowByGroup("").toList()
+    val tool = Tool().withDriver(ToolComponent().withName("QDJVM"))
+    val baselinePath = getTempOutputPath().resolve("baseline.sarif.json")
+    SarifUtil.writeReport(baselinePath, SarifReport().withRuns(listOf(Run().withTool(tool).withResults(results.drop(1)))))
+
+    // keeps only the new results, as the scoped script does
+    val options = Options(false, false, false, false)
+    val comparison = IndexedComparison.open(
+      baselinePath, options, includeAbsent = false, indexDir = getTempOutputPath(), chunkSize = 1,
+    )!!
+    val run = Run().withTool(tool).withResults(null)
+    val compared = DatabaseRunResults(run, databaseDir, "").comparedWith(comparison).results.toList()
+
+    val expected = SarifReport().withRuns(listOf(Run().withTool(tool).withResults(database.resultsFlowByGroup("").toList())))
+    BaselineCalculation.compare(expected, SarifUtil.readReport(baselinePath), options)
+    assertEquals(expected.runs.single().results, compared)
+    assertEquals(listOf(results.first().ruleId), compared.map { it.ruleId })
+  }
+
   @Test
   fun `iterate twice on FileProblemsIterable`(): Unit = runBlocking {
     val testDataPath = getTestDataPath()
@@ -116,6 +235,9 @@ class DatabaseProblemsFlowTest : QodanaTestCase() {
     return FileUtil.createTempDirectory(getTestName(false), null, true).toPath()
   }
 
+  private fun runKeys(report: JsonObject): List<String> =
+    report.getAsJsonArray("runs").single().asJsonObject.keySet().toList()
+
   private fun couldNotFindResultMessage(result: Result) =
     "Couldn't find result with id ${result.ruleId}, equalIndicator: ${result.partialFingerprints.getLastValue(EQUAL_INDICATOR)}"
 }
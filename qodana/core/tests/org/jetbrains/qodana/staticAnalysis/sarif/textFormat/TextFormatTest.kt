@@ -329,6 +329,21 @@ class TextFormatTest {
     assertThat(htmlToPlainText(html)).isEqualTo(expectedPlainText)
   }
 
+  @Test
+  fun `test repeated conversions are cached`() {
+    val html = "<p>Reports <code>cached</code> conversions ${System.nanoTime()}</p>"
+    val before = textFormatCacheStatistics()
+
+    val markdown = htmlToMarkdown(html)
+    val plainText = htmlToPlainText(html)
+    assertThat(htmlToMarkdown(html)).isEqualTo(markdown)
+    assertThat(htmlToPlainText(html)).isEqualTo(plainText)
+
+    val after = textFormatCacheStatistics()
+    assertThat(after.misses - before.misses).isEqualTo(2)
+    assertThat(after.hits - before.hits).isEqualTo(2)
+  }
+
   @Test
   fun `test escapeContentInTag`() {
     val data = "<p>Hello World</p>"
@@ -0,0 +1,89 @@
+package org.jetbrains.qodana.staticAnalysis.stat
+
+import com.intellij.codeInspection.LocalInspectionTool
+import com.intellij.codeInspection.ex.InspectListener.InspectionKind
+import com.intellij.codeInspection.ex.LocalInspectionToolWrapper
+import com.intellij.testFramework.LightVirtualFile
+import org.jetbrains.qodana.staticAnalysis.QodanaTestCase
+import org.jetbrains.qodana.staticAnalysis.withSystemProperty
+import org.junit.Assume.assumeTrue
+import org.junit.Test
+import java.lang.management.ManagementFactory
+
+class InspectionTimingProfilerServiceTest : QodanaTestCase() {
+  private val threadMXBean = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+
+  @Suppress("unused")
+  private var sink: Any? = null
+
+  @Test
+  fun `cpu time is measured from the start to the end of a file`() {
+    assumeTrue(threadMXBean.isThreadCpuTimeSupported && threadMXBean.isThreadCpuTimeEnabled)
+    val profiler = createProfiler()
+
+    profileFiles(profiler) { burnCpu(200) }
+
+    val timings = profiler.snapshot().inspections.associateBy { it.inspectionId }
+    val first = timings.getValue("First")
+    val second = timings.getValue("Second")
+    assertTrue("${first.cpuTimeMs} + ${second.cpuTimeMs}", first.cpuTimeMs + second.cpuTimeMs >= 200)
+    assertTrue("${first.cpuTimeMs} vs ${second.cpuTimeMs}", first.cpuTimeMs >= 2 * second.cpuTimeMs)
+    // the work between the files isn't charged to the next one
+    assertTrue(timings.getValue("Next").cpuTimeMs.toString(), timings.getValue("Next").cpuTimeMs < 100)
+  }
+
+  @Test
+  fun `allocations are measured from the start to the end of a file`() {
+    assumeTrue(threadMXBean.isThreadAllocatedMemorySupported && threadMXBean.isThreadAllocatedMemoryEnabled)
+    val profiler = createProfiler()
+
+    profileFiles(profiler) { allocate(64) }
+
+    val timings = profiler.snapshot().inspections.associateBy { it.inspectionId }
+    val first = timings.getValue("First")
+    val second = timings.getValue("Second")
+    assertTrue("${first.allocatedBytes} + ${second.allocatedBytes}", first.allocatedBytes + second.allocatedBytes >= 64L shl 20)
+    assertTrue("${first.allocatedBytes} vs ${second.allocatedBytes}", first.allocatedBytes >= 2 * second.allocatedBytes)
+    // the work between the files isn't charged to the next one
+    assertTrue(timings.getValue("Next").allocatedBytes.toString(), timings.getValue("Next").allocatedBytes < 32L shl 20)
+  }
+
+  /**
+   * Runs [work] while the first file is inspected and again between the files, the next file does no work.
+   */
+  private fun profileFiles(profiler: InspectionTimingProfilerService, work: () -> Unit) {
+    val file = LightVirtualFile("A.java")
+    profiler.fileStarted(file)
+    work()
+    profiler.addInspectionFinishedEvent(30, 0, wrapper("First"), InspectionKind.LOCAL, file)
+    profiler.addInspectionFinishedEvent(10, 0, wrapper("Second"), InspectionKind.LOCAL, file)
+    profiler.fileAnalyzed(file)
+
+    work()
+
+    val nextFile = LightVirtualFile("B.java")
+    profiler.fileStarted(nextFile)
+    profiler.addInspectionFinishedEvent(10, 0, wrapper("Next"), InspectionKind.LOCAL, nextFile)
+    profiler.fileAnalyzed(nextFile)
+  }
+
+  private fun createProfiler(): InspectionTimingProfilerService =
+    withSystemProperty(INSPECTION_PROFILER_PROPERTY, "true") { InspectionTimingProfilerService(project) }
+
+  private fun wrapper(shortName: String) = LocalInspectionToolWrapper(object : LocalInspectionTool() {
+    override fun getShortName(): String = shortName
+  })
+
+  private fun burnCpu(millis: Long) {
+    val start = threadMXBean.currentThreadCpuTime
+    var value = 0L
+    while (threadMXBean.currentThreadCpuTime - start < millis * 1_000_000) {
+      value = value * 31 + 1
+    }
+    sink = value
+  }
+
+  private fun allocate(megabytes: Int) {
+    repeat(megabytes) { sink = ByteArray(1 shl 20) }
+  }
+}
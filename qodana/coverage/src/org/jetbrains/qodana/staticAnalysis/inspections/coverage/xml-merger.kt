@@ -80,4 +80,82 @@ fun XMLProjectData.merge(other: XMLProjectData) {
       addClass(otherClassInfo)
     }
   }
-}
\ No newline at end of file
+}
+
+/**
+ * Merges all [reports] into the first one in a single pass, instead of merging them pairwise with [XMLProjectData.merge],
+ * which re-merges the accumulated files for every added report.
+ *
+ * Files are merged in parallel, counters of a file are accumulated in a primitive array indexed by line number,
+ * so no intermediate [LineInfo] or per-file maps are created. The result is the same as of the pairwise merge.
+ */
+fun mergeXmlReports(reports: List<XMLProjectData>): XMLProjectData {
+  val merged = reports.first()
+  if (reports.size == 1) return merged
+
+  val paths = LinkedHashSet<String>()
+  val classNames = LinkedHashSet<String>()
+  for (report in reports) {
+    report.files.mapTo(paths) { it.path }
+    report.classes.mapTo(classNames) { it.name }
+  }
+
+  val fileInfos = paths.parallelStream()
+    .map { path -> mergeFileInfos(path, reports.mapNotNull { it.getFile(path) }) }
+    .toList()
+  val classInfos = classNames.parallelStream()
+    .map { name -> reports.mapNotNull { it.getClass(name) }.reduce { acc, classInfo -> acc.merge(classInfo) } }
+    .toList()
+
+  fileInfos.forEach { merged.addFile(it) }
+  classInfos.forEach { merged.addClass(it) }
+  return merged
+}
+
+private const val MISSED_INSTRUCTIONS = 0
+private const val COVERED_INSTRUCTIONS = 1
+private const val MISSED_BRANCHES = 2
+private const val COVERED_BRANCHES = 3
+private const val COUNTERS_PER_LINE = 4
+
+private fun mergeFileInfos(path: String, fileInfos: List<FileInfo>): FileInfo {
+  if (fileInfos.size == 1) return fileInfos.single()
+
+  val maxLine = fileInfos.maxOf { fileInfo -> fileInfo.lines.maxOfOrNull { it.lineNumber } ?: -1 }
+  // missed instructions of an absent line are -1, counters are never negative
+  val counters = IntArray((maxLine + 1) * COUNTERS_PER_LINE)
+  for (line in 0..maxLine) {
+    counters[line * COUNTERS_PER_LINE + MISSED_INSTRUCTIONS] = -1
+  }
+  for (fileInfo in fileInfos) {
+    for (line in fileInfo.lines) {
+      val offset = line.lineNumber * COUNTERS_PER_LINE
+      if (counters[offset + MISSED_INSTRUCTIONS] == -1) {
+        counters[offset + MISSED_INSTRUCTIONS] = line.missedInstructions
+        counters[offset + COVERED_INSTRUCTIONS] = line.coveredInstructions
+        counters[offset + MISSED_BRANCHES] = line.missedBranches
+        counters[offset + COVERED_BRANCHES] = line.coveredBranches
+      }
+      else {
+        counters[offset + MISSED_INSTRUCTIONS] = min(counters[offset + MISSED_INSTRUCTIONS], line.missedInstructions)
+        counters[offset + COVERED_INSTRUCTIONS] = max(counters[offset + COVERED_INSTRUCTIONS], line.coveredInstructions)
+        counters[offset + MISSED_BRANCHES] = min(counters[offset + MISSED_BRANCHES], line.missedBranches)
+        counters[offset + COVERED_BRANCHES] = max(counters[offset + COVERED_BRANCHES], line.coveredBranches)
+      }
+    }
+  }
+
+  val mergedFileInfo = FileInfo(path)
+  for (line in 0..maxLine) {
+    val offset = line * COUNTERS_PER_LINE
+    if (counters[offset + MISSED_INSTRUCTIONS] == -1) continue
+    mergedFileInfo.lines.add(LineInfo(
+      line,
+      counters[offset + MISSED_INSTRUCTIONS],
+      counters[offset + COVERED_INSTRUCTIONS],
+      counters[offset + MISSED_BRANCHES],
+      counters[offset + COVERED_BRANCHES]
+    ))
+  }
+  return mergedFileInfo
+}
@@ -0,0 +1,37 @@
+package org.jetbrains.qodana.staticAnalysis.inspections.coverage
+
+import com.intellij.rt.coverage.report.XMLProjectData
+import com.intellij.rt.coverage.report.XMLProjectData.FileInfo
+import com.intellij.rt.coverage.report.XMLProjectData.LineInfo
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class XmlMergerTest {
+  @Test
+  fun `merging all reports at once matches the pairwise merge`() {
+    val reports = {
+      listOf(
+        report(file("A.kt", LineInfo(1, 2, 0, 0, 0), LineInfo(3, 1, 1, 1, 1)), file("B.kt", LineInfo(5, 0, 4, 0, 0))),
+        report(file("A.kt", LineInfo(1, 0, 2, 0, 0), LineInfo(2, 3, 0, 0, 0))),
+        report(file("A.kt", LineInfo(3, 0, 2, 0, 2)), file("C.kt", LineInfo(1, 1, 0, 0, 0))),
+      )
+    }
+    val expected = reports().let { pairwise -> pairwise.drop(1).fold(pairwise.first()) { acc, report -> acc.also { it.merge(report) } } }
+    val actual = mergeXmlReports(reports())
+
+    assertEquals(dump(expected), dump(actual))
+    assertEquals("1:0/2/0/0, 2:3/0/0/0, 3:0/2/0/2", dump(actual.getFile("A.kt")!!))
+  }
+
+  private fun report(vararg files: FileInfo) = XMLProjectData().also { report -> files.forEach { report.addFile(it) } }
+
+  private fun file(path: String, vararg lines: LineInfo) = FileInfo(path).also { it.lines.addAll(lines) }
+
+  private fun dump(report: XMLProjectData): String =
+    report.files.sortedBy { it.path }.joinToString("\n") { "${it.path} -> ${dump(it)}" }
+
+  private fun dump(fileInfo: FileInfo): String =
+    fileInfo.lines.sortedBy { it.lineNumber }.joinToString {
+      "${it.lineNumber}:${it.missedInstructions}/${it.coveredInstructions}/${it.missedBranches}/${it.coveredBranches}"
+    }
+}
@@ -40,7 +40,7 @@ import org.jetbrains.qodana.staticAnalysis.inspections.coverage.iterateContents
 import org.jetbrains.qodana.staticAnalysis.inspections.coverage.loadClassData
 import org.jetbrains.qodana.staticAnalysis.inspections.coverage.loadMissingData
 import org.jetbrains.qodana.staticAnalysis.inspections.coverage.loadXmlLineData
-import org.jetbrains.qodana.staticAnalysis.inspections.coverage.merge
+import org.jetbrains.qodana.staticAnalysis.inspections.coverage.mergeXmlReports
 import org.jetbrains.qodana.staticAnalysis.inspections.coverage.processReportClassData
 import org.jetbrains.qodana.staticAnalysis.inspections.coverage.processReportXmlData
 import org.jetbrains.qodana.staticAnalysis.inspections.coverage.reportElement
@@ -352,15 +352,12 @@ class JvmCoverageInspection : CoverageInspectionBase() {
     val engine = CoverageEngine.EP_NAME.findExtensionOrFail(engineType.java)
     val suites = computeSuitesPaths(engine, coverageFiles, globalContext.project)
     if (suites.any()) {
-      val firstSuite = suites.first()
-      val report = (firstSuite as? XMLReportSuite)?.getReportData()
-                   ?: throw QodanaException("JaCoCo suite ${firstSuite.presentableName} is missing report data")
-      for (suite in suites.drop(1)) {
-        val add = (suite as? XMLReportSuite)?.getReportData()
-                  ?: throw QodanaException("JaCoCo suite ${suite.presentableName} is missing report data")
-        report.merge(add)
-      }
-      return report
+      // every suite parses its own report file, so the reports are loaded in parallel
+      val reports = suites.parallelStream().map { suite ->
+        (suite as? XMLReportSuite)?.getReportData()
+        ?: throw QodanaException("JaCoCo suite ${suite.presentableName} is missing report data")
+      }.toList()
+      return mergeXmlReports(reports)
     }
     return null
   }